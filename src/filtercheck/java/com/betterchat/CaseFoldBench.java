@@ -0,0 +1,111 @@
+package com.betterchat;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmark of CaseFoldMatcher against the lower-casing path it replaced,
+ * {@code text.toLowerCase().contains(keyword)}, on synthetic chat lines.
+ *
+ * Each pass checks every line against every keyword, the way a keyword tab filters the
+ * log. Prints the median time of the runs and the bytes the measuring thread allocated
+ * per pass (HotSpot only; "n/a" elsewhere).
+ *
+ * Usage: {@code CaseFoldBench [lines] [runs] [seed]}, defaults 100000, 20, 1.
+ * Run with {@code gradle caseFoldBench}; not part of {@code gradle test}.
+ */
+public final class CaseFoldBench {
+
+    private static final String[] KEYWORDS = {"trade", "LF", "Diamond", "café", "coins"};
+    private static final String[] NAMES    = {"Notch", "jeb_", "Dinnerbone", "Alex", "Grian", "Mumbo"};
+    private static final String[] WORDS    = {"hello", "selling", "party", "gg", "wp", "skyblock",
+            "Bedwars", "auction", "brb", "afk", "lol", "dungeon", "ÉTÉ", "50k", "HELP", "anyone"};
+
+    private CaseFoldBench() {}
+
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int runs  = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+
+        String[] text = chat(new Random(seed), lines);
+        CaseFoldMatcher[] matchers = new CaseFoldMatcher[KEYWORDS.length];
+        String[] lowered = new String[KEYWORDS.length];
+        for (int k = 0; k < KEYWORDS.length; k++) {
+            matchers[k] = new CaseFoldMatcher(KEYWORDS[k]);
+            lowered[k]  = KEYWORDS[k].toLowerCase(Locale.ROOT);
+        }
+
+        // Warm both paths up, and check they agree before timing either
+        for (int i = 0; i < 5; i++) {
+            int a = lowerCasing(text, lowered), b = folding(text, matchers);
+            if (a != b) {
+                System.out.println("CaseFoldBench: paths disagree (" + a + " vs " + b + " hits)");
+                System.exit(1);
+            }
+        }
+
+        report("toLowerCase().contains", measure(runs, () -> lowerCasing(text, lowered)));
+        report("CaseFoldMatcher", measure(runs, () -> folding(text, matchers)));
+    }
+
+    private static int lowerCasing(String[] text, String[] keywords) {
+        int hits = 0;
+        for (String line : text)
+            for (String k : keywords) if (line.toLowerCase().contains(k)) hits++;
+        return hits;
+    }
+
+    private static int folding(String[] text, CaseFoldMatcher[] matchers) {
+        int hits = 0;
+        for (String line : text)
+            for (CaseFoldMatcher m : matchers) if (m.find(line)) hits++;
+        return hits;
+    }
+
+    private static String[] chat(Random rnd, int lines) {
+        String[] out = new String[lines];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.setLength(0);
+            sb.append('<').append(NAMES[rnd.nextInt(NAMES.length)]).append("> ");
+            int words = 3 + rnd.nextInt(10);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) sb.append(' ');
+                sb.append(rnd.nextInt(12) == 0 ? KEYWORDS[rnd.nextInt(KEYWORDS.length)] : WORDS[rnd.nextInt(WORDS.length)]);
+            }
+            out[i] = sb.toString();
+        }
+        return out;
+    }
+
+    /** Median nanoseconds and mean allocated bytes per pass. */
+    private static long[] measure(int runs, java.util.function.IntSupplier pass) {
+        long[] times = new long[runs];
+        long allocated = 0;
+        int sink = 0;
+        for (int r = 0; r < runs; r++) {
+            long before = allocatedBytes();
+            long t0 = System.nanoTime();
+            sink += pass.getAsInt();
+            times[r] = System.nanoTime() - t0;
+            allocated += allocatedBytes() - before;
+        }
+        if (sink == 42) System.out.print(""); // keeps the passes from being optimised away
+        Arrays.sort(times);
+        return new long[] { times[runs / 2], allocatedBytes() < 0 ? -1 : allocated / runs };
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, long[] result) {
+        System.out.printf(Locale.ROOT, "%-24s median %6.1f ms   allocated %s per pass%n", name,
+                result[0] / 1e6, result[1] < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f MB", result[1] / 1e6));
+    }
+}
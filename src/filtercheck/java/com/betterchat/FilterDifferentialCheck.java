@@ -0,0 +1,748 @@
+package com.betterchat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Headless differential check: random tabs and random chat, every filter engine against
+ * {@link LegacyFilter}, message by message.
+ *
+ * Each round builds a ChatTabData in a temp directory (no Minecraft client) and gives it
+ * random tabs covering every TAB_V8 field — keywords, regex keywords, escaped commas and
+ * pipes, type toggles, expressions (some deliberately broken), derived tabs — random
+ * mutes and ignores, and a stream of chat in the formats the mod sees: vanilla and
+ * Hypixel player lines, private messages, server lines, commands and their responses,
+ * each classified by a server profile the way ChatIngest classifies a received line.
+ * Then, for every tab, it compares the legacy answer with:
+ * <ul>
+ *   <li>messagePassesFilter per message, twice (the second pass runs on re-sorted checks)</li>
+ *   <li>buildFilteredHistory, and the same history built in pieces by appendFilteredRange</li>
+ *   <li>a ParallelHistoryFilter job</li>
+ *   <li>the membership bitmap — fresh (first as the client thread gets it, built in the
+ *       background, then through the blocking call), after a mute change, after more chat
+ *       arrives (some of it appended with precomputed decisions, as ChatIngest does), and
+ *       after save() and a reload from disk, which must also keep every message's sender</li>
+ *   <li>a FilterPreview count for one random keyword</li>
+ * </ul>
+ * Expressions also call two mod predicates registered through BetterChatAPI.
+ * Derived tabs are checked against the set algebra of the legacy answers.
+ *
+ * Usage: {@code FilterDifferentialCheck [seed] [rounds]}. Exits with status 1 on any
+ * mismatch, printing the seed and round so the failure can be replayed. Run by
+ * {@code gradle test} through the filterDiffCheck task, with a fixed seed unless
+ * {@code -PfilterCheckSeed} gives another.
+ */
+public final class FilterDifferentialCheck {
+
+    private static final int MAX_REPORTS = 20;
+
+    private static final String   ME      = "Steve";
+    private static final String[] PLAYERS = {"Notch", "jeb_", "Dinnerbone", "xX_Slayer_Xx", "Alex", "alex",
+            "Technoblade", "Grian", "Mumbo", ME};
+    private static final String[] RANKS   = {"", "", "[VIP] ", "[VIP+] ", "[MVP] ", "[MVP+] ", "[MVP++] "};
+    private static final String[] WORDS   = {"hello", "trade", "selling", "LF", "lfg", "party", "Guild", "gg",
+            "wp", "diamond", "coins", "Bedwars", "skyblock", "café", "ÉTÉ", "x,y", "a|b", "[MVP+]",
+            "re:", "lol", "brb", "afk", "auction", "1000", "50k", "Notch", "dragon", "HELP"};
+    private static final String[] SERVER_LINES = {
+            "Welcome to Hypixel SkyBlock!", "You are AFK. Move around to return from AFK.",
+            "Server: restarting in 5 minutes", "[NPC] Banker: Hello there!",
+            "Your auction for Diamond Sword sold for 50k coins", "The lobby is full, sending you to lobby 3",
+            "Notch joined the game", "alex left the game", "A dragon has spawned!", "Trade completed with Grian",
+            "[WATCHDOG ANNOUNCEMENT] 1000 players banned", "You earned 1000 coins: selling",
+            "Party Finder > lf dungeon", "Guild > Mumbo [MEMBER]: gg"};
+    private static final String[] RESPONSES = {
+            "Unknown command. Type \"/help\" for help.", "Teleported to %s", "You invited %s to the party.",
+            "Warping...", "Player not found: %s", "%s is not online"};
+    /** Regex keyword sources; "[" does not compile and must be skipped by both sides. */
+    private static final String[] PATTERNS = {"\\b(lf|lfg)\\b", "^<", "\\d+ ?coins", "tr[a4]de",
+            "^(Party|Guild) >", "caf.", "x,y", "a\\|b", "gg$", "HELP|brb", "^\\[npc\\]", "["};
+    private static final String[] GUILD_TAGS = {"[MEMBER]", "[OFFICER]", "[GM]"};
+    private static final MessageClassifier[] PROFILES =
+            {MessageClassifier.VANILLA, MessageClassifier.HYPIXEL, MessageClassifier.ESSENTIALS};
+    private static final String[] CHANNELS = {"none", "all", "party", "guild", "officer", "private", "local"};
+    private static final String[] TYPES    = {"command", "response", "server", "player", "me"};
+
+    private static int mismatches, reports;
+    private static long comparisons;
+
+    public static void main(String[] args) throws Exception {
+        long seed   = args.length > 0 ? Long.parseLong(args[0]) : System.nanoTime();
+        int  rounds = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        // CaseFoldMatcher ignores the default locale on purpose; pin the legacy
+        // toLowerCase() to the locale-neutral mapping so only real differences show up.
+        Locale.setDefault(Locale.ROOT);
+        // Mod predicates, for mod: leaves — one per cost class that behaves differently
+        BetterChatAPI.registerPredicate("filtercheck.coins", BetterChatAPI.Cost.SUBSTRING,
+                m -> m.plainText().toLowerCase().contains("coins"));
+        BetterChatAPI.registerPredicate("filtercheck.party", BetterChatAPI.Cost.FLAG,
+                m -> m.channel().equals("party") && !m.isLocal());
+
+        File root = Files.createTempDirectory("betterchat-filtercheck").toFile();
+        try {
+            for (int r = 0; r < rounds; r++) {
+                new Round(seed, r, new File(root, "round" + r)).run();
+            }
+        } finally {
+            deleteTree(root);
+        }
+        System.out.println("Filter differential check: seed " + seed + ", " + rounds + " rounds, "
+                + comparisons + " comparisons, " + mismatches + " mismatches");
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static void deleteTree(File f) {
+        File[] children = f.listFiles();
+        if (children != null) for (File c : children) deleteTree(c);
+        f.delete();
+    }
+
+    // -------------------------------------------------------------------------
+    // Reference predicates  —  a rendered source string and the meaning it was built from
+    // -------------------------------------------------------------------------
+
+    private static final class Ref<T> {
+        final String source;
+        final Predicate<T> test;
+        final boolean compound;
+
+        Ref(String source, Predicate<T> test, boolean compound) {
+            this.source = source; this.test = test; this.compound = compound;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Round  —  one random configuration, one chat stream, every engine
+    // -------------------------------------------------------------------------
+
+    private static final class Round {
+        final long seed;
+        final int  round;
+        final File dir;
+        final Random rnd;
+
+        /** Expression source → reference predicate; a missing source is meant not to parse. */
+        final Map<String, Predicate<ChatTabData.ChatMessage>> expressions = new HashMap<>();
+        /** Derived tab id → reference over the sources' answers. */
+        final Map<Integer, Ref<IntPredicate>> derivations = new HashMap<>();
+        String day = "2026/10/01";
+        final MessageClassifier.Result classified = new MessageClassifier.Result();
+
+        Round(long seed, int round, File dir) {
+            this.seed  = seed;
+            this.round = round;
+            this.dir   = dir;
+            this.rnd   = new Random(seed * 31 + round);
+        }
+
+        void run() throws Exception {
+            ChatTabData data = new ChatTabData(dir);
+            data.playerName = ME;
+
+            // Tabs: the default tab plus a few more, then up to two derived tabs over them
+            int ordinary = 1 + rnd.nextInt(6);
+            for (int i = 0; i < ordinary; i++) data.addTab();
+            for (TabProfile t : data.tabs) {
+                t.name = tabName(t.id);
+                randomRules(t);
+            }
+            List<Integer> sources = new ArrayList<>();
+            for (TabProfile t : data.tabs) sources.add(t.id);
+            int derived = rnd.nextInt(3);
+            for (int i = 0; i < derived; i++) {
+                int id = data.addTab();
+                TabProfile t = data.tab(id);
+                t.name = tabName(id);
+                randomRules(t); // unused while the tab is derived, but still round-tripped
+                Ref<IntPredicate> alg = randomAlgebra(data, sources, 3);
+                try {
+                    t.derivation = TabAlgebra.compile(data, alg.source, id);
+                    derivations.put(id, alg);
+                } catch (TabAlgebra.ParseException e) {
+                    fail(data, t, "setup", "derivation '" + alg.source + "' rejected: " + e.getMessage());
+                }
+            }
+
+            // Mutes and ignores: permanent, expired and still-running ones
+            long now = System.currentTimeMillis();
+            for (int i = rnd.nextInt(4); i > 0; i--) {
+                long until = rnd.nextBoolean() ? Long.MAX_VALUE : now + (rnd.nextBoolean() ? 3_600_000 : -3_600_000);
+                data.mutePlayer(pick(PLAYERS), until);
+            }
+            if (rnd.nextInt(3) == 0) data.ignoredPlayers.add(pick(PLAYERS));
+            data.filterVersion++;
+
+            int n = round % 8 == 3 ? ParallelHistoryFilter.PARALLEL_THRESHOLD + rnd.nextInt(20_000)
+                                   : 500 + rnd.nextInt(12_000);
+            for (int i = 0; i < n; i++) data.appendMessage(randomMessage());
+
+            // Fresh data: every engine
+            Map<Integer, boolean[]> expected = expected(data);
+            checkMembershipsInBackground(data, expected); // first, while no bitmap is built yet
+            checkPerMessage(data, expected, "per message");
+            checkPerMessage(data, expected, "per message, re-sorted");
+            checkHistories(data, expected, "history");
+            checkParallel(data, expected);
+            checkMemberships(data, expected, "membership");
+            checkPreview(data);
+
+            // A mute change patches the bitmaps in place
+            String who = pick(PLAYERS);
+            if (data.isPlayerMuted(who)) data.unmutePlayer(who);
+            else                         data.mutePlayer(who, rnd.nextBoolean() ? Long.MAX_VALUE : now + 3_600_000);
+            expected = expected(data);
+            checkMemberships(data, expected, "membership after (un)muting " + who);
+            checkHistories(data, expected, "history after (un)muting " + who);
+
+            // More chat: bitmaps extend and histories are topped up
+            Map<Integer, List<ChatTabData.ChatMessage>> before = new HashMap<>();
+            for (TabProfile t : data.tabs) before.put(t.id, data.buildFilteredHistory(t.id));
+            int oldSize = data.globalLog.size();
+            for (int i = 1 + rnd.nextInt(3_000); i > 0; i--) {
+                ChatTabData.ChatMessage m = randomMessage();
+                // As ChatIngest appends: with decisions made up front, which extend the bitmaps
+                if (rnd.nextBoolean()) data.appendMessage(m, id -> data.filterFor(id).matches(m));
+                else                   data.appendMessage(m);
+            }
+            expected = expected(data);
+            checkMemberships(data, expected, "membership after more chat");
+            for (TabProfile t : data.tabs) {
+                List<ChatTabData.ChatMessage> h = before.get(t.id);
+                data.appendFilteredRange(t.id, h, oldSize, data.globalLog.size());
+                compare(data, t, "topped-up history", expectedHistory(data, expected.get(t.id)), describe(h));
+            }
+
+            // Round trip through betterchat.txt, the log and the membership cache
+            data.save();
+            ChatTabData reloaded = new ChatTabData(dir);
+            reloaded.ignoredPlayers.addAll(data.ignoredPlayers); // not persisted by save()
+            reloaded.filterVersion++;
+            checkReloadedTabs(data, reloaded);
+            comparisons++;
+            if (reloaded.globalLog.size() != data.globalLog.size())
+                fail(data, null, "reload", data.globalLog.size() + " messages saved, " + reloaded.globalLog.size() + " loaded");
+            for (int i = 0; i < Math.min(data.globalLog.size(), reloaded.globalLog.size()); i++) {
+                ChatTabData.ChatMessage a = data.globalLog.get(i), b = reloaded.globalLog.get(i);
+                comparisons++;
+                if (!java.util.Objects.equals(a.sender(), b.sender()))
+                    fail(data, null, "reload", "sender " + a.sender() + " became " + b.sender() + ": " + describeMessage(a));
+            }
+            Map<Integer, boolean[]> reloadedExpected = expected(reloaded);
+            for (TabProfile t : data.tabs) {
+                comparisons++;
+                if (!Arrays.equals(expected.get(t.id), reloadedExpected.get(t.id)))
+                    fail(data, t, "reload", "the legacy answers changed across save/load");
+            }
+            checkMemberships(reloaded, expected, "membership after reload");
+            checkHistories(reloaded, expected, "history after reload");
+            checkPerMessage(reloaded, expected, "per message after reload");
+        }
+
+        // ── Expected answers ────────────────────────────────────────────────
+
+        /** Legacy answer for every tab and log position; derived tabs combine their sources' answers. */
+        Map<Integer, boolean[]> expected(ChatTabData data) {
+            LegacyFilter legacy = new LegacyFilter(data.mutedPlayers, data.ignoredPlayers, expressions::get);
+            Map<Integer, boolean[]> out = new HashMap<>();
+            int n = data.globalLog.size();
+            for (TabProfile t : data.tabs) {
+                if (t.isDerived()) continue;
+                boolean[] pass = new boolean[n];
+                for (int i = 0; i < n; i++) pass[i] = legacy.passes(t, data.globalLog.get(i));
+                out.put(t.id, pass);
+            }
+            for (TabProfile t : data.tabs) {
+                if (!t.isDerived()) continue;
+                Ref<IntPredicate> alg = derivations.get(t.id);
+                boolean[] pass = new boolean[n];
+                for (int i = 0; i < n; i++) {
+                    int pos = i;
+                    pass[i] = alg != null && alg.test.test(src -> out.containsKey(src) && out.get(src)[pos]);
+                }
+                out.put(t.id, pass);
+            }
+            return out;
+        }
+
+        static List<String> expectedHistory(ChatTabData data, boolean[] pass) {
+            List<String> out = new ArrayList<>();
+            String lastDate = null;
+            for (int i = 0; i < pass.length; i++) {
+                if (!pass[i]) continue;
+                String date = data.globalLog.get(i).date;
+                if (!date.equals(lastDate)) {
+                    out.add("separator " + date + " @" + i);
+                    lastDate = date;
+                }
+                out.add("#" + i);
+            }
+            return out;
+        }
+
+        static List<String> describe(List<ChatTabData.ChatMessage> history) {
+            List<String> out = new ArrayList<>(history.size());
+            for (ChatTabData.ChatMessage m : history)
+                out.add(m.isDateSeparator ? "separator " + m.text + " @" + m.seq : "#" + m.seq);
+            return out;
+        }
+
+        // ── Engines ─────────────────────────────────────────────────────────
+
+        void checkPerMessage(ChatTabData data, Map<Integer, boolean[]> expected, String what) {
+            for (TabProfile t : data.tabs) {
+                boolean[] pass = expected.get(t.id);
+                for (int i = 0; i < pass.length; i++) {
+                    ChatTabData.ChatMessage m = data.globalLog.get(i);
+                    boolean got = data.messagePassesFilter(t.id, m);
+                    comparisons++;
+                    if (got != pass[i]) {
+                        fail(data, t, what, describeMessage(m) + ": engine " + got + ", legacy " + pass[i]);
+                        break; // one report per tab is enough to replay it
+                    }
+                }
+            }
+        }
+
+        void checkHistories(ChatTabData data, Map<Integer, boolean[]> expected, String what) {
+            for (TabProfile t : data.tabs) {
+                List<String> want = expectedHistory(data, expected.get(t.id));
+                compare(data, t, what, want, describe(data.buildFilteredHistory(t.id)));
+
+                // The same history assembled from a few appendFilteredRange slices
+                List<ChatTabData.ChatMessage> pieces = new ArrayList<>();
+                int size = data.globalLog.size(), from = 0;
+                while (from < size) {
+                    int to = Math.min(size, from + 1 + rnd.nextInt(Math.max(1, size / 3)));
+                    data.appendFilteredRange(t.id, pieces, from, to);
+                    from = to;
+                }
+                compare(data, t, what + " in slices", want, describe(pieces));
+            }
+        }
+
+        void checkParallel(ChatTabData data, Map<Integer, boolean[]> expected) throws InterruptedException {
+            for (TabProfile t : data.tabs) {
+                if (t.isDerived()) continue; // ChatRenderer builds derived tabs from their bitmaps
+                ParallelHistoryFilter.Job job = ParallelHistoryFilter.submit(data, t.id);
+                long deadline = System.currentTimeMillis() + 60_000;
+                while (!job.isDone()) {
+                    if (System.currentTimeMillis() > deadline) {
+                        job.cancel();
+                        fail(data, t, "parallel job", "did not finish within 60 s");
+                        break;
+                    }
+                    Thread.sleep(1);
+                }
+                if (job.isDone())
+                    compare(data, t, "parallel job", expectedHistory(data, expected.get(t.id)), describe(job.result()));
+            }
+        }
+
+        void checkMemberships(ChatTabData data, Map<Integer, boolean[]> expected, String what) {
+            for (TabProfile t : data.tabs) compareMembership(data, t, expected, what, data.membership(t.id));
+        }
+
+        /** As above through membershipIfReady(), which builds large bitmaps on the pool. Derived tabs first. */
+        void checkMembershipsInBackground(ChatTabData data, Map<Integer, boolean[]> expected) throws InterruptedException {
+            List<TabProfile> order = new ArrayList<>();
+            for (TabProfile t : data.tabs) if (t.isDerived()) order.add(t);
+            for (TabProfile t : data.tabs) if (!t.isDerived()) order.add(t);
+            for (TabProfile t : order) {
+                long deadline = System.currentTimeMillis() + 60_000;
+                MessageBitmap bits;
+                while ((bits = data.membershipIfReady(t.id)) == null) {
+                    if (System.currentTimeMillis() > deadline) {
+                        fail(data, t, "background membership", "not ready after 60 s");
+                        break;
+                    }
+                    Thread.sleep(5);
+                }
+                if (bits != null) compareMembership(data, t, expected, "background membership", bits);
+            }
+        }
+
+        void compareMembership(ChatTabData data, TabProfile t, Map<Integer, boolean[]> expected, String what, MessageBitmap bits) {
+            boolean[] pass = expected.get(t.id);
+            List<String> want = new ArrayList<>(), got = new ArrayList<>();
+            for (int i = 0; i < pass.length; i++) if (pass[i]) want.add("#" + i);
+            for (int i : bits.toArray()) got.add("#" + i);
+            compare(data, t, what, want, got);
+        }
+
+        void checkPreview(ChatTabData data) throws InterruptedException {
+            List<TabProfile> ordinary = new ArrayList<>();
+            for (TabProfile t : data.tabs) if (!t.isDerived()) ordinary.add(t);
+            TabProfile t = ordinary.get(rnd.nextInt(ordinary.size()));
+            boolean regex = rnd.nextInt(3) == 0, include = rnd.nextBoolean();
+            String keyword = regex ? PATTERNS[rnd.nextInt(PATTERNS.length - 1)] : randomCase(pick(WORDS));
+            if (!regex && keyword.startsWith(TabFilter.REGEX_PREFIX)) keyword = "hello"; // the page has a regex mode for that
+
+            FilterPreview preview = FilterPreview.start(data, t, keyword, regex, include);
+            String what = "preview of " + (include ? "include " : "exclude ") + (regex ? "re:" : "") + keyword;
+            if (preview == null) {
+                fail(data, t, what, "did not start");
+                return;
+            }
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (!preview.isDone()) {
+                if (System.currentTimeMillis() > deadline) {
+                    preview.cancel();
+                    fail(data, t, what, "did not finish within 60 s");
+                    return;
+                }
+                Thread.sleep(1);
+            }
+
+            String stored = TabFilter.escapeKeyword(regex ? TabFilter.REGEX_PREFIX + keyword : keyword);
+            String filter    = include ? append(t.filter, stored) : t.filter;
+            String exclusion = include ? t.exclusion : append(t.exclusion, stored);
+            LegacyFilter legacy = new LegacyFilter(data.mutedPlayers, data.ignoredPlayers, expressions::get);
+            int added = 0, removed = 0;
+            for (ChatTabData.ChatMessage m : data.globalLog) {
+                boolean was = legacy.passes(t, m), now = legacy.passes(t, filter, exclusion, m);
+                if (now && !was) added++;
+                if (was && !now) removed++;
+            }
+            comparisons++;
+            if (preview.added() != added || preview.removed() != removed)
+                fail(data, t, what, "engine +" + preview.added() + "/-" + preview.removed()
+                        + ", legacy +" + added + "/-" + removed);
+        }
+
+        static String append(String csv, String keyword) {
+            return csv.trim().isEmpty() ? keyword : csv + "," + keyword;
+        }
+
+        void checkReloadedTabs(ChatTabData saved, ChatTabData loaded) {
+            for (TabProfile a : saved.tabs) {
+                TabProfile b = loaded.tab(a.id);
+                comparisons++;
+                if (b == null) {
+                    fail(saved, a, "reload", "tab is missing after load");
+                    continue;
+                }
+                String before = settings(a), after = settings(b);
+                if (!before.equals(after)) fail(saved, a, "reload", "settings changed to " + after);
+            }
+            comparisons++;
+            if (!saved.mutedPlayers.equals(loaded.mutedPlayers))
+                fail(saved, null, "reload", "mutes changed from " + saved.mutedPlayers + " to " + loaded.mutedPlayers);
+        }
+
+        // ── Random tabs ─────────────────────────────────────────────────────
+
+        /** Unique names, some of which need quoting in a derivation. */
+        String tabName(int id) {
+            switch (rnd.nextInt(4)) {
+                case 0:  return "Party & Guild " + id;
+                case 1:  return "Trade-" + id;
+                case 2:  return "café " + id;
+                default: return "Tab" + id;
+            }
+        }
+
+        void randomRules(TabProfile t) {
+            t.filter    = randomKeywords();
+            t.exclusion = rnd.nextInt(3) == 0 ? randomKeywords() : "";
+            t.includeServer           = rnd.nextBoolean();
+            t.includeAll              = rnd.nextInt(6) == 0;
+            t.includeCommands         = rnd.nextBoolean();
+            t.includePlayers          = rnd.nextBoolean();
+            t.includeCommandResponses = rnd.nextBoolean();
+            t.sentByMe                = rnd.nextBoolean();
+            t.prefix     = pick("", "", "/pc ", "!");
+            t.suffix     = pick("", "", " :)");
+            t.expression = rnd.nextInt(4) == 0 ? randomExpression() : "";
+        }
+
+        String randomKeywords() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = rnd.nextInt(5); i > 0; i--) {
+                if (sb.length() > 0) sb.append(pick(",", ", ", " ,"));
+                String k;
+                switch (rnd.nextInt(10)) {
+                    case 0: case 1:  k = TabFilter.REGEX_PREFIX + pick(PATTERNS); break;
+                    case 2:          k = pick(PLAYERS); break;
+                    case 3:          k = pick(" ", "", TabFilter.REGEX_PREFIX); break;
+                    case 4:          k = substring(pick(WORDS)); break;
+                    default:         k = randomCase(pick(WORDS));
+                }
+                sb.append(TabFilter.escapeKeyword(k));
+            }
+            return sb.toString();
+        }
+
+        String randomExpression() {
+            if (rnd.nextInt(8) == 0) {
+                // Broken on purpose: the tab falls back to its keyword and type rules
+                return pick("type:bogus", "(trade", "after:yesterday", "/[unclosed/", "AND", "channel:lobby");
+            }
+            Ref<ChatTabData.ChatMessage> e = randomExpr(3);
+            expressions.put(e.source, e.test);
+            return e.source;
+        }
+
+        Ref<ChatTabData.ChatMessage> randomExpr(int depth) {
+            int k = rnd.nextInt(depth > 0 ? 11 : 7);
+            switch (k) {
+                case 0: {
+                    String w = randomCase(pick(WORDS));
+                    String lower = w.toLowerCase();
+                    boolean bare = w.matches("[A-Za-z0-9]+") && !w.equals("AND") && !w.equals("OR") && !w.equals("NOT");
+                    String src = (rnd.nextBoolean() ? "text:" : "") + (bare && rnd.nextBoolean() ? w : '"' + w + '"');
+                    return leaf(src, m -> plain(m).toLowerCase().contains(lower));
+                }
+                case 1: {
+                    String p = PATTERNS[rnd.nextInt(PATTERNS.length - 1)]; // not the broken one
+                    Pattern compiled = Pattern.compile(p, Pattern.CASE_INSENSITIVE);
+                    return leaf("/" + p + "/", m -> compiled.matcher(plain(m)).find());
+                }
+                case 2: {
+                    String who = randomCase(pick(PLAYERS));
+                    return leaf("sender:" + who, m -> {
+                        String s = m.sender();
+                        return s != null && s.equalsIgnoreCase(who);
+                    });
+                }
+                case 3: {
+                    String type = pick(TYPES);
+                    return leaf("type:" + (rnd.nextBoolean() ? type : type.toUpperCase()), m -> isType(m, type));
+                }
+                case 4: {
+                    int ch = rnd.nextInt(CHANNELS.length);
+                    return leaf("channel:" + CHANNELS[ch], m -> m.channel == ch);
+                }
+                case 5: {
+                    int d = 1 + rnd.nextInt(8);
+                    int dayNum = 20261000 + d;
+                    boolean after = rnd.nextBoolean();
+                    return leaf((after ? "after:" : "before:") + "2026-10-0" + d, m -> {
+                        int md = dayNumber(m.date);
+                        return after ? md >= dayNum : md < dayNum;
+                    });
+                }
+                case 6: {
+                    if (rnd.nextBoolean())
+                        return leaf("mod:filtercheck.coins", m -> plain(m).toLowerCase().contains("coins"));
+                    return leaf("mod:FilterCheck.Party",
+                            m -> m.channel == MessageClassifier.CH_PARTY && !m.isLocal);
+                }
+                case 7: {
+                    Ref<ChatTabData.ChatMessage> c = randomExpr(depth - 1);
+                    String src = "NOT " + (c.compound ? "(" + c.source + ")" : c.source);
+                    return new Ref<>(src, m -> !c.test.test(m), true);
+                }
+                default: {
+                    boolean and = k != 10;
+                    List<Ref<ChatTabData.ChatMessage>> parts = new ArrayList<>();
+                    for (int i = 1 + rnd.nextInt(3); i > 0; i--) parts.add(randomExpr(depth - 1));
+                    StringBuilder sb = new StringBuilder();
+                    for (Ref<ChatTabData.ChatMessage> p : parts) {
+                        if (sb.length() > 0) sb.append(and ? pick(" AND ", " ") : " OR ");
+                        sb.append(p.compound ? "(" + p.source + ")" : p.source);
+                    }
+                    Predicate<ChatTabData.ChatMessage> test = m -> {
+                        for (Ref<ChatTabData.ChatMessage> p : parts) if (p.test.test(m) != and) return !and;
+                        return and;
+                    };
+                    return new Ref<>(sb.toString(), test, parts.size() > 1);
+                }
+            }
+        }
+
+        static Ref<ChatTabData.ChatMessage> leaf(String source, Predicate<ChatTabData.ChatMessage> test) {
+            return new Ref<>(source, test, false);
+        }
+
+        Ref<IntPredicate> randomAlgebra(ChatTabData data, List<Integer> sources, int depth) {
+            if (depth == 0 || rnd.nextInt(3) == 0) {
+                int id = sources.get(rnd.nextInt(sources.size()));
+                String name = data.tab(id).name;
+                String src;
+                if (rnd.nextInt(4) == 0) src = "#" + id;
+                else if (name.matches("[A-Za-z0-9 ]+") && rnd.nextBoolean()) src = rnd.nextBoolean() ? name : name.toLowerCase();
+                else src = '"' + name + '"';
+                return new Ref<>(src, in -> in.test(id), false);
+            }
+            Ref<IntPredicate> a = randomAlgebra(data, sources, depth - 1), b = randomAlgebra(data, sources, depth - 1);
+            String op;
+            Predicate<IntPredicate> test;
+            switch (rnd.nextInt(3)) {
+                case 0:
+                    op = pick("|", "+", "∪");
+                    test = in -> a.test.test(in) || b.test.test(in);
+                    break;
+                case 1:
+                    op = pick("&", "∩");
+                    test = in -> a.test.test(in) && b.test.test(in);
+                    break;
+                default:
+                    op = pick("-", "−");
+                    test = in -> a.test.test(in) && !b.test.test(in);
+            }
+            String src = (a.compound ? "(" + a.source + ")" : a.source) + " " + op + " "
+                    + (b.compound ? "(" + b.source + ")" : b.source);
+            return new Ref<>(src, test, true);
+        }
+
+        // ── Random chat ─────────────────────────────────────────────────────
+
+        ChatTabData.ChatMessage randomMessage() {
+            String name = pick(PLAYERS);
+            String body = randomBody();
+            String plain, text;
+            boolean command = false, response = false;
+            MessageClassifier profile = pick(PROFILES);
+            int kind = rnd.nextInt(100);
+            if (kind < 30) {
+                plain = "<" + name + "> " + body;
+                text  = "§7<§b" + name + "§7> §f" + body;
+                profile = pick(MessageClassifier.VANILLA, MessageClassifier.ESSENTIALS);
+            } else if (kind < 45) {
+                boolean party = rnd.nextBoolean();
+                plain = (party ? "Party > " : "Guild > ") + pick(RANKS) + name
+                        + (!party && rnd.nextBoolean() ? " " + pick(GUILD_TAGS) : "") + ": " + body;
+                text  = (party ? "§9" : "§2") + plain;
+                profile = MessageClassifier.HYPIXEL;
+            } else if (kind < 55) {
+                plain = (rnd.nextInt(3) == 0 ? "To " : "From ") + pick(RANKS) + name + ": " + body;
+                text  = "§d" + plain;
+                profile = MessageClassifier.HYPIXEL;
+            } else if (kind < 70) {
+                plain = pick(SERVER_LINES);
+                text  = "§e" + plain;
+            } else if (kind < 80) {
+                plain = "/" + pick("msg " + name + " " + body, "p invite " + name, "warp hub", "g chat " + body);
+                text  = plain;
+                command = true;
+            } else if (kind < 92) {
+                plain = String.format(pick(RESPONSES), name);
+                text  = "§c" + plain;
+                response = true;
+            } else {
+                plain = rnd.nextBoolean() ? body : "<" + name + "> " + body;
+                text  = plain;
+            }
+
+            // Classified as ChatIngest does: the profile's sender, else the old heuristic
+            boolean recognised = profile.classify(plain, classified);
+            String sender = classified.outgoing ? ME
+                    : recognised ? classified.sender
+                    : ChatTabData.extractPlayerName(plain);
+            boolean local = command || classified.outgoing || ME.equals(classified.sender) || plain.startsWith(ME + ":");
+            boolean other = classified.playerChat && !local;
+            int channel = classified.channel;
+            response = response && !local && !other;
+            if (kind >= 92) {
+                // Anything goes: flags that disagree with the text still have to agree between engines
+                local = rnd.nextBoolean(); other = rnd.nextBoolean();
+                command = rnd.nextBoolean(); response = rnd.nextBoolean();
+                channel = rnd.nextInt(CHANNELS.length);
+            }
+            ChatTabData.ChatMessage m = new ChatTabData.ChatMessage(text, false, null,
+                    local, other, command, response, plain, sender, channel);
+            if (rnd.nextInt(30) == 0) m.plainText = null; // as in logs from before plainText was stored
+            if (rnd.nextInt(2_000) == 0) day = nextDay(day);
+            m.date = day;
+            m.time = String.format("%02d:%02d", rnd.nextInt(24), rnd.nextInt(60));
+            return m;
+        }
+
+        String randomBody() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1 + rnd.nextInt(8); i > 0; i--) {
+                if (sb.length() > 0) sb.append(' ');
+                sb.append(rnd.nextInt(6) == 0 ? Integer.toString(rnd.nextInt(100_000)) : randomCase(pick(WORDS)));
+            }
+            return sb.toString();
+        }
+
+        static String nextDay(String day) {
+            int d = Integer.parseInt(day.substring(8)) + 1;
+            return day.substring(0, 8) + (d < 10 ? "0" : "") + d;
+        }
+
+        // ── Helpers ─────────────────────────────────────────────────────────
+
+        String randomCase(String s) {
+            switch (rnd.nextInt(4)) {
+                case 0:  return s.toUpperCase();
+                case 1:  return s.toLowerCase();
+                default: return s;
+            }
+        }
+
+        String substring(String s) {
+            int a = rnd.nextInt(s.length()), b = a + 1 + rnd.nextInt(s.length() - a);
+            return s.substring(a, b);
+        }
+
+        @SafeVarargs
+        final <T> T pick(T... options) {
+            return options[rnd.nextInt(options.length)];
+        }
+
+        static String plain(ChatTabData.ChatMessage m) {
+            return m.plainText != null ? m.plainText : m.text;
+        }
+
+        static boolean isType(ChatTabData.ChatMessage m, String type) {
+            switch (type) {
+                case "command":  return m.isCommand;
+                case "response": return m.isCommandResponse;
+                case "player":   return m.isOtherPlayer && !m.isLocal;
+                case "me":       return m.isLocal;
+                default:         return !m.isOtherPlayer && !m.isLocal && !m.isCommand && !m.isCommandResponse;
+            }
+        }
+
+        static int dayNumber(String date) {
+            return Integer.parseInt(date.substring(0, 4) + date.substring(5, 7) + date.substring(8, 10));
+        }
+
+        static String settings(TabProfile t) {
+            return "name=" + t.name + " filter=" + t.filter + " exclusion=" + t.exclusion
+                    + " expression=" + t.expression + " derivation=" + t.derivation
+                    + " server=" + t.includeServer + " all=" + t.includeAll + " commands=" + t.includeCommands
+                    + " players=" + t.includePlayers + " responses=" + t.includeCommandResponses
+                    + " sentByMe=" + t.sentByMe + " prefix=" + t.prefix + " suffix=" + t.suffix;
+        }
+
+        static String describeMessage(ChatTabData.ChatMessage m) {
+            return "#" + m.seq + " \"" + plain(m) + "\" local=" + m.isLocal + " other=" + m.isOtherPlayer
+                    + " command=" + m.isCommand + " response=" + m.isCommandResponse
+                    + " sender=" + m.sender() + " channel=" + MessageClassifier.channelName(m.channel)
+                    + " date=" + m.date;
+        }
+
+        void compare(ChatTabData data, TabProfile t, String what, List<String> want, List<String> got) {
+            comparisons++;
+            if (want.equals(got)) return;
+            int i = 0;
+            while (i < want.size() && i < got.size() && want.get(i).equals(got.get(i))) i++;
+            String w = i < want.size() ? want.get(i) : "(end)", g = i < got.size() ? got.get(i) : "(end)";
+            String at = "";
+            if (w.startsWith("#"))      at = " — legacy " + describeMessage(data.globalLog.get(Integer.parseInt(w.substring(1))));
+            else if (g.startsWith("#")) at = " — engine " + describeMessage(data.globalLog.get(Integer.parseInt(g.substring(1))));
+            fail(data, t, what, "entry " + i + ": engine " + g + ", legacy " + w
+                    + " (" + got.size() + " vs " + want.size() + " entries)" + at);
+        }
+
+        void fail(ChatTabData data, TabProfile t, String what, String detail) {
+            mismatches++;
+            if (++reports > MAX_REPORTS) return;
+            System.err.println("MISMATCH seed " + seed + " round " + round + " [" + what + "] "
+                    + (t != null ? "tab " + t.id + " (" + settings(t) + ")" : "") + "\n    " + detail
+                    + "\n    muted=" + data.mutedPlayers + " ignored=" + data.ignoredPlayers);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.betterchat;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The original messagePassesFilter, kept as the reference the optimized engines are
+ * checked against. Everything is re-derived per message, the way the first version did
+ * it: keyword lists are split and lower-cased on every call, and rules run in their
+ * declared order. The sender is the one thing taken from the message as it is: it is
+ * whatever the server's MessageClassifier profile found when the line arrived, which the
+ * text alone cannot tell.
+ *
+ * The later rule additions are written the same naive way: {@code re:} keywords compile
+ * their pattern on every call, {@code §c} is a comma inside a keyword, and a tab's filter
+ * expression (when it parses) replaces the keyword and type rules. Expressions are not
+ * parsed here — {@link #expressions} maps a source string to the predicate the check
+ * built it from, or to null for a source that is meant not to parse.
+ */
+final class LegacyFilter {
+
+    private final Map<String, Long> mutedPlayers;
+    private final Set<String> ignoredPlayers;
+    private final Function<String, Predicate<ChatTabData.ChatMessage>> expressions;
+
+    LegacyFilter(Map<String, Long> mutedPlayers, Set<String> ignoredPlayers,
+                 Function<String, Predicate<ChatTabData.ChatMessage>> expressions) {
+        this.mutedPlayers   = mutedPlayers;
+        this.ignoredPlayers = ignoredPlayers;
+        this.expressions    = expressions;
+    }
+
+    /** Whether an ordinary (non-derived) tab shows the message. */
+    boolean passes(TabProfile tab, ChatTabData.ChatMessage msg) {
+        return passes(tab, tab.filter, tab.exclusion, msg);
+    }
+
+    /** As above with the keyword lists replaced, like a FilterPreview candidate. */
+    boolean passes(TabProfile tab, String filter, String exclusion, ChatTabData.ChatMessage msg) {
+        if (msg.isDateSeparator) return false;
+        String plain = msg.plainText != null ? msg.plainText : msg.text;
+
+        // Mute / ignore checks
+        String sender = msg.sender();
+        if (sender != null) {
+            if (ignoredPlayers.contains(sender)) return false;
+            if (isPlayerMuted(sender)) return false;
+        }
+
+        // Filter expression, when it parses, decides on its own
+        if (!tab.expression.trim().isEmpty()) {
+            Predicate<ChatTabData.ChatMessage> expr = expressions.apply(tab.expression);
+            if (expr != null) return expr.test(msg);
+        }
+
+        // Exclusion check
+        if (!exclusion.isEmpty()) {
+            for (String k : exclusion.split(",")) {
+                if (keywordHits(k, plain)) return false;
+            }
+        }
+
+        // Inclusion checks
+        if (tab.sentByMe && msg.isLocal) return true;
+        if (tab.includeAll) return true;
+
+        if (!filter.isEmpty()) {
+            for (String k : filter.split(",")) {
+                if (keywordHits(k, plain)) return true;
+            }
+        }
+        if (tab.includeCommands && msg.isCommand) return true;
+        if (tab.includeServer
+                && !msg.isOtherPlayer && !msg.isLocal && !msg.isCommand && !msg.isCommandResponse) return true;
+        if (tab.includePlayers && msg.isOtherPlayer && !msg.isLocal) return true;
+        if (tab.includeCommandResponses && msg.isCommandResponse) return true;
+
+        return false;
+    }
+
+    private boolean isPlayerMuted(String name) {
+        Long expiry = mutedPlayers.get(name);
+        return expiry != null && (expiry == Long.MAX_VALUE || System.currentTimeMillis() < expiry);
+    }
+
+    /** One stored keyword against the message text; blank keywords and bad patterns never hit. */
+    private static boolean keywordHits(String stored, String plain) {
+        String k = stored.trim().replace("§c", ",");
+        if (k.isEmpty()) return false;
+        if (k.startsWith("re:") && k.length() > 3) {
+            try {
+                return Pattern.compile(k.substring(3), Pattern.CASE_INSENSITIVE).matcher(plain).find();
+            } catch (PatternSyntaxException e) {
+                return false;
+            }
+        }
+        return plain.toLowerCase().contains(k.toLowerCase());
+    }
+}
@@ -0,0 +1,252 @@
+package com.betterchat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Auto-responses: finds the rule a received line fires and queues its reply.
+ *
+ * The rules are compiled into one {@link Rules} snapshot: every literal trigger goes
+ * into a single case-folding Aho–Corasick automaton, so a line is scanned once however
+ * many rules there are, and {@code re:} triggers become guarded TabFilter.RegexRules.
+ * ChatIngest's worker matches each line against the snapshot the client last published
+ * (text and sender conditions); the client thread then picks the first candidate, in
+ * rule order as the loop over data.autoResponses used to, whose tab condition holds and
+ * whose cooldown is over.
+ *
+ * A rule fires at most once per its cooldown, and every reply goes out through the
+ * OutgoingChatQueue at its lowest priority, rate limited with everything else the
+ * player sends. A reply the queue refuses is dropped and counted, so a spam burst
+ * cannot get the player kicked for spamming back.
+ */
+final class AutoResponder {
+
+    private final ChatTabData data;
+    private final OutgoingChatQueue outgoing;
+    private volatile Rules rules = new Rules(new ChatTabData.AutoResponseEntry[0]); // client → worker
+
+    // Client thread only
+    private long suppressed;
+
+    AutoResponder(ChatTabData data, OutgoingChatQueue outgoing) {
+        this.data = data;
+        this.outgoing = outgoing;
+    }
+
+    /** Worker: the snapshot to match the next line against. */
+    Rules rules() { return rules; }
+
+    /** Client thread: compiles a new snapshot if a rule was added, removed or retargeted. */
+    void publish() {
+        Rules r = rules;
+        List<ChatTabData.AutoResponseEntry> list = data.autoResponses;
+        boolean same = list.size() == r.entries.length;
+        for (int i = 0; same && i < r.entries.length; i++) {
+            ChatTabData.AutoResponseEntry e = list.get(i);
+            same = e == r.entries[i] && e.trigger.equals(r.triggers[i]) && e.sender.equals(r.senders[i]);
+        }
+        if (!same) rules = new Rules(list.toArray(new ChatTabData.AutoResponseEntry[0]));
+    }
+
+    /**
+     * Client thread: queues the reply of the first candidate rule the line fires whose tab
+     * condition holds and whose cooldown is over; a rule still cooling down passes the line
+     * on to the next. Nothing is sent if the queue refuses the reply. {@code reachesTab}
+     * says which tabs the line passed. Candidates matched against an outdated snapshot are
+     * matched again.
+     */
+    void respond(Rules matchedWith, int[] candidates, ChatTabData.ChatMessage msg, IntPredicate reachesTab) {
+        Rules current = rules;
+        if (matchedWith != current) candidates = current.match(msg);
+        if (candidates == null) return;
+        for (int i : candidates) {
+            ChatTabData.AutoResponseEntry rule = current.entries[i];
+            if (rule.tabId >= 0 && !reachesTab.test(rule.tabId)) continue;
+            long now = System.currentTimeMillis();
+            if (rule.lastFiredAt != 0 && now - rule.lastFiredAt < rule.cooldownSeconds * 1000L) continue;
+            if (!outgoing.send(rule.response, OutgoingChatQueue.Priority.AUTO_RESPONSE, null)) { suppressed++; return; }
+            rule.lastFiredAt = now;
+            return;
+        }
+    }
+
+    /** Replies dropped this session because the outgoing queue was full. */
+    long suppressed() { return suppressed; }
+
+    // -------------------------------------------------------------------------
+    // Rules  —  an immutable compiled snapshot of data.autoResponses
+    // -------------------------------------------------------------------------
+
+    static final class Rules {
+        final ChatTabData.AutoResponseEntry[] entries;
+        // The fields the snapshot was compiled from, to notice edits
+        final String[] triggers, senders;
+        private final TriggerAutomaton literals;
+        private final TabFilter.RegexRule[] regex; // per rule; null for literal triggers
+
+        Rules(ChatTabData.AutoResponseEntry[] entries) {
+            this.entries = entries;
+            int n = entries.length;
+            triggers = new String[n];
+            senders  = new String[n];
+            regex    = new TabFilter.RegexRule[n];
+            String[] needles = new String[n];
+            for (int i = 0; i < n; i++) {
+                ChatTabData.AutoResponseEntry e = entries[i];
+                triggers[i] = e.trigger;
+                senders[i]  = e.sender;
+                if (!TabFilter.isRegex(e.trigger)) {
+                    if (!e.trigger.isEmpty()) needles[i] = e.trigger; // an empty trigger never fires
+                    continue;
+                }
+                try { regex[i] = new TabFilter.RegexRule(e.trigger.substring(TabFilter.REGEX_PREFIX.length())); }
+                catch (PatternSyntaxException ignored) {} // a pattern that no longer compiles never fires
+            }
+            literals = new TriggerAutomaton(needles);
+        }
+
+        /**
+         * Indices of the rules whose trigger and sender condition the line meets, in rule
+         * order, or null if there are none. Safe on any thread.
+         */
+        int[] match(ChatTabData.ChatMessage msg) {
+            if (entries.length == 0 || msg.plainText == null) return null;
+            BitSet hits = literals.scan(msg.plainText);
+            for (int i = 0; i < regex.length; i++) {
+                if (regex[i] == null || !senderMatches(i, msg)) continue;
+                if (regex[i].find(msg.plainText)) {
+                    if (hits == null) hits = new BitSet(entries.length);
+                    hits.set(i);
+                }
+            }
+            if (hits == null) return null;
+            for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1))
+                if (!senderMatches(i, msg)) hits.clear(i);
+            return hits.isEmpty() ? null : hits.stream().toArray();
+        }
+
+        private boolean senderMatches(int rule, ChatTabData.ChatMessage msg) {
+            if (senders[rule].isEmpty()) return true;
+            String sender = msg.sender();
+            return sender != null && sender.equalsIgnoreCase(senders[rule]);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // TriggerAutomaton  —  Aho–Corasick over the case-folded literal triggers
+    // -------------------------------------------------------------------------
+
+    /**
+     * Finds every trigger in a text in one pass. Chars are folded as CaseFoldMatcher
+     * folds them, so a rule fires on exactly the lines its trigger used to. MentionMatcher
+     * compiles the player's names and watch words into one too. Each node
+     * keeps its edges as a sorted label array (binary searched), its failure link, and
+     * the rules that end there or at any node its failure links reach.
+     */
+    static final class TriggerAutomaton {
+        private final char[][] labels;
+        private final int[][]  targets;
+        private final int[]    fail;
+        private final int[][]  out;
+
+        /** {@code needles[i]} is rule i's trigger, or null if rule i has no literal trigger. */
+        TriggerAutomaton(String[] needles) {
+            List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+            List<List<Integer>> ends = new ArrayList<>();
+            edges.add(new TreeMap<>());
+            ends.add(new ArrayList<>());
+            for (int rule = 0; rule < needles.length; rule++) {
+                if (needles[rule] == null) continue;
+                int node = 0;
+                for (int i = 0; i < needles[rule].length(); i++) {
+                    char c = CaseFoldMatcher.fold(needles[rule].charAt(i));
+                    Integer next = edges.get(node).get(c);
+                    if (next == null) {
+                        next = edges.size();
+                        edges.get(node).put(c, next);
+                        edges.add(new TreeMap<>());
+                        ends.add(new ArrayList<>());
+                    }
+                    node = next;
+                }
+                ends.get(node).add(rule);
+            }
+
+            int n = edges.size();
+            labels  = new char[n][];
+            targets = new int[n][];
+            fail    = new int[n];
+            out     = new int[n][];
+            for (int node = 0; node < n; node++) {
+                TreeMap<Character, Integer> e = edges.get(node);
+                labels[node]  = new char[e.size()];
+                targets[node] = new int[e.size()];
+                int k = 0;
+                for (java.util.Map.Entry<Character, Integer> edge : e.entrySet()) {
+                    labels[node][k]  = edge.getKey();
+                    targets[node][k] = edge.getValue();
+                    k++;
+                }
+            }
+
+            // Breadth first, so a node's failure target is finished before the node
+            int[] queue = new int[n];
+            int head = 0, tail = 0;
+            out[0] = new int[0];
+            for (int child : targets[0]) queue[tail++] = child;
+            while (head < tail) {
+                int node = queue[head++];
+                List<Integer> o = new ArrayList<>(ends.get(node));
+                for (int r : out[fail[node]]) o.add(r);
+                out[node] = o.stream().mapToInt(Integer::intValue).toArray();
+                for (int k = 0; k < labels[node].length; k++) {
+                    int child = targets[node][k];
+                    int f = fail[node];
+                    int g;
+                    while ((g = step(f, labels[node][k])) < 0 && f != 0) f = fail[f];
+                    fail[child] = g >= 0 && g != child ? g : 0;
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        /** The node reached from {@code node} by {@code c}, or -1 if it has no such edge. */
+        private int step(int node, char c) {
+            int k = java.util.Arrays.binarySearch(labels[node], c);
+            return k >= 0 ? targets[node][k] : -1;
+        }
+
+        /** Receives every occurrence {@link #scan(CharSequence, Hit)} finds. */
+        interface Hit {
+            /** Needle {@code needle} occurs in the text ending just before {@code end}. */
+            void at(int needle, int end);
+        }
+
+        /** The rules whose trigger occurs in {@code text}, or null if none does. */
+        BitSet scan(CharSequence text) {
+            BitSet[] hits = {null};
+            scan(text, (needle, end) -> {
+                if (hits[0] == null) hits[0] = new BitSet();
+                hits[0].set(needle);
+            });
+            return hits[0];
+        }
+
+        /** Reports every occurrence of every needle in {@code text}, in order of where it ends. */
+        void scan(CharSequence text, Hit hit) {
+            if (labels[0].length == 0) return;
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = CaseFoldMatcher.fold(text.charAt(i));
+                int g;
+                while ((g = step(node, c)) < 0 && node != 0) node = fail[node];
+                node = g >= 0 ? g : 0;
+                for (int r : out[node]) hit.at(r, i + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.betterchat;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Entry point for other client mods.
+ *
+ * A mod registers a named {@link MessagePredicate} together with the {@link Cost} class
+ * it expects to fall into, usually from its own init:
+ * <pre>
+ *   BetterChatAPI.registerPredicate("partyfinder.lfg", BetterChatAPI.Cost.SUBSTRING,
+ *           msg -&gt; msg.plainText().startsWith("Party Finder &gt;"));
+ * </pre>
+ * Players then route the matching messages into any tab with the {@code mod:} leaf of a
+ * filter expression, e.g. {@code mod:partyfinder.lfg OR channel:party}.
+ *
+ * The predicate becomes part of the tab's compiled filter: the expression orders it
+ * among its siblings by the declared cost, so cheap leaves such as {@code type:} or
+ * {@code sender:} short-circuit before it runs. It can be called on any thread — full
+ * re-filters run on ParallelHistoryFilter's pool — and concurrently, so it must be
+ * thread-safe and must not touch the world or the GUI.
+ *
+ * Every call is counted (and timed on sampled messages) in the tab's FilterMetrics,
+ * under kind {@value FilterMetrics#KIND_MOD}, and in the registration's own totals. A
+ * predicate whose average exceeds its class's budget is flagged on the Filters page and
+ * scheduled as the more expensive class it behaves like; one that keeps throwing is
+ * switched off for the rest of the session.
+ *
+ * A mod that wants to follow the chat itself, rather than filter it, calls
+ * {@link #subscribe()} and polls the subscription from its own tick or thread; see
+ * ChatEventRing. That replaces a ClientChatReceivedEvent handler of its own, and the
+ * lines arrive already parsed and classified.
+ */
+public final class BetterChatAPI {
+
+    /** How expensive a predicate is expected to be. */
+    public enum Cost {
+        /** Reads a few fields of the message, e.g. its channel or sender. */
+        FLAG(1, 1_000),
+        /** Scans the text once, e.g. a startsWith or indexOf. */
+        SUBSTRING(16, 10_000),
+        /** Runs a regular expression or anything comparably heavy. */
+        REGEX(64, 100_000);
+
+        /** Ordering weight, on the same scale as the built-in expression leaves. */
+        final int weight;
+        /** Average nanoseconds per call above which the predicate counts as over budget. */
+        public final long budgetNanos;
+
+        Cost(int weight, long budgetNanos) {
+            this.weight      = weight;
+            this.budgetNanos = budgetNanos;
+        }
+    }
+
+    /** Read-only view of one chat message, valid only for the duration of the call. */
+    public interface MessageView {
+        /** The message with its colour codes. */
+        String  text();
+        /** The message without colour codes; what keywords match against. */
+        String  plainText();
+        /** The sending player's name, or null for server lines and commands. */
+        String  sender();
+        /** The channel the server's chat format placed it in: none, all, party, guild, officer, private or local. */
+        String  channel();
+        /** Sent by this player. */
+        boolean isLocal();
+        /** Sent by another player. */
+        boolean isFromPlayer();
+        boolean isCommand();
+        /** Arrived shortly after this player ran a command. */
+        boolean isCommandResponse();
+        /** "yyyy/MM/dd" */
+        String  date();
+        /** "HH:mm" */
+        String  time();
+    }
+
+    /** A mod's message test. Must be thread-safe and side-effect free. */
+    @FunctionalInterface
+    public interface MessagePredicate {
+        boolean test(MessageView msg);
+    }
+
+    /** Ids are lower case, dot-separated: {@code modid.name}. */
+    private static final Pattern ID = Pattern.compile("[a-z0-9_]+(\\.[a-z0-9_]+)*");
+    /** Timed calls needed before an average is trusted. */
+    private static final long MIN_TIMED_CALLS = 64;
+    /** Exceptions after which a predicate is switched off for the session. */
+    private static final int MAX_FAILURES = 10;
+
+    private static final ConcurrentHashMap<String, Registration> PREDICATES = new ConcurrentHashMap<>();
+    private static final AtomicInteger VERSION = new AtomicInteger();
+
+    /** The message lifecycle stream; published to by the client thread. */
+    static final ChatEventRing EVENTS = new ChatEventRing();
+
+    private BetterChatAPI() {}
+
+    /**
+     * Makes {@code predicate} available to filter expressions as {@code mod:<id>}. Tabs
+     * that already mention the id pick it up on their next message.
+     *
+     * @throws IllegalArgumentException if the id is not of the form {@code modid.name}
+     * @throws IllegalStateException    if the id is already registered
+     */
+    public static Registration registerPredicate(String id, Cost cost, MessagePredicate predicate) {
+        if (id == null || !ID.matcher(id).matches())
+            throw new IllegalArgumentException("Predicate id must look like modid.name: " + id);
+        if (cost == null || predicate == null) throw new NullPointerException();
+        Registration r = new Registration(id, cost, predicate);
+        if (PREDICATES.putIfAbsent(id, r) != null)
+            throw new IllegalStateException("Predicate already registered: " + id);
+        VERSION.incrementAndGet();
+        return r;
+    }
+
+    /** The registration for an id (any case), or null. */
+    public static Registration predicate(String id) {
+        return PREDICATES.get(id.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Starts reading BetterChat's message lifecycle events, from this moment on. Close the
+     * subscription when done; while none is open nothing is published.
+     */
+    public static ChatEventRing.Subscription subscribe() {
+        return EVENTS.subscribe();
+    }
+
+    /** Moves on whenever a predicate is registered; ChatTabData recompiles its filters when it does. */
+    static int version() {
+        return VERSION.get();
+    }
+
+    // -------------------------------------------------------------------------
+    // Registration  —  one predicate, its declared cost and its session totals
+    // -------------------------------------------------------------------------
+
+    public static final class Registration {
+        public final String id;
+        public final Cost   cost;
+        private final MessagePredicate predicate;
+
+        /** Calls from every tab; the per-tab counts are in each tab's FilterMetrics. */
+        final FilterMetrics.Counter totals;
+        private final LongAdder timedCalls = new LongAdder();
+        private final LongAdder failures   = new LongAdder();
+        private volatile boolean disabled;
+
+        private Registration(String id, Cost cost, MessagePredicate predicate) {
+            this.id        = id;
+            this.cost      = cost;
+            this.predicate = predicate;
+            this.totals    = new FilterMetrics.Counter(FilterMetrics.KIND_MOD, "mod:" + id);
+        }
+
+        /** Runs the predicate; an exception counts as no match. */
+        boolean test(MessageView msg) {
+            if (disabled) return false;
+            try {
+                return predicate.test(msg);
+            } catch (RuntimeException e) {
+                failures.increment();
+                if (failures.sum() >= MAX_FAILURES) disabled = true;
+                return false;
+            }
+        }
+
+        /** Adds one call to the totals; {@code sampledNanos} is 0 for calls that were not timed. */
+        void record(boolean hit, long sampledNanos) {
+            totals.record(hit, sampledNanos);
+            if (sampledNanos > 0) timedCalls.increment();
+        }
+
+        /** Average time per call so far, or 0 until enough calls have been timed. */
+        public double averageNanos() {
+            long evals = totals.evaluations();
+            return evals == 0 || timedCalls.sum() < MIN_TIMED_CALLS ? 0 : (double) totals.totalNanos() / evals;
+        }
+
+        public boolean isOverBudget() { return averageNanos() > cost.budgetNanos; }
+
+        /** The class the predicate is scheduled as: the declared one, or the one its measured cost fits. */
+        Cost effectiveCost() {
+            double avg = averageNanos();
+            for (Cost c : Cost.values()) if (c.ordinal() >= cost.ordinal() && avg <= c.budgetNanos) return c;
+            return Cost.REGEX;
+        }
+
+        public long    evaluations() { return totals.evaluations(); }
+        public long    hits()        { return totals.hits(); }
+        public long    failures()    { return failures.sum(); }
+        public boolean isDisabled()  { return disabled; }
+    }
+}
@@ -0,0 +1,93 @@
+package com.betterchat;
+
+/**
+ * Case-insensitive substring search that folds characters while comparing, so neither
+ * the needle nor the text is ever lower-cased into a new String.
+ *
+ * The needle is folded once and given a Horspool bad-character table, indexed by the
+ * low byte of each char (chars that share a byte share the smaller shift, which keeps
+ * the search correct). ASCII text is compared against both cases of each needle char
+ * without folding; non-ASCII text falls back to Character's simple case mapping, the
+ * same per-char folding as {@link String#equalsIgnoreCase}. That matches "K" (Kelvin
+ * sign) against "k" and is independent of the default locale, unlike
+ * {@code toLowerCase().contains()}.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+public final class CaseFoldMatcher {
+
+    private static final char[] ASCII_FOLD = new char[128];
+    static {
+        for (char c = 0; c < 128; c++)
+            ASCII_FOLD[c] = (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    public final String needle;
+    // Per needle position: the folded char and its other ASCII case (same char if none),
+    // so ASCII text is compared without folding it at all.
+    private final char[] lo, alt;
+    // Bad-character shifts indexed by the low byte of a text char. Both cases of each
+    // needle char are entered, so ASCII text indexes it directly.
+    private final int[]  shift = new int[256];
+
+    public CaseFoldMatcher(String needle) {
+        this.needle = needle;
+        int m = needle.length();
+        lo  = new char[m];
+        alt = new char[m];
+        for (int i = 0; i < m; i++) {
+            char f = fold(needle.charAt(i));
+            lo[i]  = f;
+            alt[i] = (f >= 'a' && f <= 'z') ? (char) (f - ('a' - 'A')) : f;
+        }
+        java.util.Arrays.fill(shift, Math.max(1, m));
+        // Later positions overwrite earlier ones with smaller shifts, so a shared bucket
+        // always keeps the smallest (safe) shift of the chars that land in it.
+        for (int i = 0; i < m - 1; i++) {
+            shift[lo[i] & 0xFF]  = m - 1 - i;
+            shift[alt[i] & 0xFF] = m - 1 - i;
+        }
+    }
+
+    /** Folds one char for comparison. */
+    static char fold(char c) {
+        if (c < 128) return ASCII_FOLD[c];
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /** Compares one text char against needle position j. Non-ASCII text is folded. */
+    private boolean same(char c, int j) {
+        return c == lo[j] || c == alt[j] || (c >= 128 && fold(c) == lo[j]);
+    }
+
+    public boolean isEmpty() { return lo.length == 0; }
+
+    /** True if the needle occurs anywhere in {@code text}, ignoring case. Allocation-free. */
+    public boolean find(CharSequence text) {
+        return indexIn(text) >= 0;
+    }
+
+    /** Index of the first case-insensitive occurrence of the needle in {@code text}, or -1. */
+    public int indexIn(CharSequence text) {
+        final int m = lo.length, n = text.length();
+        if (m == 0) return 0;
+        if (m > n) return -1;
+        if (m == 1) {
+            for (int i = 0; i < n; i++) if (same(text.charAt(i), 0)) return i;
+            return -1;
+        }
+        final int last = m - 1;
+        int i = 0;
+        while (i <= n - m) {
+            char tc = text.charAt(i + last);
+            if (same(tc, last)) {
+                int j = last - 1;
+                while (j >= 0 && same(text.charAt(i + j), j)) j--;
+                if (j < 0) return i;
+            }
+            // Non-ASCII text may fold onto an ASCII needle char (e.g. Kelvin sign → k)
+            i += shift[(tc < 128 ? tc : fold(tc)) & 0xFF];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,214 @@
+package com.betterchat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * BetterChat's message lifecycle as a stream other mods can read: a line was ingested
+ * (and classified), routed to tabs, a player was muted or unmuted, the history was saved.
+ * Obtained through {@link BetterChatAPI#subscribe()}.
+ *
+ * One producer, the client thread, and any number of {@link Subscription}s, each with its
+ * own sequence cursor and read from whatever thread its owner likes. Events are immutable
+ * and the ring never waits for anyone: a subscription that falls more than
+ * {@link #CAPACITY} events behind skips the ones it lost and counts them in
+ * {@link Subscription#missed()}. Reading hands over every event published since the last
+ * read, so a consumer that polls once per tick pays once per tick, not once per line.
+ * While nobody is subscribed nothing is published at all.
+ */
+public final class ChatEventRing {
+
+    /** Events kept for slow subscriptions; a power of two. */
+    public static final int CAPACITY = 4096;
+
+    /** What happened. */
+    public enum Kind {
+        /** A received line was classified and appended to the log. Has {@link Event#message()}. */
+        INGESTED,
+        /** A line was routed; {@link Event#tabIds()} are the tabs that show it. Has {@link Event#message()}. */
+        ROUTED,
+        /** A player was muted; see {@link Event#player()}. */
+        MUTED,
+        /** A mute was lifted or ran out; see {@link Event#player()}. */
+        UNMUTED,
+        /** The history up to {@link Event#logPosition()} (exclusive) is on disk. */
+        PERSISTED
+    }
+
+    /** One event. Immutable, so it can be kept and read on any thread. */
+    public static final class Event {
+        /** Position in the stream; consecutive for a subscription that missed nothing. */
+        public final long sequence;
+        public final Kind kind;
+        /** System.currentTimeMillis() when it was published. */
+        public final long time;
+        private final BetterChatAPI.MessageView message;
+        private final int    logPosition;
+        private final int[]  tabIds;
+        private final String player;
+
+        private Event(long sequence, Kind kind, BetterChatAPI.MessageView message, int logPosition,
+                      int[] tabIds, String player) {
+            this.sequence = sequence; this.kind = kind; this.time = System.currentTimeMillis();
+            this.message = message; this.logPosition = logPosition; this.tabIds = tabIds; this.player = player;
+        }
+
+        /** The line, for INGESTED and ROUTED; null otherwise. */
+        public BetterChatAPI.MessageView message() { return message; }
+        /** The line's position in the log, or for PERSISTED the number of lines saved; -1 otherwise. */
+        public int    logPosition() { return logPosition; }
+        /** For ROUTED, the ids of the tabs the line reached; empty otherwise. */
+        public int[]  tabIds()      { return tabIds.clone(); }
+        /** For MUTED and UNMUTED, the player's name; null otherwise. */
+        public String player()      { return player; }
+    }
+
+    /** Receives one subscription's events, oldest first. */
+    @FunctionalInterface
+    public interface Handler {
+        /** {@code endOfBatch} is true for the last event of one {@link Subscription#poll} call. */
+        void onEvent(Event event, boolean endOfBatch);
+    }
+
+    private static final int[] NO_TABS = new int[0];
+
+    private final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong cursor = new AtomicLong(-1); // last published sequence
+    private final AtomicInteger subscribers = new AtomicInteger();
+    // Producer only
+    private long next;
+    private ChatTabData.ChatMessage lastMessage; // INGESTED and ROUTED of a line share one snapshot
+    private MessageSnapshot lastSnapshot;
+
+    ChatEventRing() {}
+
+    // -------------------------------------------------------------------------
+    // Producer (client thread)
+    // -------------------------------------------------------------------------
+
+    /** False while nobody listens; callers skip building events then. */
+    boolean hasSubscribers() { return subscribers.get() > 0; }
+
+    void ingested(ChatTabData.ChatMessage msg) {
+        if (hasSubscribers()) publish(Kind.INGESTED, snapshot(msg), msg.seq, NO_TABS, null);
+    }
+
+    void routed(ChatTabData.ChatMessage msg, int[] tabIds) {
+        if (hasSubscribers()) publish(Kind.ROUTED, snapshot(msg), msg.seq, tabIds, null);
+    }
+
+    void muteChanged(String player, boolean muted) {
+        if (hasSubscribers()) publish(muted ? Kind.MUTED : Kind.UNMUTED, null, -1, NO_TABS, player);
+    }
+
+    void persisted(int logSize) {
+        if (hasSubscribers()) publish(Kind.PERSISTED, null, logSize, NO_TABS, null);
+    }
+
+    private MessageSnapshot snapshot(ChatTabData.ChatMessage msg) {
+        if (msg != lastMessage) {
+            lastMessage  = msg;
+            lastSnapshot = new MessageSnapshot(msg);
+        }
+        return lastSnapshot;
+    }
+
+    private void publish(Kind kind, BetterChatAPI.MessageView message, int logPosition, int[] tabIds, String player) {
+        long seq = next++;
+        slots.lazySet((int) seq & (CAPACITY - 1), new Event(seq, kind, message, logPosition, tabIds, player));
+        cursor.lazySet(seq);
+    }
+
+    // -------------------------------------------------------------------------
+    // Consumers
+    // -------------------------------------------------------------------------
+
+    /** A new subscription; it sees events published from now on. */
+    Subscription subscribe() {
+        subscribers.incrementAndGet();
+        return new Subscription(cursor.get() + 1);
+    }
+
+    /** One consumer's place in the stream. Poll it from one thread at a time. */
+    public final class Subscription implements AutoCloseable {
+        private long next;
+        private long missed;
+        private boolean closed;
+
+        private Subscription(long next) { this.next = next; }
+
+        /**
+         * Hands {@code handler} every event published since the last call, up to
+         * {@code maxBatch}, and returns how many it got. Never blocks.
+         */
+        public int poll(Handler handler, int maxBatch) {
+            if (closed) return 0;
+            long available = cursor.get();
+            if (available < next) return 0;
+            if (available - next >= CAPACITY) {
+                // Lapped: the oldest events are gone
+                long oldest = available - CAPACITY + 1;
+                missed += oldest - next;
+                next = oldest;
+            }
+            long last = Math.min(available, next + maxBatch - 1);
+            int handed = 0;
+            Event held = null; // handed over one step late, so the batch's last event is known
+            for (long s = next; s <= last; s++) {
+                Event e = slots.get((int) s & (CAPACITY - 1));
+                if (e == null || e.sequence != s) { missed++; continue; } // overwritten while we read
+                if (held != null) handler.onEvent(held, false);
+                held = e;
+                handed++;
+            }
+            next = last + 1;
+            if (held != null) handler.onEvent(held, true);
+            return handed;
+        }
+
+        /** Events published but not read yet. */
+        public long lag() { return Math.max(0, cursor.get() + 1 - next); }
+
+        /** Events this subscription lost by falling too far behind. */
+        public long missed() { return missed; }
+
+        /** Stops the subscription; once the last one closes the ring stops publishing. */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            subscribers.decrementAndGet();
+        }
+    }
+
+    /** The parts of a ChatMessage a subscriber may read, fixed at publish time. */
+    private static final class MessageSnapshot implements BetterChatAPI.MessageView {
+        private final String  text, plainText, sender, channel, date, time;
+        private final boolean isLocal, isFromPlayer, isCommand, isCommandResponse;
+
+        MessageSnapshot(ChatTabData.ChatMessage m) {
+            text = m.text;
+            plainText = m.plainText != null ? m.plainText : m.text;
+            sender = m.sender();
+            channel = MessageClassifier.channelName(m.channel);
+            date = m.date;
+            time = m.time;
+            isLocal = m.isLocal;
+            isFromPlayer = m.isOtherPlayer;
+            isCommand = m.isCommand;
+            isCommandResponse = m.isCommandResponse;
+        }
+
+        @Override public String  text()              { return text; }
+        @Override public String  plainText()         { return plainText; }
+        @Override public String  sender()            { return sender; }
+        @Override public String  channel()           { return channel; }
+        @Override public boolean isLocal()           { return isLocal; }
+        @Override public boolean isFromPlayer()      { return isFromPlayer; }
+        @Override public boolean isCommand()         { return isCommand; }
+        @Override public boolean isCommandResponse() { return isCommandResponse; }
+        @Override public String  date()              { return date; }
+        @Override public String  time()              { return time; }
+    }
+}
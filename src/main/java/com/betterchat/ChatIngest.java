@@ -0,0 +1,376 @@
+package com.betterchat;
+
+import net.minecraft.util.IChatComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Moves the work of an incoming chat line off the client thread, in three stages:
+ *
+ *  1. {@link #submit} — inside the Forge chat event. Copies the few pieces of client
+ *     state the line is judged against (player name, server, command-response window,
+ *     send debounce) and queues the component. Nothing else happens on the event.
+ *  2. The "BetterChat-Ingest" worker — extracts the text, classifies the line with the
+ *     server's profile, builds the ChatMessage, finds where it mentions the player,
+ *     runs every ordinary tab's compiled filter on it and finds the auto-response
+ *     rules it may fire. It also writes history snapshots, so saving never blocks a
+ *     frame.
+ *  3. {@link #drain} — once per frame on the client thread. Appends the finished
+ *     messages to the log in arrival order (MessageCombiner groups repeats), extends the
+ *     membership bitmaps with the worker's decisions and hands the whole batch to the
+ *     handler, which updates each tab's line cache, the HUD fade and the notifications
+ *     once for all of it.
+ *
+ * The worker judges a line against the filter snapshots the client last published. A
+ * decision is only reused if that snapshot is still the tab's current one at drain time;
+ * otherwise (a rule was edited, a player muted while the line was in flight) the tab is
+ * re-filtered on the spot, so the result is always what the inline path would have given.
+ * Derived tabs are computed from their sources' decisions and never run a filter.
+ *
+ * The history is written at most every {@link #HISTORY_SAVE_INTERVAL_MS}, or every
+ * FloodGovernor.FLOOD_SAVE_INTERVAL_MS while a flood is being shed; snapshots that pile
+ * up behind a slow disk are coalesced, only the newest is written. A shutdown hook
+ * writes the final state.
+ */
+final class ChatIngest {
+
+    /** Lines queued between the event and the worker, and between the worker and the frame. */
+    private static final int RING_CAPACITY = 4096;
+    /** Shortest gap between two history writes. */
+    static final long HISTORY_SAVE_INTERVAL_MS = 2000;
+    /** How long the worker sleeps when idle if nobody wakes it. */
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+
+    private final ChatTabData data;
+
+    private final SpscRing<Received> received = new SpscRing<>(RING_CAPACITY); // event → worker
+    private final SpscRing<Ingested> finished = new SpscRing<>(RING_CAPACITY); // worker → frame
+    private final AtomicReference<ChatTabData.HistorySnapshot> pendingSave = new AtomicReference<>();
+    private volatile int persisted = -1; // log size of the last snapshot the worker wrote
+    private static final Filters NO_FILTERS = new Filters(new int[0], new TabFilter[0]);
+    private volatile Filters filters = NO_FILTERS;
+    private volatile MentionMatcher mentions = MentionMatcher.NONE; // client → worker
+
+    private final Thread worker;
+
+    /** Matched on the worker, fired by the handler once the line's tabs are known. */
+    final AutoResponder responder;
+
+    // Worker thread only
+    private final MessageClassifier.Result classified = new MessageClassifier.Result();
+    private int sampleSeq; // stands in for the log position when TabFilter samples its timings
+
+    // Client thread only
+    private final MessageCombiner combiner;
+    private boolean historyDirty;
+    private long    lastHistorySave;
+    private int     persistedAnnounced = -1;
+    private Rematch rematch; // the log being matched with `mentions` in the background
+
+    ChatIngest(ChatTabData data, OutgoingChatQueue outgoing) {
+        this.data = data;
+        this.combiner = new MessageCombiner(data);
+        this.responder = new AutoResponder(data, outgoing);
+        data.historyWriter = s -> { pendingSave.set(s); wakeWorker(); };
+        worker = new Thread(this::run, "BetterChat-Ingest");
+        worker.setDaemon(true);
+        worker.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnExit, "BetterChat-Ingest-Flush"));
+    }
+
+    // -------------------------------------------------------------------------
+    // Stage 1  —  the chat event (client thread)
+    // -------------------------------------------------------------------------
+
+    /** What the client knew when a line arrived; judged by the worker, applied by the frame. */
+    static final class Received {
+        final IChatComponent component;
+        final String  playerName, serverAddress;
+        final boolean commandResponseWindow; // ChatInputHandler.isWithinCommandResponseWindow()
+        final boolean withinDebounce;        // within SEND_ECHO_DEBOUNCE_MS of the player's last send
+        final int     sentFromTab;           // tab the player last sent from (the echo exception)
+
+        Received(IChatComponent component, String playerName, String serverAddress,
+                 boolean commandResponseWindow, boolean withinDebounce, int sentFromTab) {
+            this.component = component; this.playerName = playerName; this.serverAddress = serverAddress;
+            this.commandResponseWindow = commandResponseWindow; this.withinDebounce = withinDebounce;
+            this.sentFromTab = sentFromTab;
+        }
+    }
+
+    /**
+     * Queues a line for the worker. If the worker is a full ring behind (a flood the
+     * frame has not kept up with), drains in place until there is room rather than drop.
+     */
+    void submit(Received line, Consumer<List<Ingested>> apply) {
+        while (!received.offer(line)) {
+            wakeWorker();
+            drain(apply);
+            Thread.yield();
+        }
+        wakeWorker(); // just sets the permit unless the worker is parked
+    }
+
+    // -------------------------------------------------------------------------
+    // Stage 2  —  the worker
+    // -------------------------------------------------------------------------
+
+    /** Ordinary tabs' compiled filters as the client last published them. Never modified. */
+    private static final class Filters {
+        final int[] tabIds;
+        final TabFilter[] filters;
+
+        Filters(int[] tabIds, TabFilter[] filters) { this.tabIds = tabIds; this.filters = filters; }
+
+        int indexOf(int tabId) {
+            for (int i = 0; i < tabIds.length; i++) if (tabIds[i] == tabId) return i;
+            return -1;
+        }
+    }
+
+    /** A classified line and the worker's decision for each published filter. */
+    static final class Ingested {
+        final Received received;
+        final ChatTabData.ChatMessage msg;
+        private final Filters filters;
+        private final boolean[] passed;
+        private final MentionMatcher mentions; // the matcher msg.mentionSpans came from
+        /** The ordinary tabs' decisions at append time; set by drain(). */
+        IntPredicate ordinary;
+        // Auto-response rules the line may fire, and the snapshot they were matched against
+        private AutoResponder.Rules rules;
+        private int[] responses;
+
+        private Ingested(Received received, ChatTabData.ChatMessage msg, MentionMatcher mentions,
+                         Filters filters, boolean[] passed) {
+            this.received = received; this.msg = msg; this.mentions = mentions;
+            this.filters = filters; this.passed = passed;
+        }
+
+        /** Client thread: sends the auto-response the line fires, if any. */
+        void respond(AutoResponder responder, IntPredicate reachesTab) {
+            responder.respond(rules, responses, msg, reachesTab);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Received line = received.poll();
+            if (line != null) {
+                Ingested out = ingest(line);
+                while (!finished.offer(out)) LockSupport.parkNanos(this, 1_000_000L); // the frame is behind
+                continue;
+            }
+            ChatTabData.HistorySnapshot save = pendingSave.getAndSet(null);
+            if (save != null) {
+                if (save.write()) persisted = save.size();
+                continue;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS); // returns at once if woken since the last park
+        }
+    }
+
+    private void wakeWorker() {
+        LockSupport.unpark(worker);
+    }
+
+    private Ingested ingest(Received line) {
+        String plain     = line.component.getUnformattedText();
+        String formatted = line.component.getFormattedText();
+        ChatTabData.ChatMessage msg;
+        try {
+            msg = classify(line, plain, formatted);
+        } catch (RuntimeException e) {
+            // A broken server profile must not lose the line: keep it, unclassified
+            e.printStackTrace();
+            msg = new ChatTabData.ChatMessage(formatted, false, line.component,
+                    false, false, plain.startsWith("/"), false, plain);
+        }
+        msg.seq = sampleSeq++; // appendMessage() replaces it with the log position
+        MentionMatcher mentioned = mentions;
+        msg.mentionSpans = mentioned.spans(msg); // before the filters: type:mention reads it
+
+        Filters f = filters;
+        boolean[] passed = new boolean[f.filters.length];
+        long now = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < passed.length; i++) passed[i] = f.filters[i].matches(msg, now);
+        } catch (RuntimeException e) {
+            // Leave every tab to drain(), which filters on the client thread as before
+            e.printStackTrace();
+            return withResponses(new Ingested(line, msg, mentioned, NO_FILTERS, new boolean[0]));
+        }
+        return withResponses(new Ingested(line, msg, mentioned, f, passed));
+    }
+
+    private Ingested withResponses(Ingested in) {
+        if (in.msg.isLocal) return in; // never answer ourselves
+        AutoResponder.Rules r = responder.rules();
+        try {
+            in.responses = r.match(in.msg);
+            in.rules = r;
+        } catch (RuntimeException e) {
+            e.printStackTrace(); // rules stays null: respond() matches on the client thread
+        }
+        return in;
+    }
+
+    private ChatTabData.ChatMessage classify(Received line, String plain, String formatted) {
+        // The server's profile finds the sender and channel with anchored, precompiled rules.
+        // VANILLA (the default) only counts the strict "<Name> " form as player chat, so
+        // server lines with angle brackets ("<Usage: /give <player>>") stay server messages.
+        boolean recognised = data.classifierFor(line.serverAddress).classify(plain, classified);
+        String  me                = line.playerName;
+        boolean isLocal           = classified.outgoing
+                || me.equals(classified.sender)
+                || plain.startsWith(me + ":");
+        boolean isOtherPlayer     = classified.playerChat && !isLocal;
+        String  sender            = classified.outgoing ? me
+                : recognised ? classified.sender
+                : ChatTabData.extractPlayerName(plain); // unknown format: keep the heuristic
+        // Command responses: any non-local, non-player-chat message that arrives while the
+        // player is in command-response mode (set by sending "/" commands, cleared by normal chat).
+        boolean isCommandResponse = !isLocal && !isOtherPlayer && line.commandResponseWindow;
+        // isCommand is for player-sent commands injected directly into the log (never echoed by server).
+        boolean isCommand         = plain.startsWith("/");
+
+        return new ChatTabData.ChatMessage(
+                formatted, false, line.component,
+                isLocal, isOtherPlayer, isCommand, isCommandResponse, plain,
+                sender, classified.channel);
+    }
+
+    // -------------------------------------------------------------------------
+    // Stage 3  —  once per frame (client thread)
+    // -------------------------------------------------------------------------
+
+    /**
+     * Appends every finished line to the log, then passes them to {@code apply} as one
+     * batch, oldest first. Nothing is called if no line was ready.
+     */
+    void drain(Consumer<List<Ingested>> apply) {
+        publishMentions();
+        publishFilters();
+        responder.publish();
+        int saved = persisted;
+        if (saved != persistedAnnounced) {
+            persistedAnnounced = saved;
+            BetterChatAPI.EVENTS.persisted(saved); // the ring's only producer is this thread
+        }
+        List<Ingested> batch = null;
+        Ingested in;
+        long now = System.currentTimeMillis();
+        while ((in = finished.poll()) != null) {
+            data.playerName = in.received.playerName;
+            publishMentions(); // the name is first known here
+            // Matched before the settings changed: match again, and the worker's decisions with it
+            boolean rematched = in.mentions != mentions;
+            if (rematched) in.msg.mentionSpans = mentions.spans(in.msg);
+            if (!data.flood.admit(in.msg, now)) combiner.combine(in.msg, now); // a shed line is drawn in its burst's summary instead
+            in.ordinary = decisions(in, rematched);
+            data.appendMessage(in.msg, in.ordinary);
+            if (batch == null) batch = new ArrayList<>();
+            batch.add(in);
+        }
+        if (batch != null) {
+            historyDirty = true;
+            apply.accept(batch);
+        }
+        long interval = data.flood.isFlooding(now) ? FloodGovernor.FLOOD_SAVE_INTERVAL_MS : HISTORY_SAVE_INTERVAL_MS;
+        if (historyDirty && now - lastHistorySave >= interval) {
+            historyDirty = false;
+            lastHistorySave = now;
+            data.saveHistory();
+        }
+    }
+
+    /**
+     * Hands the worker a new matcher if the player's name, aliases or watch words changed,
+     * and starts re-matching the log with it on ParallelHistoryFilter's pool (a large log
+     * takes a few hundred milliseconds). Lines logged from now on are matched with the new
+     * matcher; the older ones keep their spans until the re-match lands, then all change
+     * at once in rematchMentions().
+     */
+    private void publishMentions() {
+        if (!mentions.compiledFrom(data)) {
+            if (rematch != null) rematch.cancel();
+            MentionMatcher m = new MentionMatcher(data);
+            mentions = m;
+            rematch = new Rematch(m, data.globalLog.toArray(new ChatTabData.ChatMessage[0]));
+            ParallelHistoryFilter.POOL.execute(rematch);
+        }
+        if (rematch != null && rematch.spans != null) {
+            data.rematchMentions(rematch.matcher, rematch.lines, rematch.spans);
+            rematch = null;
+        }
+    }
+
+    /** Finds the mentions of a log snapshot with a new matcher, off the client thread. */
+    private static final class Rematch implements Runnable {
+        final MentionMatcher matcher;
+        final ChatTabData.ChatMessage[] lines;
+        volatile int[][] spans; // per line, set once every line is matched
+        private volatile boolean cancelled;
+
+        Rematch(MentionMatcher matcher, ChatTabData.ChatMessage[] lines) {
+            this.matcher = matcher; this.lines = lines;
+        }
+
+        void cancel() { cancelled = true; }
+
+        @Override
+        public void run() {
+            int[][] found = new int[lines.length][];
+            for (int i = 0; i < lines.length; i++) {
+                if (cancelled) return;
+                found[i] = matcher.spans(lines[i]);
+            }
+            spans = found;
+        }
+    }
+
+    /** Hands the worker the current filters if any ordinary tab's snapshot moved on. */
+    private void publishFilters() {
+        Filters f = filters;
+        List<TabProfile> ordinary = new ArrayList<>(data.tabs.size());
+        for (TabProfile t : data.tabs) if (!t.isDerived()) ordinary.add(t);
+        boolean same = ordinary.size() == f.tabIds.length;
+        for (int i = 0; same && i < f.tabIds.length; i++)
+            same = ordinary.get(i).id == f.tabIds[i] && data.filterFor(f.tabIds[i]) == f.filters[i];
+        if (same) return;
+        int[] ids = new int[ordinary.size()];
+        TabFilter[] compiled = new TabFilter[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ordinary.get(i).id;
+            compiled[i] = data.filterFor(ids[i]);
+        }
+        filters = new Filters(ids, compiled);
+    }
+
+    /**
+     * The worker's decisions where its snapshot is still current; the tab's filter otherwise,
+     * and for every tab if the line was matched again for mentions since (type:mention).
+     */
+    private IntPredicate decisions(Ingested in, boolean rematched) {
+        return id -> {
+            TabFilter current = data.filterFor(id);
+            int i = rematched ? -1 : in.filters.indexOf(id);
+            return i >= 0 && in.filters.filters[i] == current ? in.passed[i] : current.matches(in.msg);
+        };
+    }
+
+    /**
+     * Shutdown hook: writes the history as it stands, including lines drained since the
+     * last timed save. Minecraft exits from the client thread, which is blocked in
+     * System.exit() while the hooks run, so the log is not moving under the snapshot.
+     */
+    private void flushOnExit() {
+        pendingSave.set(null);
+        data.snapshotHistory().write();
+    }
+}
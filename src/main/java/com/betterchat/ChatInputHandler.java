@@ -8,11 +8,13 @@ import net.minecraft.event.ClickEvent;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Handles everything related to player input while the chat GUI is open.
  *
- * - Sending messages, applying the active tab's prefix/suffix before sending.
+ * - Sending messages, applying the active tab's prefix/suffix before sending. Every
+ *   send goes through the OutgoingChatQueue at manual priority.
  * - Dispatching chat component click-events (run command, suggest command, open URL/file).
  * - Tracking when the player last sent a command so that server replies can be
  *   tagged as "command responses" and routed to the right tab.
@@ -22,6 +24,9 @@ import java.util.List;
 public class ChatInputHandler {
 
     private final ChatTabData data;
+    private final OutgoingChatQueue outgoing;
+    // Adds a sent /command to the log the way received lines are added (ChatTabHandler)
+    private final Consumer<ChatTabData.ChatMessage> commandLog;
 
     // How long after a "/" command to treat incoming messages as command responses.
     private long lastPlayerCommandTime = 0;
@@ -38,12 +43,15 @@ public class ChatInputHandler {
     private long lastPlayerSendTime = 0;
     public static final long SEND_ECHO_DEBOUNCE_MS = 1000;
 
-    /** The global tab index the player was on when they last sent a message. -1 if unknown. */
-    private int lastSentFromTabIndex = -1;
+    /** Id of the tab the player was on when they last sent a message. -1 if unknown. */
+    private int lastSentFromTabId = -1;
 
     /** The raw (pre-prefix/suffix) text of the last message the player sent. */
     private String lastSentRawText = "";
 
+    /** True if the last message the player sent, with its prefix and suffix, was a "/" command. */
+    private boolean lastSentCommand = false;
+
     // ── Sent-message history ──────────────────────────────────────────────────
     /** Messages sent this session, oldest-first.  Max 100 entries. */
     private final List<String> sentHistory = new ArrayList<>();
@@ -57,8 +65,11 @@ public class ChatInputHandler {
     /** Preserved draft text so we can restore it when the user navigates back down to -1. */
     private String draftText = "";
 
-    public ChatInputHandler(ChatTabData data) {
+    public ChatInputHandler(ChatTabData data, OutgoingChatQueue outgoing,
+                            Consumer<ChatTabData.ChatMessage> commandLog) {
         this.data = data;
+        this.outgoing = outgoing;
+        this.commandLog = commandLog;
     }
 
     // -------------------------------------------------------------------------
@@ -78,8 +89,9 @@ public class ChatInputHandler {
 
     public long getLastPlayerCommandTime()  { return lastPlayerCommandTime; }
     public long getLastPlayerSendTime()     { return lastPlayerSendTime; }
-    public int  getLastSentFromTabIndex()   { return lastSentFromTabIndex; }
+    public int  getLastSentFromTabId()      { return lastSentFromTabId; }
     public String getLastSentRawText()      { return lastSentRawText; }
+    public boolean isLastSentCommand()      { return lastSentCommand; }
 
     /** Returns true if the next server message should be treated as a command response. */
     public boolean isWithinCommandResponseWindow() {
@@ -120,30 +132,35 @@ public class ChatInputHandler {
         historyIndex = -1;
         draftText    = "";
 
-        int globalIdx = data.windows.isEmpty() ? 0 : data.windows.get(0).getSelectedGlobalIndex();
-        String prefix    = data.tabPrefixes.getOrDefault(globalIdx, "");
-        String suffix    = data.tabSuffixes.getOrDefault(globalIdx, "");
+        int tabId = data.windows.isEmpty() ? -1 : data.windows.get(0).getSelectedTabId();
+        TabProfile tab   = data.tab(tabId);
+        String prefix    = tab != null ? tab.prefix : "";
+        String suffix    = tab != null ? tab.suffix : "";
         String finalText = prefix + rawText + suffix;
 
-        if (finalText.startsWith("/")) onPlayerSentCommand();
-        else                           onPlayerSentChat();
         lastSentRawText = rawText;
+        lastSentCommand = finalText.startsWith("/");
         if (inputField != null)    inputField.setText("");
         if (customChatField != null) customChatField.setText("");
 
-        // Inject player-sent commands directly into the global log.
-        // Commands are never echoed back by the server, so onChatReceived never fires for them.
-        // Without this they would never appear in any tab even with the "Commands" filter on.
-        if (finalText.startsWith("/")) {
-            ChatTabData.ChatMessage cmdMsg = new ChatTabData.ChatMessage(
-                    finalText, false, null,
-                    false, false, true, false, finalText);
-            data.globalLog.add(cmdMsg);
-        }
-
-        Minecraft.getMinecraft().thePlayer.sendChatMessage(finalText);
-        lastPlayerSendTime = System.currentTimeMillis();
-        lastSentFromTabIndex = globalIdx;
+        // Command-response mode and the echo debounce start when the line actually goes out.
+        // So does logging a command: one the queue drops (e.g. on disconnect) never appears,
+        // and one already waiting is sent, and logged, once.
+        outgoing.send(finalText, OutgoingChatQueue.Priority.MANUAL, () -> {
+            if (finalText.startsWith("/")) {
+                onPlayerSentCommand();
+                // Inject player-sent commands directly into the global log.
+                // Commands are never echoed back by the server, so onChatReceived never fires for them.
+                // Without this they would never appear in any tab even with the "Commands" filter on.
+                commandLog.accept(new ChatTabData.ChatMessage(
+                        finalText, false, null,
+                        false, false, true, false, finalText));
+            } else {
+                onPlayerSentChat();
+            }
+            lastPlayerSendTime = System.currentTimeMillis();
+            lastSentFromTabId = tabId;
+        });
         data.lastMessageTime = System.currentTimeMillis();
         return true;
     }
@@ -199,9 +216,10 @@ public class ChatInputHandler {
 
         switch (action) {
             case RUN_COMMAND:
-                if (value.startsWith("/")) onPlayerSentCommand();
-                else                       onPlayerSentChat();
-                mc.thePlayer.sendChatMessage(value);
+                outgoing.send(value, OutgoingChatQueue.Priority.MANUAL, () -> {
+                    if (value.startsWith("/")) onPlayerSentCommand();
+                    else                       onPlayerSentChat();
+                });
                 break;
             case SUGGEST_COMMAND:
                 if (mc.currentScreen instanceof GuiChat) {
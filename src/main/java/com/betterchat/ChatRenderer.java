@@ -35,13 +35,18 @@ public class ChatRenderer {
     private final ChatTabData data;
 
     // -------------------------------------------------------------------------
-    // Line caches (keyed by global tab index)
+    // Line caches (keyed by tab id)
     // -------------------------------------------------------------------------
     final Map<Integer, List<RenderableLine>> lineCache           = new HashMap<>();
     final Map<Integer, Integer>              lineCacheHistorySize   = new HashMap<>();
     final Map<Integer, Integer>              lineCacheFilterVersion = new HashMap<>();
+    final Map<Integer, Integer>              lineCacheDisplayVersion = new HashMap<>();
     final Map<Integer, Integer>              lineCacheWidth         = new HashMap<>();
 
+    // Background re-filters for large logs, and how much of globalLog each finished one covers
+    private final Map<Integer, ParallelHistoryFilter.Job> filterJobs       = new HashMap<>();
+    private final Map<Integer, Integer>                   filterJobCovered = new HashMap<>();
+
     // -------------------------------------------------------------------------
     // Hover / click target caches (keyed by window index)
     // -------------------------------------------------------------------------
@@ -72,6 +77,7 @@ public class ChatRenderer {
 
     public ChatRenderer(ChatTabData data) {
         this.data = data;
+        data.senderVisibilityListener = this::onSenderVisibilityChanged;
     }
 
     // -------------------------------------------------------------------------
@@ -186,6 +192,42 @@ public class ChatRenderer {
         GL11.glPopMatrix();
     }
 
+    /**
+     * Fills the background of each mention on a line. Only the stored spans are used; the
+     * widths are measured with the same font and scale the line is drawn with.
+     */
+    private void drawHighlights(Minecraft mc, RenderableLine line, int x, int y, int lineH,
+                                float scale, int color) {
+        int[] h = line.highlights;
+        for (int i = 0; i < h.length; i += 2) {
+            int x0 = x + textWidth(mc, line.text.substring(0, formattedIndex(line.text, h[i])), scale);
+            int x1 = x + textWidth(mc, line.text.substring(0, formattedIndex(line.text, h[i + 1])), scale);
+            GL11.glColor4f(1f, 1f, 1f, 1f);
+            Gui.drawRect(x0 - 1, y - 1, x1 + 1, y - 1 + lineH, color);
+        }
+    }
+
+    /** Position in {@code formatted} of its {@code plainIndex}-th visible character (skipping § codes). */
+    private static int formattedIndex(String formatted, int plainIndex) {
+        int i = 0;
+        while (i < formatted.length()) {
+            if (formatted.charAt(i) == '\u00A7' && i + 1 < formatted.length()) { i += 2; continue; }
+            if (plainIndex-- == 0) return i;
+            i++;
+        }
+        return i;
+    }
+
+    /** Drawn width of a formatted message-text fragment, in screen pixels. */
+    private int textWidth(Minecraft mc, String formatted, float scale) {
+        if (data.fontEnabled && !data.fontName.isEmpty()) {
+            AwtFontRenderer r = AwtFontRenderer.get(data.fontName);
+            if (r != null) return r.stringWidth(EnumChatFormatting.getTextWithoutFormattingCodes(formatted),
+                    Math.max(6, (int)(10 * scale)));
+        }
+        return (int)(mc.fontRendererObj.getStringWidth(formatted) * scale);
+    }
+
     /**
      * Draws a plain string using the timestamp font if enabled, otherwise MC's renderer.
      * Used for timestamps and date-divider labels.
@@ -243,8 +285,8 @@ public class ChatRenderer {
      */
     public void renderWindowContent(Minecraft mc, ChatTabData.ChatWindowInstance win,
                                     int globalAlpha, boolean isHUD) {
-        int globalIdx = win.getSelectedGlobalIndex();
-        if (globalIdx == -1) return;
+        int tabId = win.getSelectedTabId();
+        if (tabId == -1) return;
 
         int wrapWidth = win.width - 15;
         // Reserve space for timestamps. The reserve is in MC-pixel units (scale-1.0 space).
@@ -263,61 +305,37 @@ public class ChatRenderer {
         int winIdx = data.windows.indexOf(win);
 
         // Rebuild line cache if stale
-        boolean stale = !lineCacheWidth.containsKey(globalIdx)
-                || lineCacheWidth.get(globalIdx) != wrapWidthMC
-                || lineCacheHistorySize.getOrDefault(globalIdx, -1) != data.globalLog.size()
-                || lineCacheFilterVersion.getOrDefault(globalIdx, -1) != data.filterVersion
-                || !lineCache.containsKey(globalIdx);
-
-        if (stale) {
-            List<ChatTabData.ChatMessage> history = data.buildFilteredHistory(globalIdx);
-
-            java.util.Set<Integer> skipIdx = new java.util.HashSet<>();
-            if (data.messageCombining) {
-                java.util.Map<Integer, Integer> lastGroupPos = new java.util.HashMap<>();
-                for (int hi = 0; hi < history.size(); hi++) {
-                    ChatTabData.ChatMessage m = history.get(hi);
-                    if (!m.isDateSeparator && m.groupId != 0)
-                        lastGroupPos.put(m.groupId, hi);
-                }
-                for (int hi = 0; hi < history.size(); hi++) {
-                    ChatTabData.ChatMessage m = history.get(hi);
-                    if (!m.isDateSeparator && m.groupId != 0 && hi != lastGroupPos.get(m.groupId))
-                        skipIdx.add(hi);
-                }
-            }
-
-            List<RenderableLine> built = new ArrayList<>();
-            for (int hi = 0; hi < history.size(); hi++) {
-                if (skipIdx.contains(hi)) continue;
-                ChatTabData.ChatMessage msg = history.get(hi);
-                if (msg.isDateSeparator) {
-                    built.add(new RenderableLine(msg.text, true, msg.time, msg.date, msg, 0));
-                } else {
-                    String displayText = data.applyBracketStrip(msg.text);
-                    if (data.messageCombining && msg.groupId != 0 && msg.repeatCount > 1) {
-                        displayText = displayText + " \u00A77<x" + msg.repeatCount + ">";
-                    }
-                    List<String> wrapped = mc.fontRendererObj.listFormattedStringToWidth(displayText, wrapWidthMC);
-                    int charOffset = 0;
-                    for (int j = 0; j < wrapped.size(); j++) {
-                        built.add(new RenderableLine(wrapped.get(j), false,
-                                j == 0 ? msg.time : "", msg.date, msg, charOffset));
-                        charOffset += EnumChatFormatting
-                                .getTextWithoutFormattingCodes(wrapped.get(j)).length();
-                    }
-                }
-            }
-            lineCache.put(globalIdx, built);
-            lineCacheHistorySize.put(globalIdx, data.globalLog.size());
-            lineCacheFilterVersion.put(globalIdx, data.filterVersion);
-            lineCacheWidth.put(globalIdx, wrapWidthMC);
+        boolean stale = !lineCacheWidth.containsKey(tabId)
+                || lineCacheWidth.get(tabId) != wrapWidthMC
+                || lineCacheHistorySize.getOrDefault(tabId, -1) != data.globalLog.size()
+                || lineCacheFilterVersion.getOrDefault(tabId, -1) != data.filterVersion
+                || lineCacheDisplayVersion.getOrDefault(tabId, -1) != data.displayVersion
+                || !lineCache.containsKey(tabId);
+
+        List<ChatTabData.ChatMessage> history = stale ? filteredHistoryFor(tabId) : null;
+        // A parallel re-filter is still running: keep drawing the previous lines until it lands.
+        int filterProgress = stale && history == null ? filterProgressFor(tabId) : -1;
+
+        if (history != null) {
+            List<RenderableLine> built = buildLines(mc, history, wrapWidthMC);
+            lineCache.put(tabId, built);
+            lineCacheHistorySize.put(tabId, data.globalLog.size());
+            lineCacheFilterVersion.put(tabId, data.filterVersion);
+            lineCacheDisplayVersion.put(tabId, data.displayVersion);
+            lineCacheWidth.put(tabId, wrapWidthMC);
             hoverTargetCache.remove(winIdx);
             clickTargetCache.remove(winIdx);
             targetCacheScrollOffset.put(winIdx, Integer.MIN_VALUE);
         }
 
-        List<RenderableLine> allLines = lineCache.get(globalIdx);
+        if (filterProgress >= 0 && !isHUD) {
+            int hintY = win.y + Math.max(16, (int)(22 * (data.fontSizeEnabled
+                    ? Math.max(0.5f, Math.min(3.0f, data.fontSizeTabs)) : 1.0f))) + 2;
+            mc.fontRendererObj.drawStringWithShadow("\u00A77Filtering history\u2026 " + filterProgress + "%",
+                    win.x + 5, hintY, 0xAAAAAA | (globalAlpha << 24));
+        }
+
+        List<RenderableLine> allLines = lineCache.get(tabId);
         if (allLines == null || allLines.isEmpty()) return;
 
         // Per-category font scales
@@ -333,7 +351,8 @@ public class ChatRenderer {
         int contentH = win.height - tabBarH - 8;
         int maxLines = Math.max(1, contentH / lineH);
         int totalLines    = allLines.size();
-        int currentOffset = data.scrollOffsets.getOrDefault(globalIdx, 0);
+        TabProfile tab = data.tab(tabId);
+        int currentOffset = tab.scrollOffset;
 
         // Handle scroll wheel input
         if (!isHUD && Mouse.hasWheel()) {
@@ -351,7 +370,7 @@ public class ChatRenderer {
                             currentOffset + (wheel > 0 ? 1 : -1)));
                     if (newOffset != currentOffset) {
                         currentOffset = newOffset;
-                        data.scrollOffsets.put(globalIdx, currentOffset);
+                        tab.scrollOffset = currentOffset;
                         targetCacheScrollOffset.put(winIdx, Integer.MIN_VALUE);
                     }
                 }
@@ -378,6 +397,9 @@ public class ChatRenderer {
                 drawTimestampString(mc, line.text, cx - tw / 2, y, sepColor, scaleTime);
             } else {
                 int textColor = data.getHex(data.colorText, (int)(data.opacText / 255.0 * globalAlpha));
+                if (line.highlights != null)
+                    drawHighlights(mc, line, win.x + 5, y, lineH, scaleText,
+                            data.getHex(data.colorMention, (int)(data.opacMention / 255.0 * globalAlpha)));
                 drawScaledString(mc, line.text, win.x + 5, y, textColor, true, scaleText,
                         data.fontEnabled && !data.fontName.isEmpty());
                 if (data.showTimeStamps && !line.time.isEmpty() && !isHUD) {
@@ -408,9 +430,9 @@ public class ChatRenderer {
                 y = baseY;
                 for (int i = end - 1; i >= start; i--) {
                     RenderableLine line = allLines.get(i);
-                    if (!line.isSeparator && line.sourceMsg != null
-                            && line.sourceMsg.rawComponent != null) {
-                        buildTargetsForLine(mc, line, y, win.x, nh, nc);
+                    if (!line.isSeparator && line.shedCount == 0 && line.sourceMsg != null
+                            && line.sourceMsg.eventSpans != null) {
+                        buildTargetsForLine(mc, line, y, win.x, lineH, scaleText, nh, nc);
                     }
                     y -= lineH;
                 }
@@ -424,6 +446,386 @@ public class ChatRenderer {
         }
     }
 
+    /**
+     * Wraps a tab's filtered history into lines. With combining on only the newest message
+     * of each repeat group the tab shows is drawn; each flood burst is drawn as one summary
+     * row where its last member is.
+     */
+    private List<RenderableLine> buildLines(Minecraft mc, List<ChatTabData.ChatMessage> history, int wrapWidthMC) {
+        Map<Integer, Integer> lastBurstPos = new HashMap<>(), burstSize = new HashMap<>();
+        for (int hi = 0; hi < history.size(); hi++) {
+            ChatTabData.ChatMessage m = history.get(hi);
+            if (m.isDateSeparator || m.floodBurst == 0) continue;
+            lastBurstPos.put(m.floodBurst, hi);
+            burstSize.merge(m.floodBurst, 1, Integer::sum);
+        }
+
+        List<RenderableLine> built = new ArrayList<>();
+        for (int hi = 0; hi < history.size(); hi++) {
+            ChatTabData.ChatMessage m = history.get(hi);
+            if (!m.isDateSeparator && m.floodBurst != 0) {
+                if (hi == lastBurstPos.get(m.floodBurst))
+                    appendShedSummary(m, burstSize.get(m.floodBurst), built);
+            } else if (m.isDateSeparator || m.groupId == 0 || !data.messageCombining
+                    || !historyHoldsLaterMember(history, m)) {
+                appendLines(mc, m, wrapWidthMC, built);
+            }
+        }
+        return built;
+    }
+
+    /** True if a later member of {@code m}'s repeat group is in the tab's history too. */
+    private boolean historyHoldsLaterMember(List<ChatTabData.ChatMessage> history, ChatTabData.ChatMessage m) {
+        for (int n = m.nextInGroup; n >= 0; n = data.globalLog.get(n).nextInGroup) {
+            int lo = 0, hi = history.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (history.get(mid).seq < n) lo = mid + 1;
+                else hi = mid;
+            }
+            // A date separator shares the position of the message after it
+            for (; lo < history.size() && history.get(lo).seq == n; lo++)
+                if (!history.get(lo).isDateSeparator) return true;
+        }
+        return false;
+    }
+
+    /** The count a group's drawn member shows: that of the group's newest message. */
+    private int groupCount(ChatTabData.ChatMessage m) {
+        while (m.nextInGroup >= 0) m = data.globalLog.get(m.nextInGroup);
+        return m.repeatCount;
+    }
+
+    /** The summary row standing in for {@code count} shed messages of {@code newest}'s burst. */
+    private static void appendShedSummary(ChatTabData.ChatMessage newest, int count, List<RenderableLine> out) {
+        out.add(new RenderableLine(FloodGovernor.summary(newest, count), false,
+                newest.time, newest.date, newest, 0, count));
+    }
+
+    /** Wraps one history entry (message or date separator) into RenderableLines. */
+    private void appendLines(Minecraft mc, ChatTabData.ChatMessage msg, int wrapWidthMC,
+                             List<RenderableLine> out) {
+        if (msg.isDateSeparator) {
+            out.add(new RenderableLine(msg.text, true, msg.time, msg.date, msg, 0));
+            return;
+        }
+        String displayText = data.applyBracketStrip(msg.text);
+        int[] spans = data.mentionHighlight
+                ? displaySpans(msg.mentionSpans, 2, data.bracketStripShift(msg.text)) : null;
+        if (data.messageCombining && msg.groupId != 0) {
+            int count = groupCount(msg);
+            if (count > 1) displayText = displayText + " \u00A77<x" + count + ">";
+        }
+        List<String> wrapped = mc.fontRendererObj.listFormattedStringToWidth(displayText, wrapWidthMC);
+        String full = EnumChatFormatting.getTextWithoutFormattingCodes(displayText);
+        int charOffset = 0;
+        for (int j = 0; j < wrapped.size(); j++) {
+            String plainLine = EnumChatFormatting.getTextWithoutFormattingCodes(wrapped.get(j));
+            // The wrapper drops the space (or newline) it breaks at
+            if (j > 0 && !full.startsWith(plainLine, charOffset) && full.startsWith(plainLine, charOffset + 1))
+                charOffset++;
+            out.add(new RenderableLine(wrapped.get(j), false,
+                    j == 0 ? msg.time : "", msg.date, msg, charOffset, 0,
+                    spans == null ? null : lineSpans(spans, charOffset, plainLine.length())));
+            charOffset += plainLine.length();
+        }
+    }
+
+    /**
+     * Records of {@code stride} ints starting with a [start, end) pair of plainText offsets
+     * (mention spans, EventSpans), moved back {@code shift} chars into the coordinates of
+     * the drawn text ({@link ChatTabData#bracketStripShift}).
+     */
+    private static int[] displaySpans(int[] spans, int stride, int shift) {
+        if (spans == null || shift == 0) return spans;
+        int[] out = spans.clone();
+        for (int i = 0; i < out.length; i += stride) {
+            out[i]     = Math.max(0, out[i] - shift);
+            out[i + 1] = Math.max(0, out[i + 1] - shift);
+        }
+        return out;
+    }
+
+    /** The parts of {@code spans} within [from, from + len), relative to from; null if none. */
+    private static int[] lineSpans(int[] spans, int from, int len) {
+        int[] out = null;
+        int n = 0;
+        for (int i = 0; i < spans.length; i += 2) {
+            int start = Math.max(spans[i], from) - from, end = Math.min(spans[i + 1], from + len) - from;
+            if (start >= end) continue;
+            if (out == null) out = new int[spans.length];
+            out[n++] = start;
+            out[n++] = end;
+        }
+        return out == null || n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    // -------------------------------------------------------------------------
+    // Sender patches (mute / unmute without a full rebuild)
+    // -------------------------------------------------------------------------
+
+    /**
+     * Called by ChatTabData when a mute starts or is lifted. Every cached tab is patched
+     * using the sender's postings: hiding drops that sender's lines, showing wraps just
+     * their messages that pass the tab's filter and merges them in by log position.
+     */
+    void onSenderVisibilityChanged(int senderId, boolean visible) {
+        // A background re-filter may have sampled the old mute list — restart it
+        for (ParallelHistoryFilter.Job job : filterJobs.values()) job.cancel();
+        filterJobs.clear();
+        filterJobCovered.clear();
+
+        int[] postings = data.senderIndex.positions(senderId);
+        if (postings.length == 0) return;
+        Minecraft mc = Minecraft.getMinecraft();
+        for (Map.Entry<Integer, List<RenderableLine>> e : lineCache.entrySet()) {
+            int tabId = e.getKey();
+            Integer width = lineCacheWidth.get(tabId);
+            if (width == null || data.tab(tabId) == null) continue;
+            if (data.flood.shedTotal() > 0 && hasShedSummary(e.getValue())) {
+                // Summary counts would need recounting; a rebuild on next draw is simpler
+                lineCacheHistorySize.put(tabId, -1);
+                continue;
+            }
+            e.setValue(visible
+                    ? mergeSenderLines(mc, tabId, e.getValue(), senderId, postings, width)
+                    : dropSenderLines(e.getValue(), senderId, postings[0]));
+        }
+        hoverTargetCache.clear();
+        clickTargetCache.clear();
+    }
+
+    private static boolean hasShedSummary(List<RenderableLine> lines) {
+        for (RenderableLine l : lines) if (l.shedCount > 0) return true;
+        return false;
+    }
+
+    /** Removes a sender's lines, plus any date separator left with nothing under it. */
+    private static List<RenderableLine> dropSenderLines(List<RenderableLine> lines, int senderId, int firstPos) {
+        int from = firstLineAtOrAfter(lines, firstPos);
+        if (from == lines.size()) return lines;
+        List<RenderableLine> out = new ArrayList<>(lines.subList(0, from));
+        for (int i = from; i < lines.size(); i++) {
+            RenderableLine l = lines.get(i);
+            if (!l.isSeparator && l.sourceMsg.senderId == senderId) continue;
+            // A separator directly followed by another (or by nothing) has lost its day
+            if (l.isSeparator && !out.isEmpty() && out.get(out.size() - 1).isSeparator)
+                out.remove(out.size() - 1);
+            out.add(l);
+        }
+        if (!out.isEmpty() && out.get(out.size() - 1).isSeparator) out.remove(out.size() - 1);
+        return out;
+    }
+
+    /** Merges the sender's passing messages back into a tab's lines in log order. */
+    private List<RenderableLine> mergeSenderLines(Minecraft mc, int tabId, List<RenderableLine> lines,
+                                                  int senderId, int[] postings, int wrapWidthMC) {
+        List<ChatTabData.ChatMessage> add = new ArrayList<>();
+        for (int pos : postings) {
+            ChatTabData.ChatMessage m = data.globalLog.get(pos);
+            // The postings are case-folded; other spellings were never hidden
+            if (m.senderId != senderId || !data.messagePassesFilter(tabId, m)) continue;
+            // With combining on only the newest message of a group the tab shows is drawn
+            if (data.messageCombining && laterMemberPasses(tabId, m)) continue;
+            add.add(m);
+        }
+        if (add.isEmpty()) return lines;
+
+        List<RenderableLine> out = new ArrayList<>(lines.size() + add.size() * 2);
+        int i = firstLineAtOrAfter(lines, add.get(0).seq);
+        out.addAll(lines.subList(0, i));
+        for (ChatTabData.ChatMessage m : add) {
+            while (i < lines.size() && lines.get(i).sourceMsg.seq < m.seq) out.add(lines.get(i++));
+            String lastDate = out.isEmpty() ? null : out.get(out.size() - 1).date;
+            if (!out.isEmpty() && out.get(out.size() - 1).isSeparator) lastDate = out.get(out.size() - 1).text;
+            if (!m.date.equals(lastDate)) appendLines(mc, ChatTabData.dateSeparatorFor(m), wrapWidthMC, out);
+            appendLines(mc, m, wrapWidthMC, out);
+            // The next message's divider is redundant if it is on the same day
+            if (i < lines.size() && lines.get(i).isSeparator && lines.get(i).text.equals(m.date)) i++;
+        }
+        out.addAll(lines.subList(i, lines.size()));
+        return out;
+    }
+
+    /** True if a later member of {@code m}'s repeat group passes the tab's filter. */
+    private boolean laterMemberPasses(int tabId, ChatTabData.ChatMessage m) {
+        for (int n = m.nextInGroup; n >= 0; n = data.globalLog.get(n).nextInGroup)
+            if (data.messagePassesFilter(tabId, data.globalLog.get(n))) return true;
+        return false;
+    }
+
+    /** Index of the first line whose message sits at or after globalLog position {@code seq}. */
+    private static int firstLineAtOrAfter(List<RenderableLine> lines, int seq) {
+        int lo = 0, hi = lines.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lines.get(mid).sourceMsg.seq < seq) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // -------------------------------------------------------------------------
+    // Arrivals (a frame's new messages without a full rebuild)
+    // -------------------------------------------------------------------------
+
+    /**
+     * Extends every up-to-date line cache with one batch of new messages. {@code batch}
+     * is everything appended to globalLog in one go, in log order; {@code arrivals} holds,
+     * per tab, the messages of the batch that pass its filter. Each tab's cache gets one
+     * append — the same lines a rebuild would produce — and tabs the batch did not reach
+     * just move their history size on, to the end of the batch. A cache that was already
+     * stale (filter or width changed), or a line appended while the batch was being routed
+     * (a queued command that went out as an auto-response was sent), is left for the next
+     * draw to rebuild.
+     */
+    void appendArrivals(List<ChatTabData.ChatMessage> batch, Map<Integer, List<ChatTabData.ChatMessage>> arrivals) {
+        if (batch.isEmpty()) return;
+        int from = batch.get(0).seq;
+        // Repeat group → its newest message in the batch
+        Map<Integer, ChatTabData.ChatMessage> groups = new HashMap<>();
+        if (data.messageCombining)
+            for (ChatTabData.ChatMessage m : batch) if (m.groupId != 0) groups.put(m.groupId, m);
+
+        Minecraft mc = Minecraft.getMinecraft();
+        for (Map.Entry<Integer, List<RenderableLine>> e : lineCache.entrySet()) {
+            int tabId = e.getKey();
+            Integer width = lineCacheWidth.get(tabId);
+            if (width == null || data.tab(tabId) == null
+                    || lineCacheHistorySize.getOrDefault(tabId, -1) != from
+                    || lineCacheFilterVersion.getOrDefault(tabId, -1) != data.filterVersion
+                    || lineCacheDisplayVersion.getOrDefault(tabId, -1) != data.displayVersion) continue;
+            List<RenderableLine> lines = e.getValue();
+            List<ChatTabData.ChatMessage> added = arrivals.getOrDefault(tabId, Collections.emptyList());
+            for (ChatTabData.ChatMessage m : added) {
+                // With combining on only a group's newest message is drawn; the member this
+                // tab showed until now may sit anywhere above
+                if (!groups.isEmpty() && m.groupId != 0) {
+                    int at = drawnGroupMember(lines, m.prevInGroup);
+                    if (at >= 0) lines.subList(at, messageEnd(lines, at)).clear();
+                }
+                // A burst's summary row moves down to its newest member, one count higher
+                int shed = m.floodBurst != 0 ? 1 + dropShedSummary(lines, m.floodBurst) : 0;
+                String lastDate = null;
+                if (!lines.isEmpty()) {
+                    RenderableLine last = lines.get(lines.size() - 1);
+                    lastDate = last.isSeparator ? last.text : last.date;
+                }
+                if (!m.date.equals(lastDate)) appendLines(mc, ChatTabData.dateSeparatorFor(m), width, lines);
+                if (shed > 0) appendShedSummary(m, shed, lines);
+                else          appendLines(mc, m, width, lines);
+            }
+            // A later repeat the tab does not show still raised the count on the one it does
+            boolean recount = false;
+            for (ChatTabData.ChatMessage newest : groups.values()) {
+                int at = drawnGroupMember(lines, newest.seq);
+                if (at < 0 || lines.get(at).sourceMsg.seq >= from) continue; // drawn just now, already current
+                List<RenderableLine> redrawn = new ArrayList<>();
+                appendLines(mc, lines.get(at).sourceMsg, width, redrawn);
+                lines.subList(at, messageEnd(lines, at)).clear();
+                lines.addAll(at, redrawn);
+                recount = true;
+            }
+            lineCacheHistorySize.put(tabId, batch.get(batch.size() - 1).seq + 1);
+            if (added.isEmpty() && !recount) continue;
+            for (int w = 0; w < data.windows.size(); w++) {
+                if (data.windows.get(w).getSelectedTabId() != tabId) continue;
+                hoverTargetCache.remove(w);
+                clickTargetCache.remove(w);
+                targetCacheScrollOffset.put(w, Integer.MIN_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Index of the first line of the repeat-group member drawn in {@code lines}, looking
+     * from globalLog position {@code seq} back through the group; -1 if none is drawn.
+     */
+    private int drawnGroupMember(List<RenderableLine> lines, int seq) {
+        for (int p = seq; p >= 0; p = data.globalLog.get(p).prevInGroup) {
+            for (int i = firstLineAtOrAfter(lines, p); i < lines.size() && lines.get(i).sourceMsg.seq == p; i++) {
+                RenderableLine l = lines.get(i);
+                if (!l.isSeparator && l.shedCount == 0) return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a burst's summary row and returns the count it showed (0 if there was none).
+     * The search stops at the first line from before the burst began.
+     */
+    private int dropShedSummary(List<RenderableLine> lines, int burst) {
+        int start = data.flood.burstStart(burst);
+        for (int i = lines.size() - 1; i >= 0 && lines.get(i).sourceMsg.seq >= start; i--) {
+            RenderableLine l = lines.get(i);
+            if (l.shedCount > 0 && l.sourceMsg.floodBurst == burst) {
+                lines.remove(i);
+                return l.shedCount;
+            }
+        }
+        return 0;
+    }
+
+    /** Index just past the wrapped lines of the message starting at {@code at}; its date separator is not included. */
+    private static int messageEnd(List<RenderableLine> lines, int at) {
+        ChatTabData.ChatMessage m = lines.get(at).sourceMsg;
+        int end = at;
+        while (end < lines.size() && lines.get(end).sourceMsg == m && !lines.get(end).isSeparator) end++;
+        return end;
+    }
+
+    /** Forgets a deleted tab's caches and background job; other tabs are unaffected. */
+    void dropTab(int tabId) {
+        ParallelHistoryFilter.Job job = filterJobs.remove(tabId);
+        if (job != null) job.cancel();
+        filterJobCovered.remove(tabId);
+        lineCache.remove(tabId);
+        lineCacheHistorySize.remove(tabId);
+        lineCacheFilterVersion.remove(tabId);
+        lineCacheDisplayVersion.remove(tabId);
+        lineCacheWidth.remove(tabId);
+    }
+
+    /**
+     * Returns the filtered history for a tab, or null while a background re-filter is
+     * still running. Small logs are filtered inline; from PARALLEL_THRESHOLD messages
+     * up the work goes to ParallelHistoryFilter, and messages that arrived after its
+     * snapshot are appended inline once it finishes. Derived tabs are read from their
+     * sources' membership bitmaps once those are built (in the background if far behind).
+     */
+    private List<ChatTabData.ChatMessage> filteredHistoryFor(int tabId) {
+        int logSize = data.globalLog.size();
+        ParallelHistoryFilter.Job job = filterJobs.get(tabId);
+        TabProfile tab = data.tab(tabId);
+        if (logSize < ParallelHistoryFilter.PARALLEL_THRESHOLD || (tab != null && tab.isDerived())) {
+            if (job != null) { job.cancel(); filterJobs.remove(tabId); }
+            if (tab != null && tab.isDerived() && data.membershipIfReady(tabId) == null) return null;
+            return data.buildFilteredHistory(tabId);
+        }
+
+        int covered = filterJobCovered.getOrDefault(tabId, job != null ? job.logSize : 0);
+        if (job == null || job.filter.filterVersion != data.filterVersion
+                || (job.isDone() && covered > logSize)) {
+            if (job != null) job.cancel();
+            filterJobs.put(tabId, ParallelHistoryFilter.submit(data, tabId));
+            filterJobCovered.remove(tabId);
+            return null;
+        }
+        if (!job.isDone()) return null;
+
+        List<ChatTabData.ChatMessage> history = job.result();
+        if (covered < logSize) data.appendFilteredRange(tabId, history, covered, logSize);
+        filterJobCovered.put(tabId, logSize);
+        return history;
+    }
+
+    /** Progress of whatever filteredHistoryFor() is waiting on for the tab, in percent. */
+    private int filterProgressFor(int tabId) {
+        ParallelHistoryFilter.Job job = filterJobs.get(tabId);
+        return job != null ? job.progressPercent() : data.membershipProgress(tabId);
+    }
+
     // -------------------------------------------------------------------------
     // Scroll bar
     // -------------------------------------------------------------------------
@@ -436,8 +838,8 @@ public class ChatRenderer {
      */
     private void renderScrollBar(ChatTabData.ChatWindowInstance win,
                                  int total, int visible, int offset, int color) {
-        int globalIdx = win.getSelectedGlobalIndex();
-        List<RenderableLine> allLines = (globalIdx != -1) ? lineCache.get(globalIdx) : null;
+        int tabId = win.getSelectedTabId();
+        List<RenderableLine> allLines = (tabId != -1) ? lineCache.get(tabId) : null;
         if (allLines == null || allLines.isEmpty()) return;
 
         int winIdx   = data.windows.indexOf(win);
@@ -617,73 +1019,34 @@ public class ChatRenderer {
     // -------------------------------------------------------------------------
 
     /**
-     * Walks the component tree of one rendered line and records hover/click
-     * rectangles for any node that carries a chat event.
-     * Character offsets are used to correctly align targets when a message is
-     * split across multiple wrapped lines.
+     * Records hover/click rectangles for the parts of one rendered line that carry a chat
+     * event: an array walk over the message's EventSpans records, clipped to the line's
+     * characters. The x extents are measured on the line's own text, as it is drawn.
      */
     private void buildTargetsForLine(Minecraft mc, RenderableLine line, int lineY,
-                                     int windowOffsetX,
+                                     int windowOffsetX, int lineH, float scale,
                                      List<ChatTargets.HoverTarget> outHover,
                                      List<ChatTargets.ClickTarget> outClick) {
-        IChatComponent root = line.sourceMsg.rawComponent;
+        ChatTabData.ChatMessage msg = line.sourceMsg;
         String lineUnformatted = EnumChatFormatting.getTextWithoutFormattingCodes(line.text);
         if (lineUnformatted == null || lineUnformatted.isEmpty()) return;
 
-        int lineStartChar = line.lineCharOffset;
-        int curChar = 0, curX = windowOffsetX + 5;
-
-        for (IChatComponent comp : root) {
-            String nodeText = comp.getUnformattedTextForChat();
-            if (nodeText.isEmpty()) continue;
-            int nodeLen       = nodeText.length();
-            int nodeEnd       = curChar + nodeLen;
-            int overlapStart  = Math.max(curChar, lineStartChar);
-            int overlapEnd    = Math.min(nodeEnd, lineStartChar + lineUnformatted.length());
-
-            if (overlapStart < overlapEnd) {
-                String beforeOnLine = nodeText.substring(
-                        Math.max(0, lineStartChar - curChar), overlapStart - curChar);
-                String onLine = nodeText.substring(
-                        overlapStart - curChar, overlapEnd - curChar);
-                int preW = mc.fontRendererObj.getStringWidth(applyStyle(beforeOnLine, comp));
-                int onW  = mc.fontRendererObj.getStringWidth(applyStyle(onLine, comp));
-
-                HoverEvent he = comp.getChatStyle().getChatHoverEvent();
-                if (he != null && onW > 0) {
-                    int tx = curX + preW;
-                    outHover.add(new ChatTargets.HoverTarget(tx, lineY - 1, tx + onW, lineY + 9, he));
-                }
-                ClickEvent ce = comp.getChatStyle().getChatClickEvent();
-                if (ce != null && onW > 0) {
-                    int tx = curX + preW;
-                    outClick.add(new ChatTargets.ClickTarget(tx, lineY - 1, tx + onW, lineY + 9, ce));
-                }
-            }
-
-            if (curChar >= lineStartChar) {
-                curX += mc.fontRendererObj.getStringWidth(applyStyle(nodeText, comp));
-            } else if (nodeEnd > lineStartChar) {
-                String tail = nodeText.substring(lineStartChar - curChar);
-                curX += mc.fontRendererObj.getStringWidth(applyStyle(tail, comp));
-            }
-            curChar += nodeLen;
+        int[] spans = displaySpans(msg.eventSpans, EventSpans.STRIDE, data.bracketStripShift(msg.text));
+        int from = line.lineCharOffset, to = from + lineUnformatted.length();
+        int x = windowOffsetX + 5;
+        for (int i = 0; i < spans.length; i += EventSpans.STRIDE) {
+            int start = Math.max(spans[i], from) - from, end = Math.min(spans[i + 1], to) - from;
+            if (start >= end) continue;
+            int x0 = x + textWidth(mc, line.text.substring(0, formattedIndex(line.text, start)), scale);
+            int x1 = x + textWidth(mc, line.text.substring(0, formattedIndex(line.text, end)), scale);
+            if (x1 <= x0) continue;
+            HoverEvent he = EventSpans.hover(spans[i + 3]);
+            if (he != null) outHover.add(new ChatTargets.HoverTarget(x0, lineY - 1, x1, lineY - 1 + lineH, he));
+            ClickEvent ce = EventSpans.click(spans[i + 2]);
+            if (ce != null) outClick.add(new ChatTargets.ClickTarget(x0, lineY - 1, x1, lineY - 1 + lineH, ce));
         }
     }
 
-    private String applyStyle(String text, IChatComponent comp) {
-        if (text.isEmpty()) return text;
-        net.minecraft.util.ChatStyle style = comp.getChatStyle();
-        StringBuilder prefix = new StringBuilder();
-        if (style.getColor() != null)               prefix.append(style.getColor().toString());
-        if (style.getBold())                         prefix.append(EnumChatFormatting.BOLD);
-        if (style.getItalic())                       prefix.append(EnumChatFormatting.ITALIC);
-        if (style.getUnderlined())                   prefix.append(EnumChatFormatting.UNDERLINE);
-        if (style.getStrikethrough())                prefix.append(EnumChatFormatting.STRIKETHROUGH);
-        if (style.getObfuscated())                   prefix.append(EnumChatFormatting.OBFUSCATED);
-        return prefix + text;
-    }
-
     // -------------------------------------------------------------------------
     // Tooltip content
     // -------------------------------------------------------------------------
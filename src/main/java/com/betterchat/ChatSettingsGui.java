@@ -73,6 +73,18 @@ public class ChatSettingsGui {
         helpPage       = new HelpPage();
     }
 
+    /** Stores text typed into fields that only apply on Enter or focus loss; called when the page is left. */
+    public void applyPendingEdits() {
+        filtersPage.applyMentionFields();
+    }
+
+    /** Switches to the Search page with a query already filled in (player context menu). */
+    public void openSearch(String query) {
+        applyPendingEdits();
+        currentPage = PAGE_SEARCH;
+        searchPage.setQuery(query);
+    }
+
     /** Delegated from {@link AppearancePage.ColorSwatchClickListener}. */
     private void openColorPicker(int colorIndex) {
         String[] ca = getColorAndOpac(colorIndex);
@@ -92,6 +104,7 @@ public class ChatSettingsGui {
             case 6: data.colorFadeTopBar     = hex; data.opacFadeTopBar     = opac; break;
             case 7: data.colorFadeBackground = hex; data.opacFadeBackground = opac; break;
             case 8: data.colorWindowBorder   = hex; data.opacWindowBorder   = opac; break;
+            case 9: data.colorMention        = hex; data.opacMention        = opac; break;
         }
     }
 
@@ -107,6 +120,7 @@ public class ChatSettingsGui {
             case 6: return new String[]{data.colorFadeTopBar,     "" + data.opacFadeTopBar};
             case 7: return new String[]{data.colorFadeBackground, "" + data.opacFadeBackground};
             case 8: return new String[]{data.colorWindowBorder,   "" + data.opacWindowBorder};
+            case 9: return new String[]{data.colorMention,        "" + data.opacMention};
         }
         return new String[]{"FFFFFF", "255"};
     }
@@ -200,14 +214,14 @@ public class ChatSettingsGui {
 
         // Close button
         if (btn == 0 && mx >= x + W - 18 && mx <= x + W - 4 && my >= y + 5 && my <= y + 21) {
-            closeRequested = true; return;
+            applyPendingEdits(); closeRequested = true; return;
         }
 
         // Sidebar navigation
         for (int i = 0; i < PAGE_NAMES.length; i++) {
             int ny = y + 38 + i * 28;
             if (btn == 0 && mx >= x + 4 && mx <= x + SW - 4 && my >= ny && my <= ny + 20) {
-                currentPage = i; return;
+                applyPendingEdits(); currentPage = i; return;
             }
         }
 
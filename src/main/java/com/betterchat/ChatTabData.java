@@ -6,6 +6,8 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 /**
  * Holds all persistent state for the mod: tabs, windows, colours, flags, and the
@@ -15,29 +17,74 @@ import java.util.Locale;
  */
 public class ChatTabData {
 
-    /** Display names of every tab, in order. Index into this to get per-tab settings. */
-    public final List<String> tabs = new ArrayList<>();
+    /** Every tab in display order. Other state refers to a tab by its stable id — see tab(). */
+    public final List<TabProfile> tabs = new ArrayList<>();
+    private final Map<Integer, TabProfile> tabsById = new HashMap<>();
+    private int nextTabId = 0;
 
     // Every message ever received is kept here forever so that re-filtering a tab
     // can always reconstruct the correct history without losing anything.
     public List<ChatMessage> globalLog = new ArrayList<>();
-
-    // Per-tab filter settings, keyed by tab index.
-    public final Map<Integer, String>  tabFilters                   = new HashMap<>();
-    public final Map<Integer, String>  tabExclusions                = new HashMap<>();
-    public final Map<Integer, Boolean> serverMessageFilters         = new HashMap<>();
-    public final Map<Integer, Boolean> includeAllFilters            = new HashMap<>();
-    public final Map<Integer, Boolean> includeCommandsFilters       = new HashMap<>();
-    public final Map<Integer, Boolean> includePlayersFilters        = new HashMap<>();
-    public final Map<Integer, Boolean> includeCommandResponseFilters = new HashMap<>();
-    public final Map<Integer, Boolean> sentByMeFilters               = new HashMap<>();
-    public final Map<Integer, String>  tabPrefixes                  = new HashMap<>();
-    public final Map<Integer, String>  tabSuffixes                  = new HashMap<>();
-    public final Map<Integer, Integer> scrollOffsets                = new HashMap<>();
-    public final Map<Integer, Boolean> tabNotifications             = new HashMap<>();
+    /** Sender → globalLog positions. Kept in step with globalLog by appendMessage(). */
+    public final SenderIndex senderIndex = new SenderIndex();
+    /** Decides which received lines are shed during a flood, and counts them. */
+    public final FloodGovernor flood = new FloodGovernor(this);
+    /** Plays notification sounds and shows tray balloons, rate limited and coalesced. */
+    public final NotificationService notifications = new NotificationService();
 
     /** Bumped every time any filter changes, so ChatRenderer knows to rebuild its line cache. */
     public int filterVersion = 0;
+    /** Bumped when only how lines are drawn changes (mention highlights): line caches rebuild, memberships stay. */
+    public int displayVersion = 0;
+
+    // Compiled TabFilter snapshots, keyed by tab id. Dropped whenever filterVersion moves on.
+    private final Map<Integer, TabFilter> compiledFilters = new HashMap<>();
+    private int compiledFiltersVersion = -1;
+    // BetterChatAPI.version() the snapshots were compiled against; a new mod predicate may resolve a mod: leaf
+    private int compiledApiVersion = 0;
+    // Parsed TabAlgebra of each derived tab (null = stored form no longer parses), same lifetime.
+    private final Map<Integer, TabAlgebra> compiledDerivations = new HashMap<>();
+
+    // Per-rule counters of each tab's filter, keyed by tab id. Outlive compiled snapshots.
+    private final Map<Integer, FilterMetrics> filterMetrics = new HashMap<>();
+
+    // Membership bitmaps of ordinary tabs, keyed by tab id: built when a derived tab first
+    // needs them, extended with new messages and patched on mute changes. Persisted as a
+    // cache in betterchat_membership.dat. See membership().
+    private final Map<Integer, Membership> memberships = new HashMap<>();
+    // "BCM2": bumped when messages began saving their classified sender, so bitmaps built
+    // against the old re-parsed senders are rebuilt once
+    private static final int MEMBERSHIP_MAGIC = 0x42434D32;
+
+    // A derived tab's last evaluated membership: valid while filterVersion and the log length
+    // are the ones it was built at and no mute has patched a source since. See membership().
+    private final Map<Integer, DerivedMembership> derivedMemberships = new HashMap<>();
+    // Background builds of ordinary tabs' bitmaps a derived tab is waiting for, keyed by the
+    // source tab's id. See membershipIfReady().
+    private final Map<Integer, ParallelHistoryFilter.MembershipJob> membershipJobs = new HashMap<>();
+
+    // Takes history snapshots to write off the client thread (ChatIngest's worker); null = write inline
+    Consumer<HistorySnapshot> historyWriter;
+
+    private static final class Membership {
+        final MessageBitmap bits;
+        long rulesHash;    // rulesHash() of the tab when the bits were last known to be right
+        int  filterVersion; // filterVersion at which rulesHash was last checked
+        int  covered;      // globalLog[0, covered) has been tested
+
+        Membership(MessageBitmap bits, long rulesHash, int filterVersion) {
+            this.bits = bits; this.rulesHash = rulesHash; this.filterVersion = filterVersion;
+        }
+    }
+
+    private static final class DerivedMembership {
+        final MessageBitmap bits;
+        final int filterVersion, logSize;
+
+        DerivedMembership(MessageBitmap bits, int filterVersion, int logSize) {
+            this.bits = bits; this.filterVersion = filterVersion; this.logSize = logSize;
+        }
+    }
 
     /** Player's username — kept in sync on each received message for filter matching. */
     public String playerName = "";
@@ -90,15 +137,46 @@ public class ChatTabData {
     public String  fontNameTimestamps    = "";
     /** Whether a custom font is enabled for timestamps and date dividers. */
     public boolean fontTimestampsEnabled = false;
-    /** When true, consecutive identical messages are collapsed to "msg <xN>". */
+    /** When true, identical messages are collapsed to "msg <xN>" at the newest one. */
     public boolean messageCombining      = true;
+    /** How long after a message an identical one still joins its group. See MessageCombiner. */
+    public int     combineWindowSeconds  = 60;
     /** When true, removes the surrounding angle brackets from player names:  <Name> → Name: */
     public boolean stripPlayerBrackets   = false;
+    /** When true, lines beyond the flood limits are collapsed into summary rows. See FloodGovernor. */
+    public boolean floodProtection       = true;
+    /** Lines one sender may send per FloodGovernor.WINDOW_MS before the rest are collapsed. */
+    public int     floodSenderLimit      = 8;
+    /** Lines the whole chat may receive per FloodGovernor.WINDOW_MS before the rest are collapsed. */
+    public int     floodGlobalLimit      = 200;
 
     // Mute/ignore lists (player name → expiry ms, or Long.MAX_VALUE for permanent)
     public final Map<String, Long>    mutedPlayers  = new HashMap<>();
     public final java.util.Set<String> ignoredPlayers = new java.util.HashSet<>();
 
+    /** Server host (or parent domain) → MessageClassifier profile name, from SERVER_PROFILE lines. */
+    public final Map<String, String> serverProfiles = new HashMap<>();
+    // forServer() result for the last address asked about; the address rarely changes
+    private String            classifierAddress;
+    private MessageClassifier classifier = MessageClassifier.VANILLA;
+
+    /** Told when a sender's messages should appear or disappear without a full re-filter. */
+    public interface SenderVisibilityListener {
+        void onSenderVisibilityChanged(int senderId, boolean visible);
+    }
+    public SenderVisibilityListener senderVisibilityListener;
+
+    // Temp-mute expiries, soonest first, drained once per client tick by expireMutes().
+    // Entries go stale when a mute is changed or lifted; they are skipped when polled.
+    private final PriorityQueue<MuteExpiry> muteExpiries = new PriorityQueue<>();
+
+    private static final class MuteExpiry implements Comparable<MuteExpiry> {
+        final String name;
+        final long   at;
+        MuteExpiry(String name, long at) { this.name = name; this.at = at; }
+        @Override public int compareTo(MuteExpiry o) { return Long.compare(at, o.at); }
+    }
+
     // ── Notification types ────────────────────────────────────────────────────
     /** Master toggle — show any notification when a message arrives. */
     public boolean showNotifications    = true;
@@ -107,6 +185,20 @@ public class ChatTabData {
     /** Send a Windows (system tray) notification when the game is not focused. */
     public boolean windowsNotifications = false;
 
+    // ── Mentions ──────────────────────────────────────────────────────────────
+    /** Other names the player goes by, comma-separated; matched like playerName. See MentionMatcher. */
+    public String  mentionAliases   = "";
+    /** Comma-separated words highlighted wherever they appear. */
+    public String  mentionWords     = "";
+    /** Draw a highlight behind mentions in chat. */
+    public boolean mentionHighlight = true;
+    /** Play a ping when a line mentions the player, even with notification sounds off. */
+    public boolean mentionPing      = false;
+    public String  colorMention     = "FFAA00";
+    public int     opacMention      = 80;
+    // MentionMatcher.key() of the matcher globalLog's mentionSpans came from; part of rulesHash()
+    private String mentionsKey = "";
+
     // ── Keybind entries ───────────────────────────────────────────────────────
     /** A keyboard shortcut (one or more keys held simultaneously) that sends a preset chat message. */
     public static class KeybindEntry implements java.io.Serializable {
@@ -137,16 +229,70 @@ public class ChatTabData {
         }
     }
 
-    /** An auto-response rule: if the chat contains {@code trigger}, send {@code response}. */
+    /**
+     * An auto-response rule: if the chat contains {@code trigger} (a {@code re:} trigger is a
+     * regex), send {@code response}. It can be narrowed to one sender or to lines that reach
+     * one tab, and fires at most once per cooldown. Matched and rate limited by AutoResponder.
+     */
     public static class AutoResponseEntry implements java.io.Serializable {
+        /** Cooldown of a rule added without a "cd:" option. */
+        public static final int DEFAULT_COOLDOWN_SECONDS = 5;
+
         public String trigger  = "";
         public String response = "";
+        /** Only lines from this player fire the rule ("" = anyone). */
+        public String sender   = "";
+        /** Only lines that reach this tab fire the rule (-1 = any tab). */
+        public int    tabId    = -1;
+        /** Shortest gap between two replies of this rule. */
+        public int    cooldownSeconds = DEFAULT_COOLDOWN_SECONDS;
+
+        transient long lastFiredAt; // AutoResponder, client thread
 
         public AutoResponseEntry() {}
         public AutoResponseEntry(String trigger, String response) {
             this.trigger  = trigger;
             this.response = response;
         }
+
+        /**
+         * Reads a rule typed as option words followed by the trigger, e.g.
+         * "from:Notch tab:Party cd:30 hello". A tab name's spaces are written as '_'.
+         * Unknown tab names and bad numbers leave the option at its default.
+         */
+        public static AutoResponseEntry parse(String spec, String response, ChatTabData data) {
+            AutoResponseEntry e = new AutoResponseEntry("", response);
+            String rest = spec.trim();
+            while (true) {
+                int sp = rest.indexOf(' ');
+                if (sp < 0) break;
+                String word = rest.substring(0, sp);
+                if (word.startsWith("from:")) {
+                    e.sender = word.substring(5);
+                } else if (word.startsWith("tab:")) {
+                    String name = word.substring(4).replace('_', ' ');
+                    for (TabProfile t : data.tabs) if (t.name.equalsIgnoreCase(name)) { e.tabId = t.id; break; }
+                } else if (word.startsWith("cd:")) {
+                    try { e.cooldownSeconds = Math.max(0, Integer.parseInt(word.substring(3))); }
+                    catch (NumberFormatException ignored) {}
+                } else {
+                    break;
+                }
+                rest = rest.substring(sp + 1).trim();
+            }
+            e.trigger = rest;
+            return e;
+        }
+
+        /** The rule as parse() reads it, with only the options that differ from the defaults. */
+        public String describeTrigger(ChatTabData data) {
+            StringBuilder sb = new StringBuilder();
+            if (!sender.isEmpty()) sb.append("from:").append(sender).append(' ');
+            TabProfile tab = tabId >= 0 ? data.tab(tabId) : null;
+            if (tab != null) sb.append("tab:").append(tab.name.replace(' ', '_')).append(' ');
+            if (cooldownSeconds != DEFAULT_COOLDOWN_SECONDS) sb.append("cd:").append(cooldownSeconds).append(' ');
+            return sb.append(trigger).toString();
+        }
     }
 
     public final List<KeybindEntry>      keybinds      = new ArrayList<>();
@@ -160,8 +306,8 @@ public class ChatTabData {
      *  and remembers which one is currently selected. */
     public static class ChatWindowInstance {
         public int x, y, width, height;
-        /** Global tab indices shown in this window, left to right. */
-        public List<Integer> tabIndices = new ArrayList<>();
+        /** Tab ids (TabProfile.id) shown in this window, left to right. */
+        public List<Integer> tabIds = new ArrayList<>();
         /** Local (within this window) index of the active tab. */
         public int selectedLocalTab = 0;
 
@@ -169,16 +315,16 @@ public class ChatTabData {
             this.x = x; this.y = y; this.width = w; this.height = h;
         }
 
-        /** Returns the global tab index of the currently selected tab, or -1 if empty. */
-        public int getSelectedGlobalIndex() {
-            if (tabIndices.isEmpty()) return -1;
-            if (selectedLocalTab >= tabIndices.size()) selectedLocalTab = 0;
-            return tabIndices.get(selectedLocalTab);
+        /** Returns the id of the currently selected tab, or -1 if empty. */
+        public int getSelectedTabId() {
+            if (tabIds.isEmpty()) return -1;
+            if (selectedLocalTab >= tabIds.size()) selectedLocalTab = 0;
+            return tabIds.get(selectedLocalTab);
         }
 
-        /** Selects the tab with the given global index, if it exists in this window. */
-        public void selectGlobalTab(int globalIdx) {
-            int local = tabIndices.indexOf(globalIdx);
+        /** Selects the tab with the given id, if it exists in this window. */
+        public void selectTab(int tabId) {
+            int local = tabIds.indexOf(tabId);
             if (local != -1) selectedLocalTab = local;
         }
     }
@@ -187,30 +333,53 @@ public class ChatTabData {
 
     private final File configFile;
     private final File logFile;
+    private final File membershipFile;
 
     // -------------------------------------------------------------------------
     // ChatMessage  —  one entry in globalLog
     // -------------------------------------------------------------------------
 
     /** One chat message as received from the server, plus classification flags used for filtering. */
-    public static class ChatMessage implements Serializable {
+    public static class ChatMessage implements Serializable, Cloneable {
         private static final long serialVersionUID = 2L;
         public String text;       // formatted text (with colour codes)
         public String time;       // "HH:mm" timestamp
         public String date;       // "yyyy/MM/dd" date, used for date-separator grouping
         public boolean isDateSeparator;                 // true for injected date-divider rows
-        public transient IChatComponent rawComponent;   // the original component for hover/click events
+        // Hover/click events as EventSpans records (start, end, click id, hover id), or null.
+        // Flattened from the component on creation; the component itself is not kept.
+        public transient int[] eventSpans;
         // Classification used by the filter engine
         public boolean isLocal;           // sent by this player
         public boolean isOtherPlayer;     // sent by another player
         public boolean isCommand;         // starts with "/"
         public boolean isCommandResponse; // arrived shortly after a player command
         public String  plainText;         // unformatted, for keyword matching
-        // Message combining — groupId links consecutive identical messages together.
+        public int     channel;           // MessageClassifier.CH_* the server profile recognised
+        // Message combining — groupId links identical messages received within
+        // combineWindowSeconds of each other (see MessageCombiner).
         // repeatCount on the LAST message of the group holds how many are in the group.
-        // Never mutated after being set; render-time only.
+        // Written only by MessageCombiner, on the client thread; render-time only.
         public int    repeatCount = 1;  // count of identical messages in this group (set on last msg)
         public int    groupId     = 0;  // non-zero means this message belongs to a combine group
+        // globalLog positions of the group's previous and next members (-1 = none), so a
+        // group's newest member is found without a scan. Re-derived on load.
+        public transient int prevInGroup = -1, nextInGroup = -1;
+        // FloodGovernor burst this message was shed into (0 = kept as is; < 0 = a chat-wide flood).
+        // Drawn only as part of the burst's summary row. Session only, like the bursts.
+        public transient int floodBurst;
+        // SenderDictionary id of the player who sent this (0 = none). Found once on creation,
+        // re-interned from senderName on load since ids are only valid for this session.
+        public transient int senderId;
+        // The sender as classified when the line arrived ("" = none), persisted so a reload
+        // keeps it; null only in logs written before it was saved.
+        private String senderName;
+        // Position in globalLog (separator rows copy the position of the message after them).
+        // Lets caches locate a message's lines by binary search.
+        public transient int seq;
+        // Where the line mentions the player: sorted [start, end) pairs of plainText offsets,
+        // or null. Found once by MentionMatcher; re-derived whenever the mention settings change.
+        public transient int[] mentionSpans;
 
         /** Constructor for date separator rows. */
         public ChatMessage(String text, boolean isSeparator) {
@@ -219,25 +388,66 @@ public class ChatTabData {
             this.date = new SimpleDateFormat("yyyy/MM/dd").format(new Date());
         }
 
-        /** Full constructor for real chat messages. */
+        /** Full constructor for real chat messages; the sender is found by extractPlayerName. */
         public ChatMessage(String text, boolean isSeparator, IChatComponent component,
                            boolean isLocal, boolean isOtherPlayer, boolean isCommand,
                            boolean isCommandResponse, String plainText) {
+            this(text, isSeparator, component, isLocal, isOtherPlayer, isCommand, isCommandResponse,
+                    plainText, extractPlayerName(plainText), MessageClassifier.CH_NONE);
+        }
+
+        /** As above, with the sender and channel a MessageClassifier already found. */
+        public ChatMessage(String text, boolean isSeparator, IChatComponent component,
+                           boolean isLocal, boolean isOtherPlayer, boolean isCommand,
+                           boolean isCommandResponse, String plainText, String sender, int channel) {
             this(text, isSeparator);
-            this.rawComponent      = component;
+            this.eventSpans        = EventSpans.flatten(component);
             this.isLocal           = isLocal;
             this.isOtherPlayer     = isOtherPlayer;
             this.isCommand         = isCommand;
             this.isCommandResponse = isCommandResponse;
             this.plainText         = plainText;
+            this.senderName        = sender != null ? sender : "";
+            this.senderId          = SenderDictionary.intern(sender);
+            this.channel           = channel;
+        }
+
+        /** The sender's name as the message was classified when it arrived, or null. */
+        public String sender() {
+            return SenderDictionary.name(senderId);
+        }
+
+        /** A copy with the given combining counters; what a history snapshot writes. */
+        ChatMessage withCounters(int groupId, int repeatCount) {
+            try {
+                ChatMessage copy = (ChatMessage) clone();
+                copy.groupId = groupId;
+                copy.repeatCount = repeatCount;
+                return copy;
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            if (isDateSeparator) return;
+            // Older logs did not save the sender; fall back to parsing it out of the text
+            if (senderName == null) senderName = extractPlayerName(plainText != null ? plainText : text);
+            senderId = SenderDictionary.intern(senderName);
         }
     }
 
     public ChatTabData() {
-        File configDir = new File(Minecraft.getMinecraft().mcDataDir, "config");
+        this(new File(Minecraft.getMinecraft().mcDataDir, "config"));
+    }
+
+    /** Reads and writes its files in {@code configDir}; lets the filter check run without a client. */
+    ChatTabData(File configDir) {
         if (!configDir.exists()) configDir.mkdirs();
         this.configFile = new File(configDir, "betterchat.txt");
         this.logFile    = new File(configDir, "betterchat_logs.dat");
+        this.membershipFile = new File(configDir, "betterchat_membership.dat");
         load();
     }
 
@@ -261,24 +471,33 @@ public class ChatTabData {
      * for display. The original msg.text is never mutated.
      */
     public String applyBracketStrip(String text) {
-        if (!stripPlayerBrackets) return text;
+        int start = bracketStripAt(text);
+        if (start < 0) return text;
+        int end = text.indexOf('>', start);
+        // Preserve any colour codes that were before the '<'
+        return text.substring(0, start) + text.substring(start + 1, end) + ":" + text.substring(end + 1);
+    }
+
+    /**
+     * How far applyBracketStrip moves the characters after a stripped name back: 1 when it
+     * rewrites "&lt;Name&gt; " (the '&lt;' goes, the '&gt;' becomes ':'), else 0. Plain-text
+     * offsets such as mention and event spans are shifted by this to match the drawn text.
+     */
+    public int bracketStripShift(String text) {
+        return bracketStripAt(text) < 0 ? 0 : 1;
+    }
+
+    /** Index of the '&lt;' applyBracketStrip removes from {@code text}, or -1 if it leaves it as is. */
+    private int bracketStripAt(String text) {
+        if (!stripPlayerBrackets) return -1;
         // Match  <Name>  at the start (with optional colour codes before the bracket)
         // Pattern: optional §x codes, then '<', then name chars, then '>', then space
-        String stripped = text;
         // Strip leading colour codes to find the '<'
         int start = 0;
-        while (start + 1 < stripped.length() && stripped.charAt(start) == '\u00A7') start += 2;
-        if (start < stripped.length() && stripped.charAt(start) == '<') {
-            int end = stripped.indexOf('>', start);
-            if (end != -1 && end + 1 < stripped.length()) {
-                String name = stripped.substring(start + 1, end);
-                String rest = stripped.substring(end + 1);
-                // Preserve any colour codes that were before the '<'
-                String prefix = stripped.substring(0, start);
-                stripped = prefix + name + ":" + rest;
-            }
-        }
-        return stripped;
+        while (start + 1 < text.length() && text.charAt(start) == '\u00A7') start += 2;
+        if (start >= text.length() || text.charAt(start) != '<') return -1;
+        int end = text.indexOf('>', start);
+        return end != -1 && end + 1 < text.length() ? start : -1;
     }
 
     /** Returns the player name from a plain-text chat message using multiple strategies.
@@ -311,7 +530,9 @@ public class ChatTabData {
             int lastSpace = before.lastIndexOf(' ');
             String candidate = (lastSpace >= 0) ? before.substring(lastSpace + 1) : before;
             // Strip any trailing punctuation like ] or )
-            candidate = candidate.replaceAll("[\\]\\)>]+$", "").trim();
+            int end = candidate.length();
+            while (end > 0 && "])>".indexOf(candidate.charAt(end - 1)) >= 0) end--;
+            candidate = candidate.substring(0, end).trim();
             if (isPlausibleName(candidate)) return candidate;
         }
 
@@ -322,7 +543,11 @@ public class ChatTabData {
     private static boolean isPlausibleName(String s) {
         if (s == null || s.isEmpty() || s.length() > 40) return false;
         // Must not contain spaces; should be alphanumeric + _ (MC name rules)
-        return s.matches("[A-Za-z0-9_]{1,40}");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) return false;
+        }
+        return true;
     }
 
     /** Tries to extract a player name from a ClickEvent value (e.g. "/msg Name", "/tell Name").
@@ -344,86 +569,395 @@ public class ChatTabData {
         return null;
     }
 
-    /** Returns true if this player is currently muted (temp or permanent). */
-    public boolean isPlayerMuted(String name) {
-        Long exp = mutedPlayers.get(name);
-        if (exp == null) return false;
-        if (exp == Long.MAX_VALUE) return true;
-        if (System.currentTimeMillis() < exp) return true;
-        mutedPlayers.remove(name); return false;
+    /** The chat-format profile for a server address (null = singleplayer). ChatIngest's worker thread only. */
+    public MessageClassifier classifierFor(String address) {
+        if (!Objects.equals(address, classifierAddress)) {
+            classifier = MessageClassifier.forServer(address, serverProfiles);
+            classifierAddress = address;
+        }
+        return classifier;
     }
 
-    public boolean messagePassesFilter(int tabIdx, ChatMessage msg) {
-        if (msg.isDateSeparator) return false;
-        String plain = msg.plainText != null ? msg.plainText : msg.text;
+    /**
+     * Mutes a player until {@code untilMs} (Long.MAX_VALUE = permanent). If they were not
+     * already muted their lines are dropped from the caches in place — no full re-filter.
+     */
+    public void mutePlayer(String name, long untilMs) {
+        boolean wasMuted = isMuteActive(mutedPlayers.get(name));
+        mutedPlayers.put(name, untilMs);
+        if (untilMs != Long.MAX_VALUE) muteExpiries.add(new MuteExpiry(name, untilMs));
+        compiledFilters.clear(); // the snapshots carry the mute list; filterVersion is untouched
+        if (!wasMuted) fireSenderVisibility(name, false);
+        else           patchMemberships(SenderDictionary.NONE, false);
+        BetterChatAPI.EVENTS.muteChanged(name, true);
+    }
+
+    /** Lifts a mute; if it was still in force the player's messages are patched back in. */
+    public void unmutePlayer(String name) {
+        Long prev = mutedPlayers.remove(name);
+        compiledFilters.clear();
+        if (isMuteActive(prev)) fireSenderVisibility(name, true);
+        else                    patchMemberships(SenderDictionary.NONE, true);
+        if (prev != null) BetterChatAPI.EVENTS.muteChanged(name, false);
+    }
 
-        // Mute / ignore checks
-        String sender = extractPlayerName(plain);
-        if (sender != null) {
-            if (ignoredPlayers.contains(sender)) return false;
-            if (isPlayerMuted(sender)) return false;
+    /**
+     * Lifts every temp mute whose time has come and patches the player's messages back in.
+     * Called once per client tick; costs one peek when nothing is due.
+     */
+    public void expireMutes(long now) {
+        MuteExpiry head;
+        while ((head = muteExpiries.peek()) != null && head.at <= now) {
+            muteExpiries.poll();
+            Long current = mutedPlayers.get(head.name);
+            if (current == null || current != head.at) continue; // re-muted or already lifted
+            mutedPlayers.remove(head.name);
+            compiledFilters.clear();
+            fireSenderVisibility(head.name, true);
+            BetterChatAPI.EVENTS.muteChanged(head.name, false);
         }
+    }
 
-        // Exclusion check
-        String ex = tabExclusions.getOrDefault(tabIdx, "");
-        if (!ex.isEmpty()) {
-            for (String k : ex.split(",")) {
-                if (!k.trim().isEmpty() && plain.toLowerCase().contains(k.trim().toLowerCase())) return false;
+    private static boolean isMuteActive(Long expiry) {
+        return expiry != null && (expiry == Long.MAX_VALUE || System.currentTimeMillis() < expiry);
+    }
+
+    private void fireSenderVisibility(String name, boolean visible) {
+        int id = SenderDictionary.lookup(name);
+        patchMemberships(id, visible); // first, so derived tabs answer with the new mute list
+        if (id != SenderDictionary.NONE && senderVisibilityListener != null)
+            senderVisibilityListener.onSenderVisibilityChanged(id, visible);
+    }
+
+    /**
+     * Brings the membership bitmaps in line with a mute-list change: the sender's exact
+     * postings are removed, or re-added where the tab's filter now passes them. Bitmaps
+     * not confirmed for the current filterVersion are dropped and rebuilt on demand.
+     */
+    private void patchMemberships(int senderId, boolean visible) {
+        derivedMemberships.clear();
+        cancelMembershipJobs(); // their filter snapshots sampled the old mute list
+        int[] postings = senderId == SenderDictionary.NONE ? new int[0] : senderIndex.positions(senderId);
+        Iterator<Map.Entry<Integer, Membership>> it = memberships.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Membership> e = it.next();
+            Membership m = e.getValue();
+            TabProfile t = tab(e.getKey());
+            if (t == null || t.isDerived() || m.filterVersion != filterVersion) { it.remove(); continue; }
+            TabFilter filter = visible ? filterFor(t.id) : null;
+            for (int pos : postings) {
+                if (pos >= m.covered) break;
+                ChatMessage msg = globalLog.get(pos);
+                if (msg.senderId != senderId) continue; // postings are case-folded
+                if (!visible)                  m.bits.remove(pos);
+                else if (filter.matches(msg))  m.bits.add(pos);
             }
+            m.rulesHash = rulesHash(t);
         }
+    }
 
-        // Inclusion checks — each filter maps to exactly one category, no overlaps.
-        // "Messages Sent by Me": only messages the local player sent
-        if (sentByMeFilters.getOrDefault(tabIdx, false) && msg.isLocal) return true;
-        // "All Messages": everything (master override)
-        if (includeAllFilters.getOrDefault(tabIdx, false)) return true;
+    /**
+     * Returns true if this player is currently muted (temp or permanent).
+     * Never modifies the map — expired entries are removed by expireMutes().
+     */
+    public boolean isPlayerMuted(String name) {
+        return isMuteActive(mutedPlayers.get(name));
+    }
 
-        String f = tabFilters.getOrDefault(tabIdx, "");
-        if (!f.isEmpty()) {
-            for (String k : f.split(",")) {
-                if (!k.trim().isEmpty() && plain.toLowerCase().contains(k.trim().toLowerCase())) return true;
-            }
+    /**
+     * Returns the compiled filter for a tab, compiling it on first use after a filter change.
+     * Client thread only — the returned snapshot itself is safe to hand to other threads.
+     */
+    public TabFilter filterFor(int tabId) {
+        checkCompiledVersion();
+        TabFilter f = compiledFilters.get(tabId);
+        if (f == null) {
+            f = new TabFilter(this, tab(tabId));
+            compiledFilters.put(tabId, f);
+        }
+        return f;
+    }
+
+    /** The rule counters of a tab's filter; kept across recompiles until the tab is deleted. */
+    public FilterMetrics metricsFor(int tabId) {
+        return filterMetrics.computeIfAbsent(tabId, id -> new FilterMetrics());
+    }
+
+    /** Writes every tab's rule counters to betterchat_filter_stats.csv and returns the file. */
+    public File exportFilterMetrics() throws IOException {
+        File out = new File(configFile.getParentFile(), "betterchat_filter_stats.csv");
+        try (Writer w = new BufferedWriter(new FileWriter(out))) {
+            FilterMetrics.writeCsv(this, w);
         }
-        // "Commands": messages that look like commands (start with /)
-        if (includeCommandsFilters.getOrDefault(tabIdx, false) && msg.isCommand) return true;
-        // "Server Messages": server-generated output — not from any player, not a command, not a command response
-        if (serverMessageFilters.getOrDefault(tabIdx, false)
-                && !msg.isOtherPlayer && !msg.isLocal && !msg.isCommand && !msg.isCommandResponse) return true;
-        // "Player Messages": messages from other players only (never the local player)
-        if (includePlayersFilters.getOrDefault(tabIdx, false) && msg.isOtherPlayer && !msg.isLocal) return true;
-        // "Command Responses": server replies that arrived shortly after the player ran a command
-        if (includeCommandResponseFilters.getOrDefault(tabIdx, false) && msg.isCommandResponse) return true;
+        return out;
+    }
+
+    private void checkCompiledVersion() {
+        if (compiledApiVersion != BetterChatAPI.version()) {
+            compiledApiVersion = BetterChatAPI.version();
+            filterVersion++;
+        }
+        if (compiledFiltersVersion != filterVersion) {
+            compiledFilters.clear();
+            compiledDerivations.clear();
+            compiledFiltersVersion = filterVersion;
+        }
+    }
+
+    /** The parsed derivation of a derived tab, or null for an ordinary tab (or one whose derivation no longer parses). */
+    private TabAlgebra derivationFor(int tabId) {
+        TabProfile t = tab(tabId);
+        if (t == null || !t.isDerived()) return null;
+        checkCompiledVersion();
+        if (!compiledDerivations.containsKey(tabId)) compiledDerivations.put(tabId, TabAlgebra.parseStored(t.derivation));
+        return compiledDerivations.get(tabId);
+    }
+
+    private boolean isOrdinaryTab(int tabId) {
+        TabProfile t = tab(tabId);
+        return t != null && !t.isDerived();
+    }
+
+    // -------------------------------------------------------------------------
+    // Membership bitmaps
+    // -------------------------------------------------------------------------
+
+    /**
+     * The globalLog positions a tab shows. An ordinary tab's bitmap is built once (in
+     * parallel for large logs) and then only extended; a derived tab is the set algebra
+     * of its sources' bitmaps, so no filter runs for it, and the result is kept until the
+     * log grows or a rule or mute changes. Blocks while a source is built; the client
+     * thread uses {@link #membershipIfReady} instead. Client thread only; the result may
+     * be a live bitmap and must not be modified.
+     */
+    public MessageBitmap membership(int tabId) {
+        TabAlgebra derived = derivationFor(tabId);
+        if (derived == null) return sourceMembership(tabId);
+        DerivedMembership d = derivedMemberships.get(tabId);
+        if (d == null || d.filterVersion != filterVersion || d.logSize != globalLog.size()) {
+            d = new DerivedMembership(derived.evaluate(this::sourceMembership), filterVersion, globalLog.size());
+            derivedMemberships.put(tabId, d);
+        }
+        return d.bits;
+    }
+
+    /**
+     * As membership(), but never blocks: while a bitmap it needs is too far behind the log
+     * to catch up inline, that bitmap is built by a ParallelHistoryFilter job and this
+     * returns null. Call again (e.g. next frame) to pick the result up.
+     */
+    public MessageBitmap membershipIfReady(int tabId) {
+        TabAlgebra derived = derivationFor(tabId);
+        boolean ready = true;
+        for (TabProfile t : tabs) {
+            if (!t.isDerived() && (derived != null ? derived.reads(t.id) : t.id == tabId)) ready &= sourceReady(t);
+        }
+        return ready ? membership(tabId) : null;
+    }
+
+    /** How far along the background builds membershipIfReady() is waiting for are, in percent. */
+    public int membershipProgress(int tabId) {
+        TabAlgebra derived = derivationFor(tabId);
+        int percent = 100;
+        for (Map.Entry<Integer, ParallelHistoryFilter.MembershipJob> e : membershipJobs.entrySet()) {
+            int id = e.getKey();
+            if (derived != null ? derived.reads(id) : id == tabId)
+                percent = Math.min(percent, e.getValue().progressPercent());
+        }
+        return percent;
+    }
 
+    private MessageBitmap sourceMembership(int tabId) {
+        return isOrdinaryTab(tabId) ? currentMembership(tab(tabId)).bits : new MessageBitmap();
+    }
+
+    /** The tab's bitmap, caught up with the whole log; blocks on a large catch-up. */
+    private Membership currentMembership(TabProfile t) {
+        ParallelHistoryFilter.MembershipJob job = membershipJobs.remove(t.id);
+        if (job != null) job.cancel(); // a caller that may block does the work itself
+        Membership m = confirmedMembership(t);
+        if (m.covered < globalLog.size()) {
+            ParallelHistoryFilter.collectMembership(filterFor(t.id), globalLog, m.covered, globalLog.size(), m.bits);
+            m.covered = globalLog.size();
+        }
+        return m;
+    }
+
+    /**
+     * True if the tab's bitmap is within an inline catch-up of the log. A finished job's
+     * positions are merged in; a job for outdated rules is dropped; a bitmap that is too
+     * far behind gets a job started.
+     */
+    private boolean sourceReady(TabProfile t) {
+        Membership m = confirmedMembership(t);
+        ParallelHistoryFilter.MembershipJob job = membershipJobs.get(t.id);
+        if (job != null) {
+            if (job.filter != filterFor(t.id) || job.from != m.covered) {
+                job.cancel(); // the rules or the bitmap moved on under it
+            } else if (!job.isDone()) {
+                return false;
+            } else {
+                for (int i : job.result()) m.bits.add(i);
+                m.covered = job.to;
+            }
+            membershipJobs.remove(t.id);
+        }
+        if (globalLog.size() - m.covered < ParallelHistoryFilter.PARALLEL_THRESHOLD) return true;
+        membershipJobs.put(t.id, ParallelHistoryFilter.submitMembership(filterFor(t.id), globalLog, m.covered, globalLog.size()));
         return false;
     }
 
+    private void cancelMembershipJobs() {
+        for (ParallelHistoryFilter.MembershipJob job : membershipJobs.values()) job.cancel();
+        membershipJobs.clear();
+    }
+
+    /** The tab's bitmap if it is still right for the tab's rules, else a new empty one. */
+    private Membership confirmedMembership(TabProfile t) {
+        Membership m = memberships.get(t.id);
+        if (m != null && m.filterVersion != filterVersion) {
+            // filterVersion also moves for display settings; only this tab's own rules matter
+            if (m.rulesHash == rulesHash(t)) m.filterVersion = filterVersion;
+            else m = null;
+        }
+        if (m == null || m.covered > globalLog.size()) {
+            m = new Membership(new MessageBitmap(), rulesHash(t), filterVersion);
+            memberships.put(t.id, m);
+        }
+        return m;
+    }
+
+    /** Hash of everything an ordinary tab's membership depends on: its rules and the mute/ignore lists. */
+    private long rulesHash(TabProfile t) {
+        StringBuilder sb = new StringBuilder()
+                .append(t.filter).append('\u0000').append(t.exclusion).append('\u0000').append(t.expression).append('\u0000')
+                .append(t.includeServer).append(t.includeAll).append(t.includeCommands)
+                .append(t.includePlayers).append(t.includeCommandResponses).append(t.sentByMe);
+        for (String n : new TreeSet<>(mutedPlayers.keySet())) sb.append("\u0000m").append(n);
+        for (String n : new TreeSet<>(ignoredPlayers))        sb.append("\u0000i").append(n);
+        if (readsModPredicates(t)) sb.append("\u0000a").append(BetterChatAPI.version());
+        if (readsMentions(t))      sb.append("\u0000n").append(mentionsKey);
+        long h = 1125899906842597L;
+        for (int i = 0; i < sb.length(); i++) h = 31 * h + sb.charAt(i);
+        return h;
+    }
+
+    /**
+     * True if the tab's expression may call another mod's predicate. Such a tab's bitmap
+     * is never saved: nothing tells us whether the mod's rule changed between sessions.
+     */
+    private static boolean readsModPredicates(TabProfile t) {
+        return t.expression.toLowerCase(Locale.ROOT).contains("mod:");
+    }
+
+    /** True if the tab's expression may test type:mention, whose answers depend on the mention settings. */
+    private static boolean readsMentions(TabProfile t) {
+        return t.expression.toLowerCase(Locale.ROOT).contains("mention");
+    }
+
+    /**
+     * Stores the mentions {@code matcher} found in {@code lines} (a globalLog snapshot,
+     * matched off the client thread), after the player's name, aliases or watch words
+     * changed. Only tabs that filter on type:mention are re-filtered; otherwise just the
+     * line caches, which carry the highlights, are rebuilt.
+     */
+    void rematchMentions(MentionMatcher matcher, ChatMessage[] lines, int[][] spans) {
+        for (int i = 0; i < lines.length; i++) lines[i].mentionSpans = spans[i];
+        mentionsKey = matcher.key();
+        for (TabProfile t : tabs) {
+            if (readsMentions(t)) { filterVersion++; return; }
+        }
+        if (mentionHighlight) displayVersion++;
+    }
+
+    /** Adds a tab showing every line that mentions the player, to window 0, and returns its id. */
+    public int addMentionsTab() {
+        int id = addTab();
+        TabProfile t = tab(id);
+        t.name = "Mentions";
+        t.expression = "type:mention";
+        filterVersion++;
+        save();
+        return id;
+    }
+
+    /** A date-divider row for the day of {@code msg}, positioned just before it. */
+    static ChatMessage dateSeparatorFor(ChatMessage msg) {
+        ChatMessage sep = new ChatMessage(msg.date, true);
+        sep.seq = msg.seq;
+        return sep;
+    }
+
+    public boolean messagePassesFilter(int tabId, ChatMessage msg) {
+        return messagePassesFilter(tabId, src -> filterFor(src).matches(msg));
+    }
+
+    /**
+     * As above, with the ordinary tabs' decisions for the message supplied by {@code ordinary}
+     * — e.g. ones ChatIngest's worker already made — so a derived tab costs no filter runs.
+     */
+    boolean messagePassesFilter(int tabId, IntPredicate ordinary) {
+        TabAlgebra derived = derivationFor(tabId);
+        if (derived != null) return derived.test(src -> isOrdinaryTab(src) && ordinary.test(src));
+        return ordinary.test(tabId);
+    }
+
     /**
      * Scans globalLog and builds the filtered, date-separated message list for one tab.
      * Called by ChatRenderer when the line cache needs rebuilding.
      */
-    public List<ChatMessage> buildFilteredHistory(int tabIdx) {
+    public List<ChatMessage> buildFilteredHistory(int tabId) {
         List<ChatMessage> result = new ArrayList<>();
+        if (derivationFor(tabId) != null) {
+            // Derived tab: read the positions straight out of the combined bitmap
+            String lastDate = null;
+            for (int i : membership(tabId).toArray()) {
+                ChatMessage msg = globalLog.get(i);
+                if (!msg.date.equals(lastDate)) {
+                    result.add(dateSeparatorFor(msg));
+                    lastDate = msg.date;
+                }
+                result.add(msg);
+            }
+            return result;
+        }
+        appendFilteredRange(tabId, result, 0, globalLog.size());
+        return result;
+    }
+
+    /**
+     * Filters globalLog[from, to) for one tab and appends the matches to {@code out},
+     * continuing the date-separator sequence already in it. Used to top up a history
+     * that was filtered from an older snapshot of the log.
+     */
+    public void appendFilteredRange(int tabId, List<ChatMessage> out, int from, int to) {
+        TabFilter filter = derivationFor(tabId) == null ? filterFor(tabId) : null;
+        long now = System.currentTimeMillis();
         String lastDate = null;
-        for (ChatMessage msg : globalLog) {
-            if (!messagePassesFilter(tabIdx, msg)) continue;
+        if (!out.isEmpty()) {
+            ChatMessage last = out.get(out.size() - 1);
+            lastDate = last.isDateSeparator ? last.text : last.date;
+        }
+        for (int i = from; i < to; i++) {
+            ChatMessage msg = globalLog.get(i);
+            if (filter != null ? !filter.matches(msg, now) : !messagePassesFilter(tabId, msg)) continue;
             // Insert a date separator when the date changes
             if (!msg.date.equals(lastDate)) {
-                result.add(new ChatMessage(msg.date, true));
+                out.add(dateSeparatorFor(msg));
                 lastDate = msg.date;
             }
-            result.add(msg);
+            out.add(msg);
         }
-        return result;
     }
 
     // -------------------------------------------------------------------------
     // Window helpers
     // -------------------------------------------------------------------------
 
-    /** Returns the index of the window that contains the given global tab index, or -1. */
-    public int windowIndexForTab(int globalTabIdx) {
+    /** Returns the index of the window that contains the given tab id, or -1. */
+    public int windowIndexForTab(int tabId) {
         for (int w = 0; w < windows.size(); w++) {
-            if (windows.get(w).tabIndices.contains(globalTabIdx)) return w;
+            if (windows.get(w).tabIds.contains(tabId)) return w;
         }
         return -1;
     }
@@ -432,16 +966,16 @@ public class ChatTabData {
      * Removes a tab from whichever window owns it and opens it in a new window
      * positioned at (spawnX, spawnY). Empty windows are removed automatically.
      */
-    public ChatWindowInstance detachTab(int globalTabIdx, int spawnX, int spawnY) {
+    public ChatWindowInstance detachTab(int tabId, int spawnX, int spawnY) {
         for (ChatWindowInstance win : windows) {
-            win.tabIndices.remove((Integer) globalTabIdx);
-            if (win.selectedLocalTab >= win.tabIndices.size()) win.selectedLocalTab = Math.max(0, win.tabIndices.size() - 1);
+            win.tabIds.remove((Integer) tabId);
+            if (win.selectedLocalTab >= win.tabIds.size()) win.selectedLocalTab = Math.max(0, win.tabIds.size() - 1);
         }
         for (int w = windows.size() - 1; w >= 0; w--) {
-            if (windows.get(w).tabIndices.isEmpty()) windows.remove(w);
+            if (windows.get(w).tabIds.isEmpty()) windows.remove(w);
         }
         ChatWindowInstance newWin = new ChatWindowInstance(spawnX, spawnY, windowWidth, windowHeight);
-        newWin.tabIndices.add(globalTabIdx);
+        newWin.tabIds.add(tabId);
         newWin.selectedLocalTab = 0;
         windows.add(newWin);
         save();
@@ -452,22 +986,22 @@ public class ChatTabData {
      * Moves a tab into an existing window. Removes it from its current window first.
      * Empty windows left behind are removed automatically.
      */
-    public void mergeTabIntoWindow(int globalTabIdx, int targetWindowIdx) {
+    public void mergeTabIntoWindow(int tabId, int targetWindowIdx) {
         ChatWindowInstance target = windows.get(targetWindowIdx);
-        if (target.tabIndices.contains(globalTabIdx)) return;
+        if (target.tabIds.contains(tabId)) return;
         for (ChatWindowInstance win : windows) {
-            win.tabIndices.remove((Integer) globalTabIdx);
-            if (win.selectedLocalTab >= win.tabIndices.size()) win.selectedLocalTab = Math.max(0, win.tabIndices.size() - 1);
+            win.tabIds.remove((Integer) tabId);
+            if (win.selectedLocalTab >= win.tabIds.size()) win.selectedLocalTab = Math.max(0, win.tabIds.size() - 1);
         }
         for (int w = windows.size() - 1; w >= 0; w--) {
-            if (windows.get(w).tabIndices.isEmpty()) windows.remove(w);
+            if (windows.get(w).tabIds.isEmpty()) windows.remove(w);
         }
         int newTargetIdx = windows.indexOf(target);
         if (newTargetIdx == -1) newTargetIdx = 0;
         if (newTargetIdx < windows.size()) {
-            windows.get(newTargetIdx).tabIndices.add(globalTabIdx);
+            windows.get(newTargetIdx).tabIds.add(tabId);
         } else {
-            if (!windows.isEmpty()) windows.get(0).tabIndices.add(globalTabIdx);
+            if (!windows.isEmpty()) windows.get(0).tabIds.add(tabId);
         }
         save();
     }
@@ -487,6 +1021,7 @@ public class ChatTabData {
         colorFadeTopBar = "000000";     opacFadeTopBar     = 0;
         colorFadeBackground = "000000"; opacFadeBackground = 0;
         colorWindowBorder = "4E9EFF";   opacWindowBorder   = 180;
+        colorMention = "FFAA00";        opacMention        = 80;
         showNotifications = true; soundNotifications = true; windowsNotifications = false;
         save();
     }
@@ -519,7 +1054,8 @@ public class ChatTabData {
             }
             // Auto-responses
             for (AutoResponseEntry ar : autoResponses) {
-                writer.println("AUTORESPONSE:" + ar.trigger.replace("|","§p") + "|" + ar.response.replace("|","§p"));
+                writer.println("AUTORESPONSE:" + ar.trigger.replace("|","§p") + "|" + ar.response.replace("|","§p")
+                    + "|" + ar.sender.replace("|","§p") + "|" + ar.tabId + "|" + ar.cooldownSeconds);
             }
             writer.println("DISPLAY2:" + fontSizeEnabled
                 + "," + String.format(Locale.US, "%.2f", fontSize)
@@ -527,53 +1063,192 @@ public class ChatTabData {
                 + "," + messageCombining
                 + "," + fontTabsEnabled + "," + fontNameTabs.replace(",","|") + "," + String.format(Locale.US, "%.2f", fontSizeTabs)
                 + "," + fontTimestampsEnabled + "," + fontNameTimestamps.replace(",","|") + "," + String.format(Locale.US, "%.2f", fontSizeTimestamps)
-                + "," + stripPlayerBrackets);
+                + "," + stripPlayerBrackets + "," + combineWindowSeconds);
             // Save muted players: name=expiryMs (Long.MAX_VALUE = permanent)
             for (Map.Entry<String, Long> e : mutedPlayers.entrySet()) {
                 writer.println("MUTE:" + e.getKey().replace(",", "|") + "," + e.getValue());
             }
+            writer.println("FLOOD:" + floodProtection + "," + floodSenderLimit + "," + floodGlobalLimit);
+            // MENTIONS:highlight,ping,colour,opacity|aliases|watch words
+            writer.println("MENTIONS:" + mentionHighlight + "," + mentionPing + "," + colorMention + "," + opacMention
+                    + "|" + mentionAliases.replace("|","§p") + "|" + mentionWords.replace("|","§p"));
+            // Chat-format overrides: SERVER_PROFILE:host,PROFILE
+            for (Map.Entry<String, String> e : serverProfiles.entrySet()) {
+                writer.println("SERVER_PROFILE:" + e.getKey() + "," + e.getValue());
+            }
             // Save extra windows (window 0 is saved via POS above)
             for (int w = 1; w < windows.size(); w++) {
                 ChatWindowInstance win = windows.get(w);
                 StringBuilder sb = new StringBuilder("WINDOW:");
                 sb.append(win.x).append(",").append(win.y).append(",").append(win.width).append(",").append(win.height).append(",").append(win.selectedLocalTab);
-                for (int idx : win.tabIndices) sb.append(",T").append(idx);
+                for (int idx : win.tabIds) sb.append(",T").append(idx);
                 writer.println(sb.toString());
             }
             // Save primary window tab assignment
             StringBuilder sb0 = new StringBuilder("WINDOW_PRIMARY:");
             sb0.append(windows.isEmpty() ? 0 : windows.get(0).selectedLocalTab);
-            for (int idx : (windows.isEmpty() ? Collections.<Integer>emptyList() : windows.get(0).tabIndices)) sb0.append(",T").append(idx);
+            for (int idx : (windows.isEmpty() ? Collections.<Integer>emptyList() : windows.get(0).tabIds)) sb0.append(",T").append(idx);
             writer.println(sb0.toString());
 
-            for (int i = 0; i < tabs.size(); i++) {
-                String filter    = tabFilters.getOrDefault(i, "");
-                String exclusion = tabExclusions.getOrDefault(i, "");
-                boolean serverMsgs  = serverMessageFilters.getOrDefault(i, false);
-                boolean incAll      = includeAllFilters.getOrDefault(i, false);
-                boolean incCmd      = includeCommandsFilters.getOrDefault(i, false);
-                boolean incPlayers  = includePlayersFilters.getOrDefault(i, false);
-                boolean incCmdResp  = includeCommandResponseFilters.getOrDefault(i, false);
-                boolean sentByMe    = sentByMeFilters.getOrDefault(i, false);
-                String pre = tabPrefixes.getOrDefault(i, "");
-                String suf = tabSuffixes.getOrDefault(i, "");
-                writer.println("TAB_V8:" + tabs.get(i) + "|" + filter + "|" + exclusion + "|" + serverMsgs + "|" + incAll + "|" + incCmd + "|" + pre + "|" + suf + "|" + incPlayers + "|" + incCmdResp + "|" + sentByMe);
+            for (TabProfile t : tabs) {
+                // Regex keywords may contain '|' — escape it like the keybind and auto-response lines
+                writer.println("TAB_V8:" + t.name + "|" + t.filter.replace("|","§p") + "|" + t.exclusion.replace("|","§p")
+                        + "|" + t.includeServer + "|" + t.includeAll + "|" + t.includeCommands
+                        + "|" + t.prefix + "|" + t.suffix + "|" + t.includePlayers + "|" + t.includeCommandResponses
+                        + "|" + t.sentByMe + "|" + t.expression.replace("|","§p") + "|" + t.id
+                        + "|" + t.derivation.replace("|","§p"));
             }
             saveHistory();
         } catch (IOException e) { e.printStackTrace(); }
     }
 
-    /** Serialises globalLog to betterchat_logs.dat. */
-    private void saveHistory() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(logFile))) {
-            oos.writeObject(globalLog);
-        } catch (IOException e) { e.printStackTrace(); }
+    /**
+     * Serialises globalLog to betterchat_logs.dat and the membership bitmaps next to it.
+     * The snapshot is taken here, on the client thread; writing it goes to
+     * {@link #historyWriter} when one is set.
+     */
+    void saveHistory() {
+        HistorySnapshot snapshot = snapshotHistory();
+        if (historyWriter != null) historyWriter.accept(snapshot);
+        else snapshot.write();
+    }
+
+    /** Copies what saveHistory() writes: the log list and every membership bitmap still worth keeping. */
+    HistorySnapshot snapshotHistory() {
+        List<Map.Entry<Integer, Membership>> valid = new ArrayList<>();
+        for (Map.Entry<Integer, Membership> e : memberships.entrySet()) {
+            TabProfile t = tab(e.getKey());
+            Membership m = e.getValue();
+            if (t != null && !t.isDerived() && !readsModPredicates(t)
+                    && m.covered <= globalLog.size() && m.rulesHash == rulesHash(t)) valid.add(e);
+        }
+        HistorySnapshot s = new HistorySnapshot(logFile, membershipFile, new ArrayList<>(globalLog), valid.size());
+        for (int i = 0; i < s.log.size(); i++) {
+            ChatMessage m = s.log.get(i);
+            s.groupIds[i] = m.groupId;
+            s.repeatCounts[i] = m.repeatCount;
+        }
+        for (int i = 0; i < valid.size(); i++) {
+            Membership m = valid.get(i).getValue();
+            s.tabIds[i]  = valid.get(i).getKey();
+            s.hashes[i]  = m.rulesHash;
+            s.covered[i] = m.covered;
+            s.bits[i]    = MessageBitmap.or(m.bits, new MessageBitmap()); // a copy; the live one keeps growing
+        }
+        return s;
+    }
+
+    /**
+     * globalLog and the membership bitmaps as they were at one moment, writable from any
+     * thread. The ChatMessages are shared with the live log rather than copied; the only
+     * fields still written after a message is appended are the combining counters, which
+     * MessageCombiner updates on the client thread while the worker writes. Those are
+     * copied here, and each message is written as a copy carrying them (see LogStream),
+     * so a save never holds a group that is half updated.
+     */
+    static final class HistorySnapshot {
+        private final File logFile, membershipFile;
+        private final List<ChatMessage> log;
+        private final int[] groupIds, repeatCounts; // per log position, as of the snapshot
+        private final int[] tabIds, covered;
+        private final long[] hashes;
+        private final MessageBitmap[] bits;
+
+        private HistorySnapshot(File logFile, File membershipFile, List<ChatMessage> log, int tabs) {
+            this.logFile = logFile; this.membershipFile = membershipFile; this.log = log;
+            this.groupIds = new int[log.size()]; this.repeatCounts = new int[log.size()];
+            this.tabIds = new int[tabs]; this.covered = new int[tabs];
+            this.hashes = new long[tabs]; this.bits = new MessageBitmap[tabs];
+        }
+
+        /**
+         * Writes the log with each message swapped, as it is reached, for a copy holding the
+         * snapshot's counters. The list writes its elements in order and holds no message
+         * twice, so the n-th message written is log position n. One copy is alive at a time.
+         */
+        private final class LogStream extends ObjectOutputStream {
+            private int next;
+
+            LogStream(OutputStream out) throws IOException {
+                super(out);
+                enableReplaceObject(true);
+            }
+
+            @Override
+            protected Object replaceObject(Object obj) {
+                if (!(obj instanceof ChatMessage)) return obj;
+                int i = next++;
+                return ((ChatMessage) obj).withCounters(groupIds[i], repeatCounts[i]);
+            }
+        }
+
+        /**
+         * Writes both files; false if the log could not be written. Two snapshots never write
+         * at once (the worker and a shutdown flush may race).
+         */
+        boolean write() {
+            synchronized (HistorySnapshot.class) {
+                boolean written = false;
+                try (ObjectOutputStream oos = new LogStream(new BufferedOutputStream(new FileOutputStream(logFile)))) {
+                    oos.writeObject(log);
+                    written = true;
+                } catch (IOException e) { e.printStackTrace(); }
+                writeMemberships();
+                return written;
+            }
+        }
+
+        /** Lines of the log this snapshot holds. */
+        int size() { return log.size(); }
+
+        /**
+         * Writes the membership bitmaps to betterchat_membership.dat. The file is only a cache:
+         * load() keeps a bitmap only if the log length and the tab's rules hash still match.
+         */
+        private void writeMemberships() {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(membershipFile)))) {
+                out.writeInt(MEMBERSHIP_MAGIC);
+                out.writeInt(log.size());
+                out.writeInt(tabIds.length);
+                for (int i = 0; i < tabIds.length; i++) {
+                    out.writeInt(tabIds[i]);
+                    out.writeLong(hashes[i]);
+                    out.writeInt(covered[i]);
+                    bits[i].writeTo(out);
+                }
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+    }
+
+    /** Restores the bitmaps saved with this exact log; anything that doesn't line up is rebuilt on demand. */
+    private void loadMemberships() {
+        memberships.clear();
+        derivedMemberships.clear();
+        cancelMembershipJobs();
+        if (!membershipFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(membershipFile)))) {
+            if (in.readInt() != MEMBERSHIP_MAGIC || in.readInt() != globalLog.size()) return;
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                int id = in.readInt();
+                long hash = in.readLong();
+                int covered = in.readInt();
+                MessageBitmap bits = MessageBitmap.readFrom(in);
+                TabProfile t = tab(id);
+                if (t == null || t.isDerived() || covered > globalLog.size() || hash != rulesHash(t)) continue;
+                Membership m = new Membership(bits, hash, filterVersion);
+                m.covered = covered;
+                memberships.put(id, m);
+            }
+        } catch (IOException e) {
+            memberships.clear(); // a torn write just means rebuilding
+        }
     }
 
     /** Reads betterchat.txt and betterchat_logs.dat, populating all fields and windows. */
     @SuppressWarnings("unchecked")
     public void load() {
-        tabs.clear(); windows.clear();
+        tabs.clear(); tabsById.clear(); nextTabId = 0; windows.clear();
         List<String[]> pendingWindows = new ArrayList<>();
         String[] primaryWindowRaw = null;
 
@@ -633,10 +1308,19 @@ public class ChatTabData {
                             } catch (Exception ignored) {}
                         }
                     } else if (line.startsWith("AUTORESPONSE:")) {
-                        String[] p = line.substring(13).split("\\|", 2);
-                        if (p.length == 2) {
-                            autoResponses.add(new AutoResponseEntry(
-                                p[0].replace("§p","|"), p[1].replace("§p","|")));
+                        // trigger|response[|sender|tabId|cooldown]
+                        String[] p = line.substring(13).split("\\|", -1);
+                        if (p.length >= 2) {
+                            AutoResponseEntry ar = new AutoResponseEntry(
+                                p[0].replace("§p","|"), p[1].replace("§p","|"));
+                            if (p.length >= 5) {
+                                ar.sender = p[2].replace("§p","|");
+                                try {
+                                    ar.tabId           = Integer.parseInt(p[3]);
+                                    ar.cooldownSeconds = Integer.parseInt(p[4]);
+                                } catch (NumberFormatException ignored) {}
+                            }
+                            autoResponses.add(ar);
                         }
                     } else if (line.startsWith("DISPLAY2:")) {
                         String[] d = line.substring(9).split(",");
@@ -652,6 +1336,7 @@ public class ChatTabData {
                         if (d.length >= 10) fontNameTimestamps   = d[9].replace("|", ",");
                         if (d.length >= 11) { try { fontSizeTimestamps = Float.parseFloat(d[10]); } catch (Exception ignored) {} }
                         if (d.length >= 12) stripPlayerBrackets = Boolean.parseBoolean(d[11]);
+                        if (d.length >= 13) { try { combineWindowSeconds = Math.max(1, Integer.parseInt(d[12].trim())); } catch (NumberFormatException ignored) {} }
                     } else if (line.startsWith("DISPLAY:")) {
                         // Legacy format — read what we can
                         String[] d = line.substring(8).split(",");
@@ -667,58 +1352,75 @@ public class ChatTabData {
                                 String name = m[0].replace("|", ",");
                                 long exp = Long.parseLong(m[1]);
                                 mutedPlayers.put(name, exp);
+                                if (exp != Long.MAX_VALUE) muteExpiries.add(new MuteExpiry(name, exp));
                             } catch (Exception ignored) {}
                         }
+                    } else if (line.startsWith("FLOOD:")) {
+                        String[] fl = line.substring(6).split(",");
+                        floodProtection = Boolean.parseBoolean(fl[0]);
+                        if (fl.length >= 3) {
+                            try {
+                                floodSenderLimit = Math.max(1, Integer.parseInt(fl[1].trim()));
+                                floodGlobalLimit = Math.max(1, Integer.parseInt(fl[2].trim()));
+                            } catch (NumberFormatException ignored) {}
+                        }
+                    } else if (line.startsWith("MENTIONS:")) {
+                        String[] p = line.substring(9).split("\\|", -1);
+                        String[] f = p[0].split(",");
+                        if (f.length >= 1) mentionHighlight = Boolean.parseBoolean(f[0]);
+                        if (f.length >= 2) mentionPing      = Boolean.parseBoolean(f[1]);
+                        if (f.length >= 3) colorMention     = f[2];
+                        if (f.length >= 4) { try { opacMention = Integer.parseInt(f[3].trim()); } catch (NumberFormatException ignored) {} }
+                        if (p.length >= 2) mentionAliases = p[1].replace("§p","|");
+                        if (p.length >= 3) mentionWords   = p[2].replace("§p","|");
+                    } else if (line.startsWith("SERVER_PROFILE:")) {
+                        String[] sp = line.substring(15).split(",");
+                        if (sp.length == 2 && MessageClassifier.byName(sp[1].trim()) != null)
+                            serverProfiles.put(sp[0].trim().toLowerCase(Locale.ROOT), sp[1].trim().toUpperCase(Locale.ROOT));
                     } else if (line.startsWith("WINDOW_PRIMARY:")) {
                         primaryWindowRaw = line.substring(15).split(",");
                     } else if (line.startsWith("WINDOW:")) {
                         pendingWindows.add(line.substring(7).split(","));
                     } else if (line.startsWith("TAB_V8:")) {
                         String[] parts = line.substring(7).split("\\|");
-                        tabs.add(parts[0]); int idx = tabs.size() - 1;
-                        if (parts.length > 1) tabFilters.put(idx, parts[1]);
-                        if (parts.length > 2) tabExclusions.put(idx, parts[2]);
-                        if (parts.length > 3) serverMessageFilters.put(idx, Boolean.parseBoolean(parts[3]));
-                        if (parts.length > 4) includeAllFilters.put(idx, Boolean.parseBoolean(parts[4]));
-                        if (parts.length > 5) includeCommandsFilters.put(idx, Boolean.parseBoolean(parts[5]));
-                        if (parts.length > 6) tabPrefixes.put(idx, parts[6]);
-                        if (parts.length > 7) tabSuffixes.put(idx, parts[7]);
-                        if (parts.length > 8) includePlayersFilters.put(idx, Boolean.parseBoolean(parts[8]));
-                        if (parts.length > 9) includeCommandResponseFilters.put(idx, Boolean.parseBoolean(parts[9]));
-                        // TAB_V8: sentByMeFilters was reliably saved — trust the stored value
-                        sentByMeFilters.put(idx, parts.length > 10 ? Boolean.parseBoolean(parts[10]) : true);
+                        // Field 12 is the tab's id; older saves have none, so the position stands in
+                        // (their WINDOW lines list positions, which then resolve to the same tabs)
+                        int id = tabs.size();
+                        if (parts.length > 12) { try { id = Integer.parseInt(parts[12]); } catch (NumberFormatException ignored) {} }
+                        TabProfile t = loadTab(parts, id);
+                        if (parts.length > 1) t.filter    = parts[1].replace("§p","|");
+                        if (parts.length > 2) t.exclusion = parts[2].replace("§p","|");
+                        // TAB_V8: sentByMe was reliably saved — trust the stored value
+                        t.sentByMe = parts.length > 10 ? Boolean.parseBoolean(parts[10]) : true;
+                        if (parts.length > 11) t.expression = parts[11].replace("§p","|");
+                        if (parts.length > 13) t.derivation = parts[13].replace("§p","|");
                     } else if (line.startsWith("TAB_V7:") || line.startsWith("TAB_V6:")) {
                         String[] parts = line.substring(7).split("\\|");
-                        tabs.add(parts[0]); int idx = tabs.size() - 1;
-                        if (parts.length > 1) tabFilters.put(idx, parts[1]);
-                        if (parts.length > 2) tabExclusions.put(idx, parts[2]);
-                        if (parts.length > 3) serverMessageFilters.put(idx, Boolean.parseBoolean(parts[3]));
-                        if (parts.length > 4) includeAllFilters.put(idx, Boolean.parseBoolean(parts[4]));
-                        if (parts.length > 5) includeCommandsFilters.put(idx, Boolean.parseBoolean(parts[5]));
-                        if (parts.length > 6) tabPrefixes.put(idx, parts[6]);
-                        if (parts.length > 7) tabSuffixes.put(idx, parts[7]);
-                        if (parts.length > 8) includePlayersFilters.put(idx, Boolean.parseBoolean(parts[8]));
-                        if (parts.length > 9) includeCommandResponseFilters.put(idx, Boolean.parseBoolean(parts[9]));
-                        // TAB_V7: sentByMeFilters was never reliably set by the old code — always default ON
-                        sentByMeFilters.put(idx, true);
+                        TabProfile t = loadTab(parts, tabs.size());
+                        if (parts.length > 1) t.filter    = parts[1];
+                        if (parts.length > 2) t.exclusion = parts[2];
+                        // TAB_V7: sentByMe was never reliably set by the old code — always default ON
+                        t.sentByMe = true;
                     }
                 }
             } catch (Exception e) { e.printStackTrace(); }
         }
 
-        if (tabs.isEmpty()) tabs.add("Global");
-        for (int i = 0; i < tabs.size(); i++) scrollOffsets.put(i, 0);
+        if (tabs.isEmpty()) registerTab(new TabProfile(nextTabId, "Global"));
 
         ChatWindowInstance primary = new ChatWindowInstance(windowX, windowY, windowWidth, windowHeight);
         if (primaryWindowRaw != null) {
             try { primary.selectedLocalTab = Integer.parseInt(primaryWindowRaw[0]); } catch (Exception ignored) {}
             for (int i = 1; i < primaryWindowRaw.length; i++) {
                 if (primaryWindowRaw[i].startsWith("T")) {
-                    try { primary.tabIndices.add(Integer.parseInt(primaryWindowRaw[i].substring(1))); } catch (Exception ignored) {}
+                    try {
+                        int id = Integer.parseInt(primaryWindowRaw[i].substring(1));
+                        if (tabsById.containsKey(id)) primary.tabIds.add(id);
+                    } catch (Exception ignored) {}
                 }
             }
         }
-        if (primary.tabIndices.isEmpty()) for (int i = 0; i < tabs.size(); i++) primary.tabIndices.add(i);
+        if (primary.tabIds.isEmpty()) for (TabProfile t : tabs) primary.tabIds.add(t.id);
         windows.add(primary);
 
         for (String[] parts : pendingWindows) {
@@ -730,14 +1432,14 @@ public class ChatTabData {
                 win.selectedLocalTab = sel;
                 for (int i = 5; i < parts.length; i++) {
                     if (parts[i].startsWith("T")) {
-                        int tabIdx = Integer.parseInt(parts[i].substring(1));
-                        if (tabIdx < tabs.size()) {
-                            win.tabIndices.add(tabIdx);
-                            primary.tabIndices.remove((Integer) tabIdx);
+                        int id = Integer.parseInt(parts[i].substring(1));
+                        if (tabsById.containsKey(id)) {
+                            win.tabIds.add(id);
+                            primary.tabIds.remove((Integer) id);
                         }
                     }
                 }
-                if (!win.tabIndices.isEmpty()) windows.add(win);
+                if (!win.tabIds.isEmpty()) windows.add(win);
             } catch (Exception e) { e.printStackTrace(); }
         }
 
@@ -763,85 +1465,133 @@ public class ChatTabData {
                 }
             } catch (Exception e) { e.printStackTrace(); }
         }
+        reindexHistory();
+        loadMemberships();
+    }
+
+    /** Appends a message to globalLog and indexes it. Use this rather than globalLog.add(). */
+    public void appendMessage(ChatMessage msg) {
+        msg.seq = globalLog.size();
+        globalLog.add(msg);
+        senderIndex.add(msg.senderId, msg.seq);
+    }
+
+    /**
+     * Appends a message whose ordinary-tab decisions are known, and extends every
+     * up-to-date membership bitmap with them instead of re-running the filters later.
+     */
+    void appendMessage(ChatMessage msg, IntPredicate ordinary) {
+        appendMessage(msg);
+        for (Map.Entry<Integer, Membership> e : memberships.entrySet()) {
+            Membership m = e.getValue();
+            // Stale, behind or orphaned: currentMembership() catches up (or drops it) on next use
+            if (m.filterVersion != filterVersion || m.covered != msg.seq || !isOrdinaryTab(e.getKey())) continue;
+            if (ordinary.test(e.getKey())) m.bits.add(msg.seq);
+            m.covered = msg.seq + 1;
+        }
+    }
+
+    /** Re-derives positions, the sender index and the repeat-group chains after globalLog is replaced. */
+    private void reindexHistory() {
+        senderIndex.clear();
+        Map<Integer, ChatMessage> groupTails = new HashMap<>();
+        for (int i = 0; i < globalLog.size(); i++) {
+            ChatMessage m = globalLog.get(i);
+            m.seq = i;
+            senderIndex.add(m.senderId, i);
+            m.prevInGroup = m.nextInGroup = -1;
+            if (m.isDateSeparator || m.groupId == 0) continue;
+            ChatMessage prev = groupTails.put(m.groupId, m);
+            if (prev != null) {
+                prev.nextInGroup = i;
+                m.prevInGroup = prev.seq;
+            }
+        }
     }
 
     // -------------------------------------------------------------------------
     // Tab management
     // -------------------------------------------------------------------------
 
-    /** Adds a new blank tab to window 0 and saves. */
-    public void addTab() {
-        tabs.add("New Tab"); int idx = tabs.size() - 1;
-        tabFilters.put(idx, "");
-        tabExclusions.put(idx, "");
-        serverMessageFilters.put(idx, true);
-        includeAllFilters.put(idx, false);
-        includeCommandsFilters.put(idx, true);
-        includePlayersFilters.put(idx, true);
-        includeCommandResponseFilters.put(idx, true);
-        sentByMeFilters.put(idx, true);
-        scrollOffsets.put(idx, 0);
-        if (!windows.isEmpty()) windows.get(0).tabIndices.add(idx);
+    /** The tab with this id, or null if it has been deleted. */
+    public TabProfile tab(int id) {
+        return tabsById.get(id);
+    }
+
+    private void registerTab(TabProfile t) {
+        tabs.add(t);
+        tabsById.put(t.id, t);
+        nextTabId = Math.max(nextTabId, t.id + 1);
+    }
+
+    /** Reads the fields TAB_V6 to TAB_V8 share; a duplicate or bad id gets a fresh one. */
+    private TabProfile loadTab(String[] parts, int id) {
+        TabProfile t = new TabProfile(id < 0 || tabsById.containsKey(id) ? nextTabId : id, parts[0]);
+        if (parts.length > 3) t.includeServer           = Boolean.parseBoolean(parts[3]);
+        if (parts.length > 4) t.includeAll              = Boolean.parseBoolean(parts[4]);
+        if (parts.length > 5) t.includeCommands         = Boolean.parseBoolean(parts[5]);
+        if (parts.length > 6) t.prefix                  = parts[6];
+        if (parts.length > 7) t.suffix                  = parts[7];
+        if (parts.length > 8) t.includePlayers          = Boolean.parseBoolean(parts[8]);
+        if (parts.length > 9) t.includeCommandResponses = Boolean.parseBoolean(parts[9]);
+        registerTab(t);
+        return t;
+    }
+
+    /** Adds a new blank tab to window 0, saves, and returns its id. */
+    public int addTab() {
+        TabProfile t = new TabProfile(nextTabId, "New Tab");
+        t.includeServer           = true;
+        t.includeCommands         = true;
+        t.includePlayers          = true;
+        t.includeCommandResponses = true;
+        t.sentByMe                = true;
+        registerTab(t);
+        if (!windows.isEmpty()) windows.get(0).tabIds.add(t.id);
         save();
+        return t.id;
     }
 
     /**
-     * Deletes a tab by global index. Removes it from all windows, shifts indices
-     * for tabs that came after it, and saves.
+     * Deletes a tab by id, removes it from all windows, and saves. Other tabs keep their
+     * ids, so their settings, compiled filters and line caches stay valid.
      */
-    public void deleteTab(int globalIdx) {
-        if (tabs.size() <= 1 || globalIdx < 0 || globalIdx >= tabs.size()) return;
-        tabs.remove(globalIdx);
-        // Remove from all windows and remap indices > globalIdx
+    public void deleteTab(int tabId) {
+        TabProfile t = tabsById.get(tabId);
+        if (tabs.size() <= 1 || t == null) return;
+        tabs.remove(t);
+        tabsById.remove(tabId);
+        compiledFilters.remove(tabId);
+        compiledDerivations.remove(tabId);
+        memberships.remove(tabId);
+        derivedMemberships.remove(tabId);
+        ParallelHistoryFilter.MembershipJob job = membershipJobs.remove(tabId);
+        if (job != null) job.cancel();
+        filterMetrics.remove(tabId);
+        // A derived tab that read this one now sees it as empty — its caches must rebuild
+        for (TabProfile other : tabs) {
+            TabAlgebra a = derivationFor(other.id);
+            if (a != null && a.reads(tabId)) { filterVersion++; break; }
+        }
         for (ChatWindowInstance win : windows) {
-            win.tabIndices.remove((Integer) globalIdx);
-            for (int i = 0; i < win.tabIndices.size(); i++) {
-                if (win.tabIndices.get(i) > globalIdx) win.tabIndices.set(i, win.tabIndices.get(i) - 1);
-            }
-            if (win.selectedLocalTab >= win.tabIndices.size()) win.selectedLocalTab = Math.max(0, win.tabIndices.size() - 1);
+            win.tabIds.remove((Integer) tabId);
+            if (win.selectedLocalTab >= win.tabIds.size()) win.selectedLocalTab = Math.max(0, win.tabIds.size() - 1);
         }
         for (int w = windows.size() - 1; w >= 0; w--) {
-            if (windows.get(w).tabIndices.isEmpty()) windows.remove(w);
+            if (windows.get(w).tabIds.isEmpty()) windows.remove(w);
         }
         if (windows.isEmpty()) {
             ChatWindowInstance primary = new ChatWindowInstance(windowX, windowY, windowWidth, windowHeight);
-            if (!tabs.isEmpty()) primary.tabIndices.add(0);
+            primary.tabIds.add(tabs.get(0).id);
             windows.add(primary);
         }
-        rebuildSettingMapsAfterDeletion(globalIdx);
         save();
     }
 
-    /** After a tab is deleted, shifts all per-tab setting maps down by one from removedIdx. */
-    private void rebuildSettingMapsAfterDeletion(int removedIdx) {
-        int size = tabs.size() + 1; // tabs already shrank, so +1 is the old size
-        for (int i = removedIdx; i < size - 1; i++) {
-            tabFilters.put(i, tabFilters.getOrDefault(i + 1, ""));
-            tabExclusions.put(i, tabExclusions.getOrDefault(i + 1, ""));
-            serverMessageFilters.put(i, serverMessageFilters.getOrDefault(i + 1, false));
-            includeAllFilters.put(i, includeAllFilters.getOrDefault(i + 1, false));
-            includeCommandsFilters.put(i, includeCommandsFilters.getOrDefault(i + 1, false));
-            includePlayersFilters.put(i, includePlayersFilters.getOrDefault(i + 1, false));
-            includeCommandResponseFilters.put(i, includeCommandResponseFilters.getOrDefault(i + 1, false));
-            sentByMeFilters.put(i, sentByMeFilters.getOrDefault(i + 1, true));
-            tabPrefixes.put(i, tabPrefixes.getOrDefault(i + 1, ""));
-            tabSuffixes.put(i, tabSuffixes.getOrDefault(i + 1, ""));
-            scrollOffsets.put(i, scrollOffsets.getOrDefault(i + 1, 0));
-            tabNotifications.put(i, tabNotifications.getOrDefault(i + 1, false));
-        }
-        int last = size - 1;
-        tabFilters.remove(last); tabExclusions.remove(last);
-        serverMessageFilters.remove(last); includeAllFilters.remove(last);
-        includeCommandsFilters.remove(last); includePlayersFilters.remove(last);
-        includeCommandResponseFilters.remove(last); sentByMeFilters.remove(last);
-        tabPrefixes.remove(last); tabSuffixes.remove(last);
-        scrollOffsets.remove(last); tabNotifications.remove(last);
-    }
-
     /** Swaps two tabs within the same window by their local indices. */
     public void swapTabsInWindow(ChatWindowInstance win, int localA, int localB) {
-        if (localA < 0 || localB < 0 || localA >= win.tabIndices.size() || localB >= win.tabIndices.size()) return;
-        Collections.swap(win.tabIndices, localA, localB);
+        if (localA < 0 || localB < 0 || localA >= win.tabIds.size() || localB >= win.tabIds.size()) return;
+        Collections.swap(win.tabIds, localA, localB);
         save();
     }
 }
@@ -5,6 +5,7 @@ import net.minecraft.client.gui.Gui;
 import net.minecraft.client.gui.GuiChat;
 import net.minecraft.client.gui.GuiTextField;
 import net.minecraft.client.gui.ScaledResolution;
+import net.minecraft.client.multiplayer.ServerData;
 import org.lwjgl.opengl.GL11;
 import net.minecraftforge.client.event.ClientChatReceivedEvent;
 import net.minecraftforge.client.event.GuiOpenEvent;
@@ -12,17 +13,19 @@ import net.minecraftforge.client.event.GuiScreenEvent;
 import net.minecraftforge.client.event.RenderGameOverlayEvent;
 import net.minecraftforge.fml.common.eventhandler.EventPriority;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
 
 import java.util.*;
+import java.util.function.IntPredicate;
 
 /**
  * The main Forge event handler for BetterChat.
  * Wires together all the other classes and owns the UI interaction state.
  *
  * What it does:
- *  - Receives incoming chat messages and adds them to ChatTabData.
+ *  - Queues incoming chat messages for ChatIngest and applies them once per frame.
  *  - Tracks window drag, resize, tab drag, and scroll bar drag state.
  *  - Draws every chat window each frame, delegating message rendering to ChatRenderer.
  *  - Routes mouse clicks to the right window (tabs, scroll, chat links, settings).
@@ -35,18 +38,20 @@ public class ChatTabHandler {
     private final ChatTabData      data      = new ChatTabData();
     private final ChatSettingsGui  settings  = new ChatSettingsGui(data);
     private final ChatRenderer     renderer  = new ChatRenderer(data);
-    private final ChatInputHandler input     = new ChatInputHandler(data);
+    private final OutgoingChatQueue outgoing = new OutgoingChatQueue();
+    private final ChatInputHandler input     = new ChatInputHandler(data, outgoing, this::onCommandLogged);
+    private final ChatIngest       ingest    = new ChatIngest(data, outgoing);
 
     // ── UI state ──────────────────────────────────────────────────────────────
-    private int          editingTabGlobalIndex    = -1;  // tab currently being renamed, or -1
-    private int          pendingDeleteGlobalIndex = -1;  // tab awaiting a second right-click to delete
+    private int          editingTabId    = -1;  // tab currently being renamed, or -1
+    private int          pendingDeleteTabId = -1;  // tab awaiting a second right-click to delete
     private boolean      isSettingsOpen           = false;
     private boolean      wasChatOpen              = false;
     private GuiTextField renameField, customChatField;
     /** Last text we pushed into the vanilla field — used to detect tab-autocomplete mutations. */
     private String       lastSentToVanilla = "";
     private long         lastClickTime            = 0;
-    private int          lastClickedGlobalIndex   = -1;
+    private int          lastClickedTabId   = -1;
 
     // ── Window drag / resize ──────────────────────────────────────────────────
     private int draggingWindowIndex = -1;     // index of the window being moved, or -1
@@ -55,7 +60,7 @@ public class ChatTabHandler {
 
     // ── Tab drag ──────────────────────────────────────────────────────────────
     private boolean                        isDraggingTab           = false;
-    private int                            draggingTabGlobalIndex  = -1;
+    private int                            draggingTabId  = -1;
     private ChatTabData.ChatWindowInstance draggingTabSourceWindow = null;
     private int                            dragTabVisualX = 0, dragTabVisualY = 0;
     private int                            dragTabMouseOffsetX     = 0;
@@ -68,7 +73,7 @@ public class ChatTabHandler {
     private String  playerMenuName      = "";
     private int     playerMenuX         = 0, playerMenuY = 0;
     private static final int PM_W = 130, PM_ROW = 16;
-    private static final String[] PM_LABELS = {"Temp Mute (10 min)", "Perma Mute"};
+    private static final String[] PM_LABELS = {"Temp Mute (10 min)", "Perma Mute", "Messages from Player"};
     // Latch so we only trigger the menu once per right-click press
     private boolean rightClickWasDown   = false;
     // Counts frames since menu opened — ignore dismiss clicks for the first few frames.
@@ -97,8 +102,8 @@ public class ChatTabHandler {
     private void clampWindowToScreen(ChatTabData.ChatWindowInstance win, ScaledResolution sr) {
         int screenW = sr.getScaledWidth(), screenH = sr.getScaledHeight();
         int requiredWidth = 5;
-        for (int idx : win.tabIndices)
-            requiredWidth += Minecraft.getMinecraft().fontRendererObj.getStringWidth(data.tabs.get(idx)) + 18 + 4;
+        for (int id : win.tabIds)
+            requiredWidth += Minecraft.getMinecraft().fontRendererObj.getStringWidth(data.tab(id).name) + 18 + 4;
         requiredWidth += 45; // [+] + gear
         if (win.width  < requiredWidth) win.width  = requiredWidth;
         if (win.height < 50)            win.height = 50;
@@ -132,7 +137,7 @@ public class ChatTabHandler {
                 if (pressed) {
                     if (!keybindLatch.getOrDefault(kb, false)) {
                         keybindLatch.put(kb, true);
-                        if (mc.thePlayer != null) mc.thePlayer.sendChatMessage(kb.message);
+                        if (mc.thePlayer != null) outgoing.send(kb.message, OutgoingChatQueue.Priority.KEYBIND, null);
                     }
                 } else {
                     keybindLatch.put(kb, false);
@@ -205,166 +210,155 @@ public class ChatTabHandler {
             event.setCanceled(true);
     }
 
+    // -------------------------------------------------------------------------
+    // Client tick
+    // -------------------------------------------------------------------------
+
+    @SubscribeEvent
+    public void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+        // Temp mutes end here, not lazily mid-filter; the renderer patches the lines back in
+        data.expireMutes(System.currentTimeMillis());
+    }
+
     // -------------------------------------------------------------------------
     // Chat received
     // -------------------------------------------------------------------------
 
+    /**
+     * Only queues the line: classification, filtering and saving happen on ChatIngest's
+     * worker, and the result is applied by onMessagesIngested() on the next frame.
+     */
     @SubscribeEvent
     public void onChatReceived(ClientChatReceivedEvent event) {
-        String plain   = event.message.getUnformattedText();
-        String formatted = event.message.getFormattedText();
-        data.playerName = Minecraft.getMinecraft().thePlayer.getName();
-
-        boolean isLocal           = plain.startsWith("<" + data.playerName + ">") || plain.startsWith(data.playerName + ":");
-        // isOtherPlayer: ONLY the strict <Name> text format where Name is a valid MC username.
-        // We match "<" + 1-16 word chars + ">" at the start, then exclude our own name.
-        // This prevents server messages with angle brackets (e.g. "<Usage: /give <player>>",
-        // "<red>some text") from being misclassified as player chat.
-        boolean isOtherPlayer     = !isLocal
-                && java.util.regex.Pattern.compile("^<\\w{1,16}>\\s").matcher(plain).find()
-                && !plain.startsWith("<" + data.playerName + ">");
-        // Command responses: any non-local, non-player-chat message that arrives while the
-        // player is in command-response mode (set by sending "/" commands, cleared by normal chat).
-        boolean isCommandResponse = !isLocal && !isOtherPlayer && input.isWithinCommandResponseWindow();
-        // isCommand is for player-sent commands injected directly into the log (never echoed by server).
-        boolean isCommand         = plain.startsWith("/");
-
-        ChatTabData.ChatMessage msg = new ChatTabData.ChatMessage(
-                formatted, false, event.message,
-                isLocal, isOtherPlayer, isCommand, isCommandResponse, plain);
-
-        // Message combining: always add the message to the log.
-        // If this message's plain text matches the last real message, assign them the same
-        // groupId so the renderer can collapse them into "<xN>" when combining is enabled.
-        // Toggling the setting only affects display — the full log is always preserved.
-        if (!data.globalLog.isEmpty()) {
-            for (int gi = data.globalLog.size() - 1; gi >= 0; gi--) {
-                ChatTabData.ChatMessage prev = data.globalLog.get(gi);
-                if (prev.isDateSeparator) continue;
-                if (prev.plainText != null && prev.plainText.equals(plain)) {
-                    // Determine the group id (reuse prev's group, or start a new one)
-                    int gid = (prev.groupId != 0) ? prev.groupId : (data.globalLog.size()); // unique id
-                    prev.groupId = gid;
-                    msg.groupId = gid;
-                    // repeatCount on the incoming message = how many in the group so far + 1
-                    msg.repeatCount = prev.repeatCount + 1;
-                    prev.repeatCount = msg.repeatCount; // keep in sync for cache-miss recovery
-                }
-                break; // only compare with the most recent real message
-            }
-        }
+        Minecraft mc = Minecraft.getMinecraft();
+        ServerData server = mc.getCurrentServerData();
+        ingest.submit(new ChatIngest.Received(event.message, mc.thePlayer.getName(),
+                server != null ? server.serverIP : null,
+                input.isWithinCommandResponseWindow(),
+                // Echo of the player's own send, and the tab they were typing in when they sent
+                (System.currentTimeMillis() - input.getLastPlayerSendTime()) <= ChatInputHandler.SEND_ECHO_DEBOUNCE_MS,
+                input.getLastSentFromTabId()), this::onMessagesIngested);
+    }
 
-        data.globalLog.add(msg);
+    /**
+     * Appends what the worker finished since the last frame, sends what the outgoing queue
+     * allows and shows a coalesced tray balloon once its window is over.
+     */
+    @SubscribeEvent
+    public void onRenderTick(TickEvent.RenderTickEvent event) {
+        if (event.phase != TickEvent.Phase.START) return;
+        ingest.drain(this::onMessagesIngested);
+        outgoing.pump();
+        data.notifications.pump(System.currentTimeMillis());
+    }
 
-        boolean withinDebounce = (System.currentTimeMillis() - input.getLastPlayerSendTime())
-                <= ChatInputHandler.SEND_ECHO_DEBOUNCE_MS;
-        // The tab the player was actively typing in when they sent (used for the echo exception)
-        int sentFromTab = input.getLastSentFromTabIndex();
+    /**
+     * One frame's received lines, already in the log. Each tab's line cache is extended
+     * once for the whole batch, and the HUD fade and sound fire at most once however many
+     * lines arrived (a minigame ending can deliver 200 in a tick). Tray balloons are
+     * coalesced across frames by NotificationService.
+     */
+    private void onMessagesIngested(List<ChatIngest.Ingested> batch) {
+        List<ChatTabData.ChatMessage> messages = new ArrayList<>(batch.size());
+        Map<Integer, List<ChatTabData.ChatMessage>> arrivals = new HashMap<>();
 
         boolean passedAnyTab        = false;
-        boolean passedBackgroundTab = false;
-        // Windows whose currently-selected tab received this message
+        boolean mentioned           = false;
+        long    now                 = System.currentTimeMillis();
+        // Balloons only while the game is in the background (no point alerting for visible messages)
+        boolean tray = data.showNotifications && data.windowsNotifications && !org.lwjgl.opengl.Display.isActive();
+        // Windows whose currently-selected tab received a line worth the HUD fade
         java.util.Set<ChatTabData.ChatWindowInstance> passedWindows = new java.util.HashSet<>();
-        for (int i = 0; i < data.tabs.size(); i++) {
-            boolean passes = data.messagePassesFilter(i, msg)
-                    || (isLocal && withinDebounce && i == sentFromTab);
-            if (passes) {
-                passedAnyTab = true;
-                renderer.lineCache.remove(i);
-                renderer.lineCacheHistorySize.put(i, -1);
+        final Minecraft mc = Minecraft.getMinecraft();
+
+        for (ChatIngest.Ingested in : batch) {
+            ChatTabData.ChatMessage msg = in.msg;
+            messages.add(msg);
+            BetterChatAPI.EVENTS.ingested(msg);
+            int[] routedTo = BetterChatAPI.EVENTS.hasSubscribers() ? new int[data.tabs.size()] : null;
+            int   routedCount = 0;
+            String  plain          = msg.plainText;
+            boolean isLocal        = msg.isLocal;
+            boolean withinDebounce = in.received.withinDebounce;
+            int     sentFromTab    = in.received.sentFromTab;
+            // For non-echo messages (or after debounce expires), trigger HUD/notifications.
+            // Lines shed by the flood governor never do.
+            boolean notify         = (!withinDebounce || !isLocal) && msg.floodBurst == 0;
+
+            boolean reachedTab = false;
+            java.util.Set<String> backgroundTabs = new java.util.LinkedHashSet<>();
+            for (TabProfile tab : data.tabs) {
+                int id = tab.id;
+                boolean filtered = data.messagePassesFilter(id, in.ordinary);
+                if (filtered) {
+                    arrivals.computeIfAbsent(id, k -> new ArrayList<>()).add(msg);
+                    if (routedTo != null) routedTo[routedCount++] = id;
+                }
+                if (!filtered && !(isLocal && withinDebounce && id == sentFromTab)) continue;
+                reachedTab = true;
                 for (ChatTabData.ChatWindowInstance win : data.windows) {
-                    if (win.tabIndices.contains(i)) {
-                        if (win.getSelectedGlobalIndex() == i) {
-                            passedWindows.add(win);
+                    if (win.tabIds.contains(id)) {
+                        if (win.getSelectedTabId() == id) {
+                            if (notify) passedWindows.add(win);
                         } else if (!isLocal) {
-                            data.tabNotifications.put(i, true);
-                            passedBackgroundTab = true;
+                            tab.unread = true;
+                            backgroundTabs.add(tab.name);
                         }
                     }
                 }
             }
+            if (routedTo != null) BetterChatAPI.EVENTS.routed(msg, java.util.Arrays.copyOf(routedTo, routedCount));
+            if (!notify) continue;
+            passedAnyTab |= reachedTab;
+            mentioned    |= msg.mentionSpans != null;
+            if (tray && !backgroundTabs.isEmpty()) data.notifications.tray(backgroundTabs, plain, now);
+
+            // ── Auto-responses (matched by the ingest worker, rate limited) ──
+            if (!isLocal) in.respond(ingest.responder, id -> data.messagePassesFilter(id, in.ordinary));
         }
 
-        long now = System.currentTimeMillis();
-        // For non-echo messages (or after debounce expires), trigger HUD/notifications.
-        if (!withinDebounce || !isLocal) {
-            // Set a fade entry only for windows whose selected tab actually received the message.
-            // This prevents windows that filtered the message out from rendering the HUD
-            // overlay (which previously caused a solid-white flash on those windows).
-            if (!passedWindows.isEmpty()) {
-                for (ChatTabData.ChatWindowInstance win : passedWindows) {
-                    hudFadeStartTimes.put(win, now);
-                }
-                data.lastMessageTime = now;
-            }
+        renderer.appendArrivals(messages, arrivals);
 
-            // ── Notifications — only fire if message passed at least one tab's filter ──
-            final Minecraft mc = Minecraft.getMinecraft();
-            if (data.showNotifications && passedAnyTab) {
-                if (data.soundNotifications && mc.theWorld != null && mc.thePlayer != null) {
-                    net.minecraft.client.audio.PositionedSoundRecord sound =
-                        net.minecraft.client.audio.PositionedSoundRecord.create(
-                            new net.minecraft.util.ResourceLocation("betterchat", "notify"), 1.0f);
-                    mc.getSoundHandler().playSound(sound);
-                }
-                // Windows notifications only fire for background tabs (no point alerting for visible messages)
-                if (data.windowsNotifications && passedBackgroundTab && !org.lwjgl.opengl.Display.isActive()) {
-                    sendWindowsNotification("BetterChat", plain);
-                }
+        // Set a fade entry only for windows whose selected tab actually received a message.
+        // This prevents windows that filtered the message out from rendering the HUD
+        // overlay (which previously caused a solid-white flash on those windows).
+        if (!passedWindows.isEmpty()) {
+            for (ChatTabData.ChatWindowInstance win : passedWindows) {
+                hudFadeStartTimes.put(win, now);
             }
+            data.lastMessageTime = now;
+        }
 
-            // ── Auto-responses ───────────────────────────────────────────────
-            if (!isLocal) {
-                String lowerPlain = plain.toLowerCase();
-                for (ChatTabData.AutoResponseEntry ar : data.autoResponses) {
-                    if (!ar.trigger.isEmpty() && lowerPlain.contains(ar.trigger.toLowerCase())) {
-                        final String resp = ar.response;
-                        mc.addScheduledTask(new Runnable() {
-                            public void run() {
-                                if (Minecraft.getMinecraft().thePlayer != null)
-                                    Minecraft.getMinecraft().thePlayer.sendChatMessage(resp);
-                            }
-                        });
-                        break;
-                    }
-                }
+        // ── Notification sound — only if a message passed at least one tab's filter ──
+        // A mention pings instead, whatever the notification settings (if pinging is on)
+        if (mc.theWorld != null && mc.thePlayer != null) {
+            if (mentioned && data.mentionPing) {
+                data.notifications.ping(mc, now);
+            } else if (data.showNotifications && data.soundNotifications && passedAnyTab) {
+                data.notifications.sound(mc, now);
             }
         }
-        data.save();
     }
 
-    // ── Windows / system-tray notifications ──────────────────────────────────
-
-    private static java.awt.TrayIcon trayIcon   = null;
-    private static boolean           trayFailed = false;
-
-    /** Shows a system-tray balloon notification. Safe to call from any thread. */
-    private static void sendWindowsNotification(String title, String message) {
-        if (trayFailed) return;
-        try {
-            if (!java.awt.SystemTray.isSupported()) { trayFailed = true; return; }
-
-            // Lazy-init the tray icon once
-            if (trayIcon == null) {
-                java.awt.SystemTray tray = java.awt.SystemTray.getSystemTray();
-                // 16×16 solid green icon as a stand-in (no external image needed)
-                java.awt.image.BufferedImage img = new java.awt.image.BufferedImage(
-                        16, 16, java.awt.image.BufferedImage.TYPE_INT_ARGB);
-                java.awt.Graphics2D g = img.createGraphics();
-                g.setColor(new java.awt.Color(0x4E9EFF));
-                g.fillOval(0, 0, 16, 16);
-                g.dispose();
-                trayIcon = new java.awt.TrayIcon(img, "BetterChat");
-                trayIcon.setImageAutoSize(true);
-                tray.add(trayIcon);
-            }
+    /**
+     * A "/command" the player sent, which the server never echoes, so it is added to the
+     * log here. It takes the same path as a received line: the membership bitmaps and the
+     * line caches are extended with it, and only windows showing it fade in.
+     */
+    private void onCommandLogged(ChatTabData.ChatMessage msg) {
+        IntPredicate ordinary = id -> data.filterFor(id).matches(msg);
+        data.appendMessage(msg, ordinary);
+        Map<Integer, List<ChatTabData.ChatMessage>> arrivals = new HashMap<>();
+        for (TabProfile tab : data.tabs)
+            if (data.messagePassesFilter(tab.id, ordinary)) arrivals.put(tab.id, Collections.singletonList(msg));
+        renderer.appendArrivals(Collections.singletonList(msg), arrivals);
 
-            // Truncate message to avoid overly long balloons
-            String safeMsg = message.length() > 200 ? message.substring(0, 197) + "..." : message;
-            trayIcon.displayMessage(title, safeMsg, java.awt.TrayIcon.MessageType.INFO);
-        } catch (Exception e) {
-            trayFailed = true;
+        long now = System.currentTimeMillis();
+        for (ChatTabData.ChatWindowInstance win : data.windows) {
+            if (arrivals.containsKey(win.getSelectedTabId())) hudFadeStartTimes.put(win, now);
         }
+        data.lastMessageTime = now;
     }
 
     // -------------------------------------------------------------------------
@@ -384,7 +378,7 @@ public class ChatTabHandler {
     @SubscribeEvent
     public void onGuiOpen(GuiOpenEvent event) {
         if (wasChatOpen && !(event.gui instanceof GuiChat)) {
-            for (int i = 0; i < data.tabs.size(); i++) data.scrollOffsets.put(i, 0);
+            for (TabProfile tab : data.tabs) tab.scrollOffset = 0;
             renderer.targetCacheScrollOffset.replaceAll((k, v) -> Integer.MIN_VALUE);
             wasChatOpen = false;
         }
@@ -478,15 +472,15 @@ public class ChatTabHandler {
                 // Uses the full original plainText of the source message (not the wrapped
                 // line snippet) so "Strategy 2: word before ': '" works correctly.
                 if (foundName == null) {
-                    int globalIdx = win.getSelectedGlobalIndex();
-                    if (globalIdx != -1) {
-                        List<RenderableLine> lines = renderer.lineCache.get(globalIdx);
+                    int tabId = win.getSelectedTabId();
+                    if (tabId != -1) {
+                        List<RenderableLine> lines = renderer.lineCache.get(tabId);
                         if (lines != null && !lines.isEmpty()) {
                             float scaleTextS = data.fontSizeEnabled ? Math.max(0.5f, Math.min(3.0f, data.fontSize)) : 1.0f;
                             int lineHS    = Math.max(6, (int)(10 * scaleTextS));
                             int contentHS = win.height - tabBarHS - 8;
                             int maxLines2 = Math.max(1, contentHS / lineHS);
-                            int offsetS   = data.scrollOffsets.getOrDefault(globalIdx, 0);
+                            int offsetS   = data.tab(tabId).scrollOffset;
                             int endS      = Math.max(0, lines.size() - offsetS);
                             int startS    = Math.max(0, endS - maxLines2);
                             int baseYS    = win.y + win.height - lineHS - 8;
@@ -495,9 +489,8 @@ public class ChatTabHandler {
                                 if (my >= lineTop && my < lineTop + lineHS) {
                                     RenderableLine rl = lines.get(i);
                                     if (rl.sourceMsg != null) {
-                                        // Prefer plainText (unformatted full message)
-                                        if (rl.sourceMsg.plainText != null)
-                                            foundName = ChatTabData.extractPlayerName(rl.sourceMsg.plainText);
+                                        // Sender was parsed once when the message arrived
+                                        foundName = rl.sourceMsg.sender();
                                     }
                                     break;
                                 }
@@ -518,8 +511,8 @@ public class ChatTabHandler {
         rightClickWasDown = rightDown;
 
         // Draw a ghost of the tab being dragged, with a hint label
-        if (isDraggingTab && draggingTabGlobalIndex < data.tabs.size()) {
-            String tabName = data.tabs.get(draggingTabGlobalIndex);
+        if (isDraggingTab && data.tab(draggingTabId) != null) {
+            String tabName = data.tab(draggingTabId).name;
             int ghostW = mc.fontRendererObj.getStringWidth(tabName) + 18;
             Gui.drawRect(dragTabVisualX - dragTabMouseOffsetX, dragTabVisualY - 8,
                     dragTabVisualX - dragTabMouseOffsetX + ghostW, dragTabVisualY + 6, 0xAA222233);
@@ -564,9 +557,9 @@ public class ChatTabHandler {
     /** Moves the scroll position to match the mouse's position on the scroll track. */
     private void handleScrollBarDrag(int mx, int my) {
         ChatTabData.ChatWindowInstance win = data.windows.get(scrollBarDragWindowIndex);
-        int globalIdx = win.getSelectedGlobalIndex();
-        if (globalIdx == -1) return;
-        List<RenderableLine> lines = renderer.lineCache.get(globalIdx);
+        int tabId = win.getSelectedTabId();
+        if (tabId == -1) return;
+        List<RenderableLine> lines = renderer.lineCache.get(tabId);
         if (lines == null) return;
 
         int w       = scrollBarDragWindowIndex;
@@ -581,7 +574,7 @@ public class ChatTabHandler {
         double fraction = 1.0 - Math.max(0.0, Math.min(1.0, (double)(my - barAreaY) / barAreaH));
         int newOffset = minOff + (int)(fraction * (maxOff - minOff));
         newOffset = Math.max(minOff, Math.min(maxOff, newOffset));
-        data.scrollOffsets.put(globalIdx, newOffset);
+        data.tab(tabId).scrollOffset = newOffset;
         renderer.targetCacheScrollOffset.put(w, Integer.MIN_VALUE);
     }
 
@@ -616,10 +609,10 @@ public class ChatTabHandler {
             float tabScale2 = data.fontSizeEnabled ? Math.max(0.5f, Math.min(3.0f, data.fontSizeTabs)) : 1.0f;
             int cx = src.x + 5;
             tabReorderInsertPos = 0;
-            for (int li = 0; li < src.tabIndices.size(); li++) {
-                int gIdx = src.tabIndices.get(li);
-                if (gIdx >= data.tabs.size()) continue;
-                int tabW   = (int)(Minecraft.getMinecraft().fontRendererObj.getStringWidth(data.tabs.get(gIdx)) * tabScale2) + 18 + 4;
+            for (int li = 0; li < src.tabIds.size(); li++) {
+                int tabId = src.tabIds.get(li);
+                if (data.tab(tabId) == null) continue;
+                int tabW   = (int)(Minecraft.getMinecraft().fontRendererObj.getStringWidth(data.tab(tabId).name) * tabScale2) + 18 + 4;
                 int tabMid = cx + tabW / 2;
                 if (mx > tabMid) tabReorderInsertPos = li + 1;
                 cx += tabW;
@@ -703,6 +696,14 @@ public class ChatTabHandler {
                 customChatField.yPosition = win.y + win.height + 4;
                 customChatField.width     = win.width - 8;
                 customChatField.drawTextBox();
+                // Lines still waiting in the outgoing queue
+                int queued = outgoing.depth();
+                if (queued > 0) {
+                    String q = "\u00A77" + queued + " queued";
+                    mc.fontRendererObj.drawStringWithShadow(q,
+                            win.x + win.width - 4 - mc.fontRendererObj.getStringWidth(q),
+                            win.y + win.height + 4, 0xFFFFFFFF);
+                }
             }
         }
 
@@ -718,15 +719,16 @@ public class ChatTabHandler {
         int curX = win.x + 5;
         List<Integer> tabStartXList = new ArrayList<>();
 
-        for (int li = 0; li < win.tabIndices.size(); li++) {
-            int globalIdx = win.tabIndices.get(li);
-            if (globalIdx >= data.tabs.size()) continue;
+        for (int li = 0; li < win.tabIds.size(); li++) {
+            int tabId = win.tabIds.get(li);
+            TabProfile tab = data.tab(tabId);
+            if (tab == null) continue;
 
-            String tabName = (editingTabGlobalIndex == globalIdx && renameField != null)
-                    ? renameField.getText() : data.tabs.get(globalIdx);
+            String tabName = (editingTabId == tabId && renameField != null)
+                    ? renameField.getText() : tab.name;
             int tabW = (int)(mc.fontRendererObj.getStringWidth(tabName) * tabScale) + 18;
 
-            if (isDraggingTab && draggingTabGlobalIndex == globalIdx && tabIsDetached) {
+            if (isDraggingTab && draggingTabId == tabId && tabIsDetached) {
                 tabStartXList.add(curX);
                 curX += tabW + 4;
                 continue;
@@ -740,15 +742,15 @@ public class ChatTabHandler {
                         data.getHex(data.colorSelection, data.opacSelection));
             // Notification dot
             int dotSize = Math.max(3, (int)(4 * tabScale));
-            if (data.showNotifications && data.tabNotifications.getOrDefault(globalIdx, false))
+            if (data.showNotifications && tab.unread)
                 Gui.drawRect(curX + 2, win.y + 3, curX + 2 + dotSize, win.y + 3 + dotSize, selectionHex);
 
-            if (editingTabGlobalIndex == globalIdx && renameField != null) {
+            if (editingTabId == tabId && renameField != null) {
                 renameField.xPosition = curX + 9; renameField.yPosition = tabTextY;
                 renameField.drawTextBox();
             } else {
-                int tabColor = (pendingDeleteGlobalIndex == globalIdx) ? 0xFFFF5555 : 0xFFFFFFFF;
-                renderer.drawTabString(mc, data.tabs.get(globalIdx), curX + 9, tabTextY, tabColor);
+                int tabColor = (pendingDeleteTabId == tabId) ? 0xFFFF5555 : 0xFFFFFFFF;
+                renderer.drawTabString(mc, tab.name, curX + 9, tabTextY, tabColor);
             }
             curX += tabW + 4;
         }
@@ -780,37 +782,37 @@ public class ChatTabHandler {
 
     private void finalizeDrop(int mx, int my, ScaledResolution sr) {
         isDraggingTab = false;
-        if (draggingTabGlobalIndex < 0 || draggingTabGlobalIndex >= data.tabs.size()) {
+        if (data.tab(draggingTabId) == null) {
             resetDragState(); return;
         }
 
         if (!tabIsDetached) {
             ChatTabData.ChatWindowInstance srcWin = draggingTabSourceWindow;
             if (srcWin != null && data.windows.contains(srcWin) && tabReorderInsertPos != -1) {
-                int currentLocalIdx = srcWin.tabIndices.indexOf(draggingTabGlobalIndex);
+                int currentLocalIdx = srcWin.tabIds.indexOf(draggingTabId);
                 if (currentLocalIdx != -1) {
                     int insertPos = tabReorderInsertPos;
                     if (insertPos > currentLocalIdx) insertPos--;
                     if (insertPos != currentLocalIdx) {
-                        srcWin.tabIndices.remove(currentLocalIdx);
-                        srcWin.tabIndices.add(insertPos, draggingTabGlobalIndex);
+                        srcWin.tabIds.remove(currentLocalIdx);
+                        srcWin.tabIds.add(insertPos, draggingTabId);
                         srcWin.selectedLocalTab = insertPos;
                     }
                 }
             }
         } else if (dropTargetWindowIndex != -1 && dropTargetWindowIndex < data.windows.size()) {
-            data.mergeTabIntoWindow(draggingTabGlobalIndex, dropTargetWindowIndex);
+            data.mergeTabIntoWindow(draggingTabId, dropTargetWindowIndex);
         } else {
             ChatTabData.ChatWindowInstance srcWin = draggingTabSourceWindow;
-            if (srcWin != null && data.windows.contains(srcWin) && srcWin.tabIndices.size() > 1)
-                data.detachTab(draggingTabGlobalIndex, mx - 20, my - 11);
+            if (srcWin != null && data.windows.contains(srcWin) && srcWin.tabIds.size() > 1)
+                data.detachTab(draggingTabId, mx - 20, my - 11);
         }
         resetDragState();
         data.save();
     }
 
     private void resetDragState() {
-        draggingTabGlobalIndex  = -1;
+        draggingTabId  = -1;
         draggingTabSourceWindow = null;
         dropTargetWindowIndex   = -1;
         tabIsDetached           = false;
@@ -872,15 +874,20 @@ public class ChatTabHandler {
                 if (row >= 0 && row < PM_LABELS.length) {
                     switch (row) {
                         case 0:
-                            data.mutedPlayers.put(playerMenuName,
+                            data.mutePlayer(playerMenuName,
                                     System.currentTimeMillis() + 10 * 60 * 1000L);
+                            data.save();
                             break;
                         case 1:
-                            data.mutedPlayers.put(playerMenuName, Long.MAX_VALUE);
+                            data.mutePlayer(playerMenuName, Long.MAX_VALUE);
+                            data.save();
+                            break;
+                        case 2:
+                            // Answered from the sender index — no log scan
+                            settings.openSearch("from:" + playerMenuName);
+                            isSettingsOpen = true;
                             break;
                     }
-                    data.filterVersion++;
-                    data.save();
                 }
                 showPlayerMenu = false;
                 event.setCanceled(true); return;
@@ -949,9 +956,9 @@ public class ChatTabHandler {
     private boolean handleScrollClick(int w, ChatTabData.ChatWindowInstance win,
                                       int mx, int my,
                                       GuiScreenEvent.MouseInputEvent.Pre event) {
-        int globalIdx = win.getSelectedGlobalIndex();
-        if (globalIdx == -1) return false;
-        List<RenderableLine> lines = renderer.lineCache.get(globalIdx);
+        int tabId = win.getSelectedTabId();
+        if (tabId == -1) return false;
+        List<RenderableLine> lines = renderer.lineCache.get(tabId);
         if (lines == null || lines.size() <= (win.height - 30) / 10) return false;
 
         int barX = renderer.dayNavBarX.getOrDefault(w, win.x + win.width - 4);
@@ -967,7 +974,7 @@ public class ChatTabHandler {
                 && my >= prevBtnY && my <= prevBtnY + 9) {
             int newOff = renderer.dayScrollMin.getOrDefault(w, 0) + 1;
             newOff = Math.max(0, Math.min(Math.max(0, lines.size() - (win.height - 30) / 10), newOff));
-            data.scrollOffsets.put(globalIdx, newOff);
+            data.tab(tabId).scrollOffset = newOff;
             renderer.targetCacheScrollOffset.put(w, Integer.MIN_VALUE);
             event.setCanceled(true); return true;
         }
@@ -976,7 +983,7 @@ public class ChatTabHandler {
                 && my >= nextBtnY && my <= nextBtnY + 9) {
             int newOff = renderer.dayScrollMax.getOrDefault(w, 0) - 1;
             newOff = Math.max(0, Math.min(Math.max(0, lines.size() - (win.height - 30) / 10), newOff));
-            data.scrollOffsets.put(globalIdx, newOff);
+            data.tab(tabId).scrollOffset = newOff;
             renderer.targetCacheScrollOffset.put(w, Integer.MIN_VALUE);
             event.setCanceled(true); return true;
         }
@@ -985,7 +992,7 @@ public class ChatTabHandler {
             isDraggingScrollBar      = true;
             scrollBarDragWindowIndex = w;
             scrollBarDragStartY      = my;
-            scrollBarDragStartOffset = data.scrollOffsets.getOrDefault(globalIdx, 0);
+            scrollBarDragStartOffset = data.tab(tabId).scrollOffset;
             event.setCanceled(true); return true;
         }
         return false;
@@ -998,26 +1005,26 @@ public class ChatTabHandler {
                                       GuiScreenEvent.MouseInputEvent.Pre event) {
         float tabScale = data.fontSizeEnabled ? Math.max(0.5f, Math.min(3.0f, data.fontSizeTabs)) : 1.0f;
         int cx = win.x + 5;
-        for (int li = 0; li < win.tabIndices.size(); li++) {
-            int globalIdx = win.tabIndices.get(li);
-            if (globalIdx >= data.tabs.size()) continue;
-            int tw = (int)(Minecraft.getMinecraft().fontRendererObj.getStringWidth(data.tabs.get(globalIdx)) * tabScale) + 18;
+        for (int li = 0; li < win.tabIds.size(); li++) {
+            int tabId = win.tabIds.get(li);
+            TabProfile tab = data.tab(tabId);
+            if (tab == null) continue;
+            int tw = (int)(Minecraft.getMinecraft().fontRendererObj.getStringWidth(tab.name) * tabScale) + 18;
             if (mx >= cx && mx <= cx + tw) {
-                handleTabClick(w, li, globalIdx, btn, mx, cx);
+                handleTabClick(w, li, tabId, btn, mx, cx);
                 event.setCanceled(true); return true;
             }
             cx += tw + 4;
         }
         // [+] button
         if (btn == 0 && mx >= cx && mx <= cx + 20) {
-            data.addTab();
-            pendingDeleteGlobalIndex = -1; editingTabGlobalIndex = -1;
+            int newId = data.addTab();
+            pendingDeleteTabId = -1; editingTabId = -1;
             if (w != 0 && !data.windows.isEmpty()) {
-                int newIdx    = data.tabs.size() - 1;
-                int winOfNew  = data.windowIndexForTab(newIdx);
+                int winOfNew  = data.windowIndexForTab(newId);
                 if (winOfNew != w && winOfNew != -1) {
-                    data.windows.get(winOfNew).tabIndices.remove((Integer) newIdx);
-                    data.windows.get(w).tabIndices.add(newIdx);
+                    data.windows.get(winOfNew).tabIds.remove((Integer) newId);
+                    data.windows.get(w).tabIds.add(newId);
                     data.save();
                 }
             }
@@ -1033,23 +1040,23 @@ public class ChatTabHandler {
         return false;
     }
 
-    private void handleTabClick(int winIdx, int localIdx, int globalIdx,
+    private void handleTabClick(int winIdx, int localIdx, int tabId,
                                 int btn, int mx, int tabX) {
         ChatTabData.ChatWindowInstance win = data.windows.get(winIdx);
         if (btn == 0) {
-            if (globalIdx == lastClickedGlobalIndex
+            if (tabId == lastClickedTabId
                     && (System.currentTimeMillis() - lastClickTime) < 350) {
-                editingTabGlobalIndex = globalIdx;
+                editingTabId = tabId;
                 renameField = new GuiTextField(0, Minecraft.getMinecraft().fontRendererObj, 0, 0, 100, 12);
                 renameField.setEnableBackgroundDrawing(false);
-                renameField.setText(data.tabs.get(globalIdx));
+                renameField.setText(data.tab(tabId).name);
                 renameField.setFocused(true);
             } else {
                 win.selectedLocalTab = localIdx;
-                data.tabNotifications.put(globalIdx, false);
-                editingTabGlobalIndex  = -1;
+                data.tab(tabId).unread = false;
+                editingTabId  = -1;
                 isDraggingTab          = true;
-                draggingTabGlobalIndex = globalIdx;
+                draggingTabId = tabId;
                 draggingTabSourceWindow = win;
                 dragTabMouseOffsetX    = mx - tabX;
                 dragTabVisualX         = mx; dragTabVisualY = win.y + 11;
@@ -1057,18 +1064,19 @@ public class ChatTabHandler {
                 dropTargetWindowIndex  = -1;
             }
         } else if (btn == 1) {
-            if (pendingDeleteGlobalIndex == globalIdx) {
-                pendingDeleteGlobalIndex = -1; editingTabGlobalIndex = -1;
-                data.deleteTab(globalIdx);
-                isDraggingTab = false; draggingTabGlobalIndex = -1;
+            if (pendingDeleteTabId == tabId) {
+                pendingDeleteTabId = -1; editingTabId = -1;
+                data.deleteTab(tabId);
+                renderer.dropTab(tabId);
+                isDraggingTab = false; draggingTabId = -1;
                 draggingTabSourceWindow = null; tabIsDetached = false;
                 dropTargetWindowIndex = -1;
             } else {
-                pendingDeleteGlobalIndex = globalIdx;
+                pendingDeleteTabId = tabId;
             }
         }
         lastClickTime = System.currentTimeMillis();
-        lastClickedGlobalIndex = globalIdx;
+        lastClickedTabId = tabId;
     }
 
     // -------------------------------------------------------------------------
@@ -1084,6 +1092,7 @@ public class ChatTabHandler {
         // Settings open
         if (isSettingsOpen) {
             if (k == Keyboard.KEY_ESCAPE && !settings.isRecordingKeybind()) {
+                settings.applyPendingEdits();
                 isSettingsOpen = false;
             } else {
                 settings.keyTyped(c, k);
@@ -1092,14 +1101,14 @@ public class ChatTabHandler {
         }
 
         // Tab rename
-        if (editingTabGlobalIndex != -1 && renameField != null
-                && editingTabGlobalIndex < data.tabs.size()) {
+        if (editingTabId != -1 && renameField != null
+                && data.tab(editingTabId) != null) {
             if (k == Keyboard.KEY_RETURN) {
                 if (!renameField.getText().trim().isEmpty())
-                    data.tabs.set(editingTabGlobalIndex, renameField.getText().trim());
-                data.save(); editingTabGlobalIndex = -1;
+                    data.tab(editingTabId).name = renameField.getText().trim();
+                data.save(); editingTabId = -1;
             } else if (k == Keyboard.KEY_ESCAPE) {
-                editingTabGlobalIndex = -1;
+                editingTabId = -1;
             } else {
                 renameField.textboxKeyTyped(c, k);
             }
@@ -1111,23 +1120,8 @@ public class ChatTabHandler {
             input.trySendMessage((GuiChat) event.gui, customChatField);
             long now = System.currentTimeMillis();
 
-            if (!data.globalLog.isEmpty() && data.globalLog.get(data.globalLog.size() - 1).isCommand) {
-                // ── Injected /command (never echoed by server) ──────────────────
-                // Trigger fade only for windows whose selected tab passes the filter.
-                ChatTabData.ChatMessage cmdMsg = data.globalLog.get(data.globalLog.size() - 1);
-                for (int i = 0; i < data.tabs.size(); i++) {
-                    renderer.lineCache.remove(i);
-                    renderer.lineCacheHistorySize.put(i, -1);
-                    if (data.messagePassesFilter(i, cmdMsg)) {
-                        for (ChatTabData.ChatWindowInstance win : data.windows) {
-                            if (win.getSelectedGlobalIndex() == i) {
-                                hudFadeStartTimes.put(win, now);
-                            }
-                        }
-                    }
-                }
-                data.lastMessageTime = now;
-            } else {
+            // An injected /command sets its own fade when it is logged (onCommandLogged)
+            if (!input.isLastSentCommand()) {
                 // ── Normal chat (server will echo it back as a received message) ──
                 // The echo arrives after the GUI closes, so onChatReceived fires in
                 // HUD-mode and sets per-window fades correctly for all windows.
@@ -1145,10 +1139,10 @@ public class ChatTabHandler {
                             echoPlain, false, null,
                             true,  // isLocal
                             false, false, false, echoPlain);
-                    for (int i = 0; i < data.tabs.size(); i++) {
-                        if (data.messagePassesFilter(i, echoMsg)) {
+                    for (TabProfile tab : data.tabs) {
+                        if (data.messagePassesFilter(tab.id, echoMsg)) {
                             for (ChatTabData.ChatWindowInstance win : data.windows) {
-                                if (win.getSelectedGlobalIndex() == i) {
+                                if (win.getSelectedTabId() == tab.id) {
                                     hudFadeStartTimes.put(win, now);
                                 }
                             }
@@ -0,0 +1,106 @@
+package com.betterchat;
+
+import net.minecraft.event.ClickEvent;
+import net.minecraft.event.HoverEvent;
+import net.minecraft.util.ChatStyle;
+import net.minecraft.util.IChatComponent;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The click and hover events of a received message, flattened when the message is
+ * built so its component tree (every sibling, each with its ChatStyle) is not kept.
+ *
+ * A message holds one int[] of {@link #STRIDE}-int records: start and end (plainText
+ * offsets, end exclusive), click event id and hover event id, one record per run of
+ * text carrying the same events. Text with no event has no record. The events are
+ * interned in tables shared by every message, so a thousand lines with the same
+ * "click to join" event hold one ClickEvent between them. Id 0 means none.
+ *
+ * The worker interns while it builds messages and the client looks events up when it
+ * builds hit targets. As in SenderDictionary, a lookup takes no lock: ids come from a
+ * concurrent map and events from an array that is only grown, under the table's lock,
+ * by the first sighting of a new event.
+ *
+ * Entries are never pruned. Every id is held by a message in globalLog, which is not
+ * trimmed during a session, and history loaded from disk carries no events, so a table
+ * holds at most the distinct events received since the game started.
+ */
+final class EventSpans {
+
+    /** Ints per record: start, end, click id, hover id. */
+    static final int STRIDE = 4;
+
+    private static final Table<ClickEvent> CLICKS = new Table<>();
+    private static final Table<HoverEvent> HOVERS = new Table<>();
+
+    private EventSpans() {}
+
+    /** Id → event, and back; ids start at 1. Entries live for the session. */
+    private static final class Table<E> {
+        private final ConcurrentHashMap<E, Integer> ids = new ConcurrentHashMap<>();
+        // Indexed by id; slot 0 is unused. Grown under the table's lock, read without it.
+        private volatile Object[] events = new Object[64];
+        private int next = 1;
+
+        int intern(E event) {
+            if (event == null) return 0;
+            Integer id = ids.get(event);
+            return id != null ? id : internSlow(event);
+        }
+
+        private synchronized int internSlow(E event) {
+            Integer existing = ids.get(event);
+            if (existing != null) return existing;
+            int id = next++;
+            Object[] e = events;
+            if (id >= e.length) e = Arrays.copyOf(e, e.length * 2);
+            e[id] = event;
+            events = e;
+            ids.put(event, id); // publish last, after the array holds the slot
+            return id;
+        }
+
+        @SuppressWarnings("unchecked")
+        E get(int id) {
+            Object[] e = events;
+            return id > 0 && id < e.length ? (E) e[id] : null;
+        }
+    }
+
+    /** The records of {@code root}'s events, or null if it has none (or is null). */
+    static int[] flatten(IChatComponent root) {
+        if (root == null) return null;
+        int[] out = null;
+        int n = 0, pos = 0;
+        for (IChatComponent comp : root) {
+            String text = comp.getUnformattedTextForChat();
+            if (text.isEmpty()) continue;
+            int end = pos + text.length();
+            ChatStyle style = comp.getChatStyle();
+            int click = CLICKS.intern(style.getChatClickEvent());
+            int hover = HOVERS.intern(style.getChatHoverEvent());
+            if (click != 0 || hover != 0) {
+                if (n > 0 && out[n - 3] == pos && out[n - 2] == click && out[n - 1] == hover) {
+                    out[n - 3] = end; // the same events continue into this sibling
+                } else {
+                    if (out == null) out = new int[STRIDE * 2];
+                    else if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                    out[n++] = pos;
+                    out[n++] = end;
+                    out[n++] = click;
+                    out[n++] = hover;
+                }
+            }
+            pos = end;
+        }
+        return out == null ? null : n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /** The click event of a record's id, or null. */
+    static ClickEvent click(int id) { return CLICKS.get(id); }
+
+    /** The hover event of a record's id, or null. */
+    static HoverEvent hover(int id) { return HOVERS.get(id); }
+}
@@ -0,0 +1,137 @@
+package com.betterchat;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * One reject or accept check of a compiled TabFilter, plus the running estimates its
+ * evaluation order is sorted by.
+ *
+ * TabFilter keeps two groups: the exclusions (any hit hides the message) and, after
+ * them, every accept rule — sentByMe, includeAll, include keywords and regexes, type
+ * toggles (any hit shows it). Each group is a plain OR of side-effect-free tests, so
+ * running its members in a different order never changes the decision, only how soon
+ * the OR short-circuits. The groups themselves, and the mute check before them, keep
+ * their fixed places.
+ *
+ * Within a group the cheapest way to a decision is ascending cost / P(decides). Both
+ * are estimated from the rule's FilterMetrics counter: every {@link #REORDER_INTERVAL}
+ * messages the counter's progress since the last look is folded into an exponentially
+ * decaying average (each window weighs as much as all earlier ones together), so the
+ * order follows what the chat is doing now rather than over the whole session.
+ */
+abstract class FilterCheck {
+
+    /** Groups are re-sorted every this many messages, by log position. Power of two. */
+    static final int REORDER_INTERVAL = 4096;
+    /** Weight kept by the previous estimate when a new window is folded in. */
+    private static final double DECAY = 0.5;
+
+    // Cost priors (ns) until a rule has been timed: type toggles are a field read
+    static final double COST_FLAG = 1, COST_KEYWORD = 30, COST_REGEX = 300;
+
+    final FilterMetrics.Counter counter;
+
+    // Estimates, only touched by the thread holding the owning filter's reorder lock
+    private double costNanos, decideRate = 0.5, score;
+    private long   seenEvals, seenHits, seenNanos;
+
+    FilterCheck(FilterMetrics.Counter counter, double priorCost) {
+        this.counter   = counter;
+        this.costNanos = priorCost;
+        observe(); // the counter may already hold this rule's history from earlier snapshots
+    }
+
+    /** True if the check decides the message (hides it in the reject group, shows it in the accept group). */
+    abstract boolean test(ChatTabData.ChatMessage msg, String plain, boolean timed);
+
+    /** Folds the counter's progress since the last call into the estimates. */
+    private void observe() {
+        long e = counter.evaluations(), h = counter.hits(), n = counter.totalNanos();
+        long de = e - seenEvals, dh = h - seenHits, dn = n - seenNanos;
+        seenEvals = e; seenHits = h; seenNanos = n;
+        if (de > 0) {
+            double rate = (dh + 1.0) / (de + 2.0); // never 0, so a rule that has not hit yet still sorts
+            decideRate = decideRate * DECAY + rate * (1 - DECAY);
+            if (dn > 0) costNanos = costNanos * DECAY + ((double) dn / de) * (1 - DECAY);
+        }
+        score = costNanos / decideRate;
+    }
+
+    private static final Comparator<FilterCheck> BY_SCORE = Comparator.comparingDouble(c -> c.score);
+
+    /** A new array with the group in its current best order. Ties keep their relative order. */
+    static FilterCheck[] sorted(FilterCheck[] group) {
+        for (FilterCheck c : group) c.observe();
+        FilterCheck[] out = group.clone();
+        Arrays.sort(out, BY_SCORE); // stable
+        return out;
+    }
+
+    // -------------------------------------------------------------------------
+    // Checks
+    // -------------------------------------------------------------------------
+
+    /** A plain keyword, timed on sampled messages. */
+    static final class Keyword extends FilterCheck {
+        private final CaseFoldMatcher matcher;
+
+        Keyword(CaseFoldMatcher matcher, FilterMetrics.Counter counter) {
+            super(counter, COST_KEYWORD);
+            this.matcher = matcher;
+        }
+
+        @Override boolean test(ChatTabData.ChatMessage msg, String plain, boolean timed) {
+            if (!timed) {
+                boolean hit = matcher.find(plain);
+                counter.record(hit);
+                return hit;
+            }
+            long t0 = System.nanoTime();
+            boolean hit = matcher.find(plain);
+            counter.record(hit, (System.nanoTime() - t0) * FilterMetrics.TIMING_SAMPLE);
+            return hit;
+        }
+    }
+
+    /** A regex keyword; the rule records (and times) itself. */
+    static final class Regex extends FilterCheck {
+        private final TabFilter.RegexRule rule;
+
+        Regex(TabFilter.RegexRule rule) {
+            super(rule.counter, COST_REGEX);
+            this.rule = rule;
+        }
+
+        @Override boolean test(ChatTabData.ChatMessage msg, String plain, boolean timed) {
+            return rule.find(plain);
+        }
+    }
+
+    // Message-type toggles
+    static final int SENT_BY_ME = 0, ALL = 1, COMMANDS = 2, SERVER = 3, PLAYERS = 4, RESPONSES = 5;
+
+    /** A message-type toggle: a field read, so only counted, never timed. */
+    static final class Flag extends FilterCheck {
+        private final int type;
+
+        Flag(int type, FilterMetrics.Counter counter) {
+            super(counter, COST_FLAG);
+            this.type = type;
+        }
+
+        @Override boolean test(ChatTabData.ChatMessage msg, String plain, boolean timed) {
+            boolean hit;
+            switch (type) {
+                case SENT_BY_ME: hit = msg.isLocal; break;
+                case ALL:        hit = true; break;
+                case COMMANDS:   hit = msg.isCommand; break;
+                case SERVER:     hit = !msg.isOtherPlayer && !msg.isLocal && !msg.isCommand && !msg.isCommandResponse; break;
+                case PLAYERS:    hit = msg.isOtherPlayer && !msg.isLocal; break;
+                default:         hit = msg.isCommandResponse; break;
+            }
+            counter.record(hit);
+            return hit;
+        }
+    }
+}
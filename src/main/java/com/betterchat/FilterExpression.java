@@ -0,0 +1,483 @@
+package com.betterchat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Optional per-tab filter expression, parsed once and compiled into a predicate tree.
+ *
+ * Grammar (operators are upper-case; juxtaposition means AND):
+ * <pre>
+ *   expr    := and ( "OR" and )*
+ *   and     := unary ( ["AND"] unary )*
+ *   unary   := "NOT" unary | "(" expr ")" | leaf
+ *   leaf    := [field ":"] value
+ *   value   := word | "quoted text" | /regex/
+ * </pre>
+ * Fields: {@code sender:}, {@code text:} (the default), {@code type:} (command, response,
+ * server, player, me, mention — a line MentionMatcher found the player's name or a watch
+ * word in), {@code channel:} (all, party, guild, officer, private, local — as
+ * tagged by the server's MessageClassifier profile), {@code after:} and {@code before:}
+ * (yyyy-mm-dd; after is inclusive, before exclusive), and {@code mod:} (a predicate
+ * another mod registered through {@link BetterChatAPI}). Example:
+ * {@code (sender:Notch OR text:"trade") AND NOT type:command AND after:2026-10-01}
+ *
+ * AND/OR children are ordered by an estimated cost so cheap leaves (type bits, sender
+ * ids, dates) short-circuit before text scans run; mod predicates are placed by their
+ * declared cost class.
+ */
+public final class FilterExpression {
+
+    /** Raised for malformed expressions; {@link #position} is a 0-based column. */
+    public static final class ParseException extends Exception {
+        public final int position;
+
+        ParseException(String message, int position) {
+            super(message);
+            this.position = position;
+        }
+    }
+
+    // Type bits — one per message category, matching TabFilter's toggle semantics
+    static final int TYPE_COMMAND  = 1;
+    static final int TYPE_RESPONSE = 1 << 1;
+    static final int TYPE_SERVER   = 1 << 2;
+    static final int TYPE_PLAYER   = 1 << 3;
+    static final int TYPE_ME       = 1 << 4;
+    static final int TYPE_MENTION  = 1 << 5;
+
+    public final String source;
+    private final Node root;
+    /** The mod predicate leaves, in written order. */
+    private final List<ModLeaf> modLeaves;
+
+    private FilterExpression(String source, Node root, List<ModLeaf> modLeaves) {
+        this.source    = source;
+        this.root      = root;
+        this.modLeaves = modLeaves;
+    }
+
+    /** Parses and compiles an expression. Blank input is rejected; callers treat it as "no expression". */
+    public static FilterExpression parse(String source) throws ParseException {
+        return parse(source, new FilterMetrics());
+    }
+
+    /** As above; {@code mod:} leaves count their calls in {@code metrics}. */
+    static FilterExpression parse(String source, FilterMetrics metrics) throws ParseException {
+        Parser p = new Parser(source, metrics);
+        Node root = p.parseExpr();
+        if (p.peek() != null) throw new ParseException("Unexpected '" + p.peek().text + "'", p.peek().pos);
+        return new FilterExpression(source, root.optimise(), p.modLeaves);
+    }
+
+    /** The registered predicates this expression calls. */
+    public List<BetterChatAPI.Registration> modPredicates() {
+        List<BetterChatAPI.Registration> out = new ArrayList<>();
+        for (ModLeaf l : modLeaves) if (!out.contains(l.registration)) out.add(l.registration);
+        return out;
+    }
+
+    /** The per-tab counters of the mod predicate leaves. */
+    List<FilterMetrics.Counter> modCounters() {
+        List<FilterMetrics.Counter> out = new ArrayList<>();
+        for (ModLeaf l : modLeaves) out.add(l.counter);
+        return out;
+    }
+
+    /** Thread-safe: all per-message state lives in a fresh {@link Eval}. */
+    boolean matches(ChatTabData.ChatMessage msg) {
+        return root.test(new Eval(msg));
+    }
+
+    // -------------------------------------------------------------------------
+    // Evaluation context  —  per-message values computed at most once
+    // -------------------------------------------------------------------------
+
+    /** Also the {@link BetterChatAPI.MessageView} mod predicates see. */
+    static final class Eval implements BetterChatAPI.MessageView {
+        final ChatTabData.ChatMessage msg;
+        final String plain;
+        private int     typeBits = -1;
+        private int     day      = -1;
+
+        Eval(ChatTabData.ChatMessage msg) {
+            this.msg   = msg;
+            this.plain = msg.plainText != null ? msg.plainText : msg.text;
+        }
+
+        int typeBits() {
+            if (typeBits < 0) typeBits = typeBitsOf(msg);
+            return typeBits;
+        }
+
+        int day() {
+            if (day < 0) day = parseDay(msg.date);
+            return day;
+        }
+
+        @Override public String  text()              { return msg.text; }
+        @Override public String  plainText()         { return plain; }
+        @Override public String  sender()            { return msg.sender(); }
+        @Override public String  channel()           { return MessageClassifier.channelName(msg.channel); }
+        @Override public boolean isLocal()           { return msg.isLocal; }
+        @Override public boolean isFromPlayer()      { return msg.isOtherPlayer; }
+        @Override public boolean isCommand()         { return msg.isCommand; }
+        @Override public boolean isCommandResponse() { return msg.isCommandResponse; }
+        @Override public String  date()              { return msg.date; }
+        @Override public String  time()              { return msg.time; }
+    }
+
+    static int typeBitsOf(ChatTabData.ChatMessage m) {
+        int bits = 0;
+        if (m.isCommand)                    bits |= TYPE_COMMAND;
+        if (m.isCommandResponse)            bits |= TYPE_RESPONSE;
+        if (m.isOtherPlayer && !m.isLocal)  bits |= TYPE_PLAYER;
+        if (m.isLocal)                      bits |= TYPE_ME;
+        if (!m.isOtherPlayer && !m.isLocal && !m.isCommand && !m.isCommandResponse) bits |= TYPE_SERVER;
+        if (m.mentionSpans != null)         bits |= TYPE_MENTION;
+        return bits;
+    }
+
+    /** "yyyy/MM/dd" or "yyyy-MM-dd" → yyyymmdd, or 0 if it is not a date. */
+    static int parseDay(String s) {
+        if (s == null || s.length() != 10) return 0;
+        int v = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = s.charAt(i);
+            if (i == 4 || i == 7) { if (c != '/' && c != '-') return 0; continue; }
+            if (c < '0' || c > '9') return 0;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    // -------------------------------------------------------------------------
+    // Predicate tree
+    // -------------------------------------------------------------------------
+
+    abstract static class Node {
+        abstract boolean test(Eval e);
+        /** Rough relative cost of one evaluation, used to order AND/OR children. */
+        abstract int cost();
+        Node optimise() { return this; }
+    }
+
+    private static final class And extends Node {
+        final List<Node> children;
+        And(List<Node> children) { this.children = children; }
+
+        @Override boolean test(Eval e) {
+            for (Node n : children) if (!n.test(e)) return false;
+            return true;
+        }
+        @Override int cost() {
+            int c = 0;
+            for (Node n : children) c += n.cost();
+            return c;
+        }
+        @Override Node optimise() { return flatten(children, true); }
+    }
+
+    private static final class Or extends Node {
+        final List<Node> children;
+        Or(List<Node> children) { this.children = children; }
+
+        @Override boolean test(Eval e) {
+            for (Node n : children) if (n.test(e)) return true;
+            return false;
+        }
+        @Override int cost() {
+            int c = 0;
+            for (Node n : children) c += n.cost();
+            return c;
+        }
+        @Override Node optimise() { return flatten(children, false); }
+    }
+
+    /** Inlines nested nodes of the same kind and sorts children cheapest first. */
+    private static Node flatten(List<Node> children, boolean and) {
+        List<Node> flat = new ArrayList<>();
+        for (Node n : children) {
+            Node o = n.optimise();
+            if (and && o instanceof And)       flat.addAll(((And) o).children);
+            else if (!and && o instanceof Or)  flat.addAll(((Or) o).children);
+            else                               flat.add(o);
+        }
+        if (flat.size() == 1) return flat.get(0);
+        Collections.sort(flat, Comparator.comparingInt(Node::cost)); // stable: ties keep written order
+        return and ? new And(flat) : new Or(flat);
+    }
+
+    private static final class Not extends Node {
+        final Node child;
+        Not(Node child) { this.child = child; }
+
+        @Override boolean test(Eval e) { return !child.test(e); }
+        @Override int cost() { return child.cost(); }
+        @Override Node optimise() {
+            Node c = child.optimise();
+            return c instanceof Not ? ((Not) c).child : new Not(c);
+        }
+    }
+
+    private static final class TypeLeaf extends Node {
+        final int mask;
+        TypeLeaf(int mask) { this.mask = mask; }
+
+        @Override boolean test(Eval e) { return (e.typeBits() & mask) != 0; }
+        @Override int cost() { return 1; }
+    }
+
+    private static final class ChannelLeaf extends Node {
+        final int channel;
+        ChannelLeaf(int channel) { this.channel = channel; }
+
+        @Override boolean test(Eval e) { return e.msg.channel == channel; }
+        @Override int cost() { return 1; }
+    }
+
+    private static final class DateLeaf extends Node {
+        final int day;
+        final boolean after;
+        DateLeaf(int day, boolean after) { this.day = day; this.after = after; }
+
+        @Override boolean test(Eval e) {
+            int d = e.day();
+            return after ? d >= day : d < day;
+        }
+        @Override int cost() { return 2; }
+    }
+
+    /** Compares case-folded SenderDictionary ids — no text is parsed per message. */
+    private static final class SenderLeaf extends Node {
+        final int foldedId;
+        SenderLeaf(String name) { this.foldedId = SenderDictionary.foldedId(SenderDictionary.intern(name)); }
+
+        @Override boolean test(Eval e) {
+            return e.msg.senderId != SenderDictionary.NONE
+                    && SenderDictionary.foldedId(e.msg.senderId) == foldedId;
+        }
+        @Override int cost() { return 1; }
+    }
+
+    private static final class TextLeaf extends Node {
+        final CaseFoldMatcher needle;
+        TextLeaf(String needle) { this.needle = new CaseFoldMatcher(needle); }
+
+        @Override boolean test(Eval e) { return needle.find(e.plain); }
+        @Override int cost() { return 16; }
+    }
+
+    private static final class RegexLeaf extends Node {
+        final TabFilter.RegexRule rule;
+        RegexLeaf(TabFilter.RegexRule rule) { this.rule = rule; }
+
+        @Override boolean test(Eval e) { return rule.find(e.plain); }
+        @Override int cost() { return 64; }
+    }
+
+    /** Another mod's predicate, counted in the tab's metrics and the registration's totals. */
+    private static final class ModLeaf extends Node {
+        final BetterChatAPI.Registration registration;
+        final FilterMetrics.Counter counter;
+        ModLeaf(BetterChatAPI.Registration registration, FilterMetrics.Counter counter) {
+            this.registration = registration;
+            this.counter      = counter;
+        }
+
+        @Override boolean test(Eval e) {
+            boolean timed = (e.msg.seq & (FilterMetrics.TIMING_SAMPLE - 1)) == 0;
+            long t0 = timed ? System.nanoTime() : 0;
+            boolean hit = registration.test(e);
+            long ns = timed ? Math.max(1, System.nanoTime() - t0) * FilterMetrics.TIMING_SAMPLE : 0;
+            counter.record(hit, ns);
+            registration.record(hit, ns);
+            return hit;
+        }
+        // Read when the expression is compiled, so one found over budget sorts later after the next recompile
+        @Override int cost() { return registration.effectiveCost().weight; }
+    }
+
+    // -------------------------------------------------------------------------
+    // Tokenizer + recursive-descent parser
+    // -------------------------------------------------------------------------
+
+    private static final class Token {
+        static final int LPAREN = 0, RPAREN = 1, TERM = 2, AND = 3, OR = 4, NOT = 5;
+        final int    kind;
+        final String field;  // TERM only; null when no "field:" was given
+        final String text;   // TERM: the value; otherwise the literal operator
+        final boolean regex; // TERM written as /.../
+        final int    pos;
+
+        Token(int kind, String field, String text, boolean regex, int pos) {
+            this.kind = kind; this.field = field; this.text = text; this.regex = regex; this.pos = pos;
+        }
+    }
+
+    private static final List<String> FIELDS =
+            java.util.Arrays.asList("text", "sender", "type", "channel", "after", "before", "mod");
+
+    private static final class Parser {
+        private final List<Token> tokens;
+        private final FilterMetrics metrics;
+        final List<ModLeaf> modLeaves = new ArrayList<>();
+        private int next = 0;
+
+        Parser(String src, FilterMetrics metrics) throws ParseException {
+            this.tokens  = tokenize(src);
+            this.metrics = metrics;
+            if (tokens.isEmpty()) throw new ParseException("Empty expression", 0);
+        }
+
+        Token peek() { return next < tokens.size() ? tokens.get(next) : null; }
+
+        Node parseExpr() throws ParseException {
+            List<Node> parts = new ArrayList<>();
+            parts.add(parseAnd());
+            while (peek() != null && peek().kind == Token.OR) {
+                next++;
+                parts.add(parseAnd());
+            }
+            return parts.size() == 1 ? parts.get(0) : new Or(parts);
+        }
+
+        Node parseAnd() throws ParseException {
+            List<Node> parts = new ArrayList<>();
+            parts.add(parseUnary());
+            while (true) {
+                Token t = peek();
+                if (t == null || t.kind == Token.OR || t.kind == Token.RPAREN) break;
+                if (t.kind == Token.AND) next++;
+                parts.add(parseUnary());
+            }
+            return parts.size() == 1 ? parts.get(0) : new And(parts);
+        }
+
+        Node parseUnary() throws ParseException {
+            Token t = peek();
+            if (t == null) {
+                int end = tokens.get(tokens.size() - 1).pos + tokens.get(tokens.size() - 1).text.length();
+                throw new ParseException("Expression ends too early", end);
+            }
+            next++;
+            switch (t.kind) {
+                case Token.NOT:
+                    return new Not(parseUnary());
+                case Token.LPAREN: {
+                    Node inner = parseExpr();
+                    Token close = peek();
+                    if (close == null || close.kind != Token.RPAREN)
+                        throw new ParseException("Missing ')'", close == null ? t.pos : close.pos);
+                    next++;
+                    return inner;
+                }
+                case Token.TERM:
+                    return leaf(t);
+                default:
+                    throw new ParseException("Unexpected '" + t.text + "'", t.pos);
+            }
+        }
+
+        private Node leaf(Token t) throws ParseException {
+            String field = t.field == null ? "text" : t.field.toLowerCase();
+            if (t.regex && !field.equals("text"))
+                throw new ParseException("Only text: accepts /regex/", t.pos);
+            switch (field) {
+                case "text":
+                    if (!t.regex) return new TextLeaf(t.text);
+                    try { return new RegexLeaf(new TabFilter.RegexRule(t.text)); }
+                    catch (PatternSyntaxException e) {
+                        throw new ParseException("Bad regex: " + e.getDescription(), t.pos);
+                    }
+                case "sender":
+                    return new SenderLeaf(t.text);
+                case "type": {
+                    int mask;
+                    switch (t.text.toLowerCase()) {
+                        case "command":  mask = TYPE_COMMAND;  break;
+                        case "response": mask = TYPE_RESPONSE; break;
+                        case "server":   mask = TYPE_SERVER;   break;
+                        case "player":   mask = TYPE_PLAYER;   break;
+                        case "me":       mask = TYPE_ME;       break;
+                        case "mention":  mask = TYPE_MENTION;  break;
+                        default: throw new ParseException("Unknown type '" + t.text + "'", t.pos);
+                    }
+                    return new TypeLeaf(mask);
+                }
+                case "channel": {
+                    int ch = MessageClassifier.channelId(t.text);
+                    if (ch < 0) throw new ParseException("Unknown channel '" + t.text + "'", t.pos);
+                    return new ChannelLeaf(ch);
+                }
+                case "after":
+                case "before": {
+                    int day = parseDay(t.text);
+                    if (day == 0) throw new ParseException("Dates are yyyy-mm-dd", t.pos);
+                    return new DateLeaf(day, field.equals("after"));
+                }
+                case "mod": {
+                    BetterChatAPI.Registration r = BetterChatAPI.predicate(t.text);
+                    if (r == null) throw new ParseException("No mod predicate '" + t.text + "'", t.pos);
+                    ModLeaf leaf = new ModLeaf(r, metrics.counter(FilterMetrics.KIND_MOD, "mod:" + r.id));
+                    modLeaves.add(leaf);
+                    return leaf;
+                }
+                default: // unreachable: the tokenizer only emits known fields
+                    throw new ParseException("Unknown field '" + t.field + ":'", t.pos);
+            }
+        }
+
+        private static List<Token> tokenize(String s) throws ParseException {
+            List<Token> out = new ArrayList<>();
+            int i = 0, n = s.length();
+            while (i < n) {
+                char c = s.charAt(i);
+                if (Character.isWhitespace(c)) { i++; continue; }
+                if (c == '(') { out.add(new Token(Token.LPAREN, null, "(", false, i++)); continue; }
+                if (c == ')') { out.add(new Token(Token.RPAREN, null, ")", false, i++)); continue; }
+
+                int start = i;
+                String field = null;
+                // A field is a known name followed by ':' — anything else (e.g. a URL) is plain text
+                int j = i;
+                while (j < n && Character.isLetter(s.charAt(j))) j++;
+                if (j > i && j < n && s.charAt(j) == ':' && FIELDS.contains(s.substring(i, j).toLowerCase())) {
+                    field = s.substring(i, j);
+                    i = j + 1;
+                }
+
+                if (i < n && (s.charAt(i) == '"' || s.charAt(i) == '/')) {
+                    char quote = s.charAt(i);
+                    StringBuilder sb = new StringBuilder();
+                    i++;
+                    boolean closed = false;
+                    while (i < n) {
+                        char q = s.charAt(i);
+                        if (q == '\\' && i + 1 < n && s.charAt(i + 1) == quote) { sb.append(quote); i += 2; continue; }
+                        if (q == quote) { closed = true; i++; break; }
+                        sb.append(q); i++;
+                    }
+                    if (!closed) throw new ParseException("Missing closing " + quote, start);
+                    out.add(new Token(Token.TERM, field, sb.toString(), quote == '/', start));
+                    continue;
+                }
+
+                int k = i;
+                while (k < n && !Character.isWhitespace(s.charAt(k))
+                        && s.charAt(k) != '(' && s.charAt(k) != ')') k++;
+                String word = s.substring(i, k);
+                i = k;
+                if (word.isEmpty()) throw new ParseException("Missing value after '" + field + ":'", start);
+                if (field == null && word.equals("AND"))      out.add(new Token(Token.AND, null, word, false, start));
+                else if (field == null && word.equals("OR"))  out.add(new Token(Token.OR,  null, word, false, start));
+                else if (field == null && word.equals("NOT")) out.add(new Token(Token.NOT, null, word, false, start));
+                else out.add(new Token(Token.TERM, field, word, false, start));
+            }
+            return out;
+        }
+    }
+}
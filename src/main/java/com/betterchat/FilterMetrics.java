@@ -0,0 +1,125 @@
+package com.betterchat;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluation, match and time counters for every rule of one tab's filter.
+ *
+ * ChatTabData keeps one FilterMetrics per tab id. Each compiled TabFilter snapshot asks
+ * it for the counter of every rule it contains, so counts for a keyword carry on across
+ * recompiles and only reset when the rule itself is removed. Counters use LongAdders,
+ * so ParallelHistoryFilter chunks can record into them from many threads at once.
+ *
+ * Time is measured on one message in {@link #TIMING_SAMPLE} (by log position) and scaled
+ * up, since a System.nanoTime() pair costs about as much as a short keyword scan. Regex
+ * rules time every call; their step guard needs the clock anyway.
+ */
+public final class FilterMetrics {
+
+    /** One in this many messages is timed; must be a power of two. */
+    public static final int TIMING_SAMPLE = 8;
+
+    // Rule kinds, also the "kind" column of the CSV export
+    public static final String KIND_MUTE       = "mute";
+    public static final String KIND_EXPRESSION = "expression";
+    public static final String KIND_EXCLUDE    = "exclude";
+    public static final String KIND_INCLUDE    = "include";
+    public static final String KIND_TYPE       = "type";
+    /** A predicate another mod registered through BetterChatAPI, used as a {@code mod:} expression leaf. */
+    public static final String KIND_MOD        = "mod";
+
+    /** Counters for one rule. A "match" is the rule deciding the message: a hide for mutes and excludes, a show otherwise. */
+    public static final class Counter {
+        public final String kind, rule;
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder hits        = new LongAdder();
+        private final LongAdder nanos       = new LongAdder();
+
+        Counter(String kind, String rule) {
+            this.kind = kind;
+            this.rule = rule;
+        }
+
+        void record(boolean hit) {
+            evaluations.increment();
+            if (hit) hits.increment();
+        }
+
+        void record(boolean hit, long elapsedNanos) {
+            record(hit);
+            if (elapsedNanos > 0) nanos.add(elapsedNanos);
+        }
+
+        public long evaluations() { return evaluations.sum(); }
+        public long hits()        { return hits.sum(); }
+        public long totalNanos()  { return nanos.sum(); }
+    }
+
+    // kind + '\0' + rule → counter, in the order rules were first compiled
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+
+    /** The counter for a rule, created on first use. Client thread only. */
+    Counter counter(String kind, String rule) {
+        return counters.computeIfAbsent(kind + '\0' + rule, k -> new Counter(kind, rule));
+    }
+
+    /** The counter for a rule, or null if the tab has never compiled it. */
+    public Counter find(String kind, String rule) {
+        return counters.get(kind + '\0' + rule);
+    }
+
+    /** Forgets counters for rules the tab no longer has. */
+    void retainOnly(Collection<Counter> live) {
+        Map<Counter, Boolean> keep = new IdentityHashMap<>();
+        for (Counter c : live) keep.put(c, Boolean.TRUE);
+        counters.values().removeIf(c -> !keep.containsKey(c));
+    }
+
+    public List<Counter> counters() {
+        return new ArrayList<>(counters.values());
+    }
+
+    /** A hit count in at most five characters: 999, 12.3k, 4.5M. */
+    public static String compact(long n) {
+        if (n < 1_000)     return Long.toString(n);
+        if (n < 1_000_000) return String.format(Locale.US, n < 10_000 ? "%.1fk" : "%.0fk", n / 1e3);
+        return String.format(Locale.US, n < 10_000_000 ? "%.1fM" : "%.0fM", n / 1e6);
+    }
+
+    // -------------------------------------------------------------------------
+    // Export
+    // -------------------------------------------------------------------------
+
+    /**
+     * Writes every tab's counters as CSV, the most expensive rules of each tab first.
+     * Columns: tab, kind, rule, evaluations, matches, match_pct, total_ms, avg_ns.
+     */
+    static void writeCsv(ChatTabData data, Writer out) throws IOException {
+        out.write("tab,kind,rule,evaluations,matches,match_pct,total_ms,avg_ns\n");
+        for (TabProfile tab : data.tabs) {
+            List<Counter> rows = data.metricsFor(tab.id).counters();
+            rows.sort((a, b) -> Long.compare(b.totalNanos(), a.totalNanos()));
+            for (Counter c : rows) {
+                long evals = c.evaluations(), hits = c.hits(), ns = c.totalNanos();
+                out.write(csv(tab.name) + "," + c.kind + "," + csv(c.rule) + "," + evals + "," + hits + ","
+                        + String.format(Locale.US, "%.2f,%.3f,%.1f",
+                                evals == 0 ? 0.0 : hits * 100.0 / evals, ns / 1e6, evals == 0 ? 0.0 : (double) ns / evals)
+                        + "\n");
+            }
+        }
+    }
+
+    private static String csv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,148 @@
+package com.betterchat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Background "what would this keyword do?" count for the Filters page.
+ *
+ * Compares the tab's current filter with a candidate that has one more include or
+ * exclude keyword, over a snapshot of globalLog, on ParallelHistoryFilter's pool. Only
+ * messages the new keyword matches can change, so each message is first tested against
+ * the keyword alone and the two full filters run just for those hits.
+ *
+ * Counts are published while chunks finish, so the page can show running totals; the
+ * newest few changed messages are kept as samples. FiltersPage cancels the preview and
+ * starts a new one on every keystroke.
+ */
+public final class FilterPreview {
+
+    /** Changed messages kept for display, newest first. */
+    public static final int SAMPLE_COUNT = 3;
+
+    /** True if the keyword is being previewed as an include (it can only add messages). */
+    public final boolean include;
+
+    private final TabFilter current, candidate;
+    private final CaseFoldMatcher plainKeyword;     // null for regex keywords
+    private final TabFilter.RegexRule regexKeyword; // null for plain keywords
+    private final ChatTabData.ChatMessage[] snapshot;
+    private final long now = System.currentTimeMillis();
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger added     = new AtomicInteger();
+    private final AtomicInteger removed   = new AtomicInteger();
+    private volatile boolean   cancelled;
+    private volatile List<String> samples; // set once, when every chunk has finished
+
+    private FilterPreview(ChatTabData data, TabProfile tab, String keyword, boolean regex, boolean include) {
+        this.include = include;
+        String stored = TabFilter.escapeKeyword(regex ? TabFilter.REGEX_PREFIX + keyword : keyword);
+        // Both sides get private counters; the tab's live filter would count every preview
+        // into the stats the Filters page shows and FilterCheck reorders by
+        this.current   = new TabFilter(data, tab, tab.filter, tab.exclusion);
+        this.candidate = include ? new TabFilter(data, tab, append(tab.filter, stored), tab.exclusion)
+                                 : new TabFilter(data, tab, tab.filter, append(tab.exclusion, stored));
+        this.plainKeyword = regex ? null : new CaseFoldMatcher(keyword);
+        this.regexKeyword = regex ? new TabFilter.RegexRule(keyword) : null;
+        this.snapshot = data.globalLog.toArray(new ChatTabData.ChatMessage[0]);
+    }
+
+    private static String append(String csv, String keyword) {
+        return csv.trim().isEmpty() ? keyword : csv + "," + keyword;
+    }
+
+    /**
+     * Starts previewing {@code keyword} for a tab. Returns null for a blank keyword or a
+     * regex that does not compile. Client thread only (it snapshots globalLog).
+     */
+    public static FilterPreview start(ChatTabData data, TabProfile tab, String keyword, boolean regex, boolean include) {
+        if (keyword.trim().isEmpty()) return null;
+        FilterPreview p;
+        try { p = new FilterPreview(data, tab, keyword.trim(), regex, include); }
+        catch (PatternSyntaxException e) { return null; }
+        FilterPreview self = p;
+        ParallelHistoryFilter.POOL.execute(new RecursiveAction() {
+            @Override protected void compute() { self.run(); }
+        });
+        return p;
+    }
+
+    /** Stops the chunks at their next check; the counts stay where they were. */
+    public void cancel() { cancelled = true; }
+
+    public boolean isDone()   { return samples != null; }
+    public int added()        { return added.get(); }
+    public int removed()      { return removed.get(); }
+
+    public int progressPercent() {
+        return snapshot.length == 0 ? 100 : (int) (processed.get() * 100L / snapshot.length);
+    }
+
+    /** Plain text of the newest changed messages, or an empty list while still running. */
+    public List<String> samples() {
+        List<String> s = samples;
+        return s != null ? s : java.util.Collections.<String>emptyList();
+    }
+
+    // -------------------------------------------------------------------------
+    // Evaluation
+    // -------------------------------------------------------------------------
+
+    private void run() {
+        List<Chunk> chunks = new ArrayList<>();
+        for (int lo = 0; lo < snapshot.length; lo += ParallelHistoryFilter.CHUNK_SIZE)
+            chunks.add(new Chunk(lo, Math.min(snapshot.length, lo + ParallelHistoryFilter.CHUNK_SIZE)));
+        ForkJoinTask.invokeAll(chunks);
+        if (cancelled) return;
+
+        // Newest chunk first; each chunk's samples are already newest first
+        List<String> out = new ArrayList<>(SAMPLE_COUNT);
+        for (int c = chunks.size() - 1; c >= 0 && out.size() < SAMPLE_COUNT; c--) {
+            for (int i : chunks.get(c).join()) {
+                if (out.size() == SAMPLE_COUNT) break;
+                ChatTabData.ChatMessage m = snapshot[i];
+                out.add(m.plainText != null ? m.plainText : m.text);
+            }
+        }
+        samples = out;
+    }
+
+    private boolean keywordHits(String text) {
+        return plainKeyword != null ? plainKeyword.find(text) : regexKeyword.find(text);
+    }
+
+    /** Leaf task: adds its counts as it finishes and returns its newest changed indices. */
+    private final class Chunk extends RecursiveTask<int[]> {
+        private final int lo, hi;
+
+        Chunk(int lo, int hi) { this.lo = lo; this.hi = hi; }
+
+        @Override
+        protected int[] compute() {
+            int[] newest = new int[SAMPLE_COUNT];
+            int kept = 0, plus = 0, minus = 0;
+            // Walk backwards so the first changes found are the newest
+            for (int i = hi - 1; i >= lo; i--) {
+                if ((i & 1023) == 0 && cancelled) return new int[0];
+                ChatTabData.ChatMessage msg = snapshot[i];
+                if (msg.isDateSeparator) continue;
+                String text = msg.plainText != null ? msg.plainText : msg.text;
+                if (text == null || !keywordHits(text)) continue;
+                boolean before = current.matches(msg, now), after = candidate.matches(msg, now);
+                if (before == after) continue;
+                if (after) plus++; else minus++;
+                if (kept < SAMPLE_COUNT) newest[kept++] = i;
+            }
+            added.addAndGet(plus);
+            removed.addAndGet(minus);
+            processed.addAndGet(hi - lo);
+            return java.util.Arrays.copyOf(newest, kept);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.betterchat;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Flood protection: decides, line by line, which incoming messages are shed.
+ *
+ * Arrivals are counted over a sliding {@link #WINDOW_MS} window, per sender and for the
+ * whole chat, in {@link #BUCKETS} time buckets. A line is shed when its sender has sent
+ * more than {@link ChatTabData#floodSenderLimit} lines in the window (a spam bot), or the
+ * chat as a whole more than {@link ChatTabData#floodGlobalLimit} (a raid, a scoreboard
+ * flood). The first lines of a burst are always kept as they are; lines sent by this
+ * player and commands are never shed.
+ *
+ * Shedding only changes how a line is treated, never whether it is kept: the message
+ * still goes into globalLog, every filter, the membership bitmaps and the saved history.
+ * It is marked with the burst it belongs to ({@code ChatMessage.floodBurst}) and then:
+ *  - ChatRenderer draws each burst as one summary row ("+142 similar messages from X")
+ *    where its newest member is;
+ *  - the line raises no notification, HUD fade or auto-response;
+ *  - ChatIngest writes the history at the slower {@link #FLOOD_SAVE_INTERVAL_MS} pace
+ *    while a flood is on.
+ * The session totals of what was shed, and from whom, are kept here.
+ *
+ * Client thread only; ChatIngest.drain() admits every received line.
+ */
+public final class FloodGovernor {
+
+    static final long WINDOW_MS = 5000;
+    private static final int  BUCKETS   = 10;
+    private static final long BUCKET_MS = WINDOW_MS / BUCKETS;
+    /** History save interval while flooding; one write every couple of seconds is what makes a flood lag. */
+    static final long FLOOD_SAVE_INTERVAL_MS = 30_000;
+
+    private final ChatTabData data;
+
+    private final Rate global = new Rate();
+    private final Map<Integer, Rate> senders = new HashMap<>();
+    private long lastSweepBucket;
+    private int  nextBurst = 1;
+    // Open burst → globalLog position of its first shed line
+    private final Map<Integer, Integer> burstStarts = new HashMap<>();
+
+    // Session totals
+    private long shedTotal;
+    private long lastShedAt;
+    private final Map<String, Integer> shedBySender = new HashMap<>();
+
+    FloodGovernor(ChatTabData data) {
+        this.data = data;
+    }
+
+    /** Arrivals over the window in time buckets, plus the burst the rate is currently in. */
+    private static final class Rate {
+        final int[] buckets = new int[BUCKETS];
+        long lastBucket;
+        int  total;
+        int  burst; // id of the open burst, 0 while under the limit
+
+        /** Moves the window up to {@code bucket} and counts one arrival; returns the window's total. */
+        int add(long bucket) {
+            advance(bucket);
+            buckets[(int) (bucket % BUCKETS)]++;
+            return ++total;
+        }
+
+        void advance(long bucket) {
+            if (bucket <= lastBucket) return;
+            if (bucket - lastBucket >= BUCKETS) {
+                java.util.Arrays.fill(buckets, 0);
+                total = 0;
+            } else {
+                for (long b = lastBucket + 1; b <= bucket; b++) {
+                    int i = (int) (b % BUCKETS);
+                    total -= buckets[i];
+                    buckets[i] = 0;
+                }
+            }
+            lastBucket = bucket;
+        }
+    }
+
+    /**
+     * Counts one arrival and marks the message if it is shed. Returns true if it was.
+     * Global bursts get negative ids, a sender's bursts positive ones.
+     */
+    boolean admit(ChatTabData.ChatMessage msg, long now) {
+        if (msg.isLocal || msg.isCommand) return false;
+        long bucket = now / BUCKET_MS;
+        int inWindow = global.add(bucket);
+        sweep(bucket);
+        if (!data.floodProtection) {
+            global.burst = close(global.burst);
+            return false;
+        }
+
+        if (msg.senderId != 0) {
+            Rate r = senders.get(msg.senderId);
+            if (r == null) senders.put(msg.senderId, r = new Rate());
+            if (r.add(bucket) > data.floodSenderLimit) {
+                if (r.burst == 0) r.burst = open(nextBurst++);
+                return shed(msg, r.burst, now);
+            }
+            r.burst = close(r.burst);
+        }
+        if (inWindow > data.floodGlobalLimit) {
+            if (global.burst == 0) global.burst = open(-(nextBurst++));
+            return shed(msg, global.burst, now);
+        }
+        global.burst = close(global.burst);
+        return false;
+    }
+
+    /** Starts a burst at the position the message being admitted is about to get. */
+    private int open(int burst) {
+        burstStarts.put(burst, data.globalLog.size());
+        return burst;
+    }
+
+    private int close(int burst) {
+        if (burst != 0) burstStarts.remove(burst);
+        return 0;
+    }
+
+    /** globalLog position of an open burst's first shed line; 0 once the burst is over. */
+    int burstStart(int burst) {
+        return burstStarts.getOrDefault(burst, 0);
+    }
+
+    private boolean shed(ChatTabData.ChatMessage msg, int burst, long now) {
+        msg.floodBurst = burst;
+        shedTotal++;
+        lastShedAt = now;
+        String sender = msg.sender();
+        shedBySender.merge(sender != null ? sender : "", 1, Integer::sum);
+        return true;
+    }
+
+    /** Drops the rates of senders that have been quiet for a whole window, once per window. */
+    private void sweep(long bucket) {
+        if (bucket - lastSweepBucket < BUCKETS) return;
+        lastSweepBucket = bucket;
+        for (Iterator<Rate> it = senders.values().iterator(); it.hasNext(); ) {
+            Rate r = it.next();
+            r.advance(bucket);
+            if (r.total == 0) {
+                close(r.burst);
+                it.remove();
+            }
+        }
+    }
+
+    /** True if anything was shed within the last window. */
+    boolean isFlooding(long now) {
+        return shedTotal > 0 && now - lastShedAt < WINDOW_MS;
+    }
+
+    /** Lines shed this session. */
+    public long shedTotal() { return shedTotal; }
+
+    /** Lines shed this session per sender ("" = server lines). */
+    public Map<String, Integer> shedBySender() { return java.util.Collections.unmodifiableMap(shedBySender); }
+
+    /** The summary row drawn for a burst. {@code sample} is any shed message of it. */
+    static String summary(ChatTabData.ChatMessage sample, int count) {
+        String sender = sample.sender();
+        return "§8+" + count + (sample.floodBurst < 0 || sender == null
+                ? (count == 1 ? " message" : " messages") + " during a chat flood"
+                : (count == 1 ? " similar message" : " similar messages") + " from " + sender);
+    }
+}
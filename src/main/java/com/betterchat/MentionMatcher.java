@@ -0,0 +1,97 @@
+package com.betterchat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds where a received line mentions the player: their name, the aliases they set and
+ * the watch words, all compiled into one case-folding TriggerAutomaton so a line is
+ * scanned once however many words there are. A hit only counts as a whole word (no
+ * letter, digit or underscore on either side), so "Al" does not light up "Alex".
+ *
+ * The result is stored on the message as {@link ChatTabData.ChatMessage#mentionSpans}
+ * when the line is ingested; the renderer draws highlights from it and the
+ * {@code type:mention} filter (the Mentions tab) reads it, so no text is scanned twice.
+ * A matcher is an immutable snapshot of the settings: ChatIngest's worker matches with
+ * the one the client last published, and a settings change re-matches the log.
+ * The player's own lines never mention them.
+ */
+final class MentionMatcher {
+
+    /** Matches nothing; what the worker uses until the client publishes. */
+    static final MentionMatcher NONE = new MentionMatcher("", "", "");
+
+    // The settings it was compiled from, to notice edits
+    final String playerName, aliases, watchWords;
+    private final int[] lengths; // per needle
+    private final AutoResponder.TriggerAutomaton automaton;
+
+    MentionMatcher(ChatTabData data) {
+        this(data.playerName, data.mentionAliases, data.mentionWords);
+    }
+
+    private MentionMatcher(String playerName, String aliases, String watchWords) {
+        this.playerName = playerName;
+        this.aliases    = aliases;
+        this.watchWords = watchWords;
+        List<String> needles = new ArrayList<>();
+        if (!playerName.trim().isEmpty()) needles.add(playerName.trim());
+        for (String csv : new String[] { aliases, watchWords }) {
+            for (String w : csv.split(",")) {
+                String t = w.trim();
+                if (!t.isEmpty()) needles.add(t);
+            }
+        }
+        String[] n = needles.toArray(new String[0]);
+        lengths = new int[n.length];
+        for (int i = 0; i < n.length; i++) lengths[i] = n[i].length();
+        automaton = new AutoResponder.TriggerAutomaton(n);
+    }
+
+    /** True if the player's name, aliases and watch words are still the ones compiled in. */
+    boolean compiledFrom(ChatTabData data) {
+        return playerName.equals(data.playerName) && aliases.equals(data.mentionAliases)
+                && watchWords.equals(data.mentionWords);
+    }
+
+    /** The settings as one string, for the membership cache of tabs that filter on mentions. */
+    String key() {
+        return playerName + '\u0000' + aliases + '\u0000' + watchWords;
+    }
+
+    /**
+     * The mentions in {@code msg} as sorted, disjoint [start, end) pairs of plainText
+     * offsets, or null if it has none. Safe on any thread.
+     */
+    int[] spans(ChatTabData.ChatMessage msg) {
+        if (lengths.length == 0 || msg.isDateSeparator || msg.isLocal || msg.plainText == null) return null;
+        String text = msg.plainText;
+        long[][] found = {null}; // start << 32 | end, so sorting orders by start
+        int[] count = {0};
+        automaton.scan(text, (needle, end) -> {
+            int start = end - lengths[needle];
+            if (start > 0 && isWordChar(text.charAt(start - 1))) return;
+            if (end < text.length() && isWordChar(text.charAt(end))) return;
+            if (found[0] == null) found[0] = new long[4];
+            else if (count[0] == found[0].length) found[0] = Arrays.copyOf(found[0], count[0] * 2);
+            found[0][count[0]++] = (long) start << 32 | end;
+        });
+        if (found[0] == null) return null;
+        long[] hits = found[0];
+        Arrays.sort(hits, 0, count[0]);
+        // Merge overlapping and touching hits ("Steve" inside the alias "Steve_")
+        int[] out = new int[count[0] * 2];
+        int n = 0;
+        for (int i = 0; i < count[0]; i++) {
+            int start = (int) (hits[i] >>> 32), end = (int) hits[i];
+            if (n > 0 && start <= out[n - 1]) out[n - 1] = Math.max(out[n - 1], end);
+            else { out[n++] = start; out[n++] = end; }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,362 @@
+package com.betterchat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non-negative ints (globalLog positions), laid out like a roaring bitmap.
+ *
+ * Values are split by their high 16 bits into containers of up to 65536 values. A sparse
+ * container is a sorted char[] (at most {@value #ARRAY_MAX} values); a dense one is a
+ * 1024-word bitset. Union, intersection and difference work container by container and
+ * word by word, so combining the membership of two tabs over millions of messages touches
+ * a few thousand words rather than every message.
+ *
+ * Not thread-safe; ChatTabData owns the live instances on the client thread.
+ */
+public final class MessageBitmap {
+
+    /** A container switches to a bitset above this many values (8 KB either way). */
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS     = 1024;
+
+    private char[]   keys       = new char[4];   // high 16 bits, ascending
+    private Object[] containers = new Object[4]; // char[] (sorted, cards[i] used) or long[WORDS]
+    private int[]    cards      = new int[4];
+    private int      size;                       // containers in use
+
+    public MessageBitmap() {}
+
+    // -------------------------------------------------------------------------
+    // Single values
+    // -------------------------------------------------------------------------
+
+    public void add(int x) {
+        char hi = (char) (x >>> 16), lo = (char) x;
+        int i = size > 0 && keys[size - 1] == hi ? size - 1 : find(hi); // appends hit the last one
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, hi, new char[4], 0);
+        }
+        Object c = containers[i];
+        if (c instanceof long[]) {
+            long[] bits = (long[]) c;
+            long before = bits[lo >>> 6];
+            bits[lo >>> 6] = before | (1L << lo);
+            if (bits[lo >>> 6] != before) cards[i]++;
+            return;
+        }
+        char[] arr = (char[]) c;
+        int n = cards[i];
+        int at = n > 0 && arr[n - 1] < lo ? -n - 1 : Arrays.binarySearch(arr, 0, n, lo);
+        if (at >= 0) return;
+        at = -at - 1;
+        if (n == ARRAY_MAX) {
+            long[] bits = toBits(arr, n);
+            bits[lo >>> 6] |= 1L << lo;
+            containers[i] = bits;
+            cards[i] = n + 1;
+            return;
+        }
+        if (n == arr.length) containers[i] = arr = Arrays.copyOf(arr, Math.min(ARRAY_MAX, n * 2));
+        System.arraycopy(arr, at, arr, at + 1, n - at);
+        arr[at] = lo;
+        cards[i] = n + 1;
+    }
+
+    public void remove(int x) {
+        int i = find((char) (x >>> 16));
+        if (i < 0) return;
+        char lo = (char) x;
+        Object c = containers[i];
+        if (c instanceof long[]) {
+            long[] bits = (long[]) c;
+            long before = bits[lo >>> 6];
+            bits[lo >>> 6] = before & ~(1L << lo);
+            if (bits[lo >>> 6] == before) return;
+            if (--cards[i] <= ARRAY_MAX) containers[i] = toArray(bits, cards[i]);
+        } else {
+            char[] arr = (char[]) c;
+            int n = cards[i];
+            int at = Arrays.binarySearch(arr, 0, n, lo);
+            if (at < 0) return;
+            System.arraycopy(arr, at + 1, arr, at, n - at - 1);
+            cards[i] = n - 1;
+        }
+        if (cards[i] == 0) removeContainer(i);
+    }
+
+    public boolean contains(int x) {
+        int i = find((char) (x >>> 16));
+        if (i < 0) return false;
+        char lo = (char) x;
+        Object c = containers[i];
+        if (c instanceof long[]) return (((long[]) c)[lo >>> 6] & (1L << lo)) != 0;
+        return Arrays.binarySearch((char[]) c, 0, cards[i], lo) >= 0;
+    }
+
+    public int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i++) n += cards[i];
+        return n;
+    }
+
+    public boolean isEmpty() { return size == 0; }
+
+    /** Calls {@code action} for every value, ascending. */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int base = keys[i] << 16;
+            Object c = containers[i];
+            if (c instanceof long[]) {
+                long[] bits = (long[]) c;
+                for (int w = 0; w < WORDS; w++) {
+                    long word = bits[w];
+                    while (word != 0) {
+                        action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] arr = (char[]) c;
+                for (int k = 0; k < cards[i]; k++) action.accept(base | arr[k]);
+            }
+        }
+    }
+
+    /** All values, ascending. */
+    public int[] toArray() {
+        int[] out = new int[cardinality()];
+        int[] n = {0};
+        forEach(v -> out[n[0]++] = v);
+        return out;
+    }
+
+    // -------------------------------------------------------------------------
+    // Set algebra — each returns a new bitmap and leaves both inputs untouched
+    // -------------------------------------------------------------------------
+
+    public static MessageBitmap or(MessageBitmap a, MessageBitmap b) {
+        MessageBitmap out = new MessageBitmap();
+        int i = 0, j = 0;
+        while (i < a.size || j < b.size) {
+            if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                out.append(a.keys[i], copy(a.containers[i]), a.cards[i]); i++;
+            } else if (i >= a.size || b.keys[j] < a.keys[i]) {
+                out.append(b.keys[j], copy(b.containers[j]), b.cards[j]); j++;
+            } else {
+                long[] bits = asBits(a.containers[i], a.cards[i]);
+                Object cb = b.containers[j];
+                if (cb instanceof long[]) {
+                    long[] wb = (long[]) cb;
+                    for (int w = 0; w < WORDS; w++) bits[w] |= wb[w];
+                } else {
+                    char[] arr = (char[]) cb;
+                    for (int k = 0; k < b.cards[j]; k++) bits[arr[k] >>> 6] |= 1L << arr[k];
+                }
+                out.appendBits(a.keys[i], bits);
+                i++; j++;
+            }
+        }
+        return out;
+    }
+
+    public static MessageBitmap and(MessageBitmap a, MessageBitmap b) {
+        MessageBitmap out = new MessageBitmap();
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) { i++; continue; }
+            if (b.keys[j] < a.keys[i]) { j++; continue; }
+            Object ca = a.containers[i], cb = b.containers[j];
+            if (ca instanceof long[] && cb instanceof long[]) {
+                long[] bits = new long[WORDS], wa = (long[]) ca, wb = (long[]) cb;
+                for (int w = 0; w < WORDS; w++) bits[w] = wa[w] & wb[w];
+                out.appendBits(a.keys[i], bits);
+            } else if (ca instanceof long[] || cb instanceof long[]) {
+                // Keep the array values that are set in the bitset
+                boolean aBits = ca instanceof long[];
+                char[] arr = (char[]) (aBits ? cb : ca);
+                long[] bits = (long[]) (aBits ? ca : cb);
+                int n = aBits ? b.cards[j] : a.cards[i];
+                char[] res = new char[n];
+                int m = 0;
+                for (int k = 0; k < n; k++) if ((bits[arr[k] >>> 6] & (1L << arr[k])) != 0) res[m++] = arr[k];
+                out.append(a.keys[i], res, m);
+            } else {
+                char[] x = (char[]) ca, y = (char[]) cb;
+                char[] res = new char[Math.min(a.cards[i], b.cards[j])];
+                int p = 0, q = 0, m = 0;
+                while (p < a.cards[i] && q < b.cards[j]) {
+                    if (x[p] < y[q]) p++;
+                    else if (y[q] < x[p]) q++;
+                    else { res[m++] = x[p]; p++; q++; }
+                }
+                out.append(a.keys[i], res, m);
+            }
+            i++; j++;
+        }
+        return out;
+    }
+
+    /** Values in {@code a} that are not in {@code b}. */
+    public static MessageBitmap andNot(MessageBitmap a, MessageBitmap b) {
+        MessageBitmap out = new MessageBitmap();
+        int j = 0;
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) j++;
+            if (j >= b.size || b.keys[j] != a.keys[i]) {
+                out.append(a.keys[i], copy(a.containers[i]), a.cards[i]);
+                continue;
+            }
+            Object ca = a.containers[i], cb = b.containers[j];
+            if (ca instanceof long[]) {
+                long[] bits = ((long[]) ca).clone();
+                if (cb instanceof long[]) {
+                    long[] wb = (long[]) cb;
+                    for (int w = 0; w < WORDS; w++) bits[w] &= ~wb[w];
+                } else {
+                    char[] arr = (char[]) cb;
+                    for (int k = 0; k < b.cards[j]; k++) bits[arr[k] >>> 6] &= ~(1L << arr[k]);
+                }
+                out.appendBits(a.keys[i], bits);
+            } else {
+                char[] arr = (char[]) ca;
+                char[] res = new char[a.cards[i]];
+                int m = 0;
+                if (cb instanceof long[]) {
+                    long[] wb = (long[]) cb;
+                    for (int k = 0; k < a.cards[i]; k++) if ((wb[arr[k] >>> 6] & (1L << arr[k])) == 0) res[m++] = arr[k];
+                } else {
+                    char[] y = (char[]) cb;
+                    int q = 0;
+                    for (int k = 0; k < a.cards[i]; k++) {
+                        while (q < b.cards[j] && y[q] < arr[k]) q++;
+                        if (q >= b.cards[j] || y[q] != arr[k]) res[m++] = arr[k];
+                    }
+                }
+                out.append(a.keys[i], res, m);
+            }
+        }
+        return out;
+    }
+
+    // -------------------------------------------------------------------------
+    // Persistence
+    // -------------------------------------------------------------------------
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            out.writeInt(cards[i]);
+            Object c = containers[i];
+            if (c instanceof long[]) {
+                out.writeBoolean(true);
+                for (long w : (long[]) c) out.writeLong(w);
+            } else {
+                out.writeBoolean(false);
+                char[] arr = (char[]) c;
+                for (int k = 0; k < cards[i]; k++) out.writeChar(arr[k]);
+            }
+        }
+    }
+
+    public static MessageBitmap readFrom(DataInputStream in) throws IOException {
+        MessageBitmap b = new MessageBitmap();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            char key = in.readChar();
+            int card = in.readInt();
+            if (card <= 0 || card > 65536) throw new IOException("Bad container size " + card);
+            if (in.readBoolean()) {
+                long[] bits = new long[WORDS];
+                for (int w = 0; w < WORDS; w++) bits[w] = in.readLong();
+                b.append(key, bits, card);
+            } else {
+                char[] arr = new char[card];
+                for (int k = 0; k < card; k++) arr[k] = in.readChar();
+                b.append(key, arr, card);
+            }
+        }
+        return b;
+    }
+
+    // -------------------------------------------------------------------------
+    // Container plumbing
+    // -------------------------------------------------------------------------
+
+    private int find(char key) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) lo = mid + 1;
+            else if (keys[mid] > key) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private void insertContainer(int at, char key, Object c, int card) {
+        if (size == keys.length) {
+            int cap = size * 2;
+            keys = Arrays.copyOf(keys, cap);
+            containers = Arrays.copyOf(containers, cap);
+            cards = Arrays.copyOf(cards, cap);
+        }
+        System.arraycopy(keys, at, keys, at + 1, size - at);
+        System.arraycopy(containers, at, containers, at + 1, size - at);
+        System.arraycopy(cards, at, cards, at + 1, size - at);
+        keys[at] = key; containers[at] = c; cards[at] = card;
+        size++;
+    }
+
+    private void removeContainer(int at) {
+        System.arraycopy(keys, at + 1, keys, at, size - at - 1);
+        System.arraycopy(containers, at + 1, containers, at, size - at - 1);
+        System.arraycopy(cards, at + 1, cards, at, size - at - 1);
+        containers[--size] = null;
+    }
+
+    /** Appends a container with a key above every existing one; empty ones are dropped. */
+    private void append(char key, Object c, int card) {
+        if (card == 0) return;
+        insertContainer(size, key, c, card);
+    }
+
+    /** Appends a bitset, converting it to an array container when it is sparse enough. */
+    private void appendBits(char key, long[] bits) {
+        int card = 0;
+        for (long w : bits) card += Long.bitCount(w);
+        append(key, card <= ARRAY_MAX ? toArray(bits, card) : bits, card);
+    }
+
+    private static Object copy(Object c) {
+        return c instanceof long[] ? ((long[]) c).clone() : ((char[]) c).clone();
+    }
+
+    private static long[] asBits(Object c, int card) {
+        return c instanceof long[] ? ((long[]) c).clone() : toBits((char[]) c, card);
+    }
+
+    private static long[] toBits(char[] arr, int n) {
+        long[] bits = new long[WORDS];
+        for (int k = 0; k < n; k++) bits[arr[k] >>> 6] |= 1L << arr[k];
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int card) {
+        char[] arr = new char[Math.max(card, 1)];
+        int m = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                arr[m++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return arr;
+    }
+}
@@ -0,0 +1,172 @@
+package com.betterchat;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognises a server's chat formats: who sent a line, whether it is player chat, and
+ * which channel (party, guild, private…) it arrived on.
+ *
+ * Each profile is a fixed list of rules compiled once. A rule is an anchored pattern
+ * whose group 1 is the player name, guarded by a literal prefix so most lines are
+ * rejected with a startsWith before any regex runs. The first matching rule wins.
+ *
+ * The profile is picked from the server address (see {@link #forServer}); unknown
+ * servers get VANILLA, which only treats the strict {@code <Name> } form as player chat.
+ * Profiles keep one Matcher per rule, shared by every caller, so classify() must only
+ * ever run on one thread: ChatIngest's worker, which classifies every received line.
+ */
+public final class MessageClassifier {
+
+    // Channel ids stored on ChatMessage.channel. 0 = not recognised (older logs, server lines).
+    public static final int CH_NONE    = 0;
+    public static final int CH_ALL     = 1;
+    public static final int CH_PARTY   = 2;
+    public static final int CH_GUILD   = 3;
+    public static final int CH_OFFICER = 4;
+    public static final int CH_PRIVATE = 5;
+    public static final int CH_LOCAL   = 6;
+
+    private static final String[] CHANNEL_NAMES =
+            {"none", "all", "party", "guild", "officer", "private", "local"};
+
+    /** Channel id for a {@code channel:} expression value, or -1 if unknown. */
+    public static int channelId(String name) {
+        for (int i = 0; i < CHANNEL_NAMES.length; i++)
+            if (CHANNEL_NAMES[i].equalsIgnoreCase(name)) return i;
+        return -1;
+    }
+
+    public static String channelName(int id) {
+        return id >= 0 && id < CHANNEL_NAMES.length ? CHANNEL_NAMES[id] : CHANNEL_NAMES[CH_NONE];
+    }
+
+    // Rule kinds: PLAYER = group 1 sent the line; OUTGOING = we sent it, group 1 is the recipient
+    private static final int PLAYER = 0, OUTGOING = 1;
+
+    // Building blocks shared by the patterns below
+    private static final String NAME  = "(\\w{1,16})";
+    private static final String RANK  = "(?:\\[[^\\]]{1,20}\\] )?";
+
+    private static final class Rule {
+        final String  lead;     // literal prefix checked before the regex; "" = none
+        final Matcher matcher;  // anchored, reset per line
+        final int     channel;
+        final int     kind;
+
+        Rule(String lead, String regex, int channel, int kind) {
+            this.lead    = lead;
+            this.matcher = Pattern.compile("^" + regex).matcher("");
+            this.channel = channel;
+            this.kind    = kind;
+        }
+    }
+
+    /** What classify() found. Reused by the caller; every field is overwritten per line. */
+    public static final class Result {
+        /** Name of the player who sent the line, or null. Null for OUTGOING lines. */
+        public String  sender;
+        public int     channel;
+        /** True when another player (or we) typed this line, as opposed to a server notice. */
+        public boolean playerChat;
+        /** True for lines echoing something we sent, e.g. "To Name: hi". */
+        public boolean outgoing;
+    }
+
+    // -------------------------------------------------------------------------
+    // Built-in profiles
+    // -------------------------------------------------------------------------
+
+    public static final MessageClassifier VANILLA = new MessageClassifier("VANILLA",
+            new Rule("<", "<" + NAME + ">\\s", CH_ALL, PLAYER),
+            new Rule("You whisper to ", "You whisper to " + NAME + ": ", CH_PRIVATE, OUTGOING),
+            new Rule("", NAME + " whispers to you: ", CH_PRIVATE, PLAYER));
+
+    public static final MessageClassifier HYPIXEL = new MessageClassifier("HYPIXEL",
+            new Rule("Party > ",   "Party > "   + RANK + NAME + ": ", CH_PARTY, PLAYER),
+            new Rule("Guild > ",   "Guild > "   + RANK + NAME + "(?: \\[[^\\]]{1,20}\\])?: ", CH_GUILD, PLAYER),
+            new Rule("Officer > ", "Officer > " + RANK + NAME + "(?: \\[[^\\]]{1,20}\\])?: ", CH_OFFICER, PLAYER),
+            new Rule("From ",      "From "      + RANK + NAME + ": ", CH_PRIVATE, PLAYER),
+            new Rule("To ",        "To "        + RANK + NAME + ": ", CH_PRIVATE, OUTGOING),
+            // Lobby chat: optional [level], optional [RANK], then "Name: "
+            new Rule("", "(?:\\[\\d{1,4}\\S?\\] )?" + RANK + NAME + ": ", CH_ALL, PLAYER));
+
+    public static final MessageClassifier ESSENTIALS = new MessageClassifier("ESSENTIALS",
+            new Rule("[me -> ", "\\[me -> " + NAME + "\\] ", CH_PRIVATE, OUTGOING),
+            new Rule("[", "\\[" + NAME + " -> me\\] ", CH_PRIVATE, PLAYER),
+            new Rule("", "(?:\\[Party\\]|\\(Party\\)) " + RANK + "~?" + NAME + ": ", CH_PARTY, PLAYER),
+            new Rule("[", "\\[(?:L|Local)\\] " + RANK + "~?" + NAME + ": ", CH_LOCAL, PLAYER),
+            new Rule("[", "\\[(?:G|Global)\\] " + RANK + "~?" + NAME + ": ", CH_ALL, PLAYER),
+            new Rule("<", "<~?" + NAME + ">\\s", CH_ALL, PLAYER),
+            // Group prefixes and a "~" nickname marker are common; allow up to two prefixes
+            new Rule("", "(?:\\[[^\\]]{1,20}\\] ){0,2}~?" + NAME + ": ", CH_ALL, PLAYER));
+
+    private static final MessageClassifier[] PROFILES = {VANILLA, HYPIXEL, ESSENTIALS};
+
+    /** Looks up a profile by name (case-insensitive), or null. */
+    public static MessageClassifier byName(String name) {
+        for (MessageClassifier p : PROFILES) if (p.name.equalsIgnoreCase(name)) return p;
+        return null;
+    }
+
+    /**
+     * Picks the profile for a server address ("host" or "host:port"; null = singleplayer).
+     * A user override for the host or any parent domain wins, then the built-in table.
+     */
+    public static MessageClassifier forServer(String address, Map<String, String> overrides) {
+        if (address == null || address.isEmpty()) return VANILLA;
+        String host = address.toLowerCase(Locale.ROOT).trim();
+        int colon = host.lastIndexOf(':');
+        if (colon > 0 && host.indexOf(':') == colon) host = host.substring(0, colon);
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+
+        // Walk "mc.example.net" → "example.net" → "net"
+        for (String h = host; !h.isEmpty(); ) {
+            String o = overrides.get(h);
+            MessageClassifier p = o != null ? byName(o) : null;
+            if (p != null) return p;
+            int dot = h.indexOf('.');
+            h = dot < 0 ? "" : h.substring(dot + 1);
+        }
+        if (host.equals("hypixel.net") || host.endsWith(".hypixel.net")) return HYPIXEL;
+        return VANILLA;
+    }
+
+    // -------------------------------------------------------------------------
+    // Classification
+    // -------------------------------------------------------------------------
+
+    public final String name;
+    private final Rule[] rules;
+
+    private MessageClassifier(String name, Rule... rules) {
+        this.name  = name;
+        this.rules = rules;
+    }
+
+    /**
+     * Fills {@code out} for one unformatted line. Returns false (with {@code out} cleared)
+     * if no rule matched; the caller can then fall back to heuristics for the sender.
+     */
+    public boolean classify(String plain, Result out) {
+        out.sender = null; out.channel = CH_NONE; out.playerChat = false; out.outgoing = false;
+        if (plain == null || plain.isEmpty()) return false;
+        for (Rule r : rules) {
+            if (!r.lead.isEmpty() && !plain.startsWith(r.lead)) continue;
+            Matcher m = r.matcher.reset(plain);
+            if (!m.lookingAt()) continue;
+            out.channel    = r.channel;
+            out.playerChat = true;
+            if (r.kind == OUTGOING) out.outgoing = true;
+            else                    out.sender   = m.group(1);
+            r.matcher.reset(""); // don't keep the line reachable
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() { return name; }
+}
@@ -0,0 +1,92 @@
+package com.betterchat;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Message combining: gives a message the groupId of an identical one received within
+ * {@link ChatTabData#combineWindowSeconds}, even with other lines in between, so the
+ * renderer can collapse the group into "msg <xN>" at its newest member. Toggling
+ * ChatTabData.messageCombining only affects display — the full log is always kept.
+ *
+ * Recent messages are remembered by a 64-bit fingerprint of their plain text, newest
+ * last, at most {@link #MAX_FINGERPRINTS} of them; a fingerprint hit is confirmed on the
+ * text itself, so a collision never merges two different lines. Each group is kept as a
+ * chain through globalLog (ChatMessage.prevInGroup / nextInGroup) and its count is
+ * carried forward one member at a time, so neither combining nor drawing a group ever
+ * scans the history.
+ *
+ * Client thread only; ChatIngest.drain() offers every kept line before it is appended.
+ */
+final class MessageCombiner {
+
+    /** Distinct texts remembered at once; the least recently seen is forgotten first. */
+    static final int MAX_FINGERPRINTS = 1024;
+
+    private final ChatTabData data;
+
+    // Fingerprint → newest message with that text; iteration order is oldest sighting first
+    private final LinkedHashMap<Long, Sighting> recent = new LinkedHashMap<Long, Sighting>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Sighting> eldest) {
+            return size() > MAX_FINGERPRINTS;
+        }
+    };
+
+    private static final class Sighting {
+        ChatTabData.ChatMessage last;
+        long at;
+    }
+
+    MessageCombiner(ChatTabData data) {
+        this.data = data;
+    }
+
+    /**
+     * Joins {@code msg} to the group of the last identical message if that arrived within
+     * the window. Must be called just before the message is appended to globalLog.
+     */
+    void combine(ChatTabData.ChatMessage msg, long now) {
+        if (msg.plainText == null) return;
+        long window = data.combineWindowSeconds * 1000L;
+        expire(now - window);
+
+        long fp = fingerprint(msg.plainText);
+        Sighting s = recent.get(fp);
+        if (s != null && now - s.at <= window && s.last.plainText.equals(msg.plainText)) {
+            ChatTabData.ChatMessage prev = s.last;
+            int seq = data.globalLog.size(); // the position msg is about to get
+            int gid = prev.groupId != 0 ? prev.groupId : seq; // unique: no other group starts here
+            prev.groupId = gid;
+            msg.groupId = gid;
+            // repeatCount on the incoming message = how many in the group so far + 1
+            msg.repeatCount = prev.repeatCount + 1;
+            prev.repeatCount = msg.repeatCount; // keep in sync for cache-miss recovery
+            prev.nextInGroup = seq;
+            msg.prevInGroup = prev.seq;
+        } else if (s == null) {
+            recent.put(fp, s = new Sighting());
+        }
+        s.last = msg;
+        s.at = now;
+    }
+
+    /** Forgets texts last seen before {@code cutoff}; the oldest sightings come first. */
+    private void expire(long cutoff) {
+        for (Iterator<Sighting> it = recent.values().iterator(); it.hasNext(); ) {
+            if (it.next().at >= cutoff) break;
+            it.remove();
+        }
+    }
+
+    /** 64-bit FNV-1a over the text's chars. */
+    private static long fingerprint(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
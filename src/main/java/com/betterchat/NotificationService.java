@@ -0,0 +1,162 @@
+package com.betterchat;
+
+import net.minecraft.client.Minecraft;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sounds and system-tray balloons for arriving chat, kept off the frame's critical path.
+ *
+ * Sounds play on the client thread (the sound handler is not thread-safe) but at most one
+ * per {@link #SOUND_MIN_INTERVAL_MS}; the ones in between are counted, not queued.
+ * Balloons are coalesced: the first goes out at once, and whatever arrives within
+ * {@link #COALESCE_MS} of the last balloon waits and is shown as one ("5 new messages in
+ * Party"). Building the tray icon and displayMessage() run on the "BetterChat-Notify"
+ * thread, started with the first balloon, so a slow shell never stalls a frame.
+ *
+ * The counters are session totals, shown on the settings page.
+ */
+public final class NotificationService {
+
+    /** Shortest gap between two notification sounds. */
+    static final long SOUND_MIN_INTERVAL_MS = 1000;
+    /** Shortest gap between two balloons; messages in between are folded into the next. */
+    static final long COALESCE_MS = 2000;
+
+    private final SpscRing<Balloon> balloons = new SpscRing<>(16); // client → dispatcher
+    private Thread dispatcher;
+
+    // Client thread only
+    private long lastSoundAt;
+    private long lastBalloonAt;
+    private final Map<String, Integer> pendingTabs = new LinkedHashMap<>(); // tab name → messages
+    private int    pendingCount;
+    private String pendingLast;
+    private long suppressedSounds, coalescedMessages, droppedBalloons;
+
+    // Dispatcher thread only
+    private java.awt.TrayIcon trayIcon;
+    private volatile boolean  trayFailed;
+
+    private static final class Balloon {
+        final String title, text;
+        Balloon(String title, String text) { this.title = title; this.text = text; }
+    }
+
+    // -------------------------------------------------------------------------
+    // Client thread
+    // -------------------------------------------------------------------------
+
+    /** Plays the notification sound unless one played within the last interval. */
+    void sound(Minecraft mc, long now) {
+        play(mc, now, 1.0f);
+    }
+
+    /** Plays the mention ping: the notification sound, higher, under the same limit. */
+    void ping(Minecraft mc, long now) {
+        play(mc, now, 1.5f);
+    }
+
+    private void play(Minecraft mc, long now, float pitch) {
+        if (lastSoundAt != 0 && now - lastSoundAt < SOUND_MIN_INTERVAL_MS) {
+            suppressedSounds++;
+            return;
+        }
+        lastSoundAt = now;
+        mc.getSoundHandler().playSound(net.minecraft.client.audio.PositionedSoundRecord.create(
+                new net.minecraft.util.ResourceLocation("betterchat", "notify"), pitch));
+    }
+
+    /** Adds one message that reached the background tabs {@code tabNames} to the next balloon. */
+    void tray(Iterable<String> tabNames, String text, long now) {
+        if (trayFailed) return;
+        for (String name : tabNames) pendingTabs.merge(name, 1, Integer::sum);
+        pendingCount++;
+        pendingLast = text;
+        pump(now);
+    }
+
+    /** Shows the waiting balloon once the coalescing window is over. Called every frame. */
+    void pump(long now) {
+        if (pendingCount == 0 || now - lastBalloonAt < COALESCE_MS) return;
+        Balloon b = pendingCount == 1
+                ? new Balloon("BetterChat", pendingLast)
+                : new Balloon("BetterChat (" + pendingCount + " new)", summary() + "\n" + pendingLast);
+        coalescedMessages += pendingCount - 1;
+        pendingTabs.clear();
+        pendingCount = 0;
+        pendingLast = null;
+        lastBalloonAt = now;
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::run, "BetterChat-Notify");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+        if (balloons.offer(b)) LockSupport.unpark(dispatcher);
+        else                   droppedBalloons++; // the shell is stuck; this one would be stale anyway
+    }
+
+    /** "5 new messages in Party", or "3 in Party, 2 in Guild" when several tabs got some. */
+    private String summary() {
+        if (pendingTabs.size() == 1) {
+            Map.Entry<String, Integer> e = pendingTabs.entrySet().iterator().next();
+            return e.getValue() + " new messages in " + e.getKey();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> e : pendingTabs.entrySet()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(e.getValue()).append(" in ").append(e.getKey());
+        }
+        return sb.toString();
+    }
+
+    /** Sounds skipped because one had just played. */
+    public long suppressedSounds()  { return suppressedSounds; }
+    /** Messages shown as part of another message's balloon instead of their own. */
+    public long coalescedMessages() { return coalescedMessages; }
+    /** Balloons dropped because the tray thread was still busy with earlier ones. */
+    public long droppedBalloons()   { return droppedBalloons; }
+
+    // -------------------------------------------------------------------------
+    // Dispatcher thread
+    // -------------------------------------------------------------------------
+
+    private void run() {
+        while (true) {
+            Balloon b = balloons.poll();
+            if (b == null) { LockSupport.park(this); continue; }
+            show(b);
+        }
+    }
+
+    /** Shows a system-tray balloon; a tray that fails once is not tried again. */
+    private void show(Balloon b) {
+        if (trayFailed) return;
+        try {
+            if (!java.awt.SystemTray.isSupported()) { trayFailed = true; return; }
+
+            // Lazy-init the tray icon once
+            if (trayIcon == null) {
+                java.awt.SystemTray tray = java.awt.SystemTray.getSystemTray();
+                // 16×16 solid blue icon as a stand-in (no external image needed)
+                java.awt.image.BufferedImage img = new java.awt.image.BufferedImage(
+                        16, 16, java.awt.image.BufferedImage.TYPE_INT_ARGB);
+                java.awt.Graphics2D g = img.createGraphics();
+                g.setColor(new java.awt.Color(0x4E9EFF));
+                g.fillOval(0, 0, 16, 16);
+                g.dispose();
+                trayIcon = new java.awt.TrayIcon(img, "BetterChat");
+                trayIcon.setImageAutoSize(true);
+                tray.add(trayIcon);
+            }
+
+            // Truncate message to avoid overly long balloons
+            String safeMsg = b.text.length() > 200 ? b.text.substring(0, 197) + "..." : b.text;
+            trayIcon.displayMessage(b.title, safeMsg, java.awt.TrayIcon.MessageType.INFO);
+        } catch (Exception e) {
+            trayFailed = true;
+        }
+    }
+}
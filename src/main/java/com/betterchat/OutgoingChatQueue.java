@@ -0,0 +1,172 @@
+package com.betterchat;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ServerData;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Every line BetterChat sends to the server goes through here: typed messages and
+ * RUN_COMMAND click events ({@link Priority#MANUAL}), keybinds and auto-responses.
+ *
+ * Each server gets a token bucket of {@link #BURST} lines that refills one line per
+ * {@link #REFILL_MS}, which stays under the usual anti-spam kick thresholds. A line with
+ * a token free goes out at once, exactly as a direct sendChatMessage did; the rest wait
+ * in priority order (manual input first, auto-responses last) and {@link #pump} sends
+ * them as tokens come back, once per frame. A line already waiting is not queued twice.
+ * Automatic lines are dropped rather than piling up: past {@link #MAX_AUTOMATIC_QUEUED}
+ * of them, or an auto-response older than {@link #AUTO_RESPONSE_MAX_WAIT_MS}, since a
+ * late reply is worse than none. Lines queued for a server the player has left are
+ * dropped too.
+ *
+ * Client thread only.
+ */
+final class OutgoingChatQueue {
+
+    /** Who asked for a line; lower ordinals are sent first. */
+    enum Priority { MANUAL, KEYBIND, AUTO_RESPONSE }
+
+    /** Lines a server may receive back to back. */
+    static final int  BURST     = 4;
+    /** Time for a server's bucket to regain one line. */
+    static final long REFILL_MS = 1200;
+    /** Keybind and auto-response lines that may wait at once. */
+    static final int  MAX_AUTOMATIC_QUEUED = 4;
+    /** An auto-response still waiting after this long is dropped. */
+    static final long AUTO_RESPONSE_MAX_WAIT_MS = 10_000;
+
+    private static final class Pending {
+        final String   text;
+        final String   server;
+        final long     queuedAt;
+        final Runnable onSent;
+
+        Pending(String text, String server, long queuedAt, Runnable onSent) {
+            this.text = text; this.server = server; this.queuedAt = queuedAt; this.onSent = onSent;
+        }
+    }
+
+    /** A server's send allowance. */
+    private static final class Bucket {
+        int  tokens = BURST;
+        long lastRefill;
+
+        boolean take(long now) {
+            if (tokens < BURST) {
+                long regained = (now - lastRefill) / REFILL_MS;
+                if (regained > 0) {
+                    tokens = (int) Math.min(BURST, tokens + regained);
+                    lastRefill = tokens == BURST ? now : lastRefill + regained * REFILL_MS;
+                }
+            }
+            if (tokens == 0) return false;
+            if (tokens-- == BURST) lastRefill = now; // the refill clock starts with the first token spent
+            return true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Pending>[] queues = new ArrayDeque[Priority.values().length];
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    private long dropped;
+
+    OutgoingChatQueue() {
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+    }
+
+    /**
+     * Sends {@code text} now if the server's bucket allows, otherwise queues it.
+     * {@code onSent} (may be null) runs right after the line actually goes out.
+     * Returns false if the line was dropped instead.
+     */
+    boolean send(String text, Priority priority, Runnable onSent) {
+        if (text.isEmpty()) return false;
+        String server = currentServer();
+        // Already waiting: keep one copy, at the more urgent of the two priorities
+        for (int p = 0; p < queues.length; p++) {
+            for (Iterator<Pending> it = queues[p].iterator(); it.hasNext(); ) {
+                Pending q = it.next();
+                if (!q.text.equals(text) || !q.server.equals(server)) continue;
+                if (p > priority.ordinal()) {
+                    it.remove();
+                    queues[priority.ordinal()].add(new Pending(text, server, q.queuedAt, chain(q.onSent, onSent)));
+                }
+                return true;
+            }
+        }
+        if (priority != Priority.MANUAL && automaticQueued() >= MAX_AUTOMATIC_QUEUED) {
+            dropped++;
+            return false;
+        }
+        queues[priority.ordinal()].add(new Pending(text, server, System.currentTimeMillis(), onSent));
+        pump();
+        return true;
+    }
+
+    /** Sends what the buckets allow, most urgent first. Called once per frame. */
+    void pump() {
+        if (isEmpty()) return;
+        Minecraft mc = Minecraft.getMinecraft();
+        if (mc.thePlayer == null) {
+            // Disconnected: nothing queued can go anywhere any more
+            for (ArrayDeque<Pending> q : queues) { dropped += q.size(); q.clear(); }
+            return;
+        }
+        String server = currentServer();
+        long now = System.currentTimeMillis();
+        for (ArrayDeque<Pending> q : queues) {
+            for (Iterator<Pending> it = q.iterator(); it.hasNext(); ) {
+                Pending p = it.next();
+                if (!p.server.equals(server)
+                        || (q == queues[Priority.AUTO_RESPONSE.ordinal()] && now - p.queuedAt > AUTO_RESPONSE_MAX_WAIT_MS)) {
+                    it.remove();
+                    dropped++;
+                }
+            }
+        }
+        Bucket bucket = buckets.get(server);
+        if (bucket == null) buckets.put(server, bucket = new Bucket());
+        for (ArrayDeque<Pending> q : queues) {
+            while (!q.isEmpty()) {
+                if (!bucket.take(now)) return;
+                Pending p = q.poll();
+                mc.thePlayer.sendChatMessage(p.text);
+                if (p.onSent != null) p.onSent.run();
+            }
+        }
+    }
+
+    /** Lines waiting to be sent. */
+    int depth() {
+        int n = 0;
+        for (ArrayDeque<Pending> q : queues) n += q.size();
+        return n;
+    }
+
+    /** Lines dropped this session (automatic overflow, stale replies, left servers). */
+    long dropped() { return dropped; }
+
+    private boolean isEmpty() {
+        for (ArrayDeque<Pending> q : queues) if (!q.isEmpty()) return false;
+        return true;
+    }
+
+    private int automaticQueued() {
+        return queues[Priority.KEYBIND.ordinal()].size() + queues[Priority.AUTO_RESPONSE.ordinal()].size();
+    }
+
+    /** The bucket key for the current connection; "" in singleplayer. */
+    private static String currentServer() {
+        ServerData server = Minecraft.getMinecraft().getCurrentServerData();
+        return server != null && server.serverIP != null ? server.serverIP.toLowerCase(java.util.Locale.ROOT) : "";
+    }
+
+    private static Runnable chain(Runnable a, Runnable b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return () -> { a.run(); b.run(); };
+    }
+}
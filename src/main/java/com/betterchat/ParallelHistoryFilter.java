@@ -0,0 +1,221 @@
+package com.betterchat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Full re-filter of a large chat history, split into chunks over a ForkJoin pool.
+ *
+ * ChatRenderer starts a {@link Job} instead of calling buildFilteredHistory inline once
+ * the log reaches {@link #PARALLEL_THRESHOLD} messages. Each chunk evaluates a
+ * {@link TabFilter} snapshot over its slice of a globalLog snapshot; the matches are
+ * merged back in log order, date separators are inserted, and the finished list is
+ * published through a volatile field. Until then the renderer keeps drawing the previous
+ * lines with a progress hint.
+ *
+ * A {@link MembershipJob} does the same for a tab's membership bitmap when a derived tab
+ * needs a source that is far behind the log, so the client thread never waits for it.
+ */
+final class ParallelHistoryFilter {
+
+    /** Below this many messages a plain inline scan is cheaper than forking. */
+    static final int PARALLEL_THRESHOLD = 50_000;
+    /** Messages per leaf task. */
+    static final int CHUNK_SIZE = 8_192;
+
+    /** Daemon workers shared with FilterPreview; leaves one core for the client thread. */
+    static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            pool -> {
+                ForkJoinWorkerThread t =
+                        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                t.setName("BetterChat-Filter-" + t.getPoolIndex());
+                t.setDaemon(true);
+                return t;
+            },
+            null, false);
+
+    private ParallelHistoryFilter() {}
+
+    /**
+     * Snapshots the log and starts filtering it for one tab. Must be called on the client
+     * thread, since it reads globalLog and compiles the tab's filter.
+     */
+    static Job submit(ChatTabData data, int tabId) {
+        Job job = new Job(data.filterFor(tabId),
+                data.globalLog.toArray(new ChatTabData.ChatMessage[0]));
+        POOL.execute(job.root);
+        return job;
+    }
+
+    /**
+     * Adds the positions in globalLog[from, to) that pass {@code filter} to {@code into}.
+     * Large ranges are split over the pool and block the caller until every chunk is done.
+     * Callers that must not block (the client thread) use {@link #submitMembership} instead.
+     */
+    static void collectMembership(TabFilter filter, List<ChatTabData.ChatMessage> log,
+                                  int from, int to, MessageBitmap into) {
+        if (to - from < PARALLEL_THRESHOLD) {
+            long now = System.currentTimeMillis();
+            for (int i = from; i < to; i++) if (filter.matches(log.get(i), now)) into.add(i);
+            return;
+        }
+        MembershipJob job = new MembershipJob(filter, log, from, to);
+        POOL.invoke(job.root);
+        for (int i : job.result()) into.add(i);
+    }
+
+    /**
+     * Starts finding the positions in globalLog[from, to) that pass {@code filter}, for a
+     * membership bitmap too far behind to catch up inline. Client thread only (it snapshots
+     * the log range).
+     */
+    static MembershipJob submitMembership(TabFilter filter, List<ChatTabData.ChatMessage> log, int from, int to) {
+        MembershipJob job = new MembershipJob(filter, log, from, to);
+        POOL.execute(job.root);
+        return job;
+    }
+
+    // -------------------------------------------------------------------------
+    // Scan  —  a filter over a log snapshot, split into chunks
+    // -------------------------------------------------------------------------
+
+    abstract static class Scan {
+        final TabFilter filter;
+        final ChatTabData.ChatMessage[] snapshot;
+        final long          now       = System.currentTimeMillis();
+        final AtomicInteger processed = new AtomicInteger();
+        final RecursiveAction root;
+        volatile boolean cancelled;
+
+        Scan(TabFilter filter, ChatTabData.ChatMessage[] snapshot) {
+            this.filter   = filter;
+            this.snapshot = snapshot;
+            this.root = new RecursiveAction() {
+                @Override protected void compute() { run(); }
+            };
+        }
+
+        int progressPercent() {
+            return snapshot.length == 0 ? 100 : (int) (processed.get() * 100L / snapshot.length);
+        }
+
+        /** Stops the leaf tasks at their next check; the result is never published. */
+        void cancel() { cancelled = true; }
+
+        /** Filters every chunk; null if cancelled. Chunks are contiguous and in order. */
+        List<Chunk> scan() {
+            List<Chunk> chunks = new ArrayList<>();
+            for (int lo = 0; lo < snapshot.length; lo += CHUNK_SIZE)
+                chunks.add(new Chunk(this, lo, Math.min(snapshot.length, lo + CHUNK_SIZE)));
+            ForkJoinTask.invokeAll(chunks);
+            return cancelled ? null : chunks;
+        }
+
+        abstract void run();
+    }
+
+    // -------------------------------------------------------------------------
+    // Job  —  one full re-filter for one tab
+    // -------------------------------------------------------------------------
+
+    static final class Job extends Scan {
+        /** Number of globalLog entries the result covers (the snapshot length). */
+        final int logSize;
+
+        private volatile List<ChatTabData.ChatMessage> result;
+
+        private Job(TabFilter filter, ChatTabData.ChatMessage[] snapshot) {
+            super(filter, snapshot);
+            this.logSize = snapshot.length;
+        }
+
+        boolean isDone() { return result != null; }
+
+        /** The filtered, date-separated history, or null while still running. */
+        List<ChatTabData.ChatMessage> result() { return result; }
+
+        @Override
+        void run() {
+            List<Chunk> chunks = scan();
+            if (chunks == null) return;
+
+            // Merge in log order: chunks are contiguous and already ordered.
+            List<ChatTabData.ChatMessage> merged = new ArrayList<>();
+            String lastDate = null;
+            for (Chunk c : chunks) {
+                int[] hits = c.join();
+                for (int i : hits) {
+                    ChatTabData.ChatMessage msg = snapshot[i];
+                    if (!msg.date.equals(lastDate)) {
+                        merged.add(ChatTabData.dateSeparatorFor(msg));
+                        lastDate = msg.date;
+                    }
+                    merged.add(msg);
+                }
+            }
+            result = merged; // volatile write publishes the whole list at once
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // MembershipJob  —  the positions of one log range that pass a tab's filter
+    // -------------------------------------------------------------------------
+
+    static final class MembershipJob extends Scan {
+        /** The globalLog range the result covers. */
+        final int from, to;
+
+        private volatile int[] result;
+
+        private MembershipJob(TabFilter filter, List<ChatTabData.ChatMessage> log, int from, int to) {
+            super(filter, log.subList(from, to).toArray(new ChatTabData.ChatMessage[0]));
+            this.from = from;
+            this.to   = to;
+        }
+
+        boolean isDone() { return result != null; }
+
+        /** Matching globalLog positions, ascending, or null while still running. */
+        int[] result() { return result; }
+
+        @Override
+        void run() {
+            List<Chunk> chunks = scan();
+            if (chunks == null) return;
+            int n = 0;
+            for (Chunk c : chunks) n += c.join().length;
+            int[] positions = new int[n];
+            n = 0;
+            for (Chunk c : chunks) for (int i : c.join()) positions[n++] = from + i;
+            result = positions;
+        }
+    }
+
+    /** Leaf task: returns the snapshot indices in [lo, hi) that pass the filter. */
+    private static final class Chunk extends RecursiveTask<int[]> {
+        private final Scan scan;
+        private final int lo, hi;
+
+        Chunk(Scan scan, int lo, int hi) { this.scan = scan; this.lo = lo; this.hi = hi; }
+
+        @Override
+        protected int[] compute() {
+            int[] hits = new int[hi - lo];
+            int n = 0;
+            for (int i = lo; i < hi; i++) {
+                if ((i & 1023) == 0 && scan.cancelled) return new int[0];
+                if (scan.filter.matches(scan.snapshot[i], scan.now)) hits[n++] = i;
+            }
+            scan.processed.addAndGet(hi - lo);
+            return Arrays.copyOf(hits, n);
+        }
+    }
+}
@@ -14,14 +14,37 @@ public class RenderableLine {
     public final ChatTabData.ChatMessage sourceMsg;
     /** Character offset within the source message where this wrapped line starts. */
     public final int lineCharOffset;
+    /**
+     * For a flood summary row, how many shed messages it stands for; sourceMsg is then the
+     * burst's newest one. 0 for every other line.
+     */
+    public final int shedCount;
+    /**
+     * Mentions on this line as [start, end) pairs of unformatted offsets into {@link #text},
+     * cut from the message's mentionSpans when the line was wrapped; null when there are none.
+     */
+    public final int[] highlights;
 
     public RenderableLine(String text, boolean isSeparator, String time, String date,
                           ChatTabData.ChatMessage sourceMsg, int lineCharOffset) {
+        this(text, isSeparator, time, date, sourceMsg, lineCharOffset, 0);
+    }
+
+    public RenderableLine(String text, boolean isSeparator, String time, String date,
+                          ChatTabData.ChatMessage sourceMsg, int lineCharOffset, int shedCount) {
+        this(text, isSeparator, time, date, sourceMsg, lineCharOffset, shedCount, null);
+    }
+
+    public RenderableLine(String text, boolean isSeparator, String time, String date,
+                          ChatTabData.ChatMessage sourceMsg, int lineCharOffset, int shedCount,
+                          int[] highlights) {
         this.text          = text;
         this.isSeparator   = isSeparator;
         this.time          = time;
         this.date          = date;
         this.sourceMsg     = sourceMsg;
         this.lineCharOffset = lineCharOffset;
+        this.shedCount     = shedCount;
+        this.highlights    = highlights;
     }
 }
@@ -0,0 +1,71 @@
+package com.betterchat;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns player names to small int ids so a message's sender is parsed once.
+ *
+ * ChatMessage stores the id of the name its sender was classified as (0 = no sender), and
+ * the filters, mute checks and the player context menu compare ids instead of parsing
+ * the text again. Every id also has a case-folded id, shared by all spellings of the
+ * same name, for case-insensitive lookups such as the {@code sender:} expression leaf.
+ *
+ * Ids are process-local and never persisted; loaded history re-interns the saved names.
+ */
+public final class SenderDictionary {
+
+    /** Id of "no sender" — server messages, commands, anything without a player name. */
+    public static final int NONE = 0;
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    // Indexed by id; slot 0 is NONE. Grown under the class lock, read without it.
+    private static volatile String[] names  = new String[64];
+    private static volatile int[]    folded = new int[64];
+    private static int next = 1;
+
+    private SenderDictionary() {}
+
+    /** Returns the id for a name, assigning one on first sight. Null or empty → NONE. */
+    public static int intern(String name) {
+        if (name == null || name.isEmpty()) return NONE;
+        Integer id = IDS.get(name);
+        return id != null ? id : internSlow(name);
+    }
+
+    private static synchronized int internSlow(String name) {
+        Integer existing = IDS.get(name);
+        if (existing != null) return existing;
+        String lower = name.toLowerCase(Locale.ROOT);
+        int foldId = lower.equals(name) ? -1 : intern(lower);
+
+        int id = next++;
+        if (id >= names.length) {
+            int cap = names.length * 2;
+            folded = Arrays.copyOf(folded, cap);
+            names  = Arrays.copyOf(names, cap);
+        }
+        folded[id] = foldId == -1 ? id : foldId;
+        names[id]  = name;
+        IDS.put(name, id); // publish last, after both arrays hold the slot
+        return id;
+    }
+
+    /** Returns the id for a name without assigning one; NONE if it has never been seen. */
+    public static int lookup(String name) {
+        if (name == null) return NONE;
+        Integer id = IDS.get(name);
+        return id != null ? id : NONE;
+    }
+
+    /** The name for an id, or null for NONE. */
+    public static String name(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    /** The id shared by every capitalisation of this id's name. */
+    public static int foldedId(int id) {
+        return id == NONE ? NONE : folded[id];
+    }
+}
@@ -0,0 +1,51 @@
+package com.betterchat;
+
+import java.util.Arrays;
+
+/**
+ * Postings index: case-folded sender id → ascending globalLog positions of that
+ * sender's messages.
+ *
+ * Maintained by ChatTabData as messages are appended, and rebuilt after the history
+ * loads. Mute/unmute uses it to patch only the affected lines of each tab's cache, and
+ * the Search page answers {@code from:Name} queries from it without scanning the log.
+ * Client thread only.
+ */
+public final class SenderIndex {
+
+    private int[][] postings = new int[64][];
+    private int[]   counts   = new int[64];
+
+    /** Records that globalLog[position] was sent by senderId (any capitalisation). */
+    void add(int senderId, int position) {
+        if (senderId == SenderDictionary.NONE) return;
+        int key = SenderDictionary.foldedId(senderId);
+        if (key >= postings.length) {
+            int cap = Math.max(key + 1, postings.length * 2);
+            postings = Arrays.copyOf(postings, cap);
+            counts   = Arrays.copyOf(counts, cap);
+        }
+        int[] list = postings[key];
+        if (list == null) postings[key] = list = new int[4];
+        else if (counts[key] == list.length) postings[key] = list = Arrays.copyOf(list, list.length * 2);
+        list[counts[key]++] = position;
+    }
+
+    /** Number of logged messages from this sender (any capitalisation). */
+    public int count(int senderId) {
+        int key = SenderDictionary.foldedId(senderId);
+        return key < counts.length ? counts[key] : 0;
+    }
+
+    /** Ascending globalLog positions of this sender's messages (any capitalisation). */
+    public int[] positions(int senderId) {
+        int key = SenderDictionary.foldedId(senderId);
+        if (key == SenderDictionary.NONE || key >= postings.length || postings[key] == null) return new int[0];
+        return Arrays.copyOf(postings[key], counts[key]);
+    }
+
+    void clear() {
+        Arrays.fill(postings, null);
+        Arrays.fill(counts, 0);
+    }
+}
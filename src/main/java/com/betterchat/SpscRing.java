@@ -0,0 +1,67 @@
+package com.betterchat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue for exactly one producer thread and one consumer thread, with no locks.
+ *
+ * The slots are a power-of-two array indexed by two ever-increasing counters: the
+ * producer owns {@code tail}, the consumer owns {@code head}, and each only ever reads
+ * the other's. A slot is filled before the tail is published and cleared before the
+ * head is, so the ordered (lazySet) writes are all the handover needs. Each side keeps
+ * a stale copy of the other's counter and only re-reads it when the copy says the ring
+ * is full (or empty), so the steady state touches no shared cache line but the slot.
+ *
+ * Calling offer() from two threads, or poll() from two threads, corrupts the ring.
+ */
+final class SpscRing<E> {
+
+    private final Object[] slots;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong(); // next slot to read; written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next slot to write; written by the producer
+    private long headSeen; // producer's copy of head
+    private long tailSeen; // consumer's copy of tail
+
+    /** {@code capacity} is rounded up to a power of two. */
+    SpscRing(int capacity) {
+        int n = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new Object[n];
+        this.mask  = n - 1;
+    }
+
+    int capacity() { return slots.length; }
+
+    /** Producer only. False, and nothing queued, if the ring is full. */
+    boolean offer(E e) {
+        long t = tail.get();
+        if (t - headSeen >= slots.length) {
+            headSeen = head.get();
+            if (t - headSeen >= slots.length) return false;
+        }
+        slots[(int) t & mask] = e;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /** Consumer only. The oldest element, or null if the ring is empty. */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long h = head.get();
+        if (h >= tailSeen) {
+            tailSeen = tail.get();
+            if (h >= tailSeen) return null;
+        }
+        int i = (int) h & mask;
+        E e = (E) slots[i];
+        slots[i] = null;
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    /** Either side. A snapshot; only a hint once the other side moves. */
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+}
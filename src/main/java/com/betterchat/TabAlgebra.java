@@ -0,0 +1,251 @@
+package com.betterchat;
+
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Set algebra over other tabs, for derived tabs such as {@code Party | Guild} or
+ * {@code Global - Spam}.
+ *
+ * Grammar (operators are left-associative and share one precedence; use brackets):
+ * <pre>
+ *   expr := term ( op term )*
+ *   term := name | "quoted name" | #id | "(" expr ")"
+ *   op   := "|" "+" "∪" (union)   "&" "∩" (intersection)   "-" "−" (difference)
+ * </pre>
+ * Tabs are typed by name but stored by id ({@code #3 | #5}), so renaming a source tab
+ * keeps the derived tab working. Sources must be ordinary (filtered) tabs; a derived tab
+ * never reads another derived tab, which rules out cycles.
+ *
+ * A derived tab never runs a filter itself: its history is the union, intersection or
+ * difference of its sources' membership bitmaps, and a single new message is tested
+ * against the sources' answers for it.
+ */
+public final class TabAlgebra {
+
+    /** Raised for malformed input; {@link #position} is a 0-based column. */
+    public static final class ParseException extends Exception {
+        public final int position;
+
+        ParseException(String message, int position) {
+            super(message);
+            this.position = position;
+        }
+    }
+
+    private static final char UNION = '|', INTERSECT = '&', DIFFERENCE = '-';
+
+    private final Node root;
+
+    private TabAlgebra(Node root) { this.root = root; }
+
+    /**
+     * Parses user input for the tab {@code selfId} and returns the stored id form.
+     * Throws if a name does not resolve to an ordinary tab other than this one.
+     */
+    public static String compile(ChatTabData data, String source, int selfId) throws ParseException {
+        Parser p = new Parser(source, data, selfId);
+        Node root = p.parseExpr();
+        if (p.pos < p.s.length()) throw new ParseException("Unexpected '" + p.s.charAt(p.pos) + "'", p.pos);
+        StringBuilder sb = new StringBuilder();
+        root.write(sb, null);
+        return sb.toString();
+    }
+
+    /** Compiles a stored id form. Returns null if it no longer parses. */
+    static TabAlgebra parseStored(String idForm) {
+        try {
+            Parser p = new Parser(idForm, null, -1);
+            Node root = p.parseExpr();
+            return p.pos < p.s.length() ? null : new TabAlgebra(root);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /** The stored id form with tab names put back, for editing. Unknown ids stay as #id. */
+    public static String toDisplay(ChatTabData data, String idForm) {
+        TabAlgebra a = parseStored(idForm);
+        if (a == null) return idForm;
+        StringBuilder sb = new StringBuilder();
+        a.root.write(sb, data);
+        return sb.toString();
+    }
+
+    /** Combines the sources' bitmaps. {@code membership} returns an empty bitmap for a missing tab. */
+    MessageBitmap evaluate(IntFunction<MessageBitmap> membership) {
+        return root.eval(membership);
+    }
+
+    /** Whether one message belongs, given whether it belongs to each source tab. */
+    boolean test(IntPredicate inSource) {
+        return root.test(inSource);
+    }
+
+    /** True if the tab {@code tabId} is one of the sources. */
+    boolean reads(int tabId) {
+        return root.reads(tabId);
+    }
+
+    // -------------------------------------------------------------------------
+    // Tree
+    // -------------------------------------------------------------------------
+
+    private abstract static class Node {
+        abstract MessageBitmap eval(IntFunction<MessageBitmap> membership);
+        abstract boolean test(IntPredicate inSource);
+        abstract boolean reads(int tabId);
+        /** Writes the id form, or the name form when {@code names} is non-null. */
+        abstract void write(StringBuilder sb, ChatTabData names);
+    }
+
+    private static final class Source extends Node {
+        final int tabId;
+        Source(int tabId) { this.tabId = tabId; }
+
+        @Override MessageBitmap eval(IntFunction<MessageBitmap> membership) { return membership.apply(tabId); }
+        @Override boolean test(IntPredicate inSource) { return inSource.test(tabId); }
+        @Override boolean reads(int id) { return id == tabId; }
+
+        @Override void write(StringBuilder sb, ChatTabData names) {
+            TabProfile t = names != null ? names.tab(tabId) : null;
+            if (t == null) { sb.append('#').append(tabId); return; }
+            if (needsQuotes(t.name)) sb.append('"').append(t.name).append('"');
+            else sb.append(t.name);
+        }
+    }
+
+    private static final class Op extends Node {
+        final char op;
+        final Node left, right;
+        Op(char op, Node left, Node right) { this.op = op; this.left = left; this.right = right; }
+
+        @Override MessageBitmap eval(IntFunction<MessageBitmap> membership) {
+            MessageBitmap a = left.eval(membership), b = right.eval(membership);
+            switch (op) {
+                case UNION:     return MessageBitmap.or(a, b);
+                case INTERSECT: return MessageBitmap.and(a, b);
+                default:        return MessageBitmap.andNot(a, b);
+            }
+        }
+
+        @Override boolean test(IntPredicate inSource) {
+            boolean a = left.test(inSource);
+            switch (op) {
+                case UNION:     return a || right.test(inSource);
+                case INTERSECT: return a && right.test(inSource);
+                default:        return a && !right.test(inSource);
+            }
+        }
+
+        @Override boolean reads(int tabId) { return left.reads(tabId) || right.reads(tabId); }
+
+        @Override void write(StringBuilder sb, ChatTabData names) {
+            left.write(sb, names);
+            sb.append(' ').append(op).append(' ');
+            // Left-associative: a right operand that is itself an operation needs brackets
+            boolean wrap = right instanceof Op;
+            if (wrap) sb.append('(');
+            right.write(sb, names);
+            if (wrap) sb.append(')');
+        }
+    }
+
+    private static boolean isOperator(char c) {
+        return c == '|' || c == '+' || c == '∪' || c == '&' || c == '∩'
+                || c == '-' || c == '−' || c == '(' || c == ')' || c == '"' || c == '#';
+    }
+
+    private static boolean needsQuotes(String name) {
+        for (int i = 0; i < name.length(); i++) if (isOperator(name.charAt(i))) return true;
+        return name.trim().length() != name.length() || name.isEmpty();
+    }
+
+    // -------------------------------------------------------------------------
+    // Parser
+    // -------------------------------------------------------------------------
+
+    private static final class Parser {
+        final String s;
+        final ChatTabData data; // null when reading the stored id form
+        final int selfId;
+        int pos;
+
+        Parser(String s, ChatTabData data, int selfId) {
+            this.s = s; this.data = data; this.selfId = selfId;
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        Node parseExpr() throws ParseException {
+            Node left = parseTerm();
+            while (true) {
+                skipSpaces();
+                if (pos >= s.length()) return left;
+                char op;
+                switch (s.charAt(pos)) {
+                    case '|': case '+': case '∪': op = UNION; break;
+                    case '&': case '∩':           op = INTERSECT; break;
+                    case '-': case '−':           op = DIFFERENCE; break;
+                    default: return left;
+                }
+                pos++;
+                left = new Op(op, left, parseTerm());
+            }
+        }
+
+        Node parseTerm() throws ParseException {
+            skipSpaces();
+            if (pos >= s.length()) throw new ParseException("Expected a tab name", pos);
+            int start = pos;
+            char c = s.charAt(pos);
+            if (c == '(') {
+                pos++;
+                Node inner = parseExpr();
+                skipSpaces();
+                if (pos >= s.length() || s.charAt(pos) != ')') throw new ParseException("Missing ')'", pos);
+                pos++;
+                return inner;
+            }
+            if (c == '#') {
+                pos++;
+                while (pos < s.length() && Character.isDigit(s.charAt(pos))) pos++;
+                if (pos == start + 1) throw new ParseException("Expected a tab id after '#'", start);
+                int id;
+                try { id = Integer.parseInt(s.substring(start + 1, pos)); }
+                catch (NumberFormatException e) { throw new ParseException("Bad tab id", start); }
+                return source(data != null ? data.tab(id) : null, id, start);
+            }
+            String name;
+            if (c == '"') {
+                int close = s.indexOf('"', pos + 1);
+                if (close < 0) throw new ParseException("Unclosed quote", pos);
+                name = s.substring(pos + 1, close);
+                pos = close + 1;
+            } else {
+                while (pos < s.length() && !isOperator(s.charAt(pos))) pos++;
+                name = s.substring(start, pos).trim();
+                if (name.isEmpty()) throw new ParseException("Expected a tab name", start);
+            }
+            if (data == null) throw new ParseException("Expected a tab id", start);
+            return source(byName(name), -1, start);
+        }
+
+        private TabProfile byName(String name) {
+            for (TabProfile t : data.tabs) if (t.name.equals(name)) return t;
+            for (TabProfile t : data.tabs) if (t.name.equalsIgnoreCase(name)) return t;
+            return null;
+        }
+
+        /** Checks a resolved source tab (user input only) and builds its leaf. */
+        private Node source(TabProfile t, int storedId, int at) throws ParseException {
+            if (data == null) return new Source(storedId);
+            if (t == null) throw new ParseException("No tab '" + s.substring(at, pos).trim() + "'", at);
+            if (t.id == selfId) throw new ParseException("A tab can't include itself", at);
+            if (t.isDerived()) throw new ParseException("'" + t.name + "' is derived too", at);
+            return new Source(t.id);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.betterchat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An immutable snapshot of one tab's filter rules, compiled from ChatTabData.
+ *
+ * Keywords are split, trimmed and compiled into CaseFoldMatchers once here instead of on every message,
+ * and the mute/ignore lists are copied, so a TabFilter can be evaluated from any thread
+ * (see ParallelHistoryFilter) while the client thread keeps editing the live settings.
+ * ChatTabData compiles a fresh snapshot whenever filterVersion changes.
+ *
+ * Keywords starting with {@value #REGEX_PREFIX} are regular expressions. They are compiled
+ * here once per filterVersion and matched through a step-bounded CharSequence, so a
+ * catastrophically backtracking pattern gives up instead of freezing a history rebuild.
+ *
+ * Every rule records into a {@link FilterMetrics.Counter} owned by the tab's FilterMetrics,
+ * so FiltersPage can show per-rule evaluations, matches and time, and export them.
+ */
+public final class TabFilter {
+
+    /** The ChatTabData.filterVersion this snapshot was compiled at. */
+    final int filterVersion;
+
+    /** Keyword prefix that marks a regular expression instead of a plain substring. */
+    public static final String REGEX_PREFIX = "re:";
+    /** Stored form of a comma inside a keyword (the keyword list itself is comma-separated). */
+    static final String COMMA_ESCAPE = "\u00A7c";
+
+    // Message-type rule names, as FiltersPage labels them
+    public static final String TYPE_ALL       = "All Messages";
+    public static final String TYPE_COMMANDS  = "Commands";
+    public static final String TYPE_SERVER    = "Server Messages";
+    public static final String TYPE_PLAYERS   = "Player Messages";
+    public static final String TYPE_RESPONSES = "Command Responses";
+    public static final String TYPE_SENT_BY_ME = "Messages Sent by Me";
+
+    private final RegexRule[] includeRegex;
+    private final RegexRule[] excludeRegex;
+    /** The tab's filter expression; when set it replaces the keyword and type rules. */
+    private final FilterExpression expression;
+    private final FilterMetrics.Counter muteCounter, expressionCounter;
+
+    // The exclusions, then every accept rule, each an OR whose order FilterCheck re-sorts
+    // by observed cost per decision. Swapped for a re-sorted copy, never modified in place.
+    private volatile FilterCheck[] rejectChecks, acceptChecks;
+    private final AtomicBoolean reordering = new AtomicBoolean();
+
+    // Copies of the mute/ignore lists as sorted SenderDictionary ids — never the live
+    // maps, which the client thread may be mutating. mutedUntil[i] is mutedIds[i]'s expiry.
+    private final int[]  mutedIds;
+    private final long[] mutedUntil;
+    private final int[]  ignoredIds;
+
+    /** The tab's live filter; records into the tab's FilterMetrics. */
+    TabFilter(ChatTabData data, TabProfile tab) {
+        this(data, tab, tab.filter, tab.exclusion, data.metricsFor(tab.id));
+    }
+
+    /**
+     * The tab's rules with the keyword lists replaced, e.g. the two sides FilterPreview
+     * compares. Its counters are private, so previews never show up in the stats.
+     */
+    TabFilter(ChatTabData data, TabProfile tab, String includeCsv, String excludeCsv) {
+        this(data, tab, includeCsv, excludeCsv, new FilterMetrics());
+    }
+
+    private TabFilter(ChatTabData data, TabProfile tab, String includeCsv, String excludeCsv,
+                      FilterMetrics metrics) {
+        this.filterVersion           = data.filterVersion;
+        // Declared order: the legacy evaluation order, and the starting point for ties
+        List<FilterCheck> reject = new ArrayList<>(), accept = new ArrayList<>();
+        List<RegexRule> regex = new ArrayList<>();
+        splitKeywords(excludeCsv, reject, regex, metrics, FilterMetrics.KIND_EXCLUDE);
+        this.excludeRegex            = regex.toArray(new RegexRule[0]);
+        regex.clear();
+        if (tab.sentByMe)   accept.add(new FilterCheck.Flag(FilterCheck.SENT_BY_ME, metrics.counter(FilterMetrics.KIND_TYPE, TYPE_SENT_BY_ME)));
+        if (tab.includeAll) accept.add(new FilterCheck.Flag(FilterCheck.ALL, metrics.counter(FilterMetrics.KIND_TYPE, TYPE_ALL)));
+        splitKeywords(includeCsv, accept, regex, metrics, FilterMetrics.KIND_INCLUDE);
+        this.includeRegex            = regex.toArray(new RegexRule[0]);
+        if (tab.includeCommands)         accept.add(new FilterCheck.Flag(FilterCheck.COMMANDS,  metrics.counter(FilterMetrics.KIND_TYPE, TYPE_COMMANDS)));
+        if (tab.includeServer)           accept.add(new FilterCheck.Flag(FilterCheck.SERVER,    metrics.counter(FilterMetrics.KIND_TYPE, TYPE_SERVER)));
+        if (tab.includePlayers)          accept.add(new FilterCheck.Flag(FilterCheck.PLAYERS,   metrics.counter(FilterMetrics.KIND_TYPE, TYPE_PLAYERS)));
+        if (tab.includeCommandResponses) accept.add(new FilterCheck.Flag(FilterCheck.RESPONSES, metrics.counter(FilterMetrics.KIND_TYPE, TYPE_RESPONSES)));
+        this.rejectChecks            = FilterCheck.sorted(reject.toArray(new FilterCheck[0]));
+        this.acceptChecks            = FilterCheck.sorted(accept.toArray(new FilterCheck[0]));
+        this.expression              = compileExpression(tab.expression, metrics);
+        TreeMap<Integer, Long> muted = new TreeMap<>();
+        for (Map.Entry<String, Long> e : data.mutedPlayers.entrySet())
+            muted.put(SenderDictionary.intern(e.getKey()), e.getValue());
+        this.mutedIds   = new int[muted.size()];
+        this.mutedUntil = new long[muted.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Long> e : muted.entrySet()) {
+            mutedIds[i] = e.getKey(); mutedUntil[i] = e.getValue(); i++;
+        }
+        this.ignoredIds = new int[data.ignoredPlayers.size()];
+        i = 0;
+        for (String name : data.ignoredPlayers) ignoredIds[i++] = SenderDictionary.intern(name);
+        Arrays.sort(ignoredIds);
+
+        // Counters for the fixed rules; a rule that is switched off has none
+        this.muteCounter       = mutedIds.length + ignoredIds.length > 0
+                ? metrics.counter(FilterMetrics.KIND_MUTE, "muted/ignored players") : null;
+        this.expressionCounter = expression != null ? metrics.counter(FilterMetrics.KIND_EXPRESSION, expression.source) : null;
+        List<FilterMetrics.Counter> live = new ArrayList<>();
+        for (FilterCheck c : reject) live.add(c.counter);
+        for (FilterCheck c : accept) live.add(c.counter);
+        if (muteCounter != null)       live.add(muteCounter);
+        if (expressionCounter != null) live.add(expressionCounter);
+        if (expression != null)        live.addAll(expression.modCounters());
+        metrics.retainOnly(live);
+    }
+
+    /**
+     * Splits a comma-separated keyword list into checks: plain keywords first, then regex
+     * rules (also collected into {@code regex} for the hover lookup). Patterns that no
+     * longer compile are skipped rather than failing the tab. Counters are keyed by the
+     * unescaped keyword, so a regex is listed as {@code re:pattern}.
+     */
+    private static void splitKeywords(String csv, List<FilterCheck> checks, List<RegexRule> regex,
+                                      FilterMetrics metrics, String kind) {
+        if (csv.isEmpty()) return;
+        for (String k : csv.split(",")) {
+            String t = unescapeKeyword(k.trim());
+            if (t.isEmpty() || isRegex(t)) continue;
+            checks.add(new FilterCheck.Keyword(new CaseFoldMatcher(t), metrics.counter(kind, t)));
+        }
+        for (String k : csv.split(",")) {
+            String t = unescapeKeyword(k.trim());
+            if (!isRegex(t)) continue;
+            try {
+                RegexRule r = new RegexRule(t.substring(REGEX_PREFIX.length()), metrics.counter(kind, t));
+                regex.add(r);
+                checks.add(new FilterCheck.Regex(r));
+            } catch (PatternSyntaxException ignored) {}
+        }
+    }
+
+    /**
+     * A stored expression that no longer parses (e.g. its mod predicate is not registered)
+     * falls back to the keyword rules.
+     */
+    private static FilterExpression compileExpression(String src, FilterMetrics metrics) {
+        if (src.trim().isEmpty()) return null;
+        try { return FilterExpression.parse(src, metrics); }
+        catch (FilterExpression.ParseException e) { return null; }
+    }
+
+    // ── Keyword helpers (shared with FiltersPage) ────────────────────────────
+
+    public static boolean isRegex(String keyword) {
+        return keyword.startsWith(REGEX_PREFIX) && keyword.length() > REGEX_PREFIX.length();
+    }
+
+    /** Escapes a keyword for storage in the comma-separated keyword list. */
+    public static String escapeKeyword(String keyword) {
+        return keyword.replace(",", COMMA_ESCAPE);
+    }
+
+    public static String unescapeKeyword(String stored) {
+        return stored.replace(COMMA_ESCAPE, ",");
+    }
+
+    /** Returns null if the pattern compiles, otherwise a one-line description of the error. */
+    public static String validateRegex(String pattern) {
+        try {
+            Pattern.compile(pattern);
+            return null;
+        } catch (PatternSyntaxException e) {
+            return e.getDescription();
+        }
+    }
+
+    /** The mod predicates the tab's expression calls; empty without an expression. */
+    public List<BetterChatAPI.Registration> modPredicates() {
+        return expression != null ? expression.modPredicates() : Collections.<BetterChatAPI.Registration>emptyList();
+    }
+
+    /** The compiled rule for a regex source in this tab, or null if there is none. */
+    public RegexRule regexRule(String source) {
+        for (RegexRule r : includeRegex) if (r.source.equals(source)) return r;
+        for (RegexRule r : excludeRegex) if (r.source.equals(source)) return r;
+        return null;
+    }
+
+    public boolean matches(ChatTabData.ChatMessage msg) {
+        return matches(msg, System.currentTimeMillis());
+    }
+
+    /**
+     * Same rules as ChatTabData.messagePassesFilter: mute/ignore, then either the tab's
+     * expression or the exclusions followed by the inclusion rules. Temp mutes are compared against {@code now} rather
+     * than removed, so evaluation never mutates shared state. Within the exclusions and
+     * within the inclusions the order adapts (see FilterCheck); the outcome cannot.
+     */
+    boolean matches(ChatTabData.ChatMessage msg, long now) {
+        if (msg.isDateSeparator) return false;
+        String plain = msg.plainText != null ? msg.plainText : msg.text;
+        boolean timed = (msg.seq & (FilterMetrics.TIMING_SAMPLE - 1)) == 0;
+
+        // Mute / ignore checks
+        if (muteCounter != null && msg.senderId != SenderDictionary.NONE) {
+            long t0 = timed ? System.nanoTime() : 0;
+            boolean hidden = isHidden(msg.senderId, now);
+            muteCounter.record(hidden, timed ? (System.nanoTime() - t0) * FilterMetrics.TIMING_SAMPLE : 0);
+            if (hidden) return false;
+        }
+
+        if (expression != null) {
+            long t0 = timed ? System.nanoTime() : 0;
+            boolean hit = expression.matches(msg);
+            expressionCounter.record(hit, timed ? (System.nanoTime() - t0) * FilterMetrics.TIMING_SAMPLE : 0);
+            return hit;
+        }
+
+        if ((msg.seq & (FilterCheck.REORDER_INTERVAL - 1)) == 0) reorder();
+
+        for (FilterCheck c : rejectChecks) if (c.test(msg, plain, timed)) return false;
+        for (FilterCheck c : acceptChecks) if (c.test(msg, plain, timed)) return true;
+        return false;
+    }
+
+    /** Re-sorts both groups from the latest counters. Whoever gets here first does it; others skip. */
+    private void reorder() {
+        if (!reordering.compareAndSet(false, true)) return;
+        try {
+            rejectChecks = FilterCheck.sorted(rejectChecks);
+            acceptChecks = FilterCheck.sorted(acceptChecks);
+        } finally {
+            reordering.set(false);
+        }
+    }
+
+    private boolean isHidden(int senderId, long now) {
+        if (ignoredIds.length > 0 && Arrays.binarySearch(ignoredIds, senderId) >= 0) return true;
+        if (mutedIds.length > 0) {
+            int m = Arrays.binarySearch(mutedIds, senderId);
+            if (m >= 0 && (mutedUntil[m] == Long.MAX_VALUE || now < mutedUntil[m])) return true;
+        }
+        return false;
+    }
+
+    // -------------------------------------------------------------------------
+    // RegexRule  —  one compiled pattern with its runaway guard and cost counters
+    // -------------------------------------------------------------------------
+
+    public static final class RegexRule {
+        /** charAt() calls one match may make before it is abandoned. */
+        private static final int STEP_BUDGET = 200_000;
+        /** After this many abandoned matches the rule is switched off until the next edit. */
+        private static final int MAX_ABORTS  = 3;
+
+        public final String source;
+        private final Pattern pattern;
+
+        final FilterMetrics.Counter counter;
+        private final LongAdder aborts      = new LongAdder();
+        private volatile boolean disabled;
+
+        /** A stand-alone rule (expression leaf, preview) with its own counter. */
+        RegexRule(String source) {
+            this(source, new FilterMetrics.Counter(FilterMetrics.KIND_INCLUDE, REGEX_PREFIX + source));
+        }
+
+        RegexRule(String source, FilterMetrics.Counter counter) {
+            this.source  = source;
+            this.pattern = Pattern.compile(source, Pattern.CASE_INSENSITIVE);
+            this.counter = counter;
+        }
+
+        /** Thread-safe: each call gets its own Matcher and step counter. */
+        boolean find(String text) {
+            if (disabled) return false;
+            long start = System.nanoTime();
+            boolean found;
+            try {
+                Matcher m = pattern.matcher(new BoundedCharSequence(text, STEP_BUDGET));
+                found = m.find();
+            } catch (BudgetExceeded e) {
+                aborts.increment();
+                if (aborts.sum() >= MAX_ABORTS) disabled = true;
+                found = false;
+            }
+            counter.record(found, System.nanoTime() - start);
+            return found;
+        }
+
+        public long    evaluations() { return counter.evaluations(); }
+        public long    hits()        { return counter.hits(); }
+        public long    totalNanos()  { return counter.totalNanos(); }
+        public long    aborts()      { return aborts.sum(); }
+        public boolean isDisabled()  { return disabled; }
+    }
+
+    /**
+     * Wraps the text a regex runs against and counts charAt() calls. java.util.regex has no
+     * timeout, but every step of a backtracking match reads the input, so a step budget
+     * bounds the work of any pattern without a watchdog thread.
+     */
+    private static final class BoundedCharSequence implements CharSequence {
+        private final CharSequence text;
+        private int stepsLeft;
+
+        BoundedCharSequence(CharSequence text, int budget) {
+            this.text = text;
+            this.stepsLeft = budget;
+        }
+
+        @Override public char charAt(int index) {
+            if (--stepsLeft < 0) throw BudgetExceeded.INSTANCE;
+            return text.charAt(index);
+        }
+        @Override public int length() { return text.length(); }
+        @Override public CharSequence subSequence(int start, int end) { return text.subSequence(start, end); }
+        @Override public String toString() { return text.toString(); }
+    }
+
+    /** Thrown out of a running match when its step budget runs out. Stackless and shared. */
+    private static final class BudgetExceeded extends RuntimeException {
+        static final BudgetExceeded INSTANCE = new BudgetExceeded();
+        private BudgetExceeded() { super(null, null, false, false); }
+    }
+}
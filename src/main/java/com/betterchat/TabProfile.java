@@ -0,0 +1,44 @@
+package com.betterchat;
+
+/**
+ * One tab and all of its settings, under an id that never changes.
+ *
+ * Windows, line caches, compiled filters and scroll positions refer to a tab by
+ * {@link #id}, not by its position in ChatTabData.tabs, so deleting or reordering a
+ * tab leaves every other tab's state untouched. Ids are persisted with the tab.
+ */
+public final class TabProfile {
+
+    public final int id;
+    public String  name;
+
+    // Filter rules — read by TabFilter whenever filterVersion moves on
+    public String  filter     = "";   // comma-separated include keywords
+    public String  exclusion  = "";   // comma-separated exclude keywords
+    /** Optional FilterExpression source; blank means the keyword/type rules apply. */
+    public String  expression = "";
+    /** Optional TabAlgebra id form; when set the tab shows a set of other tabs and its own rules are unused. */
+    public String  derivation = "";
+    public boolean includeServer;
+    public boolean includeAll;
+    public boolean includeCommands;
+    public boolean includePlayers;
+    public boolean includeCommandResponses;
+    public boolean sentByMe;
+
+    // Text added around messages sent from this tab
+    public String  prefix = "";
+    public String  suffix = "";
+
+    // Session-only view state
+    public int     scrollOffset;
+    /** Unread marker shown on the tab when notifications are on. */
+    public boolean unread;
+
+    public boolean isDerived() { return !derivation.isEmpty(); }
+
+    public TabProfile(int id, String name) {
+        this.id   = id;
+        this.name = name;
+    }
+}
@@ -48,13 +48,24 @@ public class AppearancePage {
     public boolean draggingFontSize  = false;
     public int     draggingFontSlot  = -1; // 0=text, 1=tabs, 2=timestamps
 
+    // Setting sliders: each snaps to its steps; dragging state as for the font size
+    private static final int   SLIDER_COMBINE_WINDOW = 0;
+    private static final int   SLIDER_FLOOD_SENDER   = 1;
+    private static final int   SLIDER_FLOOD_GLOBAL   = 2;
+    private static final int[][] SLIDER_STEPS = {
+            {5, 10, 15, 30, 45, 60, 120, 300, 600, 1800, 3600}, // combineWindowSeconds
+            {3, 4, 5, 6, 8, 10, 15, 20, 30, 50},                // floodSenderLimit
+            {50, 100, 150, 200, 300, 500, 750, 1000},           // floodGlobalLimit
+    };
+    public int     draggingSlider    = -1; // SLIDER_* id
+
     // Scrollbar for the settings content area
     public int     settingsScrollY       = 0;
     public boolean draggingSettingsBar   = false;
 
     // Hover animation state
-    private final float[] colorHover = new float[9];
-    private final float[] cbHover    = new float[13]; // option toggle rows
+    private final float[] colorHover = new float[COLOR_LABELS.length];
+    private final float[] cbHover    = new float[14]; // option toggle rows
     public        float   resetHover  = 0f;
 
     // ── Colour-picker open callback (calls back to ChatSettingsGui) ───────────
@@ -165,10 +176,13 @@ public class AppearancePage {
 
     private int measureContent(Minecraft mc) {
         int h = 0;
-        h += 13 + 9 * 20 + 5;  // Colors header + 9 rows + gap
+        h += 13 + COLOR_LABELS.length * 20 + 5;  // Colors header + colour rows + gap
         h += 13 + 4 * 16 + 5;  // Options header + 4 toggles + gap
         h += 13 + 16;           // Chat Display header + combine toggle
+        if (data.messageCombining) h += 16; // combine window slider
         h += 16;                // stripPlayerBrackets toggle
+        h += 16;                // floodProtection toggle
+        if (data.floodProtection) h += 2 * 16; // flood limit sliders
         h += 16;                // Master custom fonts toggle
         if (data.fontSizeEnabled) {
             h += fontSubCardHeight(data.fontEnabled,           fontDropdownOpen)
@@ -186,7 +200,7 @@ public class AppearancePage {
                              int clipTop, int clipBottom) {
         drawSectionHeader(mc, cx, cy, "Colors");
         cy += 13;
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < COLOR_LABELS.length; i++) {
             boolean hov = mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 18
                     && my >= clipTop && my <= clipBottom;
             colorHover[i] = lerp(colorHover[i], hov ? 1f : 0f, 0.3f);
@@ -227,6 +241,8 @@ public class AppearancePage {
               mc.fontRendererObj.drawString("Combine Repeated Messages", cx + 7, cy + 4, C_TEXT);
           }
           cy += 16; }
+        if (data.messageCombining)
+            cy = drawSettingSlider(mc, SLIDER_COMBINE_WINDOW, "Within", cx, cy, mx, clipTop, clipBottom);
 
         // Strip Player Brackets
         { boolean hov = mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14
@@ -239,6 +255,26 @@ public class AppearancePage {
           }
           cy += 16; }
 
+        // Collapse Chat Floods
+        { boolean hov = mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14
+                     && my >= clipTop && my <= clipBottom;
+          cbHover[13] = lerp(cbHover[13], hov ? 1f : 0f, 0.3f);
+          if (cy + 14 > clipTop && cy < clipBottom) {
+              Gui.drawRect(cx, cy, cx + CW, cy + 14, blendColor(C_CARD, C_CARD_H, cbHover[13]));
+              drawTogglePill(cx + CW - 22, cy + 3, data.floodProtection);
+              mc.fontRendererObj.drawString("Collapse Chat Floods", cx + 7, cy + 4, C_TEXT);
+              long shed = data.flood.shedTotal();
+              if (shed > 0) {
+                  String n = "\u00A78" + shed + " collapsed";
+                  mc.fontRendererObj.drawString(n, cx + CW - 28 - mc.fontRendererObj.getStringWidth(n), cy + 4, C_TEXT);
+              }
+          }
+          cy += 16; }
+        if (data.floodProtection) {
+            cy = drawSettingSlider(mc, SLIDER_FLOOD_SENDER, "Sender", cx, cy, mx, clipTop, clipBottom);
+            cy = drawSettingSlider(mc, SLIDER_FLOOD_GLOBAL, "All",    cx, cy, mx, clipTop, clipBottom);
+        }
+
         // Master Custom Fonts toggle
         { boolean hov = mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14
                      && my >= clipTop && my <= clipBottom;
@@ -453,6 +489,7 @@ public class AppearancePage {
             case 6: return new String[]{data.colorFadeTopBar,     "" + data.opacFadeTopBar};
             case 7: return new String[]{data.colorFadeBackground, "" + data.opacFadeBackground};
             case 8: return new String[]{data.colorWindowBorder,   "" + data.opacWindowBorder};
+            case 9: return new String[]{data.colorMention,        "" + data.opacMention};
         }
         return new String[]{"FFFFFF", "255"};
     }
@@ -471,6 +508,83 @@ public class AppearancePage {
         else                data.fontSizeTimestamps  = v;
     }
 
+    // ── Setting sliders ───────────────────────────────────────────────────────
+
+    /**
+     * Draws a stepped slider row indented under its toggle and applies a live drag,
+     * like the font size slider. Returns the y below the row. Only new lines are
+     * judged by the new value, so nothing is re-filtered.
+     */
+    private int drawSettingSlider(Minecraft mc, int id, String label, int cx, int cy, int mx,
+                                  int clipTop, int clipBottom) {
+        int[] steps = SLIDER_STEPS[id];
+        int sx  = cx + 6 + 40;
+        int sw2 = CW - 6 - 40 - 44;
+        int hx2 = sx + stepIndex(steps, getSliderValue(id)) * sw2 / (steps.length - 1);
+        if (cy + 14 > clipTop && cy < clipBottom) {
+            mc.fontRendererObj.drawString(label, cx + 6 + 8, cy + 3, C_TEXT_DIM);
+            Gui.drawRect(sx, cy + 4, sx + sw2, cy + 7, C_DIVIDER);
+            Gui.drawRect(sx, cy + 4, hx2,      cy + 7, C_ACCENT2);
+            Gui.drawRect(hx2 - 2, cy + 2, hx2 + 2, cy + 11, 0xFFEEEEEE);
+            mc.fontRendererObj.drawString(sliderText(id, getSliderValue(id)), sx + sw2 + 4, cy + 3, C_TEXT_DIM);
+        }
+        // Live drag
+        if (Mouse.isButtonDown(0)) {
+            if (draggingSlider == id) setSliderValue(id, steps[stepAt(steps, mx - sx, sw2)]);
+        } else if (draggingSlider == id) {
+            draggingSlider = -1;
+            data.save();
+        }
+        return cy + 16;
+    }
+
+    private int handleSettingSliderClick(int mx, int my, int btn, int cx, int virtualCy, int id) {
+        int[] steps = SLIDER_STEPS[id];
+        int sx  = cx + 6 + 40;
+        int sw2 = CW - 6 - 40 - 44;
+        if (btn == 0 && mx >= sx && mx <= sx + sw2 && my >= virtualCy && my <= virtualCy + 14) {
+            draggingSlider = id;
+            setSliderValue(id, steps[stepAt(steps, mx - sx, sw2)]);
+            data.save();
+        }
+        return virtualCy + 16;
+    }
+
+    /** The step nearest to {@code x} pixels along a slider {@code width} wide. */
+    private static int stepAt(int[] steps, int x, int width) {
+        float f = Math.max(0f, Math.min(1f, (float) x / width));
+        return Math.round(f * (steps.length - 1));
+    }
+
+    /** The step closest to {@code value}, which may have been set to anything in the config file. */
+    private static int stepIndex(int[] steps, int value) {
+        int best = 0;
+        for (int i = 1; i < steps.length; i++)
+            if (Math.abs(steps[i] - value) < Math.abs(steps[best] - value)) best = i;
+        return best;
+    }
+
+    private int getSliderValue(int id) {
+        switch (id) {
+            case SLIDER_FLOOD_SENDER: return data.floodSenderLimit;
+            case SLIDER_FLOOD_GLOBAL: return data.floodGlobalLimit;
+            default:                  return data.combineWindowSeconds;
+        }
+    }
+
+    private void setSliderValue(int id, int v) {
+        switch (id) {
+            case SLIDER_FLOOD_SENDER: data.floodSenderLimit     = v; break;
+            case SLIDER_FLOOD_GLOBAL: data.floodGlobalLimit     = v; break;
+            default:                  data.combineWindowSeconds = v; break;
+        }
+    }
+
+    private static String sliderText(int id, int v) {
+        if (id != SLIDER_COMBINE_WINDOW) return v + "/5s"; // lines per FloodGovernor.WINDOW_MS
+        return v >= 3600 && v % 3600 == 0 ? v / 3600 + "h" : v >= 60 && v % 60 == 0 ? v / 60 + "m" : v + "s";
+    }
+
     // ── Mouse click handling ──────────────────────────────────────────────────
 
     /**
@@ -488,7 +602,7 @@ public class AppearancePage {
 
         // Colors section
         virtualCy += 13;
-        for (int i = 0; i < 9; i++) {
+        for (int i = 0; i < COLOR_LABELS.length; i++) {
             int sw2 = cx + CW - 44;
             if (btn == 0 && mx >= sw2 - 1 && mx <= sw2 + 21
                     && my >= virtualCy + 2 && my <= virtualCy + 14) {
@@ -535,6 +649,8 @@ public class AppearancePage {
             return;
         }
         virtualCy += 16;
+        if (data.messageCombining)
+            virtualCy = handleSettingSliderClick(mx, my, btn, cx, virtualCy, SLIDER_COMBINE_WINDOW);
 
         // Strip Player Brackets
         if (btn == 0 && mx >= cx && mx <= cx + CW && my >= virtualCy && my <= virtualCy + 14) {
@@ -545,6 +661,18 @@ public class AppearancePage {
         }
         virtualCy += 16;
 
+        // Collapse Chat Floods — lines already collapsed stay in their summaries
+        if (btn == 0 && mx >= cx && mx <= cx + CW && my >= virtualCy && my <= virtualCy + 14) {
+            data.floodProtection = !data.floodProtection;
+            data.save();
+            return;
+        }
+        virtualCy += 16;
+        if (data.floodProtection) {
+            virtualCy = handleSettingSliderClick(mx, my, btn, cx, virtualCy, SLIDER_FLOOD_SENDER);
+            virtualCy = handleSettingSliderClick(mx, my, btn, cx, virtualCy, SLIDER_FLOOD_GLOBAL);
+        }
+
         // Master Custom Fonts toggle
         if (btn == 0 && mx >= cx && mx <= cx + CW && my >= virtualCy && my <= virtualCy + 14) {
             data.fontSizeEnabled = !data.fontSizeEnabled;
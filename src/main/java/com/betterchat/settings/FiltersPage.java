@@ -1,9 +1,18 @@
 package com.betterchat.settings;
 
+import com.betterchat.BetterChatAPI;
 import com.betterchat.ChatTabData;
+import com.betterchat.FilterExpression;
+import com.betterchat.FilterMetrics;
+import com.betterchat.FilterPreview;
+import com.betterchat.MessageBitmap;
+import com.betterchat.TabAlgebra;
+import com.betterchat.TabFilter;
+import com.betterchat.TabProfile;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Gui;
 import net.minecraft.client.gui.GuiTextField;
+import org.lwjgl.input.Keyboard;
 
 import static com.betterchat.settings.ColorUtils.*;
 import static com.betterchat.settings.SettingsConstants.*;
@@ -12,7 +21,15 @@ import static com.betterchat.settings.SettingsConstants.*;
  * Renders the Filters page and handles its mouse clicks.
  *
  * Covers: tab-selector pills, prefix/suffix fields, include/exclude keyword
- * pill UIs, message-type toggles, and the notifications section.
+ * pill UIs, the filter expression field, the derived-tab field (set algebra
+ * over other tabs), message-type toggles, the mentions section (aliases, watch
+ * words, highlight/ping toggles, adding a Mentions tab) and the notifications section.
+ * Keywords added with the ".*" toggle on are stored as TabFilter regex keywords.
+ * Each pill and message-type row shows how often that rule decided a message;
+ * hovering a pill shows its full FilterMetrics counters, and the counters of
+ * every tab can be exported as CSV. While a keyword is being
+ * typed, a FilterPreview counts in the background how many logged messages it would
+ * add to or hide from the tab, restarted on every keystroke.
  */
 public class FiltersPage {
 
@@ -23,9 +40,40 @@ public class FiltersPage {
     public final GuiTextField exclusionInput;
     public final GuiTextField prefixInput;
     public final GuiTextField suffixInput;
+    public final GuiTextField expressionInput;
+    // Parse error for the expression being typed, or null when it is blank/valid
+    private FilterExpression.ParseException expressionError;
+    public final GuiTextField derivationInput;
+    // Parse error for the derivation being typed, or null when it is blank/valid
+    private TabAlgebra.ParseException derivationError;
+    // Global, not per tab: applied on every keystroke, re-matched by ChatIngest on the next frame
+    public final GuiTextField aliasInput;
+    public final GuiTextField watchInput;
 
     public int selectedFilterTab = 0;
 
+    // ".*" toggles next to the keyword inputs — new keywords are added as regexes
+    private boolean includeRegexMode = false;
+    private boolean excludeRegexMode = false;
+    // Pill under the mouse this frame; its counters are drawn last, on top.
+    // hoveredRule is also set when the pill is a regex (for its abort count).
+    private FilterMetrics.Counter hoveredCounter;
+    private TabFilter.RegexRule hoveredRule;
+    private int hoveredRuleX, hoveredRuleY;
+    // Result line of the last CSV export, or null
+    private String exportStatus;
+    // Background count for the keyword being typed (include or exclude), or null
+    private FilterPreview preview;
+    // The preview and samples as last drawn: the worker may add samples between a frame and a click
+    private FilterPreview shownPreview;
+    private java.util.List<String> shownSamples = java.util.Collections.emptyList();
+
+    private static final int ADD_BTN_W   = 30;
+    private static final int REGEX_BTN_W = 18;
+    private static final int FIELD_TEXT_COLOR = 0xE0E0E0;
+    private static final int FIELD_ERROR_COLOR = 0xFF6666;
+    private static final int MENTION_LABEL_W = 44;
+
     public FiltersPage(ChatTabData data) {
         this.data = data;
         Minecraft mc = Minecraft.getMinecraft();
@@ -33,27 +81,76 @@ public class FiltersPage {
         exclusionInput = new GuiTextField(8,  mc.fontRendererObj, 0, 0, 120, 10);
         prefixInput    = new GuiTextField(6,  mc.fontRendererObj, 0, 0, 76,  10);
         suffixInput    = new GuiTextField(7,  mc.fontRendererObj, 0, 0, 76,  10);
+        expressionInput = new GuiTextField(9, mc.fontRendererObj, 0, 0, CW - 6, 10);
+        derivationInput = new GuiTextField(10, mc.fontRendererObj, 0, 0, CW - 6, 10);
+        aliasInput     = new GuiTextField(11, mc.fontRendererObj, 0, 0, CW - MENTION_LABEL_W, 10);
+        watchInput     = new GuiTextField(12, mc.fontRendererObj, 0, 0, CW - MENTION_LABEL_W, 10);
+        filterInput.setMaxStringLength(128);
+        exclusionInput.setMaxStringLength(128);
+        expressionInput.setMaxStringLength(256);
+        derivationInput.setMaxStringLength(256);
+        aliasInput.setMaxStringLength(256);
+        watchInput.setMaxStringLength(256);
+        aliasInput.setText(data.mentionAliases);
+        watchInput.setText(data.mentionWords);
         syncFromData();
     }
 
     // ── Sync helpers ──────────────────────────────────────────────────────────
 
+    /** The tab whose pill is selected; selectedFilterTab is its position in data.tabs. */
+    private TabProfile selectedTab() {
+        if (selectedFilterTab >= data.tabs.size()) selectedFilterTab = 0;
+        return data.tabs.get(selectedFilterTab);
+    }
+
     /** Called whenever the selected tab changes. */
     public void syncFromData() {
         if (selectedFilterTab >= data.tabs.size()) selectedFilterTab = 0;
         filterInput.setText("");
         exclusionInput.setText("");
-        prefixInput.setText(data.tabPrefixes.getOrDefault(selectedFilterTab, ""));
-        suffixInput.setText(data.tabSuffixes.getOrDefault(selectedFilterTab, ""));
+        filterInput.setTextColor(FIELD_TEXT_COLOR);
+        exclusionInput.setTextColor(FIELD_TEXT_COLOR);
+        prefixInput.setText(selectedTab().prefix);
+        suffixInput.setText(selectedTab().suffix);
+        expressionInput.setText(selectedTab().expression);
+        expressionError = null;
+        derivationInput.setText(TabAlgebra.toDisplay(data, selectedTab().derivation));
+        derivationError = null;
+        cancelPreview();
+        exportStatus = null;
+    }
+
+    /** Cancels the running preview and starts one for the given input's current text. */
+    private void restartPreview(boolean isInclude) {
+        cancelPreview();
+        GuiTextField field = isInclude ? filterInput : exclusionInput;
+        boolean regex = isInclude ? includeRegexMode : excludeRegexMode;
+        String text = field.getText().trim();
+        if (regex && !text.isEmpty() && TabFilter.validateRegex(text) != null) {
+            field.setTextColor(FIELD_ERROR_COLOR);
+            return;
+        }
+        field.setTextColor(FIELD_TEXT_COLOR);
+        preview = FilterPreview.start(data, selectedTab(), text, regex, isInclude);
+    }
+
+    private void cancelPreview() {
+        if (preview != null) preview.cancel();
+        preview = null;
     }
 
     // ── Drawing ───────────────────────────────────────────────────────────────
 
     public void draw(Minecraft mc, int cx, int cy, int mx, int my) {
+        hoveredCounter = null;
+        hoveredRule = null;
+        shownPreview = preview;
+        shownSamples = preview != null ? preview.samples() : java.util.Collections.<String>emptyList();
         // Tab selector pills
         int tx = cx;
         for (int i = 0; i < data.tabs.size(); i++) {
-            String lbl = data.tabs.get(i);
+            String lbl = data.tabs.get(i).name;
             int tw  = mc.fontRendererObj.getStringWidth(lbl) + 10;
             boolean sel = (i == selectedFilterTab);
             boolean hov = mx >= tx && mx <= tx + tw && my >= cy && my <= cy + 13;
@@ -74,34 +171,76 @@ public class FiltersPage {
         drawSectionHeader(mc, cx, cy, "Include Keywords");
         cy += 13;
         cy = drawKeywordPills(mc, cx, cy, mx, my,
-                data.tabFilters.getOrDefault(selectedFilterTab, ""),
+                selectedTab().filter,
                 filterInput, true);
 
         drawSectionHeader(mc, cx, cy, "Exclude Keywords");
         cy += 13;
         cy = drawKeywordPills(mc, cx, cy, mx, my,
-                data.tabExclusions.getOrDefault(selectedFilterTab, ""),
+                selectedTab().exclusion,
                 exclusionInput, false);
 
+        drawSectionHeader(mc, cx, cy, "Filter Expression");
+        cy += 13;
+        cy = drawExpressionField(mc, cx, cy);
+
+        drawSectionHeader(mc, cx, cy, "Derived Tab");
+        cy += 13;
+        cy = drawDerivationField(mc, cx, cy);
+
         drawSectionHeader(mc, cx, cy, "Message Types");
         cy += 13;
-        String[] fl = {"All Messages","Commands","Server Messages","Player Messages","Command Responses","Messages Sent by Me"};
+        String[] fl = TYPE_RULES;
+        TabProfile tab = selectedTab();
+        FilterMetrics metrics = data.metricsFor(tab.id);
         boolean[] fv = {
-            data.includeAllFilters.getOrDefault(selectedFilterTab, false),
-            data.includeCommandsFilters.getOrDefault(selectedFilterTab, false),
-            data.serverMessageFilters.getOrDefault(selectedFilterTab, false),
-            data.includePlayersFilters.getOrDefault(selectedFilterTab, false),
-            data.includeCommandResponseFilters.getOrDefault(selectedFilterTab, false),
-            data.sentByMeFilters.getOrDefault(selectedFilterTab, false)
+            tab.includeAll, tab.includeCommands, tab.includeServer,
+            tab.includePlayers, tab.includeCommandResponses, tab.sentByMe
         };
         for (int i = 0; i < fl.length; i++) {
             boolean hov = mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14;
             Gui.drawRect(cx, cy, cx + CW, cy + 14, blendColor(C_CARD, C_CARD_H, hov ? 1f : 0f));
             drawTogglePill(cx + CW - 22, cy + 3, fv[i]);
             mc.fontRendererObj.drawString(fl[i], cx + 7, cy + 4, C_TEXT);
+            FilterMetrics.Counter c = fv[i] ? metrics.find(FilterMetrics.KIND_TYPE, fl[i]) : null;
+            if (c != null) {
+                String hits = FilterMetrics.compact(c.hits()) + " matched";
+                mc.fontRendererObj.drawString(hits, cx + CW - 28 - mc.fontRendererObj.getStringWidth(hits), cy + 4, C_TEXT_DIM);
+            }
             cy += 16;
         }
 
+        // Rule counters export
+        { boolean hov = mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14;
+          Gui.drawRect(cx, cy, cx + CW, cy + 14, blendColor(C_CARD, C_CARD_H, hov ? 1f : 0f));
+          mc.fontRendererObj.drawString("Export rule counters (CSV)", cx + 7, cy + 4, C_TEXT);
+          if (exportStatus != null) {
+              String st = mc.fontRendererObj.trimStringToWidth(exportStatus, CW / 2);
+              mc.fontRendererObj.drawString(st, cx + CW - 6 - mc.fontRendererObj.getStringWidth(st), cy + 4, C_TEXT_DIM);
+          }
+          cy += 16; }
+
+        cy += 5;
+        drawSectionHeader(mc, cx, cy, "Mentions");
+        cy += 13;
+        cy = drawMentionField(mc, cx, cy, aliasInput, "Aliases", "other names you go by, comma-separated");
+        cy = drawMentionField(mc, cx, cy, watchInput, "Watch", "words to highlight, comma-separated");
+        String[] mentionRows = { "Highlight Mentions", "Ping on Mention" };
+        boolean[] mentionValues = { data.mentionHighlight, data.mentionPing };
+        for (int i = 0; i < mentionRows.length; i++) {
+            boolean hov = mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14;
+            Gui.drawRect(cx, cy, cx + CW, cy + 14, blendColor(C_CARD, C_CARD_H, hov ? 1f : 0f));
+            drawTogglePill(cx + CW - 22, cy + 3, mentionValues[i]);
+            mc.fontRendererObj.drawString(mentionRows[i], cx + 7, cy + 4, C_TEXT);
+            cy += 16;
+        }
+        { TabProfile existing = mentionsTab();
+          boolean hov = existing == null && mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14;
+          Gui.drawRect(cx, cy, cx + CW, cy + 14, blendColor(C_CARD, C_CARD_H, hov ? 1f : 0f));
+          mc.fontRendererObj.drawString(existing == null ? "+ Add Mentions tab" : "Mentions tab: " + existing.name,
+                  cx + 7, cy + 4, existing == null ? C_TEXT : C_TEXT_DIM);
+          cy += 16; }
+
         cy += 5;
         drawSectionHeader(mc, cx, cy, "Notifications");
         cy += 13;
@@ -110,6 +249,11 @@ public class FiltersPage {
           Gui.drawRect(cx, cy, cx + CW, cy + 14, blendColor(C_CARD, C_CARD_H, hov ? 1f : 0f));
           drawTogglePill(cx + CW - 22, cy + 3, data.showNotifications);
           mc.fontRendererObj.drawString("Enable Notifications", cx + 7, cy + 4, C_TEXT);
+          long held = data.notifications.suppressedSounds() + data.notifications.coalescedMessages();
+          if (held > 0) {
+              String n = "\u00A78" + held + " held back";
+              mc.fontRendererObj.drawString(n, cx + CW - 28 - mc.fontRendererObj.getStringWidth(n), cy + 4, C_TEXT);
+          }
           cy += 16; }
 
         if (data.showNotifications) {
@@ -128,14 +272,191 @@ public class FiltersPage {
               mc.fontRendererObj.drawString("Windows Notification", indX + 7, cy + 4, winDimmed ? C_TEXT_DIM : C_TEXT);
               cy += 16; }
         }
+
+        if (hoveredCounter != null) drawRuleStats(mc, hoveredCounter, hoveredRule, hoveredRuleX, hoveredRuleY);
+    }
+
+    /** Message-type rows, in toggle order; also the rule names FilterMetrics counts them under. */
+    private static final String[] TYPE_RULES = {
+        TabFilter.TYPE_ALL, TabFilter.TYPE_COMMANDS, TabFilter.TYPE_SERVER,
+        TabFilter.TYPE_PLAYERS, TabFilter.TYPE_RESPONSES, TabFilter.TYPE_SENT_BY_ME
+    };
+
+    /**
+     * Small floating card with one keyword's counters. Regex rules add their abort count,
+     * which (unlike the counters) restarts whenever the filter is edited.
+     */
+    private void drawRuleStats(Minecraft mc, FilterMetrics.Counter c, TabFilter.RegexRule rule, int x, int y) {
+        long evals = c.evaluations();
+        String[] lines = {
+            rule != null ? "/" + rule.source + "/" : "\"" + c.rule + "\"",
+            evals + " checked, " + c.hits() + " matched",
+            String.format(java.util.Locale.US, "avg %.1f us, total %.1f ms",
+                    evals == 0 ? 0.0 : c.totalNanos() / 1000.0 / evals, c.totalNanos() / 1e6),
+            rule == null ? "Time sampled on 1 in " + FilterMetrics.TIMING_SAMPLE + " messages"
+                : rule.isDisabled() ? "\u00A7cDisabled: too slow (" + rule.aborts() + " aborted)"
+                : rule.aborts() + " aborted (step limit)"
+        };
+        int w = 0;
+        for (String l : lines) w = Math.max(w, mc.fontRendererObj.getStringWidth(l));
+        int h = lines.length * 10 + 4;
+        Gui.drawRect(x, y, x + w + 8, y + h, C_BG);
+        drawBorder(x, y, x + w + 8, y + h, C_ACCENT2);
+        for (int i = 0; i < lines.length; i++)
+            mc.fontRendererObj.drawString(lines[i], x + 4, y + 3 + i * 10, i == 0 ? C_TEXT : C_TEXT_DIM);
+    }
+
+    /** Expression input plus a one-line status: hint, parse error, or "active". */
+    private int drawExpressionField(Minecraft mc, int cx, int cy) {
+        Gui.drawRect(cx, cy, cx + CW, cy + 14, C_CARD);
+        drawBorder(cx, cy, cx + CW, cy + 14,
+                expressionError != null ? 0xFFAA2222 : expressionInput.isFocused() ? C_ACCENT : C_DIVIDER);
+        expressionInput.xPosition = cx + 3; expressionInput.yPosition = cy + 2;
+        expressionInput.width = CW - 6; expressionInput.setEnableBackgroundDrawing(false);
+        expressionInput.drawTextBox();
+        if (expressionInput.getText().isEmpty() && !expressionInput.isFocused())
+            mc.fontRendererObj.drawString("e.g. sender:Notch AND NOT type:command", cx + 5, cy + 3, C_TEXT_DIM);
+        cy += 16;
+
+        String status;
+        int statusColor;
+        if (expressionError != null) {
+            status = "Col " + (expressionError.position + 1) + ": " + expressionError.getMessage();
+            statusColor = 0xFFFF6666;
+        } else if (!selectedTab().expression.trim().isEmpty()) {
+            status = "Active \u2014 replaces keywords and message types";
+            statusColor = 0xFF22AA66;
+            // A mod predicate that is slower than it declared, or keeps failing, is called out here
+            for (BetterChatAPI.Registration r : data.filterFor(selectedTab().id).modPredicates()) {
+                if (r.isDisabled()) {
+                    status = "mod:" + r.id + " switched off after " + r.failures() + " errors";
+                    statusColor = 0xFFFF6666;
+                    break;
+                }
+                if (r.isOverBudget()) {
+                    status = String.format(java.util.Locale.US, "mod:%s averages %.1f us, over its %s budget",
+                            r.id, r.averageNanos() / 1000.0, r.cost.name().toLowerCase(java.util.Locale.ROOT));
+                    statusColor = 0xFFFFAA00;
+                }
+            }
+        } else {
+            status = "Optional: AND OR NOT ( ) sender: text: type: channel: after: before: mod:";
+            statusColor = C_TEXT_DIM;
+        }
+        mc.fontRendererObj.drawString(mc.fontRendererObj.trimStringToWidth(status, CW), cx, cy, statusColor);
+        cy += 14;
+        return cy;
+    }
+
+    /** One labelled mention setting: a caption, then the input across the rest of the row. */
+    private int drawMentionField(Minecraft mc, int cx, int cy, GuiTextField field, String label, String hint) {
+        mc.fontRendererObj.drawString(label, cx, cy + 3, C_TEXT_DIM);
+        int fx = cx + MENTION_LABEL_W;
+        Gui.drawRect(fx, cy, cx + CW, cy + 14, C_CARD);
+        drawBorder(fx, cy, cx + CW, cy + 14, field.isFocused() ? C_ACCENT : C_DIVIDER);
+        field.xPosition = fx + 3; field.yPosition = cy + 2;
+        field.width = CW - MENTION_LABEL_W - 6; field.setEnableBackgroundDrawing(false);
+        field.drawTextBox();
+        if (field.getText().isEmpty() && !field.isFocused())
+            mc.fontRendererObj.drawString(hint, fx + 5, cy + 3, C_TEXT_DIM);
+        return cy + 18;
+    }
+
+    /** The tab addMentionsTab() made (or one set up the same way), or null. */
+    private TabProfile mentionsTab() {
+        for (TabProfile t : data.tabs)
+            if (t.expression.trim().equalsIgnoreCase("type:mention")) return t;
+        return null;
+    }
+
+    /** Derivation input plus a one-line status, laid out like the expression field. */
+    private int drawDerivationField(Minecraft mc, int cx, int cy) {
+        Gui.drawRect(cx, cy, cx + CW, cy + 14, C_CARD);
+        drawBorder(cx, cy, cx + CW, cy + 14,
+                derivationError != null ? 0xFFAA2222 : derivationInput.isFocused() ? C_ACCENT : C_DIVIDER);
+        derivationInput.xPosition = cx + 3; derivationInput.yPosition = cy + 2;
+        derivationInput.width = CW - 6; derivationInput.setEnableBackgroundDrawing(false);
+        derivationInput.drawTextBox();
+        if (derivationInput.getText().isEmpty() && !derivationInput.isFocused())
+            mc.fontRendererObj.drawString("e.g. Party | Guild   or   Global - Spam", cx + 5, cy + 3, C_TEXT_DIM);
+        cy += 16;
+
+        String status;
+        int statusColor;
+        if (derivationError != null) {
+            status = "Col " + (derivationError.position + 1) + ": " + derivationError.getMessage();
+            statusColor = 0xFFFF6666;
+        } else if (selectedTab().isDerived()) {
+            // Cached between frames; a source far behind the log is built in the background
+            MessageBitmap members = data.membershipIfReady(selectedTab().id);
+            status = "Active \u2014 " + (members != null ? members.cardinality() + " messages"
+                    : "counting " + data.membershipProgress(selectedTab().id) + "%")
+                    + "; this tab's own rules are unused";
+            statusColor = 0xFF22AA66;
+        } else {
+            status = "Optional: other tabs joined by | (union) & (both) - (minus) ( )";
+            statusColor = C_TEXT_DIM;
+        }
+        mc.fontRendererObj.drawString(mc.fontRendererObj.trimStringToWidth(status, CW), cx, cy, statusColor);
+        cy += 14;
+        return cy;
+    }
+
+    /** Height of the preview block under an input as last drawn; draw and click layout must agree. */
+    private int previewHeight(boolean isInclude) {
+        if (shownPreview == null || shownPreview.include != isInclude) return 0;
+        return 10 + shownSamples.size() * 10 + 2;
+    }
+
+    /** "Would add N messages" (running while the scan is in progress) plus a few samples. */
+    private int drawPreview(Minecraft mc, int cx, int cy, boolean isInclude) {
+        if (previewHeight(isInclude) == 0) return cy;
+        int n = isInclude ? shownPreview.added() : shownPreview.removed();
+        String status;
+        if (!selectedTab().expression.trim().isEmpty())
+            status = "Expression active \u2014 keywords are ignored";
+        else if (!shownPreview.isDone())
+            status = "Scanning history\u2026 " + shownPreview.progressPercent() + "% (" + n + " so far)";
+        else if (n == 0)
+            status = "No change to this tab's history";
+        else
+            status = (isInclude ? "Would add " : "Would hide ") + n + " message" + (n == 1 ? "" : "s");
+        mc.fontRendererObj.drawString(status, cx + 2, cy, C_TEXT_DIM);
+        cy += 10;
+        String mark = isInclude ? "\u00A7a+ \u00A77" : "\u00A7c- \u00A77";
+        for (String sample : shownSamples) {
+            mc.fontRendererObj.drawString(mc.fontRendererObj.trimStringToWidth(mark + sample, CW - 4),
+                    cx + 2, cy, C_TEXT_DIM);
+            cy += 10;
+        }
+        return cy + 2;
+    }
+
+    /** The counters behind a keyword pill, or null if the tab's filter has not compiled it. */
+    private FilterMetrics.Counter pillCounter(String stored, boolean isInclude) {
+        int id = selectedTab().id;
+        data.filterFor(id); // compiling registers the counters
+        return data.metricsFor(id).find(isInclude ? FilterMetrics.KIND_INCLUDE : FilterMetrics.KIND_EXCLUDE,
+                TabFilter.unescapeKeyword(stored));
+    }
+
+    /** Match count drawn after a pill's label. Part of the pill width, so draw and click share it. */
+    private static String pillHits(FilterMetrics.Counter c) {
+        return c == null ? "" : " " + FilterMetrics.compact(c.hits());
+    }
+
+    /** Pill text for a stored keyword: regexes are shown as /pattern/. */
+    private static String pillLabel(String stored) {
+        String k = TabFilter.unescapeKeyword(stored);
+        return TabFilter.isRegex(k) ? "/" + k.substring(TabFilter.REGEX_PREFIX.length()) + "/" : k;
     }
 
     // ── Keyword pill renderer ─────────────────────────────────────────────────
 
     private int drawKeywordPills(Minecraft mc, int cx, int cy, int mx, int my,
                                   String csv, GuiTextField inputField, boolean isInclude) {
-        int addBtnW = 30;
-        int fieldW  = CW - addBtnW - 4;
+        boolean regexMode = isInclude ? includeRegexMode : excludeRegexMode;
+        int fieldW  = CW - ADD_BTN_W - REGEX_BTN_W - 8;
         Gui.drawRect(cx, cy, cx + fieldW, cy + 14, C_CARD);
         drawBorder(cx, cy, cx + fieldW, cy + 14,
                 inputField.isFocused() ? C_ACCENT : C_DIVIDER);
@@ -143,30 +464,54 @@ public class FiltersPage {
         inputField.width = fieldW - 6; inputField.setEnableBackgroundDrawing(false);
         inputField.drawTextBox();
         if (inputField.getText().isEmpty() && !inputField.isFocused())
-            mc.fontRendererObj.drawString(isInclude ? "Add include..." : "Add exclude...",
-                    cx + 5, cy + 3, C_TEXT_DIM);
-
-        int addX = cx + fieldW + 4;
-        boolean addHov = mx >= addX && mx <= addX + addBtnW && my >= cy && my <= cy + 14;
-        Gui.drawRect(addX, cy, addX + addBtnW, cy + 14, addHov ? 0xFF1A3A6A : 0xFF112244);
-        drawBorder(addX, cy, addX + addBtnW, cy + 14, C_ACCENT2);
+            mc.fontRendererObj.drawString((isInclude ? "Add include" : "Add exclude")
+                    + (regexMode ? " regex..." : "..."), cx + 5, cy + 3, C_TEXT_DIM);
+
+        int reX = cx + fieldW + 4;
+        boolean reHov = mx >= reX && mx <= reX + REGEX_BTN_W && my >= cy && my <= cy + 14;
+        Gui.drawRect(reX, cy, reX + REGEX_BTN_W, cy + 14,
+                regexMode ? C_ACCENT2 : blendColor(C_CARD, C_CARD_H, reHov ? 1f : 0f));
+        drawBorder(reX, cy, reX + REGEX_BTN_W, cy + 14, regexMode ? C_ACCENT : C_DIVIDER);
+        int reW = mc.fontRendererObj.getStringWidth(".*");
+        mc.fontRendererObj.drawString(".*", reX + (REGEX_BTN_W - reW) / 2, cy + 3,
+                regexMode ? 0xFFFFFFFF : C_TEXT_DIM);
+
+        int addX = reX + REGEX_BTN_W + 4;
+        boolean addHov = mx >= addX && mx <= addX + ADD_BTN_W && my >= cy && my <= cy + 14;
+        Gui.drawRect(addX, cy, addX + ADD_BTN_W, cy + 14, addHov ? 0xFF1A3A6A : 0xFF112244);
+        drawBorder(addX, cy, addX + ADD_BTN_W, cy + 14, C_ACCENT2);
         int plusW = mc.fontRendererObj.getStringWidth("+ Add");
-        mc.fontRendererObj.drawString("+ Add", addX + (addBtnW - plusW) / 2, cy + 3, C_TEXT);
+        mc.fontRendererObj.drawString("+ Add", addX + (ADD_BTN_W - plusW) / 2, cy + 3, C_TEXT);
         cy += 18;
+        cy = drawPreview(mc, cx, cy, isInclude);
 
         if (!csv.trim().isEmpty()) {
             String[] kws  = csv.split(",");
+            TabFilter filter = data.filterFor(selectedTab().id);
             int pillX = cx;
             for (String kw : kws) {
                 String k = kw.trim();
                 if (k.isEmpty()) continue;
-                int pillW = mc.fontRendererObj.getStringWidth(k) + 20;
+                String label = pillLabel(k);
+                FilterMetrics.Counter counter = pillCounter(k, isInclude);
+                String hits = pillHits(counter);
+                int labelW = mc.fontRendererObj.getStringWidth(label);
+                int pillW = labelW + mc.fontRendererObj.getStringWidth(hits) + 20;
                 if (pillX + pillW > cx + CW) { pillX = cx; cy += 14; }
+                TabFilter.RegexRule rule = label.equals(k) ? null
+                        : filter.regexRule(TabFilter.unescapeKeyword(k).substring(TabFilter.REGEX_PREFIX.length()));
                 int pillColor  = isInclude ? 0xFF153520 : 0xFF351515;
-                int pillBorder = isInclude ? 0xFF22AA66 : 0xFFAA2222;
+                int pillBorder = rule != null && rule.isDisabled() ? 0xFF886622
+                        : rule != null ? 0xFF8855CC
+                        : isInclude ? 0xFF22AA66 : 0xFFAA2222;
                 Gui.drawRect(pillX, cy, pillX + pillW, cy + 12, pillColor);
                 drawBorder(pillX, cy, pillX + pillW, cy + 12, pillBorder);
-                mc.fontRendererObj.drawString(k, pillX + 3, cy + 2, C_TEXT);
+                mc.fontRendererObj.drawString(label, pillX + 3, cy + 2,
+                        rule != null && rule.isDisabled() ? C_TEXT_DIM : C_TEXT);
+                mc.fontRendererObj.drawString(hits, pillX + 3 + labelW, cy + 2, C_TEXT_DIM);
+                if (counter != null && mx >= pillX && mx < pillX + pillW - 10 && my >= cy && my <= cy + 12) {
+                    hoveredCounter = counter; hoveredRule = rule; hoveredRuleX = mx + 8; hoveredRuleY = my + 8;
+                }
                 int xX  = pillX + pillW - 10;
                 boolean xHov = mx >= xX && mx <= xX + 8 && my >= cy && my <= cy + 12;
                 mc.fontRendererObj.drawString("x", xX + 1, cy + 2, xHov ? 0xFFFF6666 : 0xFF884444);
@@ -186,7 +531,7 @@ public class FiltersPage {
         // Tab selector pills
         int tx = cx;
         for (int i = 0; i < data.tabs.size(); i++) {
-            int tw = mc.fontRendererObj.getStringWidth(data.tabs.get(i)) + 10;
+            int tw = mc.fontRendererObj.getStringWidth(data.tabs.get(i).name) + 10;
             if (btn == 0 && mx >= tx && mx <= tx + tw && my >= cy && my <= cy + 13) {
                 selectedFilterTab = i; syncFromData(); data.save(); return;
             }
@@ -207,22 +552,62 @@ public class FiltersPage {
         cy += 13;
         cy = handleKeywordPillClick(mx, my, btn, cx, cy, false);
 
+        // Filter expression
+        cy += 13;
+        expressionInput.mouseClicked(mx, my, btn);
+        cy += 16 + 14;
+
+        // Derived tab
+        cy += 13;
+        derivationInput.mouseClicked(mx, my, btn);
+        cy += 16 + 14;
+
         // Message Types
         cy += 13;
-        @SuppressWarnings("unchecked")
-        java.util.Map<Integer, Boolean>[] maps = new java.util.Map[]{
-            data.includeAllFilters, data.includeCommandsFilters,
-            data.serverMessageFilters, data.includePlayersFilters,
-            data.includeCommandResponseFilters, data.sentByMeFilters
-        };
         for (int i = 0; i < 6; i++) {
             if (btn == 0 && mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14) {
-                maps[i].put(selectedFilterTab, !maps[i].getOrDefault(selectedFilterTab, false));
+                TabProfile tab = selectedTab();
+                switch (i) {
+                    case 0: tab.includeAll              = !tab.includeAll;              break;
+                    case 1: tab.includeCommands         = !tab.includeCommands;         break;
+                    case 2: tab.includeServer           = !tab.includeServer;           break;
+                    case 3: tab.includePlayers          = !tab.includePlayers;          break;
+                    case 4: tab.includeCommandResponses = !tab.includeCommandResponses; break;
+                    case 5: tab.sentByMe                = !tab.sentByMe;                break;
+                }
                 data.filterVersion++; data.save(); return;
             }
             cy += 16;
         }
 
+        // Rule counters export
+        if (btn == 0 && mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14) {
+            try { exportStatus = "Saved " + data.exportFilterMetrics().getName(); }
+            catch (java.io.IOException e) { exportStatus = "\u00A7cExport failed: " + e.getMessage(); }
+            return;
+        }
+        cy += 16;
+
+        // Mentions
+        cy += 5 + 13;
+        aliasInput.mouseClicked(mx, my, btn);
+        watchInput.mouseClicked(mx, my, btn);
+        if (!aliasInput.isFocused() && !watchInput.isFocused()) applyMentionFields();
+        cy += 18 + 18;
+        for (int i = 0; i < 2; i++) {
+            if (btn == 0 && mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14) {
+                if (i == 0) { data.mentionHighlight = !data.mentionHighlight; data.displayVersion++; } // highlights live in the line caches only
+                else        data.mentionPing = !data.mentionPing;
+                data.save(); return;
+            }
+            cy += 16;
+        }
+        if (btn == 0 && mentionsTab() == null && mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14) {
+            data.addMentionsTab();
+            return;
+        }
+        cy += 16;
+
         // Notifications
         cy += 5 + 13;
         if (btn == 0 && mx >= cx && mx <= cx + CW && my >= cy && my <= cy + 14) {
@@ -251,36 +636,56 @@ public class FiltersPage {
         Minecraft mc = Minecraft.getMinecraft();
         GuiTextField inputField = isInclude ? filterInput : exclusionInput;
         String csv = isInclude
-                ? data.tabFilters.getOrDefault(selectedFilterTab, "")
-                : data.tabExclusions.getOrDefault(selectedFilterTab, "");
+                ? selectedTab().filter
+                : selectedTab().exclusion;
 
-        int addBtnW = 30;
-        int fieldW  = CW - addBtnW - 4;
+        boolean regexMode = isInclude ? includeRegexMode : excludeRegexMode;
+        int fieldW  = CW - ADD_BTN_W - REGEX_BTN_W - 8;
 
         inputField.mouseClicked(mx, my, btn);
 
-        int addX = cx + fieldW + 4;
-        if (btn == 0 && mx >= addX && mx <= addX + addBtnW && my >= cy && my <= cy + 14) {
+        int reX = cx + fieldW + 4;
+        if (btn == 0 && mx >= reX && mx <= reX + REGEX_BTN_W && my >= cy && my <= cy + 14) {
+            if (isInclude) includeRegexMode = !includeRegexMode;
+            else           excludeRegexMode = !excludeRegexMode;
+            inputField.setTextColor(FIELD_TEXT_COLOR);
+            if (!inputField.getText().trim().isEmpty()) restartPreview(isInclude);
+        }
+
+        int addX = reX + REGEX_BTN_W + 4;
+        if (btn == 0 && mx >= addX && mx <= addX + ADD_BTN_W && my >= cy && my <= cy + 14) {
             String newKw = inputField.getText().trim();
+            if (!newKw.isEmpty() && regexMode) {
+                if (TabFilter.validateRegex(newKw) != null) {
+                    // Leave the text in place, tinted red, so it can be fixed
+                    inputField.setTextColor(FIELD_ERROR_COLOR);
+                    newKw = "";
+                } else {
+                    newKw = TabFilter.escapeKeyword(TabFilter.REGEX_PREFIX + newKw);
+                }
+            }
             if (!newKw.isEmpty()) {
                 java.util.List<String> kwList = new java.util.ArrayList<>();
                 for (String k : csv.split(",")) { String t = k.trim(); if (!t.isEmpty()) kwList.add(t); }
                 if (!kwList.contains(newKw)) kwList.add(newKw);
                 String joined = String.join(",", kwList);
-                if (isInclude) data.tabFilters.put(selectedFilterTab, joined);
-                else           data.tabExclusions.put(selectedFilterTab, joined);
+                if (isInclude) selectedTab().filter    = joined;
+                else           selectedTab().exclusion = joined;
                 inputField.setText("");
+                cancelPreview();
                 data.filterVersion++; data.save();
             }
             cy += 18;
+            cy += previewHeight(isInclude);
             String newCsv = isInclude
-                    ? data.tabFilters.getOrDefault(selectedFilterTab, "")
-                    : data.tabExclusions.getOrDefault(selectedFilterTab, "");
+                    ? selectedTab().filter
+                    : selectedTab().exclusion;
             if (!newCsv.trim().isEmpty()) cy += 14;
             cy += 4;
             return cy;
         }
         cy += 18;
+        cy += previewHeight(isInclude);
 
         if (!csv.trim().isEmpty()) {
             String[] kws = csv.split(",");
@@ -290,7 +695,8 @@ public class FiltersPage {
             for (String kw : kws) {
                 String k = kw.trim();
                 if (k.isEmpty()) continue;
-                int pillW = mc.fontRendererObj.getStringWidth(k) + 20;
+                int pillW = mc.fontRendererObj.getStringWidth(pillLabel(k))
+                        + mc.fontRendererObj.getStringWidth(pillHits(pillCounter(k, isInclude))) + 20;
                 if (pillX + pillW > cx + CW) { pillX = cx; pillRowY += 14; }
                 int xX = pillX + pillW - 10;
                 if (!removed && btn == 0 && mx >= xX && mx <= xX + 8
@@ -303,8 +709,8 @@ public class FiltersPage {
             }
             if (removed) {
                 String joined = String.join(",", remaining);
-                if (isInclude) data.tabFilters.put(selectedFilterTab, joined);
-                else           data.tabExclusions.put(selectedFilterTab, joined);
+                if (isInclude) selectedTab().filter    = joined;
+                else           selectedTab().exclusion = joined;
                 data.filterVersion++; data.save();
             }
             cy += 14;
@@ -317,12 +723,77 @@ public class FiltersPage {
 
     public void keyTyped(char c, int code) {
         if (selectedFilterTab >= data.tabs.size()) selectedFilterTab = 0;
-        if (filterInput.isFocused())    { filterInput.textboxKeyTyped(c, code);    return; }
-        if (exclusionInput.isFocused()) { exclusionInput.textboxKeyTyped(c, code); return; }
+        if (filterInput.isFocused()) {
+            String before = filterInput.getText();
+            filterInput.textboxKeyTyped(c, code);
+            if (!filterInput.getText().equals(before)) restartPreview(true);
+            return;
+        }
+        if (exclusionInput.isFocused()) {
+            String before = exclusionInput.getText();
+            exclusionInput.textboxKeyTyped(c, code);
+            if (!exclusionInput.getText().equals(before)) restartPreview(false);
+            return;
+        }
+        if (expressionInput.isFocused()) {
+            expressionInput.textboxKeyTyped(c, code);
+            applyExpression(expressionInput.getText());
+            return;
+        }
+        if (derivationInput.isFocused()) {
+            derivationInput.textboxKeyTyped(c, code);
+            applyDerivation(derivationInput.getText());
+            return;
+        }
+        // Mention settings apply on Enter or when the field loses focus: each change re-matches the log
+        if (aliasInput.isFocused() || watchInput.isFocused()) {
+            if (code == Keyboard.KEY_RETURN) applyMentionFields();
+            else (aliasInput.isFocused() ? aliasInput : watchInput).textboxKeyTyped(c, code);
+            return;
+        }
         if (prefixInput.isFocused())    prefixInput.textboxKeyTyped(c, code);
         if (suffixInput.isFocused())    suffixInput.textboxKeyTyped(c, code);
-        data.tabPrefixes.put(selectedFilterTab, prefixInput.getText());
-        data.tabSuffixes.put(selectedFilterTab, suffixInput.getText());
+        selectedTab().prefix = prefixInput.getText();
+        selectedTab().suffix = suffixInput.getText();
+    }
+
+    /**
+     * Stores the aliases and watch words typed so far. Called on Enter, when the fields
+     * lose focus and when the page is left; ChatIngest re-matches the log if they changed.
+     */
+    public void applyMentionFields() {
+        data.mentionAliases = aliasInput.getText();
+        data.mentionWords   = watchInput.getText();
+    }
+
+    /**
+     * Stores the expression once it parses (or is cleared); while it is invalid the
+     * tab keeps filtering with the last good one and the error is shown instead.
+     */
+    private void applyExpression(String text) {
+        String trimmed = text.trim();
+        if (!trimmed.isEmpty()) {
+            try { FilterExpression.parse(text); }
+            catch (FilterExpression.ParseException e) { expressionError = e; return; }
+        }
+        expressionError = null;
+        if (!trimmed.equals(selectedTab().expression)) {
+            selectedTab().expression = trimmed;
+            data.filterVersion++;
+        }
     }
-}
 
+    /** Same rules as the expression: stored (by tab id) once it parses, otherwise the error is shown. */
+    private void applyDerivation(String text) {
+        String stored = "";
+        if (!text.trim().isEmpty()) {
+            try { stored = TabAlgebra.compile(data, text, selectedTab().id); }
+            catch (TabAlgebra.ParseException e) { derivationError = e; return; }
+        }
+        derivationError = null;
+        if (!stored.equals(selectedTab().derivation)) {
+            selectedTab().derivation = stored;
+            data.filterVersion++;
+        }
+    }
+}
@@ -28,6 +28,12 @@ public class HelpPage {
         {"\u25B2 / \u25BC",   "Jump to previous / next day"},
         {"Appearance page",    "Colours, toggles, font options"},
         {"Filters page",       "Per-tab keyword filters"},
+        {".* toggle",          "Add a keyword as a regex"},
+        {"Filter expression",  "e.g. sender:X AND NOT type:command"},
+        {"channel:party",      "Route party/guild/private chat"},
+        {"mod:<id>",           "Filter with another mod's rule"},
+        {"Derived tab",        "e.g. Party | Guild, Global - Spam"},
+        {"type:mention",       "Lines with your name or watch words"},
         {"Search page",        "Search the full chat history"},
     };
 
@@ -151,7 +151,7 @@ public class KeybindsPage {
         // ── AUTO-RESPONSES ────────────────────────────────────────────────────
         drawSectionHeader(mc, cx, cy, "Auto-Responses");
         cy += 13;
-        mc.fontRendererObj.drawString("Auto-reply when a message contains trigger.", cx + 2, cy, C_TEXT_DIM);
+        mc.fontRendererObj.drawString("Reply to a trigger. Options: from: tab: cd:", cx + 2, cy, C_TEXT_DIM);
         cy += 11;
 
         int arHalf = (CW - 4) / 2;
@@ -195,7 +195,7 @@ public class KeybindsPage {
             boolean rHov = mx >= cx && mx <= cx + CW && my >= ry && my <= ry + arRowH;
             Gui.drawRect(cx, ry, cx + CW, ry + arRowH,
                     rHov ? C_CARD_H : (i % 2 == 0 ? C_CARD : 0xFF101418));
-            String trig = ar.trigger;
+            String trig = ar.describeTrigger(data);
             if (mc.fontRendererObj.getStringWidth(trig) > CW / 2 - 12) {
                 while (mc.fontRendererObj.getStringWidth(trig + "\u2026") > CW / 2 - 12 && trig.length() > 1)
                     trig = trig.substring(0, trig.length() - 1);
@@ -277,9 +277,12 @@ public class KeybindsPage {
             String trig = arTriggerField.getText().trim();
             String resp = arResponseField.getText().trim();
             if (!trig.isEmpty() && !resp.isEmpty()) {
-                data.autoResponses.add(new ChatTabData.AutoResponseEntry(trig, resp));
-                arTriggerField.setText(""); arResponseField.setText("");
-                data.save();
+                ChatTabData.AutoResponseEntry ar = ChatTabData.AutoResponseEntry.parse(trig, resp, data);
+                if (!ar.trigger.isEmpty()) {
+                    data.autoResponses.add(ar);
+                    arTriggerField.setText(""); arResponseField.setText("");
+                    data.save();
+                }
             }
             return;
         }
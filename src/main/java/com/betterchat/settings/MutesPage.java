@@ -64,13 +64,6 @@ public class MutesPage {
                 addHov ? 0xFFFFFFFF : C_TEXT);
         cy += 18;
 
-        // Remove expired temp-mutes
-        java.util.Iterator<Map.Entry<String, Long>> it = data.mutedPlayers.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, Long> e = it.next();
-            if (e.getValue() != Long.MAX_VALUE && System.currentTimeMillis() >= e.getValue()) it.remove();
-        }
-
         if (data.mutedPlayers.isEmpty()) {
             mc.fontRendererObj.drawString("No muted players.", cx + 4, cy + 4, C_TEXT_DIM);
             return;
@@ -160,8 +153,7 @@ public class MutesPage {
         if (btn == 0 && mx >= btnX && mx <= btnX + addBtnW && my >= cy && my <= cy + 14) {
             String name = muteAddField.getText().trim();
             if (!name.isEmpty()) {
-                data.mutedPlayers.put(name, Long.MAX_VALUE);
-                data.filterVersion++;
+                data.mutePlayer(name, Long.MAX_VALUE);
                 muteAddField.setText("");
                 data.save();
             }
@@ -181,8 +173,7 @@ public class MutesPage {
             int xBtnX = cx + listW - 14;
             if (btn == 0 && mx >= xBtnX && mx <= xBtnX + 12
                     && my >= rowY + 1 && my <= rowY + rowH - 1) {
-                data.mutedPlayers.remove(entries.get(i).getKey());
-                data.filterVersion++;
+                data.unmutePlayer(entries.get(i).getKey());
                 data.save(); return;
             }
             rowY += rowH;
@@ -197,8 +188,7 @@ public class MutesPage {
         if (code == 28 /* ENTER */) {
             String name = muteAddField.getText().trim();
             if (!name.isEmpty()) {
-                data.mutedPlayers.put(name, Long.MAX_VALUE);
-                data.filterVersion++;
+                data.mutePlayer(name, Long.MAX_VALUE);
                 muteAddField.setText("");
                 data.save();
             }
@@ -1,6 +1,8 @@
 package com.betterchat.settings;
 
+import com.betterchat.CaseFoldMatcher;
 import com.betterchat.ChatTabData;
+import com.betterchat.SenderDictionary;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Gui;
 import net.minecraft.client.gui.GuiTextField;
@@ -18,6 +20,8 @@ import static com.betterchat.settings.SettingsConstants.*;
  *
  * Searches {@link ChatTabData#globalLog} and displays matches in a scrollable,
  * horizontally-scrollable list with both a vertical and horizontal scrollbar.
+ * A query starting with {@code from:Name} is answered from the sender index,
+ * optionally narrowed by any text after the name.
  */
 public class SearchPage {
 
@@ -66,19 +70,19 @@ public class SearchPage {
             searchResults.clear();
             searchScrollX = 0;
             String q = chatSearchText.toLowerCase();
-            if (!q.isEmpty()) {
-                for (ChatTabData.ChatMessage msg : data.globalLog) {
-                    if (msg.isDateSeparator) continue;
-                    String plain = msg.plainText != null ? msg.plainText
-                                 : (msg.text != null ? msg.text : "");
-                    if (plain.toLowerCase().contains(q)) {
-                        String date = msg.date != null ? msg.date : "??/??/??";
-                        String time = msg.time != null ? msg.time : "??:??";
-                        String ts   = "[" + date + " " + time + "] ";
-                        String disp = msg.text != null ? data.applyBracketStrip(msg.text) : plain;
-                        searchResults.add(ts + disp);
-                    }
-                }
+            if (q.startsWith("from:")) {
+                // from:Name [text] — only that sender's postings are visited
+                String rest = chatSearchText.substring(5).trim();
+                int sp = rest.indexOf(' ');
+                String name = sp < 0 ? rest : rest.substring(0, sp);
+                CaseFoldMatcher text = new CaseFoldMatcher(sp < 0 ? "" : rest.substring(sp + 1).trim());
+                int id = SenderDictionary.lookup(name);
+                if (id == SenderDictionary.NONE) id = SenderDictionary.lookup(name.toLowerCase());
+                for (int pos : data.senderIndex.positions(id)) addResultIfMatches(data.globalLog.get(pos), text);
+                java.util.Collections.reverse(searchResults);
+            } else if (!q.isEmpty()) {
+                CaseFoldMatcher query = new CaseFoldMatcher(chatSearchText);
+                for (ChatTabData.ChatMessage msg : data.globalLog) addResultIfMatches(msg, query);
                 java.util.Collections.reverse(searchResults);
             }
             searchDirty = false;
@@ -175,6 +179,18 @@ public class SearchPage {
         GL11.glDisable(GL11.GL_SCISSOR_TEST);
     }
 
+    private void addResultIfMatches(ChatTabData.ChatMessage msg, CaseFoldMatcher query) {
+        if (msg.isDateSeparator) return;
+        String plain = msg.plainText != null ? msg.plainText
+                     : (msg.text != null ? msg.text : "");
+        if (!query.find(plain)) return; // an empty query matches everything
+        String date = msg.date != null ? msg.date : "??/??/??";
+        String time = msg.time != null ? msg.time : "??:??";
+        String ts   = "[" + date + " " + time + "] ";
+        String disp = msg.text != null ? data.applyBracketStrip(msg.text) : plain;
+        searchResults.add(ts + disp);
+    }
+
     // ── Mouse click ───────────────────────────────────────────────────────────
 
     public void mouseClicked(int mx, int my, int btn) {
@@ -194,6 +210,14 @@ public class SearchPage {
         }
     }
 
+    /** Replaces the query, e.g. "from:Name" from the player context menu. */
+    public void setQuery(String query) {
+        chatSearchField.setText(query);
+        chatSearchText = query;
+        searchScrollY  = 0;
+        searchDirty    = true;
+    }
+
     /** Forces a re-search on the next draw tick (call when new messages arrive). */
     public void markDirty() { searchDirty = true; }
 }